@@ -0,0 +1,590 @@
+/*
+ * Sonargraph Integration Access
+ * Copyright (C) 2016-2021 hello2morrow GmbH
+ * mailto: support AT hello2morrow DOT com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hello2morrow.sonargraph.batch.analysis;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.apache.commons.configuration2.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.hello2morrow.sonargraph.batch.configuration.ConfigurationReader;
+import com.hello2morrow.sonargraph.batch.configuration.Props;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Long-running service that executes analyses of Maven artifacts ({@link AnalyzeMavenArtifact}) and repositories ({@link CwaServerAnalysis})
+ * submitted via a local HTTP API, so that JVM startup, configuration parsing and the discovery of the Sonargraph installation are only paid
+ * once.
+ *
+ * <ul>
+ * <li>POST /jobs?type=maven&amp;groupId=..&amp;artifactId=..&amp;propertiesFile=..[&amp;numberOfMostRecentVersions=n][&amp;priority=p]</li>
+ * <li>POST /jobs?type=repository&amp;propertiesFile=..[&amp;priority=p]</li>
+ * <li>GET /jobs, GET /jobs/&lt;id&gt;: state and progress of the jobs</li>
+ * <li>GET /stats: queue length and throughput</li>
+ * </ul>
+ *
+ * Jobs with higher priority are started first, jobs with equal priority in the order of submission. Jobs for the same artifact or repository
+ * run one after the other, since they share the project directory, the Sonargraph system and the reports. Finished jobs are reported for a day.
+ * The service only listens on the loopback interface.
+ */
+public final class AnalysisService
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(AnalysisService.class);
+    private static final int DEFAULT_PORT = 8035;
+    private static final String JOBS_PATH = "/jobs";
+    private static final String STATS_PATH = "/stats";
+    private static final long FINISHED_JOB_RETENTION_MS = 24 * 60 * 60 * 1000L;
+
+    enum JobType
+    {
+        MAVEN,
+        REPOSITORY
+    }
+
+    enum JobState
+    {
+        QUEUED,
+        RUNNING,
+        SUCCEEDED,
+        FAILED
+    }
+
+    static final class Job implements Comparable<Job>
+    {
+        private final long m_id;
+        private final JobType m_type;
+        private final int m_priority;
+        private final Map<String, String> m_parameters;
+        private final long m_submitted = System.currentTimeMillis();
+        private volatile JobState m_state = JobState.QUEUED;
+        private volatile int m_processed = 0;
+        private volatile int m_total = 0;
+        private volatile long m_started = 0;
+        private volatile long m_finished = 0;
+        private volatile String m_error;
+        private final List<Consumer<Boolean>> m_completionListeners = new CopyOnWriteArrayList<>();
+
+        Job(final long id, final JobType type, final int priority, final Map<String, String> parameters)
+        {
+            m_id = id;
+            m_type = type;
+            m_priority = priority;
+            m_parameters = parameters;
+        }
+
+        long getId()
+        {
+            return m_id;
+        }
+
+        JobState getState()
+        {
+            return m_state;
+        }
+
+        @Override
+        public int compareTo(final Job other)
+        {
+            final int result = Integer.compare(other.m_priority, m_priority);
+            return result != 0 ? result : Long.compare(m_id, other.m_id);
+        }
+
+        String toJson()
+        {
+            final StringBuilder json = new StringBuilder("{");
+            json.append("\"id\":").append(m_id);
+            json.append(",\"type\":\"").append(m_type.name().toLowerCase(Locale.ENGLISH)).append('"');
+            json.append(",\"priority\":").append(m_priority);
+            json.append(",\"state\":\"").append(m_state.name().toLowerCase(Locale.ENGLISH)).append('"');
+            json.append(",\"processed\":").append(m_processed);
+            json.append(",\"total\":").append(m_total);
+            json.append(",\"submitted\":").append(m_submitted);
+            json.append(",\"started\":").append(m_started);
+            json.append(",\"finished\":").append(m_finished);
+            json.append(",\"parameters\":{");
+            json.append(m_parameters.entrySet().stream().map(e -> quote(e.getKey()) + ":" + quote(e.getValue())).reduce((a, b) -> a + "," + b)
+                    .orElse(""));
+            json.append('}');
+            if (m_error != null)
+            {
+                json.append(",\"error\":").append(quote(m_error));
+            }
+            return json.append('}').toString();
+        }
+    }
+
+    private final String m_activationCode;
+    private final int m_workerCount;
+    private final PriorityBlockingQueue<Job> m_queue = new PriorityBlockingQueue<>();
+    private final Map<Long, Job> m_jobs = new ConcurrentHashMap<>();
+    private final Map<String, Configuration> m_configurations = new ConcurrentHashMap<>();
+    private final Map<String, Long> m_configurationTimestamps = new ConcurrentHashMap<>();
+    //Guarded by this: targets of running jobs, and jobs waiting for the running job of their target
+    private final Set<String> m_runningTargets = new HashSet<>();
+    private final Map<String, List<Job>> m_waitingJobs = new HashMap<>();
+    private final AtomicLong m_nextId = new AtomicLong(1);
+    private final AtomicInteger m_completedJobs = new AtomicInteger();
+    private final AtomicInteger m_processedItems = new AtomicInteger();
+    private final long m_startTime = System.currentTimeMillis();
+    private HttpServer m_server;
+    private ExecutorService m_workers;
+
+    AnalysisService(final String activationCode, final int workerCount)
+    {
+        assert activationCode != null && activationCode.length() > 0 : "Parameter 'activationCode' of method 'AnalysisService' must not be empty";
+        m_activationCode = activationCode;
+        m_workerCount = workerCount;
+    }
+
+    /**
+     * Expected arguments: activationCode [port] [number of concurrently executed jobs] [watch list file, see {@link ReleaseWatcher}]
+     */
+    public static void main(final String[] args) throws IOException
+    {
+        if (args.length < 1)
+        {
+            throw new IllegalArgumentException("Expected arguments: <activation-code> [port] [workers] [watchListFile]");
+        }
+
+        final int port = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PORT;
+        final int workers = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+        final AnalysisService service = new AnalysisService(args[0], workers);
+        service.start(port);
+        Runtime.getRuntime().addShutdownHook(new Thread(service::stop));
+        if (args.length > 3)
+        {
+            final ReleaseWatcher watcher = new ReleaseWatcher(new File(args[3]), service::submit);
+            watcher.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(watcher::stop));
+        }
+    }
+
+    /**
+     * @param port
+     *            0 selects a free port
+     * @return the port the service is listening on
+     */
+    int start(final int port) throws IOException
+    {
+        m_server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        m_server.createContext(JOBS_PATH, this::handleJobs);
+        m_server.createContext(STATS_PATH, this::handleStats);
+        m_server.setExecutor(Executors.newSingleThreadExecutor());
+        m_server.start();
+
+        m_workers = Executors.newFixedThreadPool(Math.max(1, m_workerCount));
+        for (int i = 0; i < m_workerCount; i++)
+        {
+            m_workers.execute(this::processJobs);
+        }
+        final int actualPort = m_server.getAddress().getPort();
+        LOGGER.info("Analysis service listening on port {} with {} workers", actualPort, m_workerCount);
+        return actualPort;
+    }
+
+    void stop()
+    {
+        if (m_server != null)
+        {
+            m_server.stop(0);
+            ((ExecutorService) m_server.getExecutor()).shutdownNow();
+        }
+        if (m_workers != null)
+        {
+            m_workers.shutdownNow();
+        }
+    }
+
+    /**
+     * Queues a job, unless an identical job is still queued.
+     */
+    Job submit(final Map<String, String> parameters)
+    {
+        return submit(parameters, null);
+    }
+
+    /**
+     * Queues a job, unless an identical job is still queued.
+     *
+     * @param completionListener
+     *            called with true if the job succeeded or false if it failed, or null. It is added to the identical job, if one is queued.
+     */
+    synchronized Job submit(final Map<String, String> parameters, final Consumer<Boolean> completionListener)
+    {
+        assert parameters != null : "Parameter 'parameters' of method 'submit' must not be null";
+
+        final String typeName = parameters.get("type");
+        final JobType type;
+        try
+        {
+            type = JobType.valueOf(typeName != null ? typeName.toUpperCase(Locale.ENGLISH) : "");
+        }
+        catch (final IllegalArgumentException e)
+        {
+            throw new IllegalArgumentException("Parameter 'type' must be 'maven' or 'repository'");
+        }
+        requireParameter(parameters, "propertiesFile");
+        if (type == JobType.MAVEN)
+        {
+            requireParameter(parameters, "groupId");
+            requireParameter(parameters, "artifactId");
+        }
+
+        evictFinishedJobs(System.currentTimeMillis());
+        final int priority = Integer.parseInt(parameters.getOrDefault("priority", "0"));
+        //Includes the jobs waiting for a running job of the same target
+        for (final Job next : m_jobs.values())
+        {
+            //The state is changed under the same lock when a job starts, so a listener added here is called when the job finishes
+            if (next.m_parameters.equals(parameters) && next.m_state == JobState.QUEUED)
+            {
+                LOGGER.info("Identical job {} is already queued", next.getId());
+                if (completionListener != null)
+                {
+                    next.m_completionListeners.add(completionListener);
+                }
+                return next;
+            }
+        }
+        final Job job = new Job(m_nextId.getAndIncrement(), type, priority, parameters);
+        if (completionListener != null)
+        {
+            job.m_completionListeners.add(completionListener);
+        }
+        m_jobs.put(job.getId(), job);
+        m_queue.add(job);
+        LOGGER.info("Queued job {}: {}", job.getId(), parameters);
+        return job;
+    }
+
+    /**
+     * @return the next job to execute or null, if the queue is empty
+     */
+    Job pollNext()
+    {
+        return m_queue.poll();
+    }
+
+    Job getJob(final long id)
+    {
+        return m_jobs.get(id);
+    }
+
+    /**
+     * Removes the jobs that finished before the retention time.
+     */
+    void evictFinishedJobs(final long now)
+    {
+        m_jobs.values().removeIf(
+                j -> (j.m_state == JobState.SUCCEEDED || j.m_state == JobState.FAILED) && now - j.m_finished > FINISHED_JOB_RETENTION_MS);
+    }
+
+    /**
+     * @return the artifact or repository the job analyzes
+     */
+    String getTarget(final Job job)
+    {
+        assert job != null : "Parameter 'job' of method 'getTarget' must not be null";
+
+        if (job.m_type == JobType.MAVEN)
+        {
+            return "maven:" + job.m_parameters.get("groupId").trim() + ":" + job.m_parameters.get("artifactId").trim();
+        }
+
+        final String propertiesFile = job.m_parameters.get("propertiesFile");
+        try
+        {
+            final String repoDirectory = getConfiguration(propertiesFile).getString(Props.REPO_DIRECTORY.getPropertyName());
+            if (repoDirectory != null && !repoDirectory.trim().isEmpty())
+            {
+                return "repository:" + new File(repoDirectory.trim()).getAbsoluteFile().toPath().normalize();
+            }
+        }
+        catch (final IOException e)
+        {
+            //The job fails when it is executed
+        }
+        return "repository:" + new File(propertiesFile).getAbsoluteFile().toPath().normalize();
+    }
+
+    /**
+     * Marks the job as running, unless a job for the same target is running. The job is then queued again when the running job has finished.
+     *
+     * @return true, if the job can be executed
+     */
+    boolean start(final Job job, final String target)
+    {
+        assert job != null : "Parameter 'job' of method 'start' must not be null";
+        assert target != null : "Parameter 'target' of method 'start' must not be null";
+
+        synchronized (this)
+        {
+            if (!m_runningTargets.add(target))
+            {
+                m_waitingJobs.computeIfAbsent(target, t -> new ArrayList<>()).add(job);
+                LOGGER.info("Job {} waits for the running job of {}", job.getId(), target);
+                return false;
+            }
+            //The state is changed under the same lock as the check for identical jobs in submit
+            job.m_state = JobState.RUNNING;
+            return true;
+        }
+    }
+
+    synchronized void finish(final String target)
+    {
+        assert target != null : "Parameter 'target' of method 'finish' must not be null";
+
+        m_runningTargets.remove(target);
+        final List<Job> waiting = m_waitingJobs.remove(target);
+        if (waiting != null)
+        {
+            m_queue.addAll(waiting);
+        }
+    }
+
+    private static void requireParameter(final Map<String, String> parameters, final String name)
+    {
+        final String value = parameters.get(name);
+        if (value == null || value.trim().isEmpty())
+        {
+            throw new IllegalArgumentException("Missing parameter '" + name + "'");
+        }
+    }
+
+    private void processJobs()
+    {
+        try
+        {
+            while (!Thread.currentThread().isInterrupted())
+            {
+                final Job job = m_queue.take();
+                final String target = getTarget(job);
+                if (start(job, target))
+                {
+                    try
+                    {
+                        execute(job);
+                    }
+                    finally
+                    {
+                        finish(target);
+                    }
+                }
+            }
+        }
+        catch (final InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void execute(final Job job)
+    {
+        job.m_started = System.currentTimeMillis();
+        LOGGER.info("Starting job {}", job.getId());
+
+        final IProgressListener progressListener = (processed, total) ->
+        {
+            if (processed > job.m_processed)
+            {
+                m_processedItems.addAndGet(processed - job.m_processed);
+            }
+            job.m_processed = processed;
+            job.m_total = total;
+        };
+
+        try
+        {
+            final Configuration configuration = getConfiguration(job.m_parameters.get("propertiesFile"));
+            if (job.m_type == JobType.MAVEN)
+            {
+                final AnalyzeMavenArtifact analysis = new AnalyzeMavenArtifact(job.m_parameters.get("groupId"), job.m_parameters.get("artifactId"),
+                        configuration, m_activationCode, Boolean.parseBoolean(job.m_parameters.getOrDefault("writeVersionsFile", "true")),
+                        Integer.parseInt(job.m_parameters.getOrDefault("numberOfMostRecentVersions", "-1")));
+                analysis.setProgressListener(progressListener);
+                analysis.run();
+            }
+            else
+            {
+                final CwaServerAnalysis analysis = new CwaServerAnalysis(configuration, m_activationCode);
+                analysis.setProgressListener(progressListener);
+                analysis.run();
+            }
+            job.m_state = JobState.SUCCEEDED;
+        }
+        catch (final Exception e)
+        {
+            LOGGER.error("Job " + job.getId() + " failed", e);
+            job.m_error = e.getMessage() != null ? e.getMessage() : e.getClass().getName();
+            job.m_state = JobState.FAILED;
+        }
+        finally
+        {
+            job.m_finished = System.currentTimeMillis();
+            m_completedJobs.incrementAndGet();
+            LOGGER.info("Finished job {} after {} ms", job.getId(), job.m_finished - job.m_started);
+            for (final Consumer<Boolean> next : job.m_completionListeners)
+            {
+                try
+                {
+                    next.accept(job.m_state == JobState.SUCCEEDED);
+                }
+                catch (final RuntimeException e)
+                {
+                    LOGGER.warn("Completion listener of job " + job.getId() + " failed", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Configurations are parsed once and only read again if the properties file has been modified.
+     */
+    private Configuration getConfiguration(final String propertiesFile) throws IOException
+    {
+        final File file = new File(propertiesFile).getAbsoluteFile();
+        final String key = file.getPath();
+        final long lastModified = file.lastModified();
+        final Long cachedTimestamp = m_configurationTimestamps.get(key);
+        if (cachedTimestamp == null || cachedTimestamp.longValue() != lastModified)
+        {
+            final Configuration configuration = ConfigurationReader.read(key);
+            if (configuration == null)
+            {
+                throw new IOException("Failed to load configuration properties file from " + key);
+            }
+            m_configurations.put(key, configuration);
+            m_configurationTimestamps.put(key, lastModified);
+        }
+        return m_configurations.get(key);
+    }
+
+    private void handleJobs(final HttpExchange exchange) throws IOException
+    {
+        try
+        {
+            final String path = exchange.getRequestURI().getPath();
+            if ("POST".equals(exchange.getRequestMethod()) && path.equals(JOBS_PATH))
+            {
+                final Job job = submit(parseQuery(exchange.getRequestURI().getRawQuery()));
+                send(exchange, 201, job.toJson());
+            }
+            else if ("GET".equals(exchange.getRequestMethod()) && path.equals(JOBS_PATH))
+            {
+                evictFinishedJobs(System.currentTimeMillis());
+                final List<Job> jobs = new ArrayList<>(m_jobs.values());
+                jobs.sort((a, b) -> Long.compare(a.getId(), b.getId()));
+                send(exchange, 200, jobs.stream().map(Job::toJson).reduce((a, b) -> a + ",\n" + b).map(s -> "[" + s + "]").orElse("[]"));
+            }
+            else if ("GET".equals(exchange.getRequestMethod()) && path.startsWith(JOBS_PATH + "/"))
+            {
+                final Job job = getJob(Long.parseLong(path.substring(JOBS_PATH.length() + 1)));
+                if (job == null)
+                {
+                    send(exchange, 404, "{\"error\":\"Unknown job\"}");
+                }
+                else
+                {
+                    send(exchange, 200, job.toJson());
+                }
+            }
+            else
+            {
+                send(exchange, 405, "{\"error\":\"Unsupported request\"}");
+            }
+        }
+        catch (final IllegalArgumentException e)
+        {
+            send(exchange, 400, "{\"error\":" + quote(e.getMessage()) + "}");
+        }
+    }
+
+    private void handleStats(final HttpExchange exchange) throws IOException
+    {
+        final double hours = Math.max(1, System.currentTimeMillis() - m_startTime) / 3600000.0;
+        //Queued jobs include the jobs waiting for a running job of the same target
+        final long queued = m_jobs.values().stream().filter(j -> j.getState() == JobState.QUEUED).count();
+        final long running = m_jobs.values().stream().filter(j -> j.getState() == JobState.RUNNING).count();
+        final String json = "{\"queued\":" + queued + ",\"running\":" + running + ",\"completedJobs\":" + m_completedJobs.get()
+                + ",\"processedItems\":" + m_processedItems.get() + ",\"itemsPerHour\":"
+                + String.format(Locale.ENGLISH, "%.2f", m_processedItems.get() / hours) + ",\"uptimeMs\":" + (System.currentTimeMillis() - m_startTime)
+                + "}";
+        send(exchange, 200, json);
+    }
+
+    static Map<String, String> parseQuery(final String rawQuery) throws UnsupportedEncodingException
+    {
+        final Map<String, String> parameters = new LinkedHashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty())
+        {
+            return parameters;
+        }
+        for (final String next : rawQuery.split("&"))
+        {
+            final int index = next.indexOf('=');
+            if (index > 0)
+            {
+                parameters.put(URLDecoder.decode(next.substring(0, index), StandardCharsets.UTF_8.name()),
+                        URLDecoder.decode(next.substring(index + 1), StandardCharsets.UTF_8.name()));
+            }
+        }
+        return parameters;
+    }
+
+    private static void send(final HttpExchange exchange, final int status, final String body) throws IOException
+    {
+        final byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody())
+        {
+            out.write(bytes);
+        }
+    }
+
+    private static String quote(final String value)
+    {
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n") + "\"";
+    }
+}
@@ -28,12 +28,18 @@ import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 import org.apache.commons.configuration2.Configuration;
@@ -42,12 +48,27 @@ import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.hello2morrow.sonargraph.batch.cache.AnalysisResultCache;
+import com.hello2morrow.sonargraph.batch.cache.InputHasher;
+import com.hello2morrow.sonargraph.batch.cache.ScratchWorkspace;
+import com.hello2morrow.sonargraph.batch.commands.JvmProfile;
+import com.hello2morrow.sonargraph.batch.commands.OutputPolicy;
 import com.hello2morrow.sonargraph.batch.commands.SonargraphCommand;
+import com.hello2morrow.sonargraph.batch.commands.SonargraphInstallationUtility;
 import com.hello2morrow.sonargraph.batch.configuration.ConfigurationReader;
 import com.hello2morrow.sonargraph.batch.configuration.Props;
 import com.hello2morrow.sonargraph.batch.configuration.Version;
+import com.hello2morrow.sonargraph.batch.logging.JobContext;
+import com.hello2morrow.sonargraph.batch.maven.JarSlimmer;
 import com.hello2morrow.sonargraph.batch.maven.MavenRepo;
+import com.hello2morrow.sonargraph.batch.report.ReportMetricExtractor;
+import com.hello2morrow.sonargraph.batch.scheduling.DurationModel;
+import com.hello2morrow.sonargraph.batch.scheduling.LeaseDirectory;
+import com.hello2morrow.sonargraph.batch.scheduling.ResourceScheduler;
+import com.hello2morrow.sonargraph.batch.scheduling.RetryQueue;
+import com.hello2morrow.sonargraph.batch.scheduling.Stage;
 import com.hello2morrow.sonargraph.batch.shell.IShell;
+import com.hello2morrow.sonargraph.batch.shell.ProcessStatistics;
 import com.hello2morrow.sonargraph.batch.shell.ShellFactory;
 
 /**
@@ -62,6 +83,12 @@ public final class AnalyzeMavenArtifact
 
     private static final String LAST_VERSION_ANALYZED_FILE_NAME = "lastVersionAnalyzed.txt";
     private static final String VERSION_TIME_SEPARATOR = " -- ";
+    private static final String TELEMETRY_FILE_NAME = "telemetry.csv";
+    private static final String SYSTEM_FILE_NAME = "system.sonargraph";
+    //Sub directory of the version directory containing the slimmed jars and the system analyzing them
+    private static final String SLIM_DIRECTORY_NAME = "slim";
+    //Separates version and release date in the items of a distributed work list
+    private static final String ITEM_SEPARATOR = ";";
 
     private final Charset m_charset;
 
@@ -71,8 +98,14 @@ public final class AnalyzeMavenArtifact
     private final String m_activationCode;
     private boolean m_writeVersionsFile = true;
     private final int m_versionsToAnalyze;
+    //Null, if version directories are created in the 'sampleProjects' directory
+    private ScratchWorkspace m_scratchWorkspace;
+    private IProgressListener m_progressListener = (processed, total) ->
+    {
+        //Not tracked by default
+    };
 
-    private AnalyzeMavenArtifact(final String groupId, final String artifactId, final Configuration configuration, final String activationCode,
+    AnalyzeMavenArtifact(final String groupId, final String artifactId, final Configuration configuration, final String activationCode,
             final boolean writeVersionsFile, final int versionsToAnalyze)
     {
         assert groupId != null && groupId.length() > 0 : "Parameter 'groupId' of method 'RunAnalysisForMavenBundle' must not be empty";
@@ -92,6 +125,12 @@ public final class AnalyzeMavenArtifact
         m_charset = charsetName == null ? Charset.defaultCharset() : Charset.forName(charsetName);
     }
 
+    void setProgressListener(final IProgressListener progressListener)
+    {
+        assert progressListener != null : "Parameter 'progressListener' of method 'setProgressListener' must not be null";
+        m_progressListener = progressListener;
+    }
+
     /**
      * Expected arguments:
      * <ol>
@@ -158,7 +197,7 @@ public final class AnalyzeMavenArtifact
      *
      * @throws IOException
      */
-    private void run() throws IOException
+    void run() throws IOException
     {
         final IShell shell = ShellFactory.create(m_charset);
         final String basePath = m_configuration.getString(Props.BASE_DIRECTORY.getPropertyName());
@@ -178,7 +217,9 @@ public final class AnalyzeMavenArtifact
             projectDir.mkdirs();
         }
 
-        final Pair<Version, Date> lastAnalyzedVersion = determineLastAnalyzedVersion(projectDir);
+        //Bisection probes all versions, independent of the versions analyzed so far
+        final String bisectMetric = m_configuration.getString(Props.BISECT_METRIC.getPropertyName(), "").trim();
+        final Pair<Version, Date> lastAnalyzedVersion = bisectMetric.isEmpty() ? determineLastAnalyzedVersion(projectDir) : null;
         final List<Pair<Version, Date>> versionsAndDates = processVersions(shell, projectDir, lastAnalyzedVersion, m_versionsToAnalyze);
         if (versionsAndDates.size() == 0)
         {
@@ -201,6 +242,7 @@ public final class AnalyzeMavenArtifact
         {
             samplesProjectsDirectory.mkdir();
         }
+        m_scratchWorkspace = ScratchWorkspace.getShared(m_configuration);
 
         final File sample = new File(projectDir, "sample");
         if (!sample.exists() || !sample.isDirectory())
@@ -226,54 +268,453 @@ public final class AnalyzeMavenArtifact
             throw new RuntimeException("startup.xml does not exist at: " + startupXml.getAbsolutePath());
         }
 
-        String baselineReportPath = "";
-        int i = 1;
-        for (final Pair<Version, Date> next : versionsAndDates)
+        if (!bisectMetric.isEmpty())
         {
-            final long start = System.currentTimeMillis();
-            LOGGER.info("\n ---- Processing {} of {} ---", i, versionsAndDates.size());
-            final String version = next.getLeft().toString();
-            final Date date = next.getRight();
+            bisect(shell, projectDir, samplesProjectsDirectory, sonargraphSystemDir, startupXml, versionsAndDates, bisectMetric);
+            return;
+        }
 
-            //create directory matching version
-            final File projectVersionDir = new File(samplesProjectsDirectory, version);
-            if (!projectVersionDir.exists())
+        final LeaseDirectory leaseDirectory = LeaseDirectory.fromConfiguration(m_configuration);
+        if (leaseDirectory != null)
+        {
+            try (LeaseDirectory leases = leaseDirectory)
             {
-                projectVersionDir.mkdir();
+                distribute(shell, projectDir, samplesProjectsDirectory, sonargraphSystemDir, startupXml, versionsAndDates, leases);
             }
+            return;
+        }
 
+        final AnalysisResultCache resultCache = AnalysisResultCache.fromConfiguration(m_configuration);
+        final String sonargraphVersion = resultCache != null
+                ? SonargraphInstallationUtility.getSonargraphBuildVersion(new File(m_configuration.getString(Props.INST_DIRECTORY.getPropertyName())))
+                : null;
+
+        final File telemetryFile = new File(projectDir, TELEMETRY_FILE_NAME);
+        appendTelemetry(shell, telemetryFile, "setup");
+
+        final DurationModel durationModel = DurationModel.load(projectDir);
+        final List<Stage> analysisStages = Collections.singletonList(Stage.ANALYSIS);
+        durationModel.logEstimatedRemainingTime(analysisStages, versionsAndDates.size(), durationModel.getLastInputSize(Stage.ANALYSIS));
+
+        //Analyses run in order, since each uses the report of the previous version as baseline. Downloads are done ahead concurrently, but only
+        //for a window of one version per download slot, so that waiting versions don't fill the scratch workspace. The next download is
+        //submitted when an analysis starts.
+        final ResourceScheduler scheduler = ResourceScheduler.getShared(m_configuration);
+        final int downloadLimit = scheduler.getStageLimit(Stage.DOWNLOAD);
+        final int lookAhead = downloadLimit > 0 ? downloadLimit : Runtime.getRuntime().availableProcessors();
+        final ExecutorService downloadExecutor = Executors.newFixedThreadPool(lookAhead);
+        final Map<Integer, Future<File>> downloads = new HashMap<>();
+        for (int i = 0; i < Math.min(lookAhead, versionsAndDates.size()); i++)
+        {
+            downloads.put(i, submitDownload(downloadExecutor, samplesProjectsDirectory, versionsAndDates.get(i).getLeft().toString(), scheduler,
+                    durationModel));
+        }
+
+        //Report paths by index, a version is analyzed with the report of the closest previous version that succeeded as baseline
+        final String[] reportPaths = new String[versionsAndDates.size()];
+        final RetryQueue<Integer> retries = RetryQueue.fromConfiguration(m_configuration);
+        int lastSucceeded = -1;
+        for (int i = 0; i < versionsAndDates.size(); i++)
+        {
+            final long start = System.currentTimeMillis();
+            LOGGER.info("\n ---- Processing {} of {} ---", i + 1, versionsAndDates.size());
+            final String version = versionsAndDates.get(i).getLeft().toString();
+            final int nextDownload = i + lookAhead;
+            if (nextDownload < versionsAndDates.size())
+            {
+                downloads.put(nextDownload, submitDownload(downloadExecutor, samplesProjectsDirectory,
+                        versionsAndDates.get(nextDownload).getLeft().toString(), scheduler, durationModel));
+            }
             try
             {
-                downloadJarsFromMavenCentral(projectVersionDir, version);
+                final File projectVersionDir = downloads.remove(i).get();
+                try
+                {
+                    processVersion(shell, projectDir, projectVersionDir, sonargraphSystemDir, startupXml, versionsAndDates, i, reportPaths,
+                            resultCache, sonargraphVersion, durationModel);
+                }
+                finally
+                {
+                    releaseVersionDirectory(projectVersionDir);
+                }
+                lastSucceeded = recordLastVersionAnalyzed(projectDir, versionsAndDates, i, lastSucceeded);
             }
-            catch (final IOException ex)
+            catch (final InterruptedException ex)
+            {
+                Thread.currentThread().interrupt();
+                downloadExecutor.shutdownNow();
+                throw new IOException("Interrupted while waiting for download of version " + version, ex);
+            }
+            catch (final Exception e)
+            {
+                final Throwable failure = e instanceof ExecutionException ? e.getCause() : e;
+                LOGGER.error("Failed to process version " + version, failure);
+                retries.defer(i, failure);
+            }
+            appendTelemetry(shell, telemetryFile, version);
+
+            LOGGER.info("Finished processing {} of {} in {} ms", i + 1, versionsAndDates.size(), System.currentTimeMillis() - start);
+            durationModel.logEstimatedRemainingTime(analysisStages, versionsAndDates.size() - i - 1, durationModel.getLastInputSize(Stage.ANALYSIS));
+            m_progressListener.progress(i + 1, versionsAndDates.size());
+        }
+        downloadExecutor.shutdown();
+
+        try
+        {
+            for (RetryQueue.Retry<Integer> retry = retries.next(); retry != null; retry = retries.next())
+            {
+                final int index = retry.getItem();
+                final String version = versionsAndDates.get(index).getLeft().toString();
+                LOGGER.info("Retry {} of version {} after {} failure", retry.getAttempt(), version, retry.getFailureClass());
+                try
+                {
+                    //The download is repeated, if it failed before
+                    final File projectVersionDir = downloadVersion(samplesProjectsDirectory, version, scheduler, durationModel);
+                    try
+                    {
+                        processVersion(shell, projectDir, projectVersionDir, sonargraphSystemDir, startupXml, versionsAndDates, index, reportPaths,
+                                resultCache, sonargraphVersion, durationModel);
+                    }
+                    finally
+                    {
+                        releaseVersionDirectory(projectVersionDir);
+                    }
+                    lastSucceeded = recordLastVersionAnalyzed(projectDir, versionsAndDates, index, lastSucceeded);
+                }
+                catch (final InterruptedException ex)
+                {
+                    throw ex;
+                }
+                catch (final Exception e)
+                {
+                    LOGGER.error("Retry of version " + version + " failed", e);
+                    retries.defer(index, e);
+                }
+                appendTelemetry(shell, telemetryFile, version);
+            }
+        }
+        catch (final InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for deferred retries", ex);
+        }
+        if (!retries.getGivenUp().isEmpty())
+        {
+            LOGGER.warn("Failed versions per failure class: {}", retries.getGivenUp());
+        }
+    }
+
+    private Future<File> submitDownload(final ExecutorService downloadExecutor, final File samplesProjectsDirectory, final String version,
+            final ResourceScheduler scheduler, final DurationModel durationModel)
+    {
+        return downloadExecutor.submit(() -> downloadVersion(samplesProjectsDirectory, version, scheduler, durationModel));
+    }
+
+    /**
+     * Restores the results of the version from the cache, or analyzes it.
+     */
+    private void processVersion(final IShell shell, final File projectDir, final File projectVersionDir, final File sonargraphSystemDir,
+            final File startupXml, final List<Pair<Version, Date>> versionsAndDates, final int index, final String[] reportPaths,
+            final AnalysisResultCache resultCache, final String sonargraphVersion, final DurationModel durationModel) throws Exception
+    {
+        final String version = versionsAndDates.get(index).getLeft().toString();
+        try (JobContext jobContext = JobContext.open(m_artifactId, version, null, SonargraphCommand.getLogDirectory(projectDir)))
+        {
+            final File analysisDir = getAnalysisDirectory(projectVersionDir);
+            final Pair<File, File> systemAndStartupXml = copySystem(analysisDir, sonargraphSystemDir, startupXml);
+            final File systemDirectory = systemAndStartupXml.getLeft();
+            final File targetStartupXml = systemAndStartupXml.getRight();
+
+            final Pair<String, String> timestamps = createTimestamps(versionsAndDates.get(index).getRight());
+            final File reportDirectory = SonargraphCommand.getReportDirectory(projectDir);
+            final String reportFileName = SonargraphCommand.createReportFileName(m_artifactId, timestamps.getLeft(), timestamps, version);
+            final File snapshotDirectory = SonargraphCommand.getSnapshotDirectory(projectDir);
+            final String snapshotFileName = SonargraphCommand.createSnapshotFileName(m_artifactId, timestamps.getLeft(), timestamps);
+
+            String baselineReportPath = "";
+            for (int i = index - 1; i >= 0 && baselineReportPath.isEmpty(); i--)
             {
-                LOGGER.error("Failed to download files for version " + version, ex);
-                continue;
+                baselineReportPath = reportPaths[i] != null ? reportPaths[i] : "";
             }
 
-            //copy Sonargraph system to sample directory
-            final File systemDirectory = new File(projectVersionDir, sonargraphSystemDir.getName());
-            systemDirectory.mkdir();
-            final File sonargraphFile = new File(sonargraphSystemDir, "system.sonargraph");
-            copyToDir(sonargraphFile, systemDirectory);
+            String cacheKey = null;
+            if (resultCache != null)
+            {
+                try
+                {
+                    //The report contains the diff against the baseline, and name, version and timestamp of the analyzed version. A cached
+                    //report is only reused if all of them are identical, e.g. when the artifact is analyzed again on another machine.
+                    final List<File> configFiles = new ArrayList<>();
+                    configFiles.add(new File(systemDirectory, SYSTEM_FILE_NAME));
+                    configFiles.add(targetStartupXml);
+                    if (!baselineReportPath.isEmpty())
+                    {
+                        final File baselineReport = new File(baselineReportPath);
+                        SonargraphCommand.restoreArchivedFiles(m_configuration, projectDir, baselineReport.getParentFile(),
+                                baselineReport.getName());
+                        configFiles.add(baselineReport);
+                    }
+                    cacheKey = InputHasher.computeKey(
+                            Arrays.asList(new File(analysisDir, "classes.jar"), new File(analysisDir, "sources.jar")),
+                            sonargraphVersion + ";" + OutputPolicy.fromConfiguration(m_configuration).describe(index, versionsAndDates.size()) + ";"
+                                    + reportFileName + ";" + snapshotFileName,
+                            configFiles);
+                    if (resultCache.restore(cacheKey, reportDirectory, reportFileName, snapshotDirectory, snapshotFileName))
+                    {
+                        LOGGER.info("Skipping Sonargraph analysis of version {}, inputs are identical to an already analyzed version", version);
+                        reportPaths[index] = new File(reportDirectory, reportFileName).getAbsolutePath() + ".xml";
+                        SonargraphCommand.recordTrends(m_configuration, projectDir, new File(reportPaths[index]), timestamps, version);
+                        SonargraphCommand.archiveResults(m_configuration, projectDir, reportFileName, snapshotFileName);
+                        return;
+                    }
+                }
+                catch (final IOException ex)
+                {
+                    LOGGER.warn("Failed to use analysis result cache for version " + version, ex);
+                    cacheKey = null;
+                }
+            }
+
+            final long inputBytes = JvmProfile.measureInputBytes(new File(analysisDir, "classes.jar"), new File(analysisDir, "sources.jar"));
+            final long analysisStart = System.currentTimeMillis();
+            reportPaths[index] = SonargraphCommand.createReport(shell, m_artifactId, timestamps.getLeft(), timestamps, version, projectDir,
+                    baselineReportPath, m_activationCode, m_configuration, targetStartupXml.getAbsolutePath(), systemDirectory.getAbsolutePath(),
+                    inputBytes, index, versionsAndDates.size());
+            durationModel.record(Stage.ANALYSIS, inputBytes, System.currentTimeMillis() - analysisStart);
+            durationModel.save();
+            if (cacheKey != null)
+            {
+                resultCache.store(cacheKey, reportDirectory, reportFileName, snapshotDirectory, snapshotFileName);
+            }
+        }
+    }
 
-            copyToDir(startupXml, projectVersionDir);
-            final File targetStartupXml = new File(projectVersionDir, startupXml.getName());
+    /**
+     * A version that succeeded on retry must not replace a later version as last analyzed version.
+     *
+     * @return the index of the latest version that succeeded
+     */
+    private int recordLastVersionAnalyzed(final File projectDir, final List<Pair<Version, Date>> versionsAndDates, final int index,
+            final int lastSucceeded) throws IOException
+    {
+        if (index < lastSucceeded)
+        {
+            return lastSucceeded;
+        }
+        Files.writeString(new File(projectDir, LAST_VERSION_ANALYZED_FILE_NAME).toPath(), createVersionAndDateLine(versionsAndDates.get(index)));
+        return index;
+    }
 
-            final Pair<String, String> timestamps = createTimestamps(date);
+    /**
+     * Copies the Sonargraph system and the startup.xml into the version directory.
+     *
+     * @return the copied system directory and startup.xml
+     */
+    private Pair<File, File> copySystem(final File projectVersionDir, final File sonargraphSystemDir, final File startupXml)
+            throws IOException
+    {
+        //copy Sonargraph system to sample directory
+        final File systemDirectory = new File(projectVersionDir, sonargraphSystemDir.getName());
+        systemDirectory.mkdir();
+        copyToDir(new File(sonargraphSystemDir, SYSTEM_FILE_NAME), systemDirectory);
+
+        copyToDir(startupXml, projectVersionDir);
+        return new ImmutablePair<>(systemDirectory, new File(projectVersionDir, startupXml.getName()));
+    }
+
+    /**
+     * Locates the first version whose system level metric value differs from the first version by more than the configured threshold. Each
+     * version is analyzed without baseline into the probe directory. Versions with an existing probe report are not analyzed again.
+     */
+    private void bisect(final IShell shell, final File projectDir, final File samplesProjectsDirectory, final File sonargraphSystemDir,
+            final File startupXml, final List<Pair<Version, Date>> versionsAndDates, final String metricName) throws IOException
+    {
+        final double threshold = m_configuration.getDouble(Props.BISECT_THRESHOLD.getPropertyName(), 0.0);
+        final ResourceScheduler scheduler = ResourceScheduler.getShared(m_configuration);
+        final DurationModel durationModel = DurationModel.load(projectDir);
+        LOGGER.info("Bisecting {} versions for a change of metric '{}' by more than {}", versionsAndDates.size(), metricName, threshold);
+
+        final Bisection bisection = new Bisection(versionsAndDates.size(), threshold, index ->
+        {
+            final String version = versionsAndDates.get(index).getLeft().toString();
+            final Pair<String, String> timestamps = createTimestamps(versionsAndDates.get(index).getRight());
+            final File report = new File(SonargraphCommand.getProbeDirectory(projectDir),
+                    SonargraphCommand.createReportFileName(m_artifactId, timestamps.getLeft(), timestamps, version) + ".xml");
+            if (!report.exists())
+            {
+                try (JobContext jobContext = JobContext.open(m_artifactId, version, null, SonargraphCommand.getLogDirectory(projectDir)))
+                {
+                    final File projectVersionDir = downloadVersion(samplesProjectsDirectory, version, scheduler, durationModel);
+                    try
+                    {
+                        final File analysisDir = getAnalysisDirectory(projectVersionDir);
+                        final Pair<File, File> systemAndStartupXml = copySystem(analysisDir, sonargraphSystemDir, startupXml);
+                        final long inputBytes = JvmProfile.measureInputBytes(new File(analysisDir, "classes.jar"),
+                                new File(analysisDir, "sources.jar"));
+                        SonargraphCommand.createProbeReport(shell, m_artifactId, timestamps.getLeft(), timestamps, version, projectDir,
+                                m_activationCode, m_configuration, systemAndStartupXml.getRight().getAbsolutePath(),
+                                systemAndStartupXml.getLeft().getAbsolutePath(), inputBytes);
+                    }
+                    finally
+                    {
+                        releaseVersionDirectory(projectVersionDir);
+                    }
+                }
+            }
+            return ReportMetricExtractor.extractSystemMetric(report, metricName);
+        });
+
+        try
+        {
+            final int culprit = bisection.run();
+            if (culprit < 0)
+            {
+                LOGGER.info("Metric '{}' did not change between the first and the last version", metricName);
+            }
+            else
+            {
+                LOGGER.info("Metric '{}' changed from {} in version {} to {} in version {}, {} of {} versions analyzed", metricName,
+                        bisection.getValue(culprit - 1), versionsAndDates.get(culprit - 1).getLeft(), bisection.getValue(culprit),
+                        versionsAndDates.get(culprit).getLeft(), bisection.getAnalyzedCount(), versionsAndDates.size());
+            }
+        }
+        catch (final IOException e)
+        {
+            throw e;
+        }
+        catch (final Exception e)
+        {
+            throw new IOException("Bisection failed", e);
+        }
+    }
+
+    /**
+     * Processes the versions of the work list shared with other workers, until all versions are claimed. A version is analyzed with the report
+     * of the previous version as baseline, if that version has already been completed by any worker. Reports and snapshots are written to the
+     * shared results directory.
+     */
+    private void distribute(final IShell shell, final File projectDir, final File samplesProjectsDirectory, final File sonargraphSystemDir,
+            final File startupXml, final List<Pair<Version, Date>> versionsAndDates, final LeaseDirectory leases) throws IOException
+    {
+        final List<String> items = versionsAndDates.stream().map(v -> v.getLeft().toString() + ITEM_SEPARATOR + v.getRight().getTime())
+                .collect(Collectors.toList());
+        final List<String> workList = leases.publish(items);
+        final ResourceScheduler scheduler = ResourceScheduler.getShared(m_configuration);
+        final DurationModel durationModel = DurationModel.load(projectDir);
+        LOGGER.info("Worker '{}' processing work list of {} versions", leases.getWorkerId(), workList.size());
+
+        //Transient failures are retried while the lease is held, since failed items are not claimed again by any worker
+        final RetryQueue<LeaseDirectory.Lease> retries = RetryQueue.fromConfiguration(m_configuration);
+        for (LeaseDirectory.Lease lease = leases.claim(); lease != null; lease = leases.claim())
+        {
+            processLease(shell, projectDir, samplesProjectsDirectory, sonargraphSystemDir, startupXml, workList, leases, lease, retries,
+                    scheduler, durationModel);
+        }
+
+        try
+        {
+            for (RetryQueue.Retry<LeaseDirectory.Lease> retry = retries.next(); retry != null; retry = retries.next())
+            {
+                LOGGER.info("Retry {} of version {} after {} failure", retry.getAttempt(), retry.getItem().getItem(), retry.getFailureClass());
+                processLease(shell, projectDir, samplesProjectsDirectory, sonargraphSystemDir, startupXml, workList, leases, retry.getItem(),
+                        retries, scheduler, durationModel);
+            }
+        }
+        catch (final InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for deferred retries", ex);
+        }
+        if (!retries.getGivenUp().isEmpty())
+        {
+            LOGGER.warn("Failed versions per failure class: {}", retries.getGivenUp());
+        }
+        LOGGER.info("Worker '{}' finished, no versions left to claim", leases.getWorkerId());
+    }
+
+    /**
+     * Analyzes the claimed version and publishes the results, unless the lease has been lost to another worker in the meantime. Failures are
+     * deferred for a retry, the version is marked as failed once the retries have been given up.
+     */
+    private void processLease(final IShell shell, final File projectDir, final File samplesProjectsDirectory, final File sonargraphSystemDir,
+            final File startupXml, final List<String> workList, final LeaseDirectory leases, final LeaseDirectory.Lease lease,
+            final RetryQueue<LeaseDirectory.Lease> retries, final ResourceScheduler scheduler, final DurationModel durationModel) throws IOException
+    {
+        final int index = workList.indexOf(lease.getItem());
+        final String[] parts = lease.getItem().split(ITEM_SEPARATOR);
+        final String version = parts[0];
+        final File resultsDirectory = leases.getResultsDirectory();
+        try (JobContext jobContext = JobContext.open(m_artifactId, version, null, SonargraphCommand.getLogDirectory(projectDir)))
+        {
             try
             {
-                baselineReportPath = SonargraphCommand.createReport(shell, m_artifactId, timestamps.getLeft(), timestamps, version, projectDir,
-                        baselineReportPath, m_activationCode, m_configuration, targetStartupXml.getAbsolutePath(), systemDirectory.getAbsolutePath());
-                Files.writeString(new File(projectDir, LAST_VERSION_ANALYZED_FILE_NAME).toPath(), createVersionAndDateLine(next));
+                String baselineReportPath = "";
+                final String previousResult = index > 0 ? leases.getResult(workList.get(index - 1)) : null;
+                if (previousResult != null && new File(SonargraphCommand.getReportDirectory(resultsDirectory), previousResult).exists())
+                {
+                    baselineReportPath = new File(SonargraphCommand.getReportDirectory(resultsDirectory), previousResult).getAbsolutePath();
+                }
+
+                final File projectVersionDir = downloadVersion(samplesProjectsDirectory, version, scheduler, durationModel);
+                final Pair<String, String> timestamps = createTimestamps(new Date(Long.parseLong(parts[1])));
+                try
+                {
+                    final File analysisDir = getAnalysisDirectory(projectVersionDir);
+                    final Pair<File, File> systemAndStartupXml = copySystem(analysisDir, sonargraphSystemDir, startupXml);
+                    final long inputBytes = JvmProfile.measureInputBytes(new File(analysisDir, "classes.jar"),
+                            new File(analysisDir, "sources.jar"));
+                    //The lease might have been lost while waiting for a retry or downloading, Sonargraph-Build uploads the report
+                    if (lease.isLost())
+                    {
+                        LOGGER.warn("Lease of version {} has been taken over by another worker, not analyzed", version);
+                        lease.release();
+                        return;
+                    }
+                    SonargraphCommand.createReport(shell, m_artifactId, timestamps.getLeft(), timestamps, version, projectDir, baselineReportPath,
+                            m_activationCode, m_configuration, systemAndStartupXml.getRight().getAbsolutePath(),
+                            systemAndStartupXml.getLeft().getAbsolutePath(), inputBytes, index, workList.size());
+                }
+                finally
+                {
+                    releaseVersionDirectory(projectVersionDir);
+                }
+
+                if (lease.isLost())
+                {
+                    LOGGER.warn("Lease of version {} has been taken over by another worker, results are not published", version);
+                    lease.release();
+                    return;
+                }
+                final String reportFileName = SonargraphCommand.createReportFileName(m_artifactId, timestamps.getLeft(), timestamps, version);
+                SonargraphCommand.publishResults(m_configuration, projectDir, reportFileName,
+                        SonargraphCommand.createSnapshotFileName(m_artifactId, timestamps.getLeft(), timestamps), resultsDirectory);
+                lease.complete(reportFileName + ".xml");
             }
             catch (final Exception e)
             {
-                LOGGER.error("Failed to execute Sonargraph for version " + version, e);
+                LOGGER.error("Failed to process version " + version, e);
+                retries.defer(lease, e);
+                if (!retries.isPending(lease))
+                {
+                    lease.fail(e.getMessage());
+                }
+            }
+            finally
+            {
+                appendTelemetry(shell, new File(projectDir, TELEMETRY_FILE_NAME), version);
             }
+        }
+    }
 
-            LOGGER.info("Finished processing {} of {} in {} ms", i++, versionsAndDates.size(), System.currentTimeMillis() - start);
+    private static void appendTelemetry(final IShell shell, final File telemetryFile, final String version)
+    {
+        try
+        {
+            ProcessStatistics.appendToFile(telemetryFile, version, shell.drainStatistics());
+        }
+        catch (final IOException ex)
+        {
+            LOGGER.warn("Failed to write process telemetry for version " + version, ex);
         }
     }
 
@@ -302,6 +743,125 @@ public final class AnalyzeMavenArtifact
         return null;
     }
 
+    /**
+     * @return the directory for the version that contains the downloaded jars
+     */
+    private File downloadVersion(final File samplesProjectsDirectory, final String version, final ResourceScheduler scheduler,
+            final DurationModel durationModel) throws IOException, InterruptedException
+    {
+        //create directory matching version
+        final File durableVersionDir = new File(samplesProjectsDirectory, version);
+        File projectVersionDir;
+        if (m_scratchWorkspace != null)
+        {
+            //Other jobs may download the same version of another artifact at the same time
+            projectVersionDir = m_scratchWorkspace.allocate(m_groupId + "_" + m_artifactId + "_" + version,
+                    durationModel.getLastInputSize(Stage.DOWNLOAD), durableVersionDir);
+        }
+        else
+        {
+            projectVersionDir = durableVersionDir;
+            if (!projectVersionDir.exists())
+            {
+                projectVersionDir.mkdir();
+            }
+        }
+
+        try (ResourceScheduler.Permit permit = scheduler.acquire(Stage.DOWNLOAD, 0, 0))
+        {
+            final long start = System.currentTimeMillis();
+            try
+            {
+                downloadJarsFromMavenCentral(projectVersionDir, version);
+            }
+            catch (final IOException e)
+            {
+                if (m_scratchWorkspace == null || !m_scratchWorkspace.isScratch(projectVersionDir) || !ScratchWorkspace.isOutOfSpace(e))
+                {
+                    throw e;
+                }
+                projectVersionDir = m_scratchWorkspace.spill(projectVersionDir, durableVersionDir);
+                downloadJarsFromMavenCentral(projectVersionDir, version);
+            }
+            final long inputBytes = JvmProfile.measureInputBytes(new File(projectVersionDir, "classes.jar"),
+                    new File(projectVersionDir, "sources.jar"));
+            durationModel.record(Stage.DOWNLOAD, inputBytes, System.currentTimeMillis() - start);
+            final long slimmedBytes = slimJars(projectVersionDir, version);
+            if (m_scratchWorkspace != null)
+            {
+                m_scratchWorkspace.adjust(projectVersionDir, inputBytes + slimmedBytes);
+            }
+        }
+        return projectVersionDir;
+    }
+
+    /**
+     * Writes slimmed copies of the downloaded jars into the analysis directory, the downloaded jars are kept unchanged.
+     *
+     * @return size of the slimmed copies, 0 if slimming is disabled
+     */
+    private long slimJars(final File projectVersionDir, final String version) throws IOException
+    {
+        final JarSlimmer jarSlimmer = createJarSlimmer();
+        if (jarSlimmer == null)
+        {
+            return 0;
+        }
+
+        final File analysisDir = getAnalysisDirectory(projectVersionDir);
+        Files.createDirectories(analysisDir.toPath());
+        long originalBytes = 0;
+        long slimmedBytes = 0;
+        for (final String next : Arrays.asList("classes.jar", "sources.jar"))
+        {
+            final JarSlimmer.Result result = jarSlimmer.slim(new File(projectVersionDir, next), new File(analysisDir, next));
+            originalBytes += result.getOriginalBytes();
+            slimmedBytes += result.getSlimmedBytes();
+        }
+        LOGGER.info("Removed non-code entries from jars of version {}, saved {} of {} bytes", version, originalBytes - slimmedBytes, originalBytes);
+        return slimmedBytes;
+    }
+
+    /**
+     * @return the directory containing the jars analyzed by Sonargraph, i.e. the slimmed copies if enabled, otherwise the downloaded jars
+     */
+    private File getAnalysisDirectory(final File projectVersionDir)
+    {
+        if (!m_configuration.getBoolean(Props.SLIM_JARS.getPropertyName(), false))
+        {
+            return projectVersionDir;
+        }
+        return new File(projectVersionDir, SLIM_DIRECTORY_NAME);
+    }
+
+    /**
+     * Deletes the version directory, if it has been allocated in the scratch workspace.
+     */
+    private void releaseVersionDirectory(final File projectVersionDir)
+    {
+        if (m_scratchWorkspace == null)
+        {
+            return;
+        }
+        try
+        {
+            m_scratchWorkspace.release(projectVersionDir);
+        }
+        catch (final IOException e)
+        {
+            LOGGER.warn("Failed to release scratch directory {}: {}", projectVersionDir.getAbsolutePath(), e.getMessage());
+        }
+    }
+
+    private JarSlimmer createJarSlimmer()
+    {
+        if (!m_configuration.getBoolean(Props.SLIM_JARS.getPropertyName(), false))
+        {
+            return null;
+        }
+        return new JarSlimmer(m_configuration.getList(String.class, Props.SLIM_JARS_KEEP_PATTERNS.getPropertyName(), Collections.emptyList()));
+    }
+
     private void downloadJarsFromMavenCentral(final File projectVersionDir, final String version) throws IOException
     {
         assert projectVersionDir != null : "Parameter 'projectVersionDir' of method 'downloadJarsFromMavenCentral' must not be null";
@@ -0,0 +1,121 @@
+/*
+ * Sonargraph Integration Access
+ * Copyright (C) 2016-2021 hello2morrow GmbH
+ * mailto: support AT hello2morrow DOT com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hello2morrow.sonargraph.batch.analysis;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Finds the first version in an ordered list of versions whose metric value differs from the value of the first version by more than a
+ * threshold, analyzing only O(log n) versions.
+ *
+ * Assumes that the change persists, i.e. that all versions after the culprit also differ from the first version.
+ */
+final class Bisection
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(Bisection.class);
+
+    interface IMetricProvider
+    {
+        /**
+         * Analyzes the version at the given index.
+         *
+         * @return the metric value of the version
+         */
+        double getMetricValue(int index) throws Exception;
+    }
+
+    private final int m_size;
+    private final double m_threshold;
+    private final IMetricProvider m_provider;
+    private final Map<Integer, Double> m_values = new HashMap<>();
+
+    Bisection(final int size, final double threshold, final IMetricProvider provider)
+    {
+        assert size >= 0 : "Parameter 'size' of method 'Bisection' must not be negative";
+        assert threshold >= 0 : "Parameter 'threshold' of method 'Bisection' must not be negative";
+        assert provider != null : "Parameter 'provider' of method 'Bisection' must not be null";
+
+        m_size = size;
+        m_threshold = threshold;
+        m_provider = provider;
+    }
+
+    /**
+     * @return the index of the first version whose value differs from the first version, or -1 if the last version does not differ.
+     */
+    int run() throws Exception
+    {
+        if (m_size < 2)
+        {
+            return -1;
+        }
+
+        int good = 0;
+        int bad = m_size - 1;
+        final double first = getValue(good);
+        if (!differs(first, getValue(bad)))
+        {
+            LOGGER.info("Metric value of last version {} does not differ from first version {}", getValue(bad), first);
+            return -1;
+        }
+
+        while (bad - good > 1)
+        {
+            final int middle = good + (bad - good) / 2;
+            if (differs(first, getValue(middle)))
+            {
+                bad = middle;
+            }
+            else
+            {
+                good = middle;
+            }
+            LOGGER.info("Bisection: metric changed between index {} and {}", good, bad);
+        }
+        return bad;
+    }
+
+    /**
+     * @return number of analyzed versions
+     */
+    int getAnalyzedCount()
+    {
+        return m_values.size();
+    }
+
+    double getValue(final int index) throws Exception
+    {
+        Double value = m_values.get(index);
+        if (value == null)
+        {
+            value = m_provider.getMetricValue(index);
+            m_values.put(index, value);
+            LOGGER.info("Bisection: metric value at index {} is {}", index, value);
+        }
+        return value;
+    }
+
+    private boolean differs(final double reference, final double value)
+    {
+        return Math.abs(value - reference) > m_threshold;
+    }
+}
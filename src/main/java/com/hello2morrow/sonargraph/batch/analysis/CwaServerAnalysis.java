@@ -22,12 +22,15 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.io.Writer;
+import java.io.PrintWriter;
 import java.nio.charset.Charset;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 import org.apache.commons.configuration2.Configuration;
 import org.apache.commons.lang3.tuple.ImmutablePair;
@@ -35,31 +38,61 @@ import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.hello2morrow.sonargraph.batch.cache.ScratchWorkspace;
+import com.hello2morrow.sonargraph.batch.commands.BuildTools;
+import com.hello2morrow.sonargraph.batch.commands.CommitSampler;
 import com.hello2morrow.sonargraph.batch.commands.GitCommands;
-import com.hello2morrow.sonargraph.batch.commands.MavenCommands;
+import com.hello2morrow.sonargraph.batch.commands.IBuildTool;
+import com.hello2morrow.sonargraph.batch.commands.JvmProfile;
 import com.hello2morrow.sonargraph.batch.commands.SonargraphCommand;
 import com.hello2morrow.sonargraph.batch.configuration.ConfigurationReader;
 import com.hello2morrow.sonargraph.batch.configuration.Props;
+import com.hello2morrow.sonargraph.batch.logging.JobContext;
+import com.hello2morrow.sonargraph.batch.report.ReportMetricExtractor;
+import com.hello2morrow.sonargraph.batch.scheduling.DurationModel;
+import com.hello2morrow.sonargraph.batch.scheduling.FailureClass;
+import com.hello2morrow.sonargraph.batch.scheduling.LeaseDirectory;
+import com.hello2morrow.sonargraph.batch.scheduling.ResourceScheduler;
+import com.hello2morrow.sonargraph.batch.scheduling.RetryQueue;
+import com.hello2morrow.sonargraph.batch.scheduling.Stage;
 import com.hello2morrow.sonargraph.batch.shell.IShell;
+import com.hello2morrow.sonargraph.batch.shell.ProcessStatistics;
 import com.hello2morrow.sonargraph.batch.shell.ShellFactory;
 
 /**
  * This class executes the analysis for the German Corona-Warn-App server, available at https://github.com/corona-warn-app/cwa-server.
  *
  * It checks out the Git repo, pulls the latest changes and extracts the existing tagged commits. <br>
- * For each tag, the commit is checked out, Maven is called to compile the code and SonargraphBuild is started. <br>
+ * For each tag, the commit is checked out, Maven or Gradle is called to compile the code and SonargraphBuild is started. <br>
  * The XML report and snapshot is pushed to a local Sonargraph-Enterprise server.
  */
 public class CwaServerAnalysis
 {
     private static final Logger LOGGER = LoggerFactory.getLogger(CwaServerAnalysis.class);
+    private static final String TELEMETRY_FILE_NAME = "telemetry.csv";
+    //Separates commit and tag in the items of a distributed work list, like in 'commits_and_tags.txt'
+    private static final String ITEM_SEPARATOR = " ";
+    private static final String GIT_DIRECTORY = ".git";
+    private static final long EXPECTED_CHECKOUT_SIZE_FACTOR = 3;
 
     private final Configuration m_configuration;
     private final Charset m_charset;
 
     private final String m_activationCode;
+    private BuildTools m_buildTools;
+    private DurationModel m_durationModel;
+    private long m_lastInputBytes;
+    private File m_systemDirectory;
+    private ScratchWorkspace m_scratchWorkspace;
+    private File m_scratchAllocation;
+    //Working tree in the scratch workspace, or null if commits are checked out in the repository directory
+    private File m_scratchCheckout;
+    private IProgressListener m_progressListener = (processed, total) ->
+    {
+        //Not tracked by default
+    };
 
-    private CwaServerAnalysis(final Configuration configuration, final String activationCode)
+    CwaServerAnalysis(final Configuration configuration, final String activationCode)
     {
         assert configuration != null : "Parameter 'configuration' of method 'Execution' must not be null";
         assert activationCode != null && activationCode.length() > 0 : "Parameter 'activationCode' of method 'CwaServerAnalysis' must not be empty";
@@ -70,6 +103,12 @@ public class CwaServerAnalysis
         m_charset = charsetName == null ? Charset.defaultCharset() : Charset.forName(charsetName);
     }
 
+    void setProgressListener(final IProgressListener progressListener)
+    {
+        assert progressListener != null : "Parameter 'progressListener' of method 'setProgressListener' must not be null";
+        m_progressListener = progressListener;
+    }
+
     public static void main(final String[] args)
     {
         final String propertyFileName = args.length > 0 ? args[0] : null;
@@ -83,7 +122,7 @@ public class CwaServerAnalysis
         }
     }
 
-    private void run()
+    void run()
     {
         final String repoPath = m_configuration.getString(Props.REPO_DIRECTORY.getPropertyName());
         final File repoDir = new File(repoPath);
@@ -112,14 +151,15 @@ public class CwaServerAnalysis
         {
             final List<String> excludedTags = m_configuration.getList(String.class, Props.EXCLUDED_TAG_PARTS.getPropertyName());
             final Set<String> excludedTagParts = new HashSet<>(excludedTags);
-            commitsAndTags = GitCommands.createListOfTags(shell, repoDir, commitsAndTagsFile, excludedTagParts);
-            if (commitsAndTags == null)
+            final List<Pair<String, String>> tags = GitCommands.createListOfTags(shell, repoDir, commitsAndTagsFile, excludedTagParts);
+            if (tags == null)
             {
                 throw new RuntimeException("Failed to create list of commits and tags for repository at: " + repoPath);
             }
-            else if (commitsAndTags.isEmpty())
+            commitsAndTags = sampleCommits(shell, repoDir, commitsAndTagsFile, tags);
+            if (commitsAndTags.isEmpty())
             {
-                throw new RuntimeException("No tags found for repository at: " + repoPath);
+                throw new RuntimeException("No tags or sampled commits found for repository at: " + repoPath);
             }
             LOGGER.info("{} commits with tags for repo '" + repoPath + "' written to file {}", commitsAndTags.size(),
                     commitsAndTagsFile.getAbsolutePath());
@@ -147,38 +187,404 @@ public class CwaServerAnalysis
             }
         }
 
-        String baselineReportPath = "";
+        m_buildTools = new BuildTools(m_configuration, analysisDir);
+        appendTelemetry(shell, analysisDir, "setup");
+        m_durationModel = DurationModel.load(analysisDir);
+        m_lastInputBytes = m_durationModel.getLastInputSize(Stage.ANALYSIS);
+        final List<Stage> stages = Arrays.asList(Stage.BUILD, Stage.ANALYSIS);
+        m_durationModel.logEstimatedRemainingTime(stages, commitsAndTags.size(), m_lastInputBytes);
+
+        m_systemDirectory = new File(m_configuration.getString(Props.SONARGRAPH_SYSTEM_DIRECTORY.getPropertyName())).getAbsoluteFile();
+        final ScratchWorkspace scratchWorkspace = ScratchWorkspace.getShared(m_configuration);
+        if (scratchWorkspace != null)
+        {
+            createScratchCheckout(shell, repoDir, scratchWorkspace);
+        }
+        try
+        {
+            analyseCommits(shell, repoDir, analysisDir, commitsAndTags, stages);
+        }
+        finally
+        {
+            removeScratchCheckout(shell, repoDir);
+        }
+    }
+
+    private void analyseCommits(final IShell shell, final File repoDir, final File analysisDir, final List<Pair<String, String>> commitsAndTags,
+            final List<Stage> stages)
+    {
+        final String bisectMetric = m_configuration.getString(Props.BISECT_METRIC.getPropertyName(), "").trim();
+        if (!bisectMetric.isEmpty())
+        {
+            bisect(shell, getCheckoutDirectory(repoDir), analysisDir, commitsAndTags, bisectMetric);
+            m_buildTools.shutdown(shell, repoDir);
+            return;
+        }
+
+        final LeaseDirectory leaseDirectory = LeaseDirectory.fromConfiguration(m_configuration);
+        if (leaseDirectory != null)
+        {
+            try (LeaseDirectory leases = leaseDirectory)
+            {
+                distribute(shell, getCheckoutDirectory(repoDir), analysisDir, commitsAndTags, leases);
+            }
+            m_buildTools.shutdown(shell, repoDir);
+            return;
+        }
+
+        //Report paths by index, a commit is analyzed with the report of the closest previous commit that succeeded as baseline
+        final String[] reportPaths = new String[commitsAndTags.size()];
+        final RetryQueue<Integer> retries = RetryQueue.fromConfiguration(m_configuration);
         //Execute analysis for all detected tagged commits
         for (int i = 0; i < commitsAndTags.size(); i++)
         {
-            final Pair<String, String> next = commitsAndTags.get(i);
-            final String commit = next.getKey();
-            final String tag = next.getValue();
+            analyseCommitOfList(shell, repoDir, analysisDir, commitsAndTags, i, reportPaths, retries);
+            m_durationModel.logEstimatedRemainingTime(stages, commitsAndTags.size() - i - 1, m_lastInputBytes);
+            m_progressListener.progress(i + 1, commitsAndTags.size());
+            LOGGER.info("----------------------");
+        }
+
+        try
+        {
+            for (RetryQueue.Retry<Integer> retry = retries.next(); retry != null; retry = retries.next())
+            {
+                LOGGER.info("Retry {} of tag {} after {} failure", retry.getAttempt(), commitsAndTags.get(retry.getItem()).getValue(),
+                        retry.getFailureClass());
+                analyseCommitOfList(shell, repoDir, analysisDir, commitsAndTags, retry.getItem(), reportPaths, retries);
+            }
+        }
+        catch (final InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            LOGGER.warn("Interrupted while waiting for deferred retries");
+        }
+        if (!retries.getGivenUp().isEmpty())
+        {
+            LOGGER.warn("Failed tags per failure class: {}", retries.getGivenUp());
+        }
+
+        m_buildTools.shutdown(shell, repoDir);
+    }
+
+    private void analyseCommitOfList(final IShell shell, final File repoDir, final File analysisDir, final List<Pair<String, String>> commitsAndTags,
+            final int index, final String[] reportPaths, final RetryQueue<Integer> retries)
+    {
+        final String commit = commitsAndTags.get(index).getKey();
+        final String tag = commitsAndTags.get(index).getValue();
+        String baselineReportPath = "";
+        for (int i = index - 1; i >= 0 && baselineReportPath.isEmpty(); i--)
+        {
+            baselineReportPath = reportPaths[i] != null ? reportPaths[i] : "";
+        }
+
+        final File checkoutDir = getCheckoutDirectory(repoDir);
+        boolean outOfSpace = false;
+        try
+        {
+            final long start = System.currentTimeMillis();
+            LOGGER.info("[{} of {}] Analysis of tag {}", index + 1, commitsAndTags.size(), tag);
+            reportPaths[index] = analyseCommit(shell, commit, tag, checkoutDir, analysisDir, baselineReportPath, index, commitsAndTags.size(), null);
+            LOGGER.info("Finished after {} ms.\n", (System.currentTimeMillis() - start));
+        }
+        catch (final Exception e)
+        {
+            LOGGER.error("Failed to run analysis for tag '" + tag + "', '" + commit + "'");
+            logExceptionToFile(analysisDir, commit, tag, e);
+            retries.defer(index, e);
+            outOfSpace = m_scratchCheckout != null && ScratchWorkspace.isOutOfSpace(e);
+        }
+        finally
+        {
             try
             {
-                final long start = System.currentTimeMillis();
-                LOGGER.info("[{} of {}] Analysis of tag {}", i + 1, commitsAndTags.size(), tag);
-                baselineReportPath = analyseCommit(shell, commit, tag, repoDir, analysisDir, baselineReportPath);
-                LOGGER.info("Finished after {} ms.\n", (System.currentTimeMillis() - start));
+                GitCommands.reset(shell, checkoutDir);
             }
             catch (final Exception e)
             {
-                LOGGER.error("Failed to run analysis for tag '" + tag + "', '" + commit + "'");
-                logExceptionToFile(analysisDir, commit, tag, e);
+                LOGGER.error("Failed to reset repo after analysis of tag '{}'", tag);
+                throw new RuntimeException(e);
+            }
+            appendTelemetry(shell, analysisDir, tag);
+        }
+
+        if (outOfSpace)
+        {
+            LOGGER.warn("Scratch workspace is full, the remaining tags are checked out in the repository directory");
+            removeScratchCheckout(shell, repoDir);
+        }
+    }
+
+    private File getCheckoutDirectory(final File repoDir)
+    {
+        return m_scratchCheckout != null ? m_scratchCheckout : repoDir;
+    }
+
+    /**
+     * Checks out the commits in a Git worktree in the scratch workspace, so that checkouts and build output don't touch the repository
+     * directory. Relative paths in the Sonargraph system refer to the checked-out sources, so the system is mirrored next to the worktree
+     * with the same relative location it has to the repository.
+     */
+    private void createScratchCheckout(final IShell shell, final File repoDir, final ScratchWorkspace scratchWorkspace)
+    {
+        final Path repoPath = repoDir.getAbsoluteFile().toPath().normalize();
+        final Path systemPath = m_systemDirectory.toPath().normalize();
+        final Path parentPath = repoPath.getParent();
+        if (parentPath == null || !systemPath.startsWith(parentPath))
+        {
+            LOGGER.warn("Scratch workspace not used, Sonargraph system '{}' is not located in the parent directory of the repository '{}'",
+                    systemPath, repoPath);
+            return;
+        }
+
+        File allocation = null;
+        try
+        {
+            //The build output is usually larger than the checked-out sources
+            final long expectedBytes = ScratchWorkspace.measure(repoDir, GIT_DIRECTORY) * EXPECTED_CHECKOUT_SIZE_FACTOR;
+            //Repositories of different systems may share the base name, e.g. forks
+            final String systemName = m_configuration.getString(Props.NAME.getPropertyName(), repoPath.getFileName().toString());
+            allocation = scratchWorkspace.allocate(systemName + "-checkout", expectedBytes, null);
+            if (allocation == null)
+            {
+                LOGGER.warn("Scratch workspace is full, commits are checked out in the repository directory");
+                return;
+            }
+
+            final File worktree = new File(allocation, parentPath.relativize(repoPath).toString());
+            GitCommands.addWorktree(shell, repoDir, worktree);
+            final File systemDirectory = new File(allocation, parentPath.relativize(systemPath).toString());
+            if (!systemPath.startsWith(repoPath))
+            {
+                ScratchWorkspace.copyDirectory(m_systemDirectory, systemDirectory);
+            }
+
+            m_scratchWorkspace = scratchWorkspace;
+            m_scratchAllocation = allocation;
+            m_scratchCheckout = worktree;
+            m_systemDirectory = systemDirectory;
+            LOGGER.info("Checking out commits in scratch workspace '{}'", worktree.getAbsolutePath());
+        }
+        catch (final Exception e)
+        {
+            LOGGER.warn("Failed to create checkout in scratch workspace, commits are checked out in the repository directory", e);
+            releaseQuietly(scratchWorkspace, allocation);
+        }
+    }
+
+    private void removeScratchCheckout(final IShell shell, final File repoDir)
+    {
+        if (m_scratchCheckout == null)
+        {
+            return;
+        }
+
+        try
+        {
+            GitCommands.removeWorktree(shell, repoDir, m_scratchCheckout);
+        }
+        catch (final Exception e)
+        {
+            LOGGER.warn("Failed to remove worktree '{}': {}", m_scratchCheckout.getAbsolutePath(), e.getMessage());
+        }
+        releaseQuietly(m_scratchWorkspace, m_scratchAllocation);
+        m_scratchWorkspace = null;
+        m_scratchAllocation = null;
+        m_scratchCheckout = null;
+        m_systemDirectory = new File(m_configuration.getString(Props.SONARGRAPH_SYSTEM_DIRECTORY.getPropertyName())).getAbsoluteFile();
+    }
+
+    private static void releaseQuietly(final ScratchWorkspace scratchWorkspace, final File allocation)
+    {
+        if (allocation == null)
+        {
+            return;
+        }
+        try
+        {
+            scratchWorkspace.release(allocation);
+        }
+        catch (final IOException e)
+        {
+            LOGGER.warn("Failed to delete scratch directory '{}': {}", allocation.getAbsolutePath(), e.getMessage());
+        }
+    }
+
+    /**
+     * Locates the first tag whose system level metric value differs from the first tag by more than the configured threshold. Each tag is
+     * analyzed without baseline into the probe directory.
+     */
+    private void bisect(final IShell shell, final File repoDir, final File analysisDir, final List<Pair<String, String>> commitsAndTags,
+            final String metricName)
+    {
+        final double threshold = m_configuration.getDouble(Props.BISECT_THRESHOLD.getPropertyName(), 0.0);
+        LOGGER.info("Bisecting {} tags for a change of metric '{}' by more than {}", commitsAndTags.size(), metricName, threshold);
+
+        final Bisection bisection = new Bisection(commitsAndTags.size(), threshold, index ->
+        {
+            final String commit = commitsAndTags.get(index).getKey();
+            final String tag = commitsAndTags.get(index).getValue();
+            try
+            {
+                final String reportPath = analyseCommit(shell, commit, tag, repoDir, analysisDir, null, index, commitsAndTags.size(), null);
+                return ReportMetricExtractor.extractSystemMetric(new File(reportPath), metricName);
             }
             finally
             {
-                try
-                {
-                    GitCommands.reset(shell, repoDir);
-                }
-                catch (final Exception e)
-                {
-                    LOGGER.error("Failed to reset repo after analysis of tag '{}'", tag);
-                    throw new RuntimeException(e);
-                }
+                GitCommands.reset(shell, repoDir);
+                appendTelemetry(shell, analysisDir, tag);
             }
-            LOGGER.info("----------------------");
+        });
+
+        try
+        {
+            final int culprit = bisection.run();
+            if (culprit < 0)
+            {
+                LOGGER.info("Metric '{}' did not change between the first and the last tag", metricName);
+            }
+            else
+            {
+                LOGGER.info("Metric '{}' changed from {} in tag {} to {} in tag {}, {} of {} tags analyzed", metricName,
+                        bisection.getValue(culprit - 1), commitsAndTags.get(culprit - 1).getValue(), bisection.getValue(culprit),
+                        commitsAndTags.get(culprit).getValue(), bisection.getAnalyzedCount(), commitsAndTags.size());
+            }
+        }
+        catch (final Exception e)
+        {
+            throw new RuntimeException("Bisection failed", e);
+        }
+    }
+
+    /**
+     * Processes the tags of the work list shared with other workers, until all tags are claimed. A tag is analyzed with the report of the
+     * previous tag as baseline, if that tag has already been completed by any worker. Reports and snapshots are written to the shared results
+     * directory.
+     */
+    private void distribute(final IShell shell, final File repoDir, final File analysisDir, final List<Pair<String, String>> commitsAndTags,
+            final LeaseDirectory leases)
+    {
+        try
+        {
+            final List<String> workList = leases.publish(commitsAndTags.stream().map(c -> c.getKey() + ITEM_SEPARATOR + c.getValue())
+                    .collect(Collectors.toList()));
+            LOGGER.info("Worker '{}' processing work list of {} tags", leases.getWorkerId(), workList.size());
+
+            //Transient failures are retried while the lease is held, since failed items are not claimed again by any worker
+            final RetryQueue<LeaseDirectory.Lease> retries = RetryQueue.fromConfiguration(m_configuration);
+            for (LeaseDirectory.Lease lease = leases.claim(); lease != null; lease = leases.claim())
+            {
+                processLease(shell, repoDir, analysisDir, workList, leases, lease, retries);
+            }
+            for (RetryQueue.Retry<LeaseDirectory.Lease> retry = retries.next(); retry != null; retry = retries.next())
+            {
+                LOGGER.info("Retry {} of tag {} after {} failure", retry.getAttempt(), retry.getItem().getItem().split(ITEM_SEPARATOR)[1],
+                        retry.getFailureClass());
+                processLease(shell, repoDir, analysisDir, workList, leases, retry.getItem(), retries);
+            }
+            if (!retries.getGivenUp().isEmpty())
+            {
+                LOGGER.warn("Failed tags per failure class: {}", retries.getGivenUp());
+            }
+        }
+        catch (final InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            LOGGER.warn("Interrupted while waiting for deferred retries");
+        }
+        catch (final Exception e)
+        {
+            throw new RuntimeException("Distributed analysis failed", e);
+        }
+        LOGGER.info("Worker '{}' finished, no tags left to claim", leases.getWorkerId());
+    }
+
+    /**
+     * Analyzes the claimed tag and publishes the results, unless the lease has been lost to another worker in the meantime. Failures are
+     * deferred for a retry, the tag is marked as failed once the retries have been given up.
+     */
+    private void processLease(final IShell shell, final File repoDir, final File analysisDir, final List<String> workList,
+            final LeaseDirectory leases, final LeaseDirectory.Lease lease, final RetryQueue<LeaseDirectory.Lease> retries) throws Exception
+    {
+        final File resultsDir = leases.getResultsDirectory();
+        final File resultReportDir = SonargraphCommand.getReportDirectory(resultsDir);
+        final String systemName = m_configuration.getString(Props.NAME.getPropertyName());
+        final int index = workList.indexOf(lease.getItem());
+        final String[] parts = lease.getItem().split(ITEM_SEPARATOR);
+        final String commit = parts[0];
+        final String tag = parts[1];
+        try
+        {
+            String baselineReportPath = "";
+            final String previousResult = index > 0 ? leases.getResult(workList.get(index - 1)) : null;
+            if (previousResult != null && new File(resultReportDir, previousResult).exists())
+            {
+                baselineReportPath = new File(resultReportDir, previousResult).getAbsolutePath();
+            }
+
+            final String reportPath = analyseCommit(shell, commit, tag, repoDir, analysisDir, baselineReportPath, index, workList.size(), lease);
+            if (reportPath == null || lease.isLost())
+            {
+                LOGGER.warn("Lease of tag '{}' has been taken over by another worker, results are not published", tag);
+                lease.release();
+                return;
+            }
+            final File report = new File(reportPath);
+            final Pair<String, String> timestamps = GitCommands.getTimestampOfCommit(shell, commit, repoDir);
+            final String reportFileName = report.getName().substring(0, report.getName().length() - ".xml".length());
+            SonargraphCommand.publishResults(m_configuration, analysisDir, reportFileName,
+                    SonargraphCommand.createSnapshotFileName(systemName, commit, timestamps), resultsDir);
+            lease.complete(report.getName());
+        }
+        catch (final Exception e)
+        {
+            LOGGER.error("Failed to run analysis for tag '" + tag + "', '" + commit + "'");
+            logExceptionToFile(analysisDir, commit, tag, e);
+            retries.defer(lease, e);
+            if (!retries.isPending(lease))
+            {
+                lease.fail(e.getMessage());
+            }
+        }
+        finally
+        {
+            GitCommands.reset(shell, repoDir);
+            appendTelemetry(shell, analysisDir, tag);
+        }
+    }
+
+    /**
+     * @return the tagged commits merged with the sampled commits of the branch, if commit sampling is configured
+     */
+    private List<Pair<String, String>> sampleCommits(final IShell shell, final File repoDir, final File commitsAndTagsFile,
+            final List<Pair<String, String>> tags)
+    {
+        final CommitSampler sampler = CommitSampler.fromConfiguration(m_configuration);
+        if (sampler == null)
+        {
+            return tags;
+        }
+
+        try
+        {
+            final List<Pair<String, String>> commitsAndTags = sampler.sample(shell, repoDir, tags);
+            GitCommands.writeCommitsAndTags(commitsAndTagsFile, commitsAndTags);
+            return commitsAndTags;
+        }
+        catch (final Exception e)
+        {
+            throw new RuntimeException("Failed to sample commits of repository at: " + repoDir.getAbsolutePath(), e);
+        }
+    }
+
+    private static void appendTelemetry(final IShell shell, final File analysisDir, final String tag)
+    {
+        try
+        {
+            ProcessStatistics.appendToFile(new File(analysisDir, TELEMETRY_FILE_NAME), tag, shell.drainStatistics());
+        }
+        catch (final IOException e)
+        {
+            LOGGER.warn("Failed to write process telemetry for tag '{}': {}", tag, e.getMessage());
         }
     }
 
@@ -195,9 +601,10 @@ public class CwaServerAnalysis
             logDir.mkdir();
         }
         final File logFile = new File(logDir, System.currentTimeMillis() + "_" + tag + "_" + commit + ".log");
-        try (Writer writer = new FileWriter(logFile))
+        try (PrintWriter writer = new PrintWriter(new FileWriter(logFile)))
         {
-            writer.append(exception.getMessage());
+            writer.println("Failure class: " + FailureClass.classify(exception));
+            exception.printStackTrace(writer);
             writer.flush();
         }
         catch (final IOException e)
@@ -207,53 +614,90 @@ public class CwaServerAnalysis
         }
     }
 
+    /**
+     * @param baselineReportPath
+     *            path of the baseline report, empty for none, or null for a bisection probe
+     * @param index
+     *            index of the commit in the list of commits processed in this run
+     * @param count
+     *            number of commits processed in this run
+     * @param lease
+     *            lease of the commit in a distributed run, or null
+     * @return path of the XML report, or null if the lease has been lost before the analysis
+     */
     private String analyseCommit(final IShell shell, final String commit, final String tag, final File repoDir, final File analysisDir,
-            final String baselineReportPath) throws Exception
+            final String baselineReportPath, final int index, final int count, final LeaseDirectory.Lease lease) throws Exception
     {
         assert shell != null : "Parameter 'shell' of method 'runAnalysisForCommit' must not be null";
         assert commit != null : "Parameter 'commit' of method 'runAnalysisForCommit' must not be null";
         assert tag != null : "Parameter 'tag' of method 'runAnalysisForCommit' must not be null";
         assert repoDir != null : "Parameter 'repoDir' of method 'runAnalysisForCommit' must not be null";
         assert analysisDir != null : "Parameter 'analysisDir' of method 'runAnalysisForCommit' must not be null";
-        assert baselineReportPath != null : "Parameter 'baselineReportPath' of method 'runAnalysisForCommit' must not be null";
 
-        try
-        {
-            GitCommands.checkoutCommit(shell, commit, repoDir);
-        }
-        catch (final Exception e)
+        final String systemName = m_configuration.getString(Props.NAME.getPropertyName());
+        try (JobContext jobContext = JobContext.open(systemName, tag, commit, SonargraphCommand.getLogDirectory(analysisDir)))
         {
-            LOGGER.error("Failed to checkout commit for tag '" + tag + "'", e);
-            throw e;
-        }
+            try
+            {
+                GitCommands.checkoutCommit(shell, commit, repoDir);
+            }
+            catch (final Exception e)
+            {
+                LOGGER.error("Failed to checkout commit for tag '" + tag + "'", e);
+                throw e;
+            }
 
-        final Pair<String, String> timestamps;
-        try
-        {
-            timestamps = GitCommands.getTimestampOfCommit(shell, commit, repoDir);
-        }
-        catch (final Exception e)
-        {
-            LOGGER.error("Failed to get timestamps for commit for tag '{}'", tag);
-            throw e;
-        }
+            final Pair<String, String> timestamps;
+            try
+            {
+                timestamps = GitCommands.getTimestampOfCommit(shell, commit, repoDir);
+            }
+            catch (final Exception e)
+            {
+                LOGGER.error("Failed to get timestamps for commit for tag '{}'", tag);
+                throw e;
+            }
 
-        try
-        {
-            final String javaHomeForMvn = m_configuration.getString(Props.JAVA_HOME_FOR_MVN.getPropertyName());
-            MavenCommands.executeMvn(shell, repoDir, javaHomeForMvn, "mvn clean compile test-compile -Dcheckstyle.skip=true");
-        }
-        catch (final Exception e)
-        {
-            LOGGER.error("Failed to run Maven build for tag '{}'", tag);
-            throw e;
-        }
+            final IBuildTool buildTool = m_buildTools.select(repoDir);
+            final double buildCpus = m_configuration.getDouble(Props.BUILD_CPUS.getPropertyName(), 1.0);
+            final long buildMemoryMb = m_configuration.getLong(Props.BUILD_MEMORY_MB.getPropertyName(), 1024);
+            //Measured before the build, so that compiled classes of this and previous builds are not counted
+            final long sourceBytes = JvmProfile.measureInputBytes(repoDir);
+            try (ResourceScheduler.Permit permit = ResourceScheduler.getShared(m_configuration).acquire(Stage.BUILD, buildCpus, buildMemoryMb))
+            {
+                final long buildStart = System.currentTimeMillis();
+                buildTool.build(shell, repoDir);
+                m_durationModel.record(Stage.BUILD, sourceBytes, System.currentTimeMillis() - buildStart);
+            }
+            catch (final Exception e)
+            {
+                LOGGER.error("Failed to run {} build for tag '{}'", buildTool.getName(), tag);
+                if (FailureClass.classify(e) == FailureClass.OUT_OF_MEMORY)
+                {
+                    //The heap of the build tool is not increased, so a retry would fail the same way
+                    throw FailureClass.heapLimitReached(buildTool.getName() + " build ran out of memory", e);
+                }
+                throw e;
+            }
 
-        final String config = new File(m_configuration.getString(Props.CONFIG_FILE.getPropertyName())).getAbsolutePath();
-        final String systemDirectory = new File(m_configuration.getString(Props.SONARGRAPH_SYSTEM_DIRECTORY.getPropertyName())).getAbsolutePath();
+            final String config = new File(m_configuration.getString(Props.CONFIG_FILE.getPropertyName())).getAbsolutePath();
+            final String systemDirectory = m_systemDirectory.getAbsolutePath();
 
-        final String systemName = m_configuration.getString(Props.NAME.getPropertyName());
-        return SonargraphCommand.createReport(shell, systemName, commit, timestamps, tag, analysisDir, baselineReportPath, m_activationCode,
-                m_configuration, config, systemDirectory);
+            //Sonargraph-Build uploads the report, so it must not run after another worker has taken over the commit
+            if (lease != null && lease.isLost())
+            {
+                return null;
+            }
+            final long analysisStart = System.currentTimeMillis();
+            final String reportPath = baselineReportPath != null
+                    ? SonargraphCommand.createReport(shell, systemName, commit, timestamps, tag, analysisDir, baselineReportPath, m_activationCode,
+                            m_configuration, config, systemDirectory, sourceBytes, index, count)
+                    : SonargraphCommand.createProbeReport(shell, systemName, commit, timestamps, tag, analysisDir, m_activationCode, m_configuration,
+                            config, systemDirectory, sourceBytes);
+            m_durationModel.record(Stage.ANALYSIS, sourceBytes, System.currentTimeMillis() - analysisStart);
+            m_durationModel.save();
+            m_lastInputBytes = sourceBytes;
+            return reportPath;
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,87 @@
+/*
+ * Sonargraph Integration Access
+ * Copyright (C) 2016-2021 hello2morrow GmbH
+ * mailto: support AT hello2morrow DOT com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hello2morrow.sonargraph.batch.analysis;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.commons.configuration2.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.hello2morrow.sonargraph.batch.configuration.ConfigurationReader;
+import com.hello2morrow.sonargraph.batch.configuration.Props;
+import com.hello2morrow.sonargraph.batch.maven.GroupCrawler;
+
+/**
+ * Writes a manifest of all artifacts below a groupId of the configured Maven repository, e.g. to select the artifacts of a project family for
+ * {@link AnalyzeMavenArtifact}.
+ */
+public final class DiscoverArtifacts
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(DiscoverArtifacts.class);
+    private static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 16;
+
+    private DiscoverArtifacts()
+    {
+        super();
+    }
+
+    /**
+     * Expected arguments:
+     * <ol>
+     * <li>propertiesFile: Properties file containing 'mavenRepoUrl'</li>
+     * <li>groupId: Maven group id, e.g. 'org.hibernate'</li>
+     * <li>manifestFile: Target file, lines 'groupId;artifactId;versions;latestVersion;latestBytes;estimatedTotalBytes'</li>
+     * </ol>
+     */
+    public static void main(final String[] args)
+    {
+        if (args.length < 3)
+        {
+            throw new IllegalArgumentException("Expected arguments: <propertiesFile> <groupId> <manifestFile>");
+        }
+
+        final Configuration configuration = ConfigurationReader.read(args[0]);
+        if (configuration == null)
+        {
+            LOGGER.error("Failed to load configuration properties file from " + args[0]);
+            System.exit(-1);
+        }
+        final String repoUrl = configuration.getString(Props.MAVEN_REPO_URL.getPropertyName());
+        if (repoUrl == null)
+        {
+            throw new RuntimeException("Missing configuration property '" + Props.MAVEN_REPO_URL.getPropertyName() + "'");
+        }
+
+        try
+        {
+            final GroupCrawler crawler = new GroupCrawler(repoUrl,
+                    configuration.getInt(Props.CRAWLER_MAX_CONCURRENT_REQUESTS.getPropertyName(), DEFAULT_MAX_CONCURRENT_REQUESTS));
+            final List<GroupCrawler.Artifact> artifacts = crawler.crawl(args[1]);
+            GroupCrawler.writeManifest(new File(args[2]), artifacts);
+            LOGGER.info("Wrote {} artifacts to {}", artifacts.size(), args[2]);
+        }
+        catch (final IOException e)
+        {
+            e.printStackTrace();
+            System.exit(-1);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Sonargraph Integration Access
+ * Copyright (C) 2016-2021 hello2morrow GmbH
+ * mailto: support AT hello2morrow DOT com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hello2morrow.sonargraph.batch.analysis;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.hello2morrow.sonargraph.batch.report.TrendStore;
+
+/**
+ * Exports metric trends of the local trend store as CSV, without the need of a Sonargraph-Enterprise server.
+ */
+public final class ExportTrends
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(ExportTrends.class);
+
+    private ExportTrends()
+    {
+        super();
+    }
+
+    /**
+     * Expected arguments:
+     * <ol>
+     * <li>trendStoreDirectory: Directory of the trend store</li>
+     * <li>csvFile: Target file</li>
+     * <li>columnPrefix (optional): Only export columns starting with the prefix, e.g. 'System/'</li>
+     * <li>from, to (optional): ISO-8601 timestamps limiting the exported range, e.g. '2021-01-01T00:00:00Z'</li>
+     * </ol>
+     */
+    public static void main(final String[] args)
+    {
+        if (args.length < 2)
+        {
+            throw new IllegalArgumentException("Expected arguments: <trendStoreDirectory> <csvFile> [columnPrefix] [from] [to]");
+        }
+
+        final String prefix = args.length > 2 ? args[2] : "";
+        final long from = args.length > 3 ? OffsetDateTime.parse(args[3]).toInstant().toEpochMilli() : Long.MIN_VALUE;
+        final long to = args.length > 4 ? OffsetDateTime.parse(args[4]).toInstant().toEpochMilli() : Long.MAX_VALUE;
+        try
+        {
+            final TrendStore trendStore = TrendStore.getShared(new File(args[0]));
+            final List<String> columns = trendStore.getColumns().stream().filter(c -> c.startsWith(prefix)).collect(Collectors.toList());
+            try (Writer writer = Files.newBufferedWriter(new File(args[1]).toPath(), StandardCharsets.UTF_8))
+            {
+                trendStore.exportCsv(writer, columns, from, to);
+            }
+            LOGGER.info("Exported {} columns to {}", columns.size(), args[1]);
+        }
+        catch (final IOException e)
+        {
+            e.printStackTrace();
+            System.exit(-1);
+        }
+    }
+}
@@ -0,0 +1,399 @@
+/*
+ * Sonargraph Integration Access
+ * Copyright (C) 2016-2021 hello2morrow GmbH
+ * mailto: support AT hello2morrow DOT com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hello2morrow.sonargraph.batch.analysis;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.configuration2.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.hello2morrow.sonargraph.batch.commands.GitCommands;
+import com.hello2morrow.sonargraph.batch.configuration.ConfigurationReader;
+import com.hello2morrow.sonargraph.batch.configuration.Props;
+import com.hello2morrow.sonargraph.batch.scheduling.DurationModel;
+import com.hello2morrow.sonargraph.batch.scheduling.Stage;
+import com.hello2morrow.sonargraph.batch.shell.IShell;
+import com.hello2morrow.sonargraph.batch.shell.ShellFactory;
+
+/**
+ * Runs {@link CwaServerAnalysis} for all repositories of a manifest. Repositories are analyzed concurrently, longest estimated first. The tags of
+ * a repository are analyzed in order, since each uses the report of the previous tag as baseline. Builds and analyses of all repositories share
+ * the limits of the 'ResourceScheduler'.
+ *
+ * Each manifest line contains the repository name followed by 'key=value' pairs that override the properties of the common properties file,
+ * e.g. 'repoDirectory', 'branchName', 'sonargraphSystemDirectory' and the build tool options. 'repoDirectory' and 'sonargraphSystemDirectory'
+ * are required, and each repository needs its own Sonargraph system, since the system is modified while the repository is analyzed:
+ *
+ * <pre>
+ * core repoDirectory=/repos/core branchName=main sonargraphSystemDirectory=/systems/core.sonargraph repoUrl=https://git.example.com/core.git
+ * core-fork repoDirectory=/repos/core-fork branchName=main sonargraphSystemDirectory=/systems/core-fork.sonargraph shareObjectsWith=core
+ * </pre>
+ *
+ * Missing repositories are cloned from 'repoUrl'. Forks name the repository they share Git objects with in 'shareObjectsWith', so that common
+ * history is stored only once. Unreachable objects are never pruned from a shared repository, since forks might still use them. The analysis
+ * directory defaults to a sub directory of the common 'analysisDirectory' named like the repository.
+ */
+public final class GitHistoryBatch
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(GitHistoryBatch.class);
+    private static final String COMMENT_PREFIX = "#";
+    private static final String COMMITS_AND_TAGS_FILE_NAME = "commits_and_tags.txt";
+    private static final int DEFAULT_MAX_CONCURRENT_REPOSITORIES = 2;
+
+    static final class Repository
+    {
+        private final String m_name;
+        private final Map<String, String> m_properties;
+
+        Repository(final String name, final Map<String, String> properties)
+        {
+            assert name != null && name.length() > 0 : "Parameter 'name' of method 'Repository' must not be empty";
+            assert properties != null : "Parameter 'properties' of method 'Repository' must not be null";
+            m_name = name;
+            m_properties = properties;
+        }
+
+        String getName()
+        {
+            return m_name;
+        }
+
+        String getProperty(final Props prop)
+        {
+            return m_properties.get(prop.getPropertyName());
+        }
+
+        Map<String, String> getProperties()
+        {
+            return m_properties;
+        }
+    }
+
+    private final String m_propertiesFile;
+    private final String m_activationCode;
+    private final List<Repository> m_repositories;
+
+    GitHistoryBatch(final String propertiesFile, final String activationCode, final List<Repository> repositories)
+    {
+        assert propertiesFile != null && propertiesFile.length() > 0 : "Parameter 'propertiesFile' of method 'GitHistoryBatch' must not be empty";
+        assert activationCode != null && activationCode.length() > 0 : "Parameter 'activationCode' of method 'GitHistoryBatch' must not be empty";
+        assert repositories != null : "Parameter 'repositories' of method 'GitHistoryBatch' must not be null";
+        m_propertiesFile = propertiesFile;
+        m_activationCode = activationCode;
+        m_repositories = repositories;
+    }
+
+    /**
+     * Expected arguments:
+     * <ol>
+     * <li>propertiesFile: Properties common to all repositories</li>
+     * <li>manifestFile: One repository per line</li>
+     * <li>activationCode: Sonargraph-Build activation code</li>
+     * </ol>
+     */
+    public static void main(final String[] args)
+    {
+        if (args.length < 3)
+        {
+            throw new IllegalArgumentException("Expected arguments: <propertiesFile> <manifestFile> <activationCode>");
+        }
+
+        try
+        {
+            final List<Repository> repositories = parseManifest(Files.readAllLines(new File(args[1]).toPath()));
+            if (!new GitHistoryBatch(args[0], args[2], repositories).run())
+            {
+                System.exit(-1);
+            }
+        }
+        catch (final IOException e)
+        {
+            e.printStackTrace();
+            System.exit(-1);
+        }
+    }
+
+    static List<Repository> parseManifest(final List<String> lines)
+    {
+        assert lines != null : "Parameter 'lines' of method 'parseManifest' must not be null";
+
+        final Map<String, Repository> repositories = new LinkedHashMap<>();
+        for (final String next : lines)
+        {
+            final String line = next.trim();
+            if (line.isEmpty() || line.startsWith(COMMENT_PREFIX))
+            {
+                continue;
+            }
+
+            final String[] parts = line.split("\\s+");
+            final Map<String, String> properties = new LinkedHashMap<>();
+            for (int i = 1; i < parts.length; i++)
+            {
+                final int separator = parts[i].indexOf('=');
+                if (separator <= 0)
+                {
+                    throw new IllegalArgumentException("Expected 'key=value' instead of '" + parts[i] + "' for repository '" + parts[0] + "'");
+                }
+                properties.put(parts[i].substring(0, separator), parts[i].substring(separator + 1));
+            }
+            final Repository repository = new Repository(parts[0], properties);
+            for (final Props required : new Props[] { Props.REPO_DIRECTORY, Props.SONARGRAPH_SYSTEM_DIRECTORY })
+            {
+                if (repository.getProperty(required) == null)
+                {
+                    throw new IllegalArgumentException("Missing '" + required.getPropertyName() + "' for repository '" + parts[0] + "'");
+                }
+            }
+            if (repositories.put(parts[0], repository) != null)
+            {
+                throw new IllegalArgumentException("Duplicate repository '" + parts[0] + "'");
+            }
+        }
+
+        final Map<String, String> systemDirectories = new HashMap<>();
+        for (final Repository next : repositories.values())
+        {
+            final String systemDirectory = new File(next.getProperty(Props.SONARGRAPH_SYSTEM_DIRECTORY)).getAbsoluteFile().toPath().normalize()
+                    .toString();
+            final String other = systemDirectories.put(systemDirectory, next.getName());
+            if (other != null)
+            {
+                throw new IllegalArgumentException("Repositories '" + other + "' and '" + next.getName() + "' use the same Sonargraph system '"
+                        + systemDirectory + "'");
+            }
+        }
+
+        for (final Repository next : repositories.values())
+        {
+            final String sharedWith = next.getProperty(Props.SHARE_OBJECTS_WITH);
+            if (sharedWith != null && !repositories.containsKey(sharedWith))
+            {
+                throw new IllegalArgumentException("Repository '" + next.getName() + "' shares objects with unknown repository '" + sharedWith + "'");
+            }
+        }
+        return new ArrayList<>(repositories.values());
+    }
+
+    /**
+     * @return true, if all repositories have been processed without failure
+     */
+    boolean run()
+    {
+        final Configuration common = readConfiguration(null);
+        final Map<String, Configuration> configurations = new HashMap<>();
+        for (final Repository next : m_repositories)
+        {
+            configurations.put(next.getName(), readConfiguration(next));
+        }
+
+        final Charset charset = common.getString(Props.SHELL_CHARSET.getPropertyName()) == null ? Charset.defaultCharset()
+                : Charset.forName(common.getString(Props.SHELL_CHARSET.getPropertyName()));
+        final IShell shell = ShellFactory.create(charset);
+        final List<Repository> prepared = new ArrayList<>();
+        for (final Repository next : orderBySharing(m_repositories))
+        {
+            try
+            {
+                prepare(shell, next);
+                prepared.add(next);
+            }
+            catch (final Exception e)
+            {
+                LOGGER.error("Failed to prepare repository '" + next.getName() + "'", e);
+            }
+        }
+
+        final List<Repository> ordered = DurationModel.sortLongestFirst(prepared,
+                r -> estimateMs(new File(configurations.get(r.getName()).getString(Props.ANALYSIS_DIRECTORY.getPropertyName()))));
+        final int maxConcurrent = Math.max(1,
+                common.getInt(Props.MAX_CONCURRENT_REPOSITORIES.getPropertyName(), DEFAULT_MAX_CONCURRENT_REPOSITORIES));
+        LOGGER.info("Analyzing {} repositories, {} concurrently", ordered.size(), maxConcurrent);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(maxConcurrent);
+        final Map<String, Future<?>> results = new LinkedHashMap<>();
+        for (final Repository next : ordered)
+        {
+            final CwaServerAnalysis analysis = new CwaServerAnalysis(configurations.get(next.getName()), m_activationCode);
+            results.put(next.getName(), executor.submit(analysis::run));
+        }
+        executor.shutdown();
+
+        int failed = m_repositories.size() - prepared.size();
+        for (final Map.Entry<String, Future<?>> next : results.entrySet())
+        {
+            try
+            {
+                next.getValue().get();
+                LOGGER.info("Finished repository '{}'", next.getKey());
+            }
+            catch (final ExecutionException e)
+            {
+                failed++;
+                LOGGER.error("Analysis of repository '" + next.getKey() + "' failed", e.getCause());
+            }
+            catch (final InterruptedException e)
+            {
+                executor.shutdownNow();
+                Thread.currentThread().interrupt();
+                LOGGER.warn("Interrupted while waiting for repository '{}'", next.getKey());
+                return false;
+            }
+        }
+        LOGGER.info("Finished {} repositories, {} failed", m_repositories.size(), failed);
+        return failed == 0;
+    }
+
+    /**
+     * @return the common configuration, or the configuration of the repository, if given
+     */
+    private Configuration readConfiguration(final Repository repository)
+    {
+        //Each repository gets its own instance, since overridden properties must not leak into other repositories
+        final Configuration configuration = ConfigurationReader.read(m_propertiesFile);
+        if (configuration == null)
+        {
+            throw new RuntimeException("Failed to load configuration properties file from " + m_propertiesFile);
+        }
+        if (repository == null)
+        {
+            return configuration;
+        }
+
+        final String analysisDirectory = configuration.getString(Props.ANALYSIS_DIRECTORY.getPropertyName(), ".");
+        configuration.setProperty(Props.NAME.getPropertyName(), repository.getName());
+        configuration.setProperty(Props.ANALYSIS_DIRECTORY.getPropertyName(), new File(analysisDirectory, repository.getName()).getPath());
+        for (final Map.Entry<String, String> next : repository.getProperties().entrySet())
+        {
+            configuration.setProperty(next.getKey(), next.getValue());
+        }
+        return configuration;
+    }
+
+    /**
+     * @return repositories, so that a repository comes after the repository it shares objects with
+     */
+    static List<Repository> orderBySharing(final List<Repository> repositories)
+    {
+        final Map<String, Repository> byName = new LinkedHashMap<>();
+        repositories.forEach(r -> byName.put(r.getName(), r));
+        final Map<String, Repository> ordered = new LinkedHashMap<>();
+        for (final Repository next : repositories)
+        {
+            addAfterShared(next, byName, ordered, new ArrayList<>());
+        }
+        return new ArrayList<>(ordered.values());
+    }
+
+    private static void addAfterShared(final Repository repository, final Map<String, Repository> byName, final Map<String, Repository> ordered,
+            final List<String> path)
+    {
+        if (ordered.containsKey(repository.getName()))
+        {
+            return;
+        }
+        if (path.contains(repository.getName()))
+        {
+            throw new IllegalArgumentException("Cyclic 'shareObjectsWith' between repositories " + path);
+        }
+        path.add(repository.getName());
+        final String sharedWith = repository.getProperty(Props.SHARE_OBJECTS_WITH);
+        if (sharedWith != null && byName.containsKey(sharedWith))
+        {
+            addAfterShared(byName.get(sharedWith), byName, ordered, path);
+        }
+        ordered.put(repository.getName(), repository);
+    }
+
+    private void prepare(final IShell shell, final Repository repository) throws Exception
+    {
+        final File repoDir = new File(repository.getProperty(Props.REPO_DIRECTORY));
+        final String sharedWith = repository.getProperty(Props.SHARE_OBJECTS_WITH);
+        final File sharedRepoDir = sharedWith != null ? new File(
+                m_repositories.stream().filter(r -> r.getName().equals(sharedWith)).findFirst().get().getProperty(Props.REPO_DIRECTORY)) : null;
+
+        if (!repoDir.isDirectory())
+        {
+            final String url = repository.getProperty(Props.REPO_URL);
+            if (url == null)
+            {
+                throw new IOException("Repository directory '" + repoDir.getAbsolutePath() + "' does not exist and no '"
+                        + Props.REPO_URL.getPropertyName() + "' is configured");
+            }
+            if (sharedRepoDir != null)
+            {
+                GitCommands.disablePruning(shell, sharedRepoDir);
+            }
+            LOGGER.info("Cloning repository '{}' from {}", repository.getName(), url);
+            GitCommands.cloneRepository(shell, url, repoDir, sharedRepoDir);
+        }
+        else if (sharedRepoDir != null)
+        {
+            //Also for existing alternates, e.g. configured before pruning has been disabled
+            GitCommands.disablePruning(shell, sharedRepoDir);
+            if (GitCommands.addAlternate(repoDir, sharedRepoDir))
+            {
+                LOGGER.info("Repository '{}' borrows objects from '{}'", repository.getName(), sharedWith);
+                GitCommands.repackLocal(shell, repoDir);
+            }
+        }
+    }
+
+    /**
+     * @return estimated duration of all tags of the previous run, or Long.MAX_VALUE if unknown, so that new repositories are started first
+     */
+    static long estimateMs(final File analysisDir)
+    {
+        final File commitsAndTagsFile = new File(analysisDir, COMMITS_AND_TAGS_FILE_NAME);
+        if (!commitsAndTagsFile.exists())
+        {
+            return Long.MAX_VALUE;
+        }
+
+        final DurationModel durationModel = DurationModel.load(analysisDir);
+        final List<Stage> stages = Arrays.asList(Stage.BUILD, Stage.ANALYSIS);
+        final long perTagMs = durationModel.estimateMs(stages, durationModel.getLastInputSize(Stage.ANALYSIS));
+        if (perTagMs <= 0)
+        {
+            return Long.MAX_VALUE;
+        }
+        try
+        {
+            return perTagMs * Files.readAllLines(commitsAndTagsFile.toPath()).size();
+        }
+        catch (final IOException e)
+        {
+            LOGGER.warn("Failed to read {}: {}", commitsAndTagsFile.getAbsolutePath(), e.getMessage());
+            return Long.MAX_VALUE;
+        }
+    }
+}
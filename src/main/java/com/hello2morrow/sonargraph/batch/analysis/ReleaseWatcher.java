@@ -0,0 +1,527 @@
+/*
+ * Sonargraph Integration Access
+ * Copyright (C) 2016-2021 hello2morrow GmbH
+ * mailto: support AT hello2morrow DOT com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hello2morrow.sonargraph.batch.analysis;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.configuration2.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.hello2morrow.sonargraph.batch.configuration.ConfigurationReader;
+import com.hello2morrow.sonargraph.batch.configuration.Props;
+import com.hello2morrow.sonargraph.batch.shell.IShell;
+import com.hello2morrow.sonargraph.batch.shell.ShellFactory;
+
+/**
+ * Periodically checks the entries of a watch list for new releases and submits an analysis job only if something has changed. The checks are
+ * cheap: Maven artifacts are checked with a conditional GET of their 'maven-metadata.xml' (ETag / Last-Modified), repositories by comparing
+ * the output of 'git ls-remote --tags' with the previous poll. Which versions or tags are new is then determined by the analysis itself.
+ *
+ * Example watch list:
+ *
+ * <pre>
+ * pollIntervalSeconds = 300
+ * jitterPercent = 20
+ * minHostIntervalMs = 1000
+ * maven org.hibernate hibernate-core ./src/main/resources/maven-central.properties
+ * repository ./src/main/resources/cwa_config.properties
+ * </pre>
+ *
+ * Polls are spread by a random jitter, so that entries do not hit the same host at once, and requests to the same host are separated by at
+ * least 'minHostIntervalMs'. The state of the last poll is persisted next to the watch list, so that a restart does not trigger analyses.
+ */
+final class ReleaseWatcher
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReleaseWatcher.class);
+    private static final String STATE_FILE_SUFFIX = ".state";
+    private static final String STATE_SEPARATOR = ";";
+    private static final Pattern LAST_UPDATED_PATTERN = Pattern.compile("<lastUpdated>\\s*(\\d+)\\s*</lastUpdated>");
+    private static final int CONNECT_TIMEOUT_MS = 10000;
+
+    enum EntryType
+    {
+        MAVEN,
+        REPOSITORY
+    }
+
+    static final class Entry
+    {
+        private final EntryType m_type;
+        private final String m_groupId;
+        private final String m_artifactId;
+        private final String m_propertiesFile;
+        private String m_etag = "";
+        private String m_lastModified = "";
+        private String m_fingerprint = "";
+        private String m_polledEtag = "";
+        private String m_polledLastModified = "";
+        private String m_pendingFingerprint;
+
+        Entry(final EntryType type, final String groupId, final String artifactId, final String propertiesFile)
+        {
+            assert type != null : "Parameter 'type' of method 'Entry' must not be null";
+            assert propertiesFile != null && propertiesFile.length() > 0 : "Parameter 'propertiesFile' of method 'Entry' must not be empty";
+
+            m_type = type;
+            m_groupId = groupId;
+            m_artifactId = artifactId;
+            m_propertiesFile = propertiesFile;
+        }
+
+        String getKey()
+        {
+            return m_type == EntryType.MAVEN ? "maven:" + m_groupId + ":" + m_artifactId : "repository:" + m_propertiesFile;
+        }
+
+        Map<String, String> createJobParameters()
+        {
+            final Map<String, String> parameters = new LinkedHashMap<>();
+            parameters.put("type", m_type.name().toLowerCase(Locale.ENGLISH));
+            if (m_type == EntryType.MAVEN)
+            {
+                parameters.put("groupId", m_groupId);
+                parameters.put("artifactId", m_artifactId);
+            }
+            parameters.put("propertiesFile", m_propertiesFile);
+            return parameters;
+        }
+    }
+
+    static final class WatchList
+    {
+        private long m_pollIntervalMs = TimeUnit.MINUTES.toMillis(5);
+        private int m_jitterPercent = 20;
+        private long m_minHostIntervalMs = 1000;
+        private final List<Entry> m_entries = new ArrayList<>();
+
+        List<Entry> getEntries()
+        {
+            return Collections.unmodifiableList(m_entries);
+        }
+
+        long getPollIntervalMs()
+        {
+            return m_pollIntervalMs;
+        }
+    }
+
+    private final File m_stateFile;
+    private final WatchList m_watchList;
+    private final BiConsumer<Map<String, String>, Consumer<Boolean>> m_submitter;
+    private final Map<String, Long> m_nextRequestPerHost = new HashMap<>();
+    private final Random m_random = new Random();
+    private final IShell m_shell = ShellFactory.create(Charset.defaultCharset());
+    private ScheduledExecutorService m_executor;
+
+    /**
+     * @param submitter
+     *            receives the parameters of the job to submit, as expected by {@link AnalysisService}, and the listener to call with true if
+     *            the job succeeded or false if it failed
+     */
+    ReleaseWatcher(final File watchListFile, final BiConsumer<Map<String, String>, Consumer<Boolean>> submitter) throws IOException
+    {
+        assert watchListFile != null : "Parameter 'watchListFile' of method 'ReleaseWatcher' must not be null";
+        assert submitter != null : "Parameter 'submitter' of method 'ReleaseWatcher' must not be null";
+
+        m_watchList = parseWatchList(Files.readAllLines(watchListFile.toPath(), StandardCharsets.UTF_8));
+        m_stateFile = new File(watchListFile.getAbsolutePath() + STATE_FILE_SUFFIX);
+        m_submitter = submitter;
+        loadState();
+    }
+
+    static WatchList parseWatchList(final List<String> lines)
+    {
+        assert lines != null : "Parameter 'lines' of method 'parseWatchList' must not be null";
+
+        final WatchList watchList = new WatchList();
+        for (final String next : lines)
+        {
+            final String line = next.trim();
+            if (line.isEmpty() || line.startsWith("#"))
+            {
+                continue;
+            }
+
+            final int equalsIndex = line.indexOf('=');
+            if (equalsIndex > 0)
+            {
+                final String name = line.substring(0, equalsIndex).trim();
+                final long value = Long.parseLong(line.substring(equalsIndex + 1).trim());
+                switch (name)
+                {
+                case "pollIntervalSeconds":
+                    watchList.m_pollIntervalMs = TimeUnit.SECONDS.toMillis(value);
+                    break;
+                case "jitterPercent":
+                    watchList.m_jitterPercent = (int) value;
+                    break;
+                case "minHostIntervalMs":
+                    watchList.m_minHostIntervalMs = value;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unsupported watch list setting '" + name + "'");
+                }
+                continue;
+            }
+
+            final String[] parts = line.split("\\s+");
+            if (parts.length == 4 && parts[0].equals("maven"))
+            {
+                watchList.m_entries.add(new Entry(EntryType.MAVEN, parts[1], parts[2], parts[3]));
+            }
+            else if (parts.length == 2 && parts[0].equals("repository"))
+            {
+                watchList.m_entries.add(new Entry(EntryType.REPOSITORY, null, null, parts[1]));
+            }
+            else
+            {
+                throw new IllegalArgumentException("Invalid watch list entry: " + line);
+            }
+        }
+        return watchList;
+    }
+
+    List<Entry> getEntries()
+    {
+        return m_watchList.getEntries();
+    }
+
+    /**
+     * Starts polling. The first poll of each entry is spread randomly over the poll interval.
+     */
+    void start()
+    {
+        m_executor = Executors.newSingleThreadScheduledExecutor(r ->
+        {
+            final Thread thread = new Thread(r, "release-watcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (final Entry next : m_watchList.m_entries)
+        {
+            m_executor.schedule(() -> pollAndReschedule(next), (long) (m_random.nextDouble() * m_watchList.m_pollIntervalMs), TimeUnit.MILLISECONDS);
+        }
+        LOGGER.info("Watching {} entries every {} s", m_watchList.m_entries.size(), TimeUnit.MILLISECONDS.toSeconds(m_watchList.m_pollIntervalMs));
+    }
+
+    void stop()
+    {
+        if (m_executor != null)
+        {
+            m_executor.shutdownNow();
+        }
+    }
+
+    private void pollAndReschedule(final Entry entry)
+    {
+        try
+        {
+            poll(entry);
+        }
+        catch (final Exception e)
+        {
+            LOGGER.warn("Failed to poll '{}': {}", entry.getKey(), e.getMessage());
+        }
+        m_executor.schedule(() -> pollAndReschedule(entry), nextDelayMs(), TimeUnit.MILLISECONDS);
+    }
+
+    long nextDelayMs()
+    {
+        final double jitter = (m_random.nextDouble() * 2 - 1) * m_watchList.m_jitterPercent / 100.0;
+        return Math.max(0, Math.round(m_watchList.m_pollIntervalMs * (1 + jitter)));
+    }
+
+    /**
+     * Checks the entry and submits a job if it has changed since the last successful analysis. The state of the entry is only advanced when
+     * the job succeeds, so a failed analysis is submitted again with the next poll.
+     *
+     * @return true, if a job has been submitted.
+     */
+    boolean poll(final Entry entry) throws Exception
+    {
+        assert entry != null : "Parameter 'entry' of method 'poll' must not be null";
+
+        final Configuration configuration = ConfigurationReader.read(entry.m_propertiesFile);
+        if (configuration == null)
+        {
+            throw new IOException("Failed to load configuration properties file from " + entry.m_propertiesFile);
+        }
+
+        final String fingerprint = entry.m_type == EntryType.MAVEN ? pollMavenMetadata(entry, configuration) : pollTags(configuration);
+        final String etag;
+        final String lastModified;
+        synchronized (this)
+        {
+            if (fingerprint == null || fingerprint.equals(entry.m_fingerprint))
+            {
+                LOGGER.debug("No changes for '{}'", entry.getKey());
+                if (fingerprint != null)
+                {
+                    entry.m_etag = entry.m_polledEtag;
+                    entry.m_lastModified = entry.m_polledLastModified;
+                }
+                saveState();
+                return false;
+            }
+            if (fingerprint.equals(entry.m_pendingFingerprint))
+            {
+                LOGGER.debug("Analysis of the new release of '{}' has not finished yet", entry.getKey());
+                return false;
+            }
+            entry.m_pendingFingerprint = fingerprint;
+            etag = entry.m_polledEtag;
+            lastModified = entry.m_polledLastModified;
+        }
+
+        LOGGER.info("New release detected for '{}', submitting analysis", entry.getKey());
+        m_submitter.accept(entry.createJobParameters(), succeeded -> jobFinished(entry, fingerprint, etag, lastModified, succeeded));
+        return true;
+    }
+
+    private synchronized void jobFinished(final Entry entry, final String fingerprint, final String etag, final String lastModified,
+            final boolean succeeded)
+    {
+        if (fingerprint.equals(entry.m_pendingFingerprint))
+        {
+            entry.m_pendingFingerprint = null;
+        }
+        if (!succeeded)
+        {
+            LOGGER.warn("Analysis of the new release of '{}' failed, it is submitted again with the next poll", entry.getKey());
+            return;
+        }
+
+        entry.m_fingerprint = fingerprint;
+        entry.m_etag = etag;
+        entry.m_lastModified = lastModified;
+        try
+        {
+            saveState();
+        }
+        catch (final IOException e)
+        {
+            LOGGER.warn("Failed to save state of '{}': {}", entry.getKey(), e.getMessage());
+        }
+    }
+
+    /**
+     * @return the 'lastUpdated' value of the metadata, or null if the metadata has not been modified since the last poll.
+     */
+    private String pollMavenMetadata(final Entry entry, final Configuration configuration) throws IOException
+    {
+        final String repoUrl = configuration.getString(Props.MAVEN_REPO_URL.getPropertyName());
+        if (repoUrl == null)
+        {
+            throw new IOException("Missing configuration property '" + Props.MAVEN_REPO_URL.getPropertyName() + "'");
+        }
+
+        final URL url = new URL(repoUrl + entry.m_groupId.replace(".", "/") + "/" + entry.m_artifactId + "/maven-metadata.xml");
+        awaitHostSlot(url.getHost());
+        final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+        connection.setReadTimeout(CONNECT_TIMEOUT_MS);
+        if (!entry.m_etag.isEmpty())
+        {
+            connection.setRequestProperty("If-None-Match", entry.m_etag);
+        }
+        if (!entry.m_lastModified.isEmpty())
+        {
+            connection.setRequestProperty("If-Modified-Since", entry.m_lastModified);
+        }
+
+        try
+        {
+            final int status = connection.getResponseCode();
+            if (status == HttpURLConnection.HTTP_NOT_MODIFIED)
+            {
+                return null;
+            }
+            if (status != HttpURLConnection.HTTP_OK)
+            {
+                throw new IOException("Unexpected response " + status + " for " + url);
+            }
+
+            final String content;
+            try (InputStream in = connection.getInputStream())
+            {
+                content = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            }
+            //The conditional request uses the state of the last successful analysis, until the analysis of this version has succeeded
+            entry.m_polledEtag = valueOrEmpty(connection.getHeaderField("ETag"));
+            entry.m_polledLastModified = valueOrEmpty(connection.getHeaderField("Last-Modified"));
+            final Matcher matcher = LAST_UPDATED_PATTERN.matcher(content);
+            return matcher.find() ? matcher.group(1) : hash(content);
+        }
+        finally
+        {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * @return hash over all tags of the remote repository
+     */
+    private String pollTags(final Configuration configuration) throws Exception
+    {
+        final File repoDir = new File(configuration.getString(Props.REPO_DIRECTORY.getPropertyName()));
+        final List<String> remote = m_shell.execute("git config --get remote.origin.url", repoDir);
+        awaitHostSlot(remote.isEmpty() ? "" : getHost(remote.get(0).trim()));
+        final String fingerprint = hash(String.join("\n", m_shell.execute("git ls-remote --tags origin", repoDir)));
+        //Process statistics are only collected for analyses
+        m_shell.drainStatistics();
+        return fingerprint;
+    }
+
+    /**
+     * @return the host of a Git remote, e.g. 'github.com' for 'https://github.com/org/repo.git' and 'git@github.com:org/repo.git'
+     */
+    static String getHost(final String remoteUrl)
+    {
+        assert remoteUrl != null : "Parameter 'remoteUrl' of method 'getHost' must not be null";
+
+        try
+        {
+            final String host = new URI(remoteUrl).getHost();
+            if (host != null)
+            {
+                return host;
+            }
+        }
+        catch (final URISyntaxException e)
+        {
+            //scp-like syntax
+        }
+        final int atIndex = remoteUrl.indexOf('@');
+        final int colonIndex = remoteUrl.indexOf(':', atIndex + 1);
+        return colonIndex > atIndex ? remoteUrl.substring(atIndex + 1, colonIndex) : remoteUrl;
+    }
+
+    /**
+     * Blocks until the minimum interval since the previous request to the host has passed.
+     */
+    void awaitHostSlot(final String host) throws InterruptedIOException
+    {
+        final long waitMs;
+        synchronized (m_nextRequestPerHost)
+        {
+            final long now = System.currentTimeMillis();
+            final long next = Math.max(now, m_nextRequestPerHost.getOrDefault(host, 0L));
+            m_nextRequestPerHost.put(host, next + m_watchList.m_minHostIntervalMs);
+            waitMs = next - now;
+        }
+
+        if (waitMs > 0)
+        {
+            try
+            {
+                Thread.sleep(waitMs);
+            }
+            catch (final InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for host '" + host + "'");
+            }
+        }
+    }
+
+    private void loadState() throws IOException
+    {
+        if (!m_stateFile.exists())
+        {
+            return;
+        }
+
+        final Map<String, Entry> entries = new HashMap<>();
+        m_watchList.m_entries.forEach(e -> entries.put(e.getKey(), e));
+        for (final String next : Files.readAllLines(m_stateFile.toPath(), StandardCharsets.UTF_8))
+        {
+            final String[] parts = next.split(STATE_SEPARATOR, -1);
+            final Entry entry = parts.length == 4 ? entries.get(parts[0]) : null;
+            if (entry != null)
+            {
+                entry.m_etag = parts[1];
+                entry.m_lastModified = parts[2];
+                entry.m_fingerprint = parts[3];
+            }
+        }
+    }
+
+    private synchronized void saveState() throws IOException
+    {
+        final List<String> lines = new ArrayList<>();
+        for (final Entry next : m_watchList.m_entries)
+        {
+            lines.add(String.join(STATE_SEPARATOR, next.getKey(), next.m_etag, next.m_lastModified, next.m_fingerprint));
+        }
+        final File tempFile = new File(m_stateFile.getAbsolutePath() + ".tmp");
+        Files.write(tempFile.toPath(), lines, StandardCharsets.UTF_8);
+        Files.move(tempFile.toPath(), m_stateFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static String valueOrEmpty(final String value)
+    {
+        return value != null ? value.replace(STATE_SEPARATOR, "") : "";
+    }
+
+    private static String hash(final String content)
+    {
+        try
+        {
+            final byte[] digest = MessageDigest.getInstance("SHA-256").digest(content.getBytes(StandardCharsets.UTF_8));
+            final StringBuilder result = new StringBuilder();
+            for (final byte next : digest)
+            {
+                result.append(String.format("%02x", next));
+            }
+            return result.toString();
+        }
+        catch (final NoSuchAlgorithmException e)
+        {
+            throw new RuntimeException("Hash algorithm not available: SHA-256", e);
+        }
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Sonargraph Integration Access
+ * Copyright (C) 2016-2021 hello2morrow GmbH
+ * mailto: support AT hello2morrow DOT com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hello2morrow.sonargraph.batch.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.UUID;
+
+import org.apache.commons.configuration2.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.hello2morrow.sonargraph.batch.configuration.Props;
+
+/**
+ * Directory based cache of Sonargraph reports and snapshots, keyed by {@link InputHasher#computeKey}.
+ *
+ * Each entry is a sub directory named by the key. Entries are written to a temporary directory first and then renamed, so that the cache directory
+ * can be shared between concurrent runs and machines (e.g. on a network share): an existing entry directory is always complete.
+ *
+ * The key must cover everything contained in a report, i.e. besides the analyzed classes and sources also the baseline report and the name,
+ * version and timestamp of the analyzed version, so that a restored report is identical to the report an analysis would create.
+ */
+public final class AnalysisResultCache
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(AnalysisResultCache.class);
+
+    private static final String ENTRY_FILE_NAME = "result";
+    private static final String REPORTS_DIR = "reports";
+    private static final String SNAPSHOTS_DIR = "snapshots";
+    private static final String TEMP_PREFIX = ".tmp-";
+
+    private final File m_cacheDirectory;
+
+    public AnalysisResultCache(final File cacheDirectory)
+    {
+        assert cacheDirectory != null : "Parameter 'cacheDirectory' of method 'AnalysisResultCache' must not be null";
+        m_cacheDirectory = cacheDirectory;
+        if (!m_cacheDirectory.exists())
+        {
+            m_cacheDirectory.mkdirs();
+        }
+    }
+
+    /**
+     * Sonargraph-Enterprise receives reports only through the upload done by Sonargraph-Build during the analysis, so a version restored from
+     * the cache would be missing there. The cache is therefore not used when an upload host is configured.
+     *
+     * @return the configured cache, or null if no cache directory is configured or reports are uploaded
+     */
+    public static AnalysisResultCache fromConfiguration(final Configuration configuration)
+    {
+        assert configuration != null : "Parameter 'configuration' of method 'fromConfiguration' must not be null";
+
+        final String cachePath = configuration.getString(Props.ANALYSIS_CACHE_DIRECTORY.getPropertyName(), "").trim();
+        if (cachePath.isEmpty())
+        {
+            return null;
+        }
+        final String uploadHostUrl = configuration.getString(Props.UPLOAD_HOST_URL.getPropertyName(), "").trim();
+        if (!uploadHostUrl.isEmpty())
+        {
+            LOGGER.info("Analysis result cache not used, every version is analyzed so that it is uploaded to {}", uploadHostUrl);
+            return null;
+        }
+        return new AnalysisResultCache(new File(cachePath));
+    }
+
+    public boolean contains(final String key)
+    {
+        assert key != null && key.length() > 0 : "Parameter 'key' of method 'contains' must not be empty";
+        return new File(m_cacheDirectory, key).isDirectory();
+    }
+
+    /**
+     * Copies the cached report and snapshot files to the given directories using the given file names.
+     *
+     * @return true, if an entry for the key existed and has been restored.
+     */
+    public boolean restore(final String key, final File reportDirectory, final String reportFileName, final File snapshotDirectory,
+            final String snapshotFileName) throws IOException
+    {
+        assert key != null && key.length() > 0 : "Parameter 'key' of method 'restore' must not be empty";
+        assert reportDirectory != null : "Parameter 'reportDirectory' of method 'restore' must not be null";
+        assert reportFileName != null && reportFileName.length() > 0 : "Parameter 'reportFileName' of method 'restore' must not be empty";
+        assert snapshotDirectory != null : "Parameter 'snapshotDirectory' of method 'restore' must not be null";
+        assert snapshotFileName != null && snapshotFileName.length() > 0 : "Parameter 'snapshotFileName' of method 'restore' must not be empty";
+
+        final File entryDir = new File(m_cacheDirectory, key);
+        if (!entryDir.isDirectory())
+        {
+            return false;
+        }
+
+        copyFiles(new File(entryDir, REPORTS_DIR), ENTRY_FILE_NAME, reportDirectory, reportFileName);
+        copyFiles(new File(entryDir, SNAPSHOTS_DIR), ENTRY_FILE_NAME, snapshotDirectory, snapshotFileName);
+        LOGGER.info("Restored analysis result '{}' from cache entry {}", reportFileName, key);
+        return true;
+    }
+
+    /**
+     * Stores the report and snapshot files that have been created with the given file names. Does nothing if an entry already exists.
+     */
+    public void store(final String key, final File reportDirectory, final String reportFileName, final File snapshotDirectory,
+            final String snapshotFileName) throws IOException
+    {
+        assert key != null && key.length() > 0 : "Parameter 'key' of method 'store' must not be empty";
+        assert reportDirectory != null : "Parameter 'reportDirectory' of method 'store' must not be null";
+        assert reportFileName != null && reportFileName.length() > 0 : "Parameter 'reportFileName' of method 'store' must not be empty";
+        assert snapshotDirectory != null : "Parameter 'snapshotDirectory' of method 'store' must not be null";
+        assert snapshotFileName != null && snapshotFileName.length() > 0 : "Parameter 'snapshotFileName' of method 'store' must not be empty";
+
+        if (contains(key))
+        {
+            return;
+        }
+
+        final File tempDir = new File(m_cacheDirectory, TEMP_PREFIX + UUID.randomUUID().toString());
+        try
+        {
+            final File tempReports = new File(tempDir, REPORTS_DIR);
+            final File tempSnapshots = new File(tempDir, SNAPSHOTS_DIR);
+            tempReports.mkdirs();
+            tempSnapshots.mkdirs();
+            copyFiles(reportDirectory, reportFileName, tempReports, ENTRY_FILE_NAME);
+            copyFiles(snapshotDirectory, snapshotFileName, tempSnapshots, ENTRY_FILE_NAME);
+
+            CacheFiles.moveAtomically(tempDir.toPath(), new File(m_cacheDirectory, key).toPath());
+            LOGGER.info("Stored analysis result '{}' as cache entry {}", reportFileName, key);
+        }
+        catch (final FileSystemException ex)
+        {
+            if (!contains(key))
+            {
+                throw ex;
+            }
+            LOGGER.debug("Cache entry {} has been stored concurrently", key);
+        }
+        finally
+        {
+            CacheFiles.deleteRecursively(tempDir.toPath());
+        }
+    }
+
+    /**
+     * Copies all files of the source directory that belong to the given file name (i.e. the file name plus an extension), replacing the file
+     * name part.
+     */
+    private static void copyFiles(final File sourceDirectory, final String sourceFileName, final File targetDirectory, final String targetFileName)
+            throws IOException
+    {
+        final File[] files = sourceDirectory.listFiles((dir, name) -> name.startsWith(sourceFileName + "."));
+        if (files == null)
+        {
+            return;
+        }
+
+        if (!targetDirectory.exists())
+        {
+            targetDirectory.mkdirs();
+        }
+        for (final File next : files)
+        {
+            if (next.isFile())
+            {
+                final String extension = next.getName().substring(sourceFileName.length());
+                Files.copy(next.toPath(), new File(targetDirectory, targetFileName + extension).toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,705 @@
+/*
+ * Sonargraph Integration Access
+ * Copyright (C) 2016-2021 hello2morrow GmbH
+ * mailto: support AT hello2morrow DOT com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hello2morrow.sonargraph.batch.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+/**
+ * Caches the compiled output of the Maven modules of a repository.
+ *
+ * The key of a module covers its sources, its POM and the POMs of its parents in the reactor, the resolved versions of the external dependencies
+ * and parents declared in these POMs, and the keys of the reactor modules it depends on, so that a module compiled against a changed sibling is
+ * not restored. The version of the reactor itself is not part of the key, since a release usually changes the version in all POMs without
+ * changing the compiled classes. Released artifacts in Maven repositories are immutable, so that the resolved versions determine the dependency
+ * tree. This does not hold for SNAPSHOT dependencies and version ranges outside of the reactor, so repositories using them are not cached.
+ *
+ * Before the build, {@link #restore(File)} replaces the output of unchanged modules with the cached output and deletes the 'target' directory of
+ * changed modules. The copies of resources are removed from the restored output, so that Maven copies and filters them again (e.g. a resource
+ * containing '${project.version}'). Restored files are written after the checkout and thus are newer than the checked-out sources, so that Maven
+ * (started without 'clean') only compiles the changed modules. After a successful build, {@link #store(Map)} adds the output of the changed
+ * modules.
+ */
+public final class BuildOutputCache
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(BuildOutputCache.class);
+
+    private static final String POM_FILE_NAME = "pom.xml";
+    private static final String TARGET_DIR = "target";
+    private static final String SOURCE_DIR = "src";
+    private static final String CLASSES_DIR = "classes";
+    private static final String TEST_CLASSES_DIR = "test-classes";
+    private static final String MAVEN_STATUS_DIR = "maven-status";
+    private static final List<String> OUTPUT_DIRS = Collections.unmodifiableList(Arrays.asList(CLASSES_DIR, TEST_CLASSES_DIR, MAVEN_STATUS_DIR));
+    private static final List<Pair<String, String>> DEFAULT_RESOURCE_DIRS = Collections
+            .unmodifiableList(Arrays.asList(Pair.of("src/main/resources", CLASSES_DIR), Pair.of("src/test/resources", TEST_CLASSES_DIR)));
+    private static final String TEMP_PREFIX = ".tmp-";
+    private static final Pattern PROPERTY_PATTERN = Pattern.compile("\\$\\{([^}]+)\\}");
+    private static final int MAX_PROPERTY_DEPTH = 5;
+
+    /**
+     * Coordinates, dependencies and resources declared in a POM.
+     */
+    static final class Pom
+    {
+        private final Element m_project;
+        private final String m_groupId;
+        private final String m_coordinates;
+        //groupId:artifactId -> declared version, might be null
+        private final Map<String, String> m_dependencies = new LinkedHashMap<>();
+        private final Map<String, String> m_managedVersions = new HashMap<>();
+        private final Map<String, String> m_properties = new HashMap<>();
+        //Resource directory -> output directory below 'target'
+        private final List<Pair<String, String>> m_resourceDirectories = new ArrayList<>();
+        private String m_version;
+        private String m_parent;
+        private String m_parentVersion;
+
+        Pom(final Element project, final String groupId, final String artifactId)
+        {
+            assert project != null : "Parameter 'project' of method 'Pom' must not be null";
+            m_project = project;
+            m_groupId = groupId;
+            m_coordinates = groupId + ":" + artifactId;
+        }
+    }
+
+    /**
+     * The POMs of all modules of a repository.
+     */
+    private static final class Reactor
+    {
+        private final Map<File, Pom> m_poms = new LinkedHashMap<>();
+        //groupId:artifactId -> module directory
+        private final Map<String, File> m_modules = new HashMap<>();
+    }
+
+    private final File m_cacheDirectory;
+
+    public BuildOutputCache(final File cacheDirectory)
+    {
+        assert cacheDirectory != null : "Parameter 'cacheDirectory' of method 'BuildOutputCache' must not be null";
+        m_cacheDirectory = cacheDirectory;
+        if (!m_cacheDirectory.exists())
+        {
+            m_cacheDirectory.mkdirs();
+        }
+    }
+
+    /**
+     * Restores the output of all unchanged modules.
+     *
+     * @return the modules that have not been found in the cache, mapped to their keys.
+     */
+    public Map<File, String> restore(final File repoDir) throws IOException
+    {
+        assert repoDir != null : "Parameter 'repoDir' of method 'restore' must not be null";
+
+        final Map<File, String> missingModules = new LinkedHashMap<>();
+        final List<File> restoredModules = new ArrayList<>();
+        final Reactor reactor = readReactor(repoDir);
+        final Map<File, String> keys = computeKeys(repoDir, reactor);
+        for (final File module : reactor.m_poms.keySet())
+        {
+            final String key = keys.get(module);
+            final File entryDir = key != null ? new File(m_cacheDirectory, key) : null;
+            final File targetDir = new File(module, TARGET_DIR);
+            if (entryDir != null && entryDir.isDirectory())
+            {
+                for (final String next : OUTPUT_DIRS)
+                {
+                    final Path output = new File(targetDir, next).toPath();
+                    CacheFiles.deleteRecursively(output);
+                    final Path cached = new File(entryDir, next).toPath();
+                    if (Files.isDirectory(cached))
+                    {
+                        CacheFiles.copyDirectory(cached, output);
+                    }
+                }
+                deleteResourceCopies(reactor, module);
+                restoredModules.add(module);
+            }
+            else
+            {
+                //Since 'clean' is skipped, stale output of the previously built commit must be removed.
+                CacheFiles.deleteRecursively(targetDir.toPath());
+                if (key != null)
+                {
+                    missingModules.put(module, key);
+                }
+            }
+        }
+
+        LOGGER.info("Restored build output of {} modules from cache, {} modules need to be compiled", restoredModules.size(), missingModules.size());
+        return missingModules;
+    }
+
+    /**
+     * Removes the restored copies of the module's resources. They might have been filtered with the properties of another commit, e.g. the
+     * project version.
+     */
+    private static void deleteResourceCopies(final Reactor reactor, final File module) throws IOException
+    {
+        final Set<Pair<String, String>> resourceDirectories = new LinkedHashSet<>(DEFAULT_RESOURCE_DIRS);
+        for (final File next : getParentChain(reactor, module))
+        {
+            resourceDirectories.addAll(reactor.m_poms.get(next).m_resourceDirectories);
+        }
+
+        final Path targetPath = new File(module, TARGET_DIR).toPath();
+        for (final Pair<String, String> next : resourceDirectories)
+        {
+            final Path resourceDir = module.toPath().resolve(next.getLeft()).normalize();
+            if (!Files.isDirectory(resourceDir))
+            {
+                continue;
+            }
+            final List<Path> files;
+            try (Stream<Path> walk = Files.walk(resourceDir))
+            {
+                files = walk.filter(Files::isRegularFile).collect(Collectors.toList());
+            }
+            final Path outputDir = targetPath.resolve(next.getRight());
+            for (final Path file : files)
+            {
+                Files.deleteIfExists(outputDir.resolve(resourceDir.relativize(file).toString()));
+            }
+        }
+    }
+
+    /**
+     * Stores the build output of the given modules.
+     */
+    public void store(final Map<File, String> modules) throws IOException
+    {
+        assert modules != null : "Parameter 'modules' of method 'store' must not be null";
+
+        for (final Map.Entry<File, String> next : modules.entrySet())
+        {
+            final File entryDir = new File(m_cacheDirectory, next.getValue());
+            if (entryDir.isDirectory())
+            {
+                continue;
+            }
+
+            final File targetDir = new File(next.getKey(), TARGET_DIR);
+            final File tempDir = new File(m_cacheDirectory, TEMP_PREFIX + UUID.randomUUID().toString());
+            try
+            {
+                tempDir.mkdirs();
+                for (final String output : OUTPUT_DIRS)
+                {
+                    final Path outputDir = new File(targetDir, output).toPath();
+                    if (Files.isDirectory(outputDir))
+                    {
+                        CacheFiles.copyDirectory(outputDir, new File(tempDir, output).toPath());
+                    }
+                }
+                CacheFiles.moveAtomically(tempDir.toPath(), entryDir.toPath());
+            }
+            catch (final FileSystemException ex)
+            {
+                if (!entryDir.isDirectory())
+                {
+                    throw ex;
+                }
+            }
+            finally
+            {
+                CacheFiles.deleteRecursively(tempDir.toPath());
+            }
+        }
+    }
+
+    private static Reactor readReactor(final File repoDir) throws IOException
+    {
+        final Reactor reactor = new Reactor();
+        for (final File next : findModules(repoDir))
+        {
+            final Pom pom = readPom(new File(next, POM_FILE_NAME));
+            reactor.m_poms.put(next, pom);
+            reactor.m_modules.put(pom.m_coordinates, next);
+        }
+        return reactor;
+    }
+
+    /**
+     * @return the keys of all modules, empty if the repository cannot be cached
+     */
+    static Map<File, String> computeKeys(final File repoDir) throws IOException
+    {
+        assert repoDir != null : "Parameter 'repoDir' of method 'computeKeys' must not be null";
+        return computeKeys(repoDir, readReactor(repoDir));
+    }
+
+    private static Map<File, String> computeKeys(final File repoDir, final Reactor reactor) throws IOException
+    {
+        final Map<File, Map<String, String>> externalVersions = new HashMap<>();
+        for (final File next : reactor.m_poms.keySet())
+        {
+            final Map<String, String> versions = resolveExternalVersions(reactor, next);
+            final String unstable = findUnstableDependency(versions);
+            if (unstable != null)
+            {
+                LOGGER.info("Build output not cached, dependency '{}' is not a release version", unstable);
+                return Collections.emptyMap();
+            }
+            externalVersions.put(next, versions);
+        }
+
+        final Map<File, String> keys = new HashMap<>();
+        for (final File next : reactor.m_poms.keySet())
+        {
+            computeKey(repoDir, next, reactor, externalVersions, keys, new HashSet<>());
+        }
+        return keys;
+    }
+
+    private static String computeKey(final File repoDir, final File module, final Reactor reactor,
+            final Map<File, Map<String, String>> externalVersions, final Map<File, String> keys, final Set<File> visiting) throws IOException
+    {
+        final String existing = keys.get(module);
+        if (existing != null)
+        {
+            return existing;
+        }
+        if (!visiting.add(module))
+        {
+            throw new IOException("Cyclic module dependency at " + module.getAbsolutePath());
+        }
+
+        final List<File> parentChain = getParentChain(reactor, module);
+        //Sorted, so that the key does not depend on the declaration order. Dependencies declared in parents are inherited.
+        final Set<String> upstreamKeys = new TreeSet<>();
+        for (final File next : parentChain)
+        {
+            for (final String dependency : reactor.m_poms.get(next).m_dependencies.keySet())
+            {
+                final File upstream = reactor.m_modules.get(dependency);
+                if (upstream != null && !upstream.equals(module))
+                {
+                    upstreamKeys.add(computeKey(repoDir, upstream, reactor, externalVersions, keys, visiting));
+                }
+            }
+        }
+
+        final MessageDigest digest = InputHasher.createDigest();
+        InputHasher.update(digest, hashModule(repoDir, module));
+        for (final File next : parentChain)
+        {
+            InputHasher.update(digest, "pom:" + canonicalizePom(reactor.m_poms.get(next), reactor.m_modules.keySet()));
+        }
+        for (final Map.Entry<String, String> next : externalVersions.get(module).entrySet())
+        {
+            InputHasher.update(digest, "external:" + next.getKey() + ":" + next.getValue());
+        }
+        for (final String next : upstreamKeys)
+        {
+            InputHasher.update(digest, "upstream:" + next);
+        }
+        final String key = InputHasher.toHex(digest.digest());
+        keys.put(module, key);
+        return key;
+    }
+
+    /**
+     * @return the module followed by its parents in the reactor, nearest parent first
+     */
+    private static List<File> getParentChain(final Reactor reactor, final File module)
+    {
+        final List<File> chain = new ArrayList<>();
+        for (File next = module; next != null && !chain.contains(next); next = reactor.m_modules.get(reactor.m_poms.get(next).m_parent))
+        {
+            chain.add(next);
+        }
+        return chain;
+    }
+
+    /**
+     * @return the versions of the dependencies (including managed ones) and parents outside of the reactor declared by the module and its parents
+     *         in the reactor, sorted by 'groupId:artifactId'. Properties are resolved, versions managed outside of the reactor are 'managed'.
+     */
+    private static Map<String, String> resolveExternalVersions(final Reactor reactor, final File module)
+    {
+        final List<Pom> chain = getParentChain(reactor, module).stream().map(reactor.m_poms::get).collect(Collectors.toList());
+        final Map<String, String> properties = new HashMap<>();
+        for (int i = chain.size() - 1; i >= 0; i--)
+        {
+            properties.putAll(chain.get(i).m_properties);
+        }
+        if (chain.get(0).m_version != null)
+        {
+            properties.put("project.version", chain.get(0).m_version);
+        }
+
+        final Map<String, String> versions = new TreeMap<>();
+        for (final Pom pom : chain)
+        {
+            if (pom.m_parent != null && !reactor.m_modules.containsKey(pom.m_parent))
+            {
+                versions.put("parent:" + pom.m_parent, resolveProperties(String.valueOf(pom.m_parentVersion), properties));
+            }
+
+            final Map<String, String> declared = new LinkedHashMap<>(pom.m_managedVersions);
+            declared.putAll(pom.m_dependencies);
+            for (final Map.Entry<String, String> next : declared.entrySet())
+            {
+                if (reactor.m_modules.containsKey(next.getKey()) || versions.containsKey(next.getKey()))
+                {
+                    continue;
+                }
+                String version = next.getValue();
+                for (int i = 0; version == null && i < chain.size(); i++)
+                {
+                    version = chain.get(i).m_managedVersions.get(next.getKey());
+                }
+                versions.put(next.getKey(), version != null ? resolveProperties(version, properties) : "managed");
+            }
+        }
+        return versions;
+    }
+
+    /**
+     * @return the first dependency or parent with a SNAPSHOT version or a version range, or null
+     */
+    static String findUnstableDependency(final Map<String, String> versions)
+    {
+        for (final Map.Entry<String, String> next : versions.entrySet())
+        {
+            final String version = next.getValue();
+            if (version.contains("SNAPSHOT") || version.startsWith("[") || version.startsWith("("))
+            {
+                return next.getKey() + ":" + version;
+            }
+        }
+        return null;
+    }
+
+    private static String resolveProperties(final String value, final Map<String, String> properties)
+    {
+        String result = value;
+        for (int i = 0; i < MAX_PROPERTY_DEPTH && result.contains("${"); i++)
+        {
+            final Matcher matcher = PROPERTY_PATTERN.matcher(result);
+            final StringBuffer resolved = new StringBuffer();
+            while (matcher.find())
+            {
+                final String replacement = properties.getOrDefault(matcher.group(1), matcher.group());
+                matcher.appendReplacement(resolved, Matcher.quoteReplacement(replacement));
+            }
+            matcher.appendTail(resolved);
+            result = resolved.toString();
+        }
+        return result.trim();
+    }
+
+    /**
+     * @return the POM without whitespace and comments, and without the version of the reactor: the project version, the version of a parent in
+     *         the reactor, the versions of dependencies in the reactor and properties holding the project version (e.g. '${revision}').
+     */
+    static String canonicalizePom(final Pom pom, final Set<String> reactor)
+    {
+        assert pom != null : "Parameter 'pom' of method 'canonicalizePom' must not be null";
+        assert reactor != null : "Parameter 'reactor' of method 'canonicalizePom' must not be null";
+
+        final StringBuilder builder = new StringBuilder();
+        appendCanonical(pom.m_project, pom, reactor, builder);
+        return builder.toString();
+    }
+
+    private static void appendCanonical(final Element element, final Pom pom, final Set<String> reactor, final StringBuilder builder)
+    {
+        builder.append('<').append(element.getNodeName());
+        final NamedNodeMap attributes = element.getAttributes();
+        final Map<String, String> sortedAttributes = new TreeMap<>();
+        for (int i = 0; i < attributes.getLength(); i++)
+        {
+            sortedAttributes.put(attributes.item(i).getNodeName(), attributes.item(i).getNodeValue());
+        }
+        sortedAttributes.forEach((name, value) -> builder.append(' ').append(name).append("=\"").append(value).append('"'));
+        builder.append('>');
+
+        for (Node next = element.getFirstChild(); next != null; next = next.getNextSibling())
+        {
+            if (next instanceof Element)
+            {
+                if (!isReactorVersion((Element) next, pom, reactor))
+                {
+                    appendCanonical((Element) next, pom, reactor, builder);
+                }
+            }
+            else if (next.getNodeType() == Node.TEXT_NODE || next.getNodeType() == Node.CDATA_SECTION_NODE)
+            {
+                builder.append(next.getNodeValue().trim());
+            }
+        }
+        builder.append("</").append(element.getNodeName()).append('>');
+    }
+
+    private static boolean isReactorVersion(final Element element, final Pom pom, final Set<String> reactor)
+    {
+        final Node parent = element.getParentNode();
+        if (element.getNodeName().equals("version"))
+        {
+            if (parent == pom.m_project)
+            {
+                return true;
+            }
+            if (parent.getNodeName().equals("parent") && parent.getParentNode() == pom.m_project)
+            {
+                return reactor.contains(pom.m_parent);
+            }
+            return parent.getNodeName().equals("dependency") && reactor.contains(getDependencyCoordinates((Element) parent, pom.m_groupId));
+        }
+        return pom.m_version != null && parent.getNodeName().equals("properties") && parent.getParentNode() == pom.m_project
+                && element.getTextContent().trim().equals(pom.m_version);
+    }
+
+    static Pom readPom(final File pomFile) throws IOException
+    {
+        assert pomFile != null : "Parameter 'pomFile' of method 'readPom' must not be null";
+
+        final Document document;
+        try
+        {
+            final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setExpandEntityReferences(false);
+            factory.setIgnoringComments(true);
+            document = factory.newDocumentBuilder().parse(pomFile);
+        }
+        catch (final ParserConfigurationException | SAXException e)
+        {
+            throw new IOException("Failed to parse " + pomFile.getAbsolutePath(), e);
+        }
+
+        final Element project = document.getDocumentElement();
+        final Element parent = getChild(project, "parent");
+        final String parentGroupId = parent != null ? getChildText(parent, "groupId") : null;
+        final String groupId = getChildText(project, "groupId") != null ? getChildText(project, "groupId") : parentGroupId;
+        final Pom pom = new Pom(project, groupId, getChildText(project, "artifactId"));
+        if (parent != null)
+        {
+            pom.m_parent = parentGroupId + ":" + getChildText(parent, "artifactId");
+            pom.m_parentVersion = getChildText(parent, "version");
+        }
+
+        final Element properties = getChild(project, "properties");
+        if (properties != null)
+        {
+            for (Node next = properties.getFirstChild(); next != null; next = next.getNextSibling())
+            {
+                if (next instanceof Element)
+                {
+                    pom.m_properties.put(next.getNodeName(), next.getTextContent().trim());
+                }
+            }
+        }
+        final String version = getChildText(project, "version") != null ? getChildText(project, "version") : pom.m_parentVersion;
+        pom.m_version = version != null ? resolveProperties(version, pom.m_properties) : null;
+
+        //Includes plugin dependencies, all of them affect the compilation
+        final NodeList dependencies = project.getElementsByTagName("dependency");
+        for (int i = 0; i < dependencies.getLength(); i++)
+        {
+            final Element next = (Element) dependencies.item(i);
+            final String coordinates = getDependencyCoordinates(next, groupId);
+            final String dependencyVersion = getChildText(next, "version");
+            final Map<String, String> target = isManaged(next) ? pom.m_managedVersions : pom.m_dependencies;
+            if (dependencyVersion != null || !target.containsKey(coordinates))
+            {
+                target.put(coordinates, dependencyVersion);
+            }
+        }
+
+        final Element build = getChild(project, "build");
+        if (build != null)
+        {
+            addResourceDirectories(pom, getChild(build, "resources"), "resource", CLASSES_DIR);
+            addResourceDirectories(pom, getChild(build, "testResources"), "testResource", TEST_CLASSES_DIR);
+        }
+        return pom;
+    }
+
+    private static String getDependencyCoordinates(final Element dependency, final String projectGroupId)
+    {
+        String groupId = getChildText(dependency, "groupId");
+        if (groupId == null || groupId.equals("${project.groupId}") || groupId.equals("${groupId}"))
+        {
+            groupId = projectGroupId;
+        }
+        return groupId + ":" + getChildText(dependency, "artifactId");
+    }
+
+    private static boolean isManaged(final Element dependency)
+    {
+        for (Node next = dependency.getParentNode(); next instanceof Element; next = next.getParentNode())
+        {
+            if (next.getNodeName().equals("dependencyManagement"))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void addResourceDirectories(final Pom pom, final Element resources, final String name, final String outputDir)
+    {
+        if (resources == null)
+        {
+            return;
+        }
+
+        for (Node next = resources.getFirstChild(); next != null; next = next.getNextSibling())
+        {
+            if (!(next instanceof Element) || !next.getNodeName().equals(name))
+            {
+                continue;
+            }
+            final String directory = getChildText((Element) next, "directory");
+            if (directory == null)
+            {
+                continue;
+            }
+            final String relativeDirectory = directory.replace("${project.basedir}/", "").replace("${basedir}/", "");
+            final String targetPath = getChildText((Element) next, "targetPath");
+            if (!relativeDirectory.contains("${") && (targetPath == null || !targetPath.contains("${")))
+            {
+                pom.m_resourceDirectories.add(Pair.of(relativeDirectory, targetPath != null ? outputDir + "/" + targetPath : outputDir));
+            }
+        }
+    }
+
+    private static Element getChild(final Element element, final String name)
+    {
+        for (Node next = element.getFirstChild(); next != null; next = next.getNextSibling())
+        {
+            if (next instanceof Element && next.getNodeName().equals(name))
+            {
+                return (Element) next;
+            }
+        }
+        return null;
+    }
+
+    private static String getChildText(final Element element, final String name)
+    {
+        final Element child = getChild(element, name);
+        return child != null ? child.getTextContent().trim() : null;
+    }
+
+    /**
+     * @return all directories containing a 'pom.xml', i.e. the root module and all nested modules.
+     */
+    static List<File> findModules(final File repoDir)
+    {
+        assert repoDir != null : "Parameter 'repoDir' of method 'findModules' must not be null";
+
+        final List<File> modules = new ArrayList<>();
+        collectModules(repoDir, modules);
+        return modules;
+    }
+
+    private static void collectModules(final File dir, final List<File> modules)
+    {
+        if (new File(dir, POM_FILE_NAME).isFile())
+        {
+            modules.add(dir);
+        }
+
+        final File[] children = dir.listFiles(f -> f.isDirectory() && !f.getName().startsWith(".") && !f.getName().equals(TARGET_DIR)
+                && !f.getName().equals(SOURCE_DIR));
+        if (children != null)
+        {
+            Arrays.sort(children);
+            for (final File next : children)
+            {
+                collectModules(next, modules);
+            }
+        }
+    }
+
+    /**
+     * @return hash of the module's relative path and sources
+     */
+    static String hashModule(final File repoDir, final File moduleDir) throws IOException
+    {
+        assert repoDir != null : "Parameter 'repoDir' of method 'hashModule' must not be null";
+        assert moduleDir != null : "Parameter 'moduleDir' of method 'hashModule' must not be null";
+
+        final MessageDigest digest = InputHasher.createDigest();
+        final Path repoPath = repoDir.toPath().toAbsolutePath().normalize();
+        final Path modulePath = moduleDir.toPath().toAbsolutePath().normalize();
+        InputHasher.update(digest, repoPath.relativize(modulePath).toString().replace('\\', '/'));
+
+        final Path sourceDir = modulePath.resolve(SOURCE_DIR);
+        if (Files.isDirectory(sourceDir))
+        {
+            final List<Path> files;
+            try (Stream<Path> walk = Files.walk(sourceDir))
+            {
+                files = walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+            }
+            for (final Path next : files)
+            {
+                hashFile(digest, repoPath, next);
+            }
+        }
+        return InputHasher.toHex(digest.digest());
+    }
+
+    private static void hashFile(final MessageDigest digest, final Path repoPath, final Path file) throws IOException
+    {
+        final byte[] content = Files.readAllBytes(file);
+        InputHasher.update(digest, repoPath.relativize(file).toString().replace('\\', '/') + ":" + content.length);
+        digest.update(content);
+    }
+}
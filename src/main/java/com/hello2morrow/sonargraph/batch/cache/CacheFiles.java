@@ -0,0 +1,93 @@
+/*
+ * Sonargraph Integration Access
+ * Copyright (C) 2016-2021 hello2morrow GmbH
+ * mailto: support AT hello2morrow DOT com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hello2morrow.sonargraph.batch.cache;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+final class CacheFiles
+{
+    private CacheFiles()
+    {
+        super();
+    }
+
+    static void deleteRecursively(final Path path) throws IOException
+    {
+        assert path != null : "Parameter 'path' of method 'deleteRecursively' must not be null";
+
+        if (!Files.exists(path))
+        {
+            return;
+        }
+
+        try (Stream<Path> walk = Files.walk(path))
+        {
+            walk.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    /**
+     * Copies the directory tree. File attributes are not copied, i.e. the copied files get the current time as modification time.
+     */
+    static void copyDirectory(final Path source, final Path target) throws IOException
+    {
+        assert source != null : "Parameter 'source' of method 'copyDirectory' must not be null";
+        assert target != null : "Parameter 'target' of method 'copyDirectory' must not be null";
+
+        final List<Path> paths;
+        try (Stream<Path> walk = Files.walk(source))
+        {
+            paths = walk.collect(Collectors.toList());
+        }
+        for (final Path next : paths)
+        {
+            final Path destination = target.resolve(source.relativize(next).toString());
+            if (Files.isDirectory(next))
+            {
+                Files.createDirectories(destination);
+            }
+            else
+            {
+                Files.copy(next, destination, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+
+    static void moveAtomically(final Path source, final Path target) throws IOException
+    {
+        assert source != null : "Parameter 'source' of method 'moveAtomically' must not be null";
+        assert target != null : "Parameter 'target' of method 'moveAtomically' must not be null";
+
+        try
+        {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (final AtomicMoveNotSupportedException ex)
+        {
+            Files.move(source, target);
+        }
+    }
+}
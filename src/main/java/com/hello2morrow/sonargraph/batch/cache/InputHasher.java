@@ -0,0 +1,144 @@
+/*
+ * Sonargraph Integration Access
+ * Copyright (C) 2016-2021 hello2morrow GmbH
+ * mailto: support AT hello2morrow DOT com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hello2morrow.sonargraph.batch.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Computes content hashes that only depend on what Sonargraph analyzes.
+ *
+ * For jars only the content of class and source file entries is considered, so that rebuilt or republished jars with different entry order,
+ * timestamps or manifests result in the same hash.
+ */
+public final class InputHasher
+{
+    private static final String HASH_ALGORITHM = "SHA-256";
+    private static final int BUFFER_SIZE = 8192;
+
+    private InputHasher()
+    {
+        super();
+    }
+
+    public static String computeKey(final List<File> jars, final String sonargraphVersion, final List<File> configFiles) throws IOException
+    {
+        assert jars != null : "Parameter 'jars' of method 'computeKey' must not be null";
+        assert sonargraphVersion != null && sonargraphVersion.length() > 0 : "Parameter 'sonargraphVersion' of method 'computeKey' must not be empty";
+        assert configFiles != null : "Parameter 'configFiles' of method 'computeKey' must not be null";
+
+        final MessageDigest digest = createDigest();
+        update(digest, "sonargraph:" + sonargraphVersion);
+        for (final File next : jars)
+        {
+            update(digest, "jar:" + next.getName());
+            update(digest, hashJarEntries(next));
+        }
+        for (final File next : configFiles)
+        {
+            update(digest, "config:" + next.getName());
+            update(digest, toHex(createDigest().digest(Files.readAllBytes(next.toPath()))));
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * @return hash over name and content of all '.class' and '.java' entries, sorted by name.
+     */
+    public static String hashJarEntries(final File jar) throws IOException
+    {
+        assert jar != null : "Parameter 'jar' of method 'hashJarEntries' must not be null";
+
+        final Map<String, String> entryHashes = new TreeMap<>();
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        try (ZipFile zipFile = new ZipFile(jar))
+        {
+            for (final Enumeration<? extends ZipEntry> entries = zipFile.entries(); entries.hasMoreElements();)
+            {
+                final ZipEntry next = entries.nextElement();
+                if (next.isDirectory() || !isCodeEntry(next.getName()))
+                {
+                    continue;
+                }
+
+                final MessageDigest entryDigest = createDigest();
+                try (InputStream in = zipFile.getInputStream(next))
+                {
+                    int read;
+                    while ((read = in.read(buffer)) != -1)
+                    {
+                        entryDigest.update(buffer, 0, read);
+                    }
+                }
+                entryHashes.put(next.getName(), toHex(entryDigest.digest()));
+            }
+        }
+
+        final MessageDigest digest = createDigest();
+        for (final Map.Entry<String, String> next : entryHashes.entrySet())
+        {
+            update(digest, next.getKey());
+            update(digest, next.getValue());
+        }
+        return toHex(digest.digest());
+    }
+
+    static boolean isCodeEntry(final String entryName)
+    {
+        return entryName.endsWith(".class") || entryName.endsWith(".java");
+    }
+
+    static void update(final MessageDigest digest, final String value)
+    {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    static MessageDigest createDigest()
+    {
+        try
+        {
+            return MessageDigest.getInstance(HASH_ALGORITHM);
+        }
+        catch (final NoSuchAlgorithmException ex)
+        {
+            throw new RuntimeException("Hash algorithm not available: " + HASH_ALGORITHM, ex);
+        }
+    }
+
+    static String toHex(final byte[] bytes)
+    {
+        final StringBuilder result = new StringBuilder(bytes.length * 2);
+        for (final byte next : bytes)
+        {
+            result.append(String.format("%02x", next));
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Sonargraph Integration Access
+ * Copyright (C) 2016-2021 hello2morrow GmbH
+ * mailto: support AT hello2morrow DOT com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hello2morrow.sonargraph.batch.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.apache.commons.configuration2.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.hello2morrow.sonargraph.batch.configuration.Props;
+
+/**
+ * Fast scratch space (e.g. tmpfs or a RAM disk) for temporary directories like downloaded jars, commit checkouts and build output. Reports and
+ * snapshots are never written to the scratch space.
+ *
+ * Directories are allocated with their expected size. If the scratch space is full, i.e. the configured cap or the free space of the file system
+ * would be exceeded, the directory is allocated at the given location on durable storage instead. A directory that runs out of space while it
+ * is being filled can be moved to durable storage with {@link #spill(File, File)}. All jobs of this JVM share the workspace of a scratch
+ * directory, see {@link #getShared(Configuration)}, so that the cap applies to all of them together.
+ */
+public final class ScratchWorkspace
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(ScratchWorkspace.class);
+    private static final long MB = 1024 * 1024;
+
+    private static final Map<File, ScratchWorkspace> s_shared = new HashMap<>();
+
+    private final File m_scratchDirectory;
+    private final long m_maxBytes;
+    private final Map<File, Long> m_reservations = new LinkedHashMap<>();
+
+    ScratchWorkspace(final File scratchDirectory, final long maxBytes)
+    {
+        assert scratchDirectory != null : "Parameter 'scratchDirectory' of method 'ScratchWorkspace' must not be null";
+        assert maxBytes > 0 : "Parameter 'maxBytes' of method 'ScratchWorkspace' must be positive";
+
+        m_scratchDirectory = scratchDirectory.getAbsoluteFile();
+        m_maxBytes = maxBytes;
+        m_scratchDirectory.mkdirs();
+    }
+
+    /**
+     * The cap of a scratch directory is taken from the configuration of the first job that uses it.
+     *
+     * @return the workspace of the configured scratch directory shared by all jobs of this JVM, or null if none is configured
+     */
+    public static synchronized ScratchWorkspace getShared(final Configuration configuration)
+    {
+        assert configuration != null : "Parameter 'configuration' of method 'getShared' must not be null";
+
+        final String scratchDirectory = configuration.getString(Props.SCRATCH_DIRECTORY.getPropertyName(), "").trim();
+        if (scratchDirectory.isEmpty())
+        {
+            return null;
+        }
+        final File key = new File(scratchDirectory).getAbsoluteFile().toPath().normalize().toFile();
+        ScratchWorkspace workspace = s_shared.get(key);
+        if (workspace == null)
+        {
+            final long maxMb = configuration.getLong(Props.SCRATCH_MAX_MB.getPropertyName(), 0);
+            workspace = new ScratchWorkspace(key, maxMb > 0 ? maxMb * MB : key.getUsableSpace());
+            s_shared.put(key, workspace);
+        }
+        return workspace;
+    }
+
+    /**
+     * Allocates an empty directory. If a directory with the name is reserved by another job, a numbered suffix is appended.
+     *
+     * @param name
+     *            name of the directory, should identify the job, e.g. artifact and version
+     * @param expectedBytes
+     *            expected size of the directory's content
+     * @param durableDirectory
+     *            directory on durable storage used if the scratch space is full, or null
+     * @return the allocated directory, or null if the scratch space is full and no durable directory has been given
+     */
+    public synchronized File allocate(final String name, final long expectedBytes, final File durableDirectory) throws IOException
+    {
+        assert name != null && name.length() > 0 : "Parameter 'name' of method 'allocate' must not be empty";
+
+        final String baseName = name.replaceAll("[^A-Za-z0-9._-]", "_");
+        File scratch = new File(m_scratchDirectory, baseName);
+        for (int i = 2; m_reservations.containsKey(scratch); i++)
+        {
+            scratch = new File(m_scratchDirectory, baseName + "-" + i);
+        }
+
+        final long reserved = getReservedBytes();
+        if (reserved + expectedBytes <= m_maxBytes && expectedBytes < m_scratchDirectory.getUsableSpace())
+        {
+            //Not reserved, i.e. left over from a previous run
+            CacheFiles.deleteRecursively(scratch.toPath());
+            Files.createDirectories(scratch.toPath());
+            m_reservations.put(scratch, Math.max(0, expectedBytes));
+            LOGGER.debug("Allocated scratch directory {}, {} of {} MB reserved", scratch, (reserved + expectedBytes) / MB, m_maxBytes / MB);
+            return scratch;
+        }
+
+        LOGGER.info("Scratch space is full ({} of {} MB reserved, {} MB expected), using {}", reserved / MB, m_maxBytes / MB, expectedBytes / MB,
+                durableDirectory);
+        if (durableDirectory != null)
+        {
+            Files.createDirectories(durableDirectory.toPath());
+        }
+        return durableDirectory;
+    }
+
+    /**
+     * Updates the reservation of a scratch directory with its actual size.
+     */
+    public synchronized void adjust(final File directory, final long actualBytes)
+    {
+        assert directory != null : "Parameter 'directory' of method 'adjust' must not be null";
+        if (m_reservations.containsKey(directory.getAbsoluteFile()))
+        {
+            m_reservations.put(directory.getAbsoluteFile(), actualBytes);
+        }
+    }
+
+    public synchronized boolean isScratch(final File directory)
+    {
+        assert directory != null : "Parameter 'directory' of method 'isScratch' must not be null";
+        return m_reservations.containsKey(directory.getAbsoluteFile());
+    }
+
+    /**
+     * Moves a scratch directory to durable storage, e.g. after it ran out of space.
+     *
+     * @return the durable directory
+     */
+    public synchronized File spill(final File directory, final File durableDirectory) throws IOException
+    {
+        assert directory != null : "Parameter 'directory' of method 'spill' must not be null";
+        assert durableDirectory != null : "Parameter 'durableDirectory' of method 'spill' must not be null";
+
+        CacheFiles.deleteRecursively(durableDirectory.toPath());
+        if (directory.exists())
+        {
+            CacheFiles.copyDirectory(directory.toPath(), durableDirectory.toPath());
+        }
+        Files.createDirectories(durableDirectory.toPath());
+        release(directory);
+        LOGGER.info("Moved {} from scratch space to {}", directory, durableDirectory);
+        return durableDirectory;
+    }
+
+    /**
+     * Deletes a scratch directory. Durable directories are kept, like directories created without scratch workspace.
+     */
+    public synchronized void release(final File directory) throws IOException
+    {
+        assert directory != null : "Parameter 'directory' of method 'release' must not be null";
+        if (m_reservations.remove(directory.getAbsoluteFile()) != null)
+        {
+            CacheFiles.deleteRecursively(directory.toPath());
+        }
+    }
+
+    public synchronized long getReservedBytes()
+    {
+        return m_reservations.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    public static void copyDirectory(final File source, final File target) throws IOException
+    {
+        assert source != null : "Parameter 'source' of method 'copyDirectory' must not be null";
+        assert target != null : "Parameter 'target' of method 'copyDirectory' must not be null";
+        CacheFiles.copyDirectory(source.toPath(), target.toPath());
+    }
+
+    /**
+     * @return total size of the files below the directory, excluding the given sub directory names (e.g. '.git')
+     */
+    public static long measure(final File directory, final String... excludedNames) throws IOException
+    {
+        assert directory != null : "Parameter 'directory' of method 'measure' must not be null";
+
+        final Path root = directory.toPath();
+        try (Stream<Path> walk = Files.walk(root))
+        {
+            return walk.filter(p -> !isExcluded(root, p, excludedNames)).filter(Files::isRegularFile).mapToLong(p -> p.toFile().length()).sum();
+        }
+    }
+
+    private static boolean isExcluded(final Path root, final Path path, final String[] excludedNames)
+    {
+        final Path relative = root.relativize(path);
+        for (final String next : excludedNames)
+        {
+            if (relative.getNameCount() > 0 && relative.getName(0).toString().equals(next))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true, if the failure has been caused by a full file system
+     */
+    public static boolean isOutOfSpace(final Throwable throwable)
+    {
+        for (Throwable next = throwable; next != null; next = next.getCause() != next ? next.getCause() : null)
+        {
+            final String message = next.getMessage();
+            if (message != null && (message.contains("No space left on device") || message.contains("There is not enough space on the disk")))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Sonargraph Integration Access
+ * Copyright (C) 2016-2021 hello2morrow GmbH
+ * mailto: support AT hello2morrow DOT com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hello2morrow.sonargraph.batch.commands;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.apache.commons.configuration2.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.hello2morrow.sonargraph.batch.configuration.Props;
+import com.hello2morrow.sonargraph.batch.shell.IShell;
+
+/**
+ * Selects the build tool for a checked-out commit. Property 'buildTool' is either 'maven', 'gradle' or 'auto' (default). With 'auto' the tool is
+ * detected for each commit from the build files in the repository root, preferring Maven if both are present.
+ */
+public final class BuildTools
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(BuildTools.class);
+    private static final String AUTO = "auto";
+
+    private final String m_configuredTool;
+    private final List<IBuildTool> m_buildTools = new ArrayList<>();
+    private final List<IBuildTool> m_usedBuildTools = new ArrayList<>();
+
+    /**
+     * @param workDirectory
+     *            directory for files generated by the build tools
+     */
+    public BuildTools(final Configuration configuration, final File workDirectory)
+    {
+        assert configuration != null : "Parameter 'configuration' of method 'BuildTools' must not be null";
+        assert workDirectory != null : "Parameter 'workDirectory' of method 'BuildTools' must not be null";
+
+        m_configuredTool = configuration.getString(Props.BUILD_TOOL.getPropertyName(), AUTO).trim().toLowerCase(Locale.ENGLISH);
+        m_buildTools.add(new MavenBuildTool(configuration));
+        m_buildTools.add(new GradleBuildTool(configuration, workDirectory));
+        if (!AUTO.equals(m_configuredTool) && m_buildTools.stream().noneMatch(t -> t.getName().equals(m_configuredTool)))
+        {
+            throw new IllegalArgumentException("Unsupported value '" + m_configuredTool + "' for '" + Props.BUILD_TOOL.getPropertyName() + "'");
+        }
+    }
+
+    public IBuildTool select(final File repoDir)
+    {
+        assert repoDir != null : "Parameter 'repoDir' of method 'select' must not be null";
+
+        IBuildTool selected = null;
+        for (final IBuildTool next : m_buildTools)
+        {
+            if (AUTO.equals(m_configuredTool) ? next.canBuild(repoDir) : next.getName().equals(m_configuredTool))
+            {
+                selected = next;
+                break;
+            }
+        }
+        if (selected == null)
+        {
+            throw new IllegalStateException("No build files for Maven or Gradle found in " + repoDir.getAbsolutePath());
+        }
+
+        if (!m_usedBuildTools.contains(selected))
+        {
+            LOGGER.info("Using build tool '{}'", selected.getName());
+            m_usedBuildTools.add(selected);
+        }
+        return selected;
+    }
+
+    public void shutdown(final IShell shell, final File repoDir)
+    {
+        assert shell != null : "Parameter 'shell' of method 'shutdown' must not be null";
+        assert repoDir != null : "Parameter 'repoDir' of method 'shutdown' must not be null";
+
+        for (final IBuildTool next : m_usedBuildTools)
+        {
+            next.shutdown(shell, repoDir);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Sonargraph Integration Access
+ * Copyright (C) 2016-2021 hello2morrow GmbH
+ * mailto: support AT hello2morrow DOT com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hello2morrow.sonargraph.batch.commands;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.hello2morrow.sonargraph.batch.shell.IShell;
+
+/**
+ * Application Class Data Sharing (AppCDS) archive for the Sonargraph-Build client, so that the classes of the client and OSGi framework jars are
+ * not loaded and verified again for every analyzed version.
+ *
+ * The first run for a Sonargraph installation is used as training run: it writes a dynamic archive of all loaded classes on exit. All later runs
+ * map that archive. The archive name is derived from name, size and modification time of the client and OSGi jars and from the Java version, so
+ * that an updated installation or JDK automatically results in a new archive. Requires Java 13 or newer, otherwise no archive is used.
+ */
+public final class ClassDataSharing
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(ClassDataSharing.class);
+
+    private static final int MIN_JAVA_VERSION = 13;
+    private static final String ARCHIVE_EXTENSION = ".jsa";
+    //Example: openjdk 17.0.2 2022-01-18
+    private static final Pattern JAVA_VERSION_PATTERN = Pattern.compile("\\S+\\s+(\\d+)([.\\s].*)?");
+
+    private static String s_javaVersion;
+    private static boolean s_javaVersionDetected = false;
+
+    private final File m_cdsDirectory;
+    private final List<File> m_jars;
+    private File m_archive;
+    private File m_trainingArchive;
+
+    public ClassDataSharing(final File cdsDirectory, final List<File> jars)
+    {
+        assert cdsDirectory != null : "Parameter 'cdsDirectory' of method 'ClassDataSharing' must not be null";
+        assert jars != null && !jars.isEmpty() : "Parameter 'jars' of method 'ClassDataSharing' must not be empty";
+
+        m_cdsDirectory = cdsDirectory;
+        m_jars = jars;
+    }
+
+    /**
+     * @return the JVM arguments to either use the existing archive or to create it at exit, empty if CDS is not supported by the JVM.
+     */
+    public List<String> createArguments(final IShell shell, final File workingDirectory)
+    {
+        assert shell != null : "Parameter 'shell' of method 'createArguments' must not be null";
+        assert workingDirectory != null : "Parameter 'workingDirectory' of method 'createArguments' must not be null";
+
+        final String javaVersion = detectJavaVersion(shell, workingDirectory);
+        if (javaVersion == null)
+        {
+            return Collections.emptyList();
+        }
+
+        m_archive = new File(m_cdsDirectory, createArchiveName(m_jars, javaVersion));
+        if (m_archive.isFile())
+        {
+            return Collections.singletonList("-XX:SharedArchiveFile=" + m_archive.getAbsolutePath());
+        }
+
+        m_cdsDirectory.mkdirs();
+        m_trainingArchive = new File(m_cdsDirectory, m_archive.getName() + ".tmp-" + UUID.randomUUID().toString());
+        LOGGER.info("Creating class data sharing archive {}", m_archive.getAbsolutePath());
+        return Collections.singletonList("-XX:ArchiveClassesAtExit=" + m_trainingArchive.getAbsolutePath());
+    }
+
+    /**
+     * Publishes the archive written by a training run. Must be called after the process has terminated.
+     */
+    public void finish()
+    {
+        if (m_trainingArchive == null)
+        {
+            return;
+        }
+
+        try
+        {
+            if (m_trainingArchive.isFile() && !m_archive.exists())
+            {
+                Files.move(m_trainingArchive.toPath(), m_archive.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            }
+        }
+        catch (final FileSystemException e)
+        {
+            //Archive has been created concurrently by another training run
+            LOGGER.debug("Class data sharing archive {} not stored: {}", m_archive.getAbsolutePath(), e.getMessage());
+        }
+        catch (final IOException e)
+        {
+            LOGGER.warn("Failed to store class data sharing archive {}: {}", m_archive.getAbsolutePath(), e.getMessage());
+        }
+        finally
+        {
+            m_trainingArchive.delete();
+            m_trainingArchive = null;
+        }
+    }
+
+    static String createArchiveName(final List<File> jars, final String javaVersion)
+    {
+        assert jars != null : "Parameter 'jars' of method 'createArchiveName' must not be null";
+        assert javaVersion != null : "Parameter 'javaVersion' of method 'createArchiveName' must not be null";
+
+        final StringBuilder key = new StringBuilder(javaVersion);
+        for (final File next : jars)
+        {
+            key.append('|').append(next.getName()).append(':').append(next.length()).append(':').append(next.lastModified());
+        }
+        return "sonargraph-build-" + UUID.nameUUIDFromBytes(key.toString().getBytes(StandardCharsets.UTF_8)) + ARCHIVE_EXTENSION;
+    }
+
+    /**
+     * @return the output of 'java --version', if the major version supports dynamic archives, otherwise null.
+     */
+    private static synchronized String detectJavaVersion(final IShell shell, final File workingDirectory)
+    {
+        if (!s_javaVersionDetected)
+        {
+            s_javaVersionDetected = true;
+            try
+            {
+                final List<String> output = shell.execute("java --version", workingDirectory);
+                if (!output.isEmpty() && getMajorVersion(output.get(0)) >= MIN_JAVA_VERSION)
+                {
+                    s_javaVersion = String.join("\n", output);
+                }
+                else
+                {
+                    LOGGER.info("Class data sharing archive not used, Java {} or newer required", MIN_JAVA_VERSION);
+                }
+            }
+            catch (final Exception e)
+            {
+                LOGGER.info("Class data sharing archive not used, failed to determine Java version: {}", e.getMessage());
+            }
+        }
+        return s_javaVersion;
+    }
+
+    static int getMajorVersion(final String versionLine)
+    {
+        final Matcher matcher = JAVA_VERSION_PATTERN.matcher(versionLine.trim());
+        return matcher.matches() ? Integer.parseInt(matcher.group(1)) : -1;
+    }
+}
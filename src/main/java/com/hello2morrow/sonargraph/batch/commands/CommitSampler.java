@@ -0,0 +1,277 @@
+/*
+ * Sonargraph Integration Access
+ * Copyright (C) 2016-2021 hello2morrow GmbH
+ * mailto: support AT hello2morrow DOT com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hello2morrow.sonargraph.batch.commands;
+
+import java.io.File;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.IsoFields;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.apache.commons.configuration2.Configuration;
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.apache.commons.lang3.tuple.Pair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.hello2morrow.sonargraph.batch.configuration.Props;
+import com.hello2morrow.sonargraph.batch.shell.IShell;
+
+/**
+ * Selects commits of the first-parent history of a branch in addition to the tagged commits, for repositories that are rarely tagged.
+ *
+ * The time based modes select the last commit of each day, week or month (UTC), i.e. the state of the branch at the end of the interval. The
+ * 'merge' mode selects every Nth merge commit. The number of sampled commits can be limited, in which case they are thinned out evenly, keeping
+ * the first and the last. Tagged commits are always kept.
+ */
+public final class CommitSampler
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(CommitSampler.class);
+    private static final String FIELD_SEPARATOR = ",";
+    private static final DateTimeFormatter LABEL_DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd", Locale.ENGLISH);
+    private static final int SHORT_COMMIT_LENGTH = 8;
+
+    public enum Mode
+    {
+        DAY,
+        WEEK,
+        MONTH,
+        MERGE
+    }
+
+    static final class Commit
+    {
+        private final String m_id;
+        private final long m_epochSeconds;
+        private final boolean m_merge;
+
+        Commit(final String id, final long epochSeconds, final boolean merge)
+        {
+            m_id = id;
+            m_epochSeconds = epochSeconds;
+            m_merge = merge;
+        }
+
+        String getId()
+        {
+            return m_id;
+        }
+
+        long getEpochSeconds()
+        {
+            return m_epochSeconds;
+        }
+
+        boolean isMerge()
+        {
+            return m_merge;
+        }
+    }
+
+    private final Mode m_mode;
+    private final int m_everyNthMerge;
+    private final int m_maxCommits;
+
+    CommitSampler(final Mode mode, final int everyNthMerge, final int maxCommits)
+    {
+        assert mode != null : "Parameter 'mode' of method 'CommitSampler' must not be null";
+        assert everyNthMerge > 0 : "Parameter 'everyNthMerge' of method 'CommitSampler' must be positive";
+        m_mode = mode;
+        m_everyNthMerge = everyNthMerge;
+        m_maxCommits = maxCommits;
+    }
+
+    /**
+     * @return the configured sampler, or null if only tagged commits are analyzed
+     */
+    public static CommitSampler fromConfiguration(final Configuration configuration)
+    {
+        assert configuration != null : "Parameter 'configuration' of method 'fromConfiguration' must not be null";
+
+        final String mode = configuration.getString(Props.COMMIT_SAMPLING.getPropertyName(), "").trim();
+        if (mode.isEmpty() || mode.equalsIgnoreCase("none"))
+        {
+            return null;
+        }
+        return new CommitSampler(Mode.valueOf(mode.toUpperCase(Locale.ENGLISH)),
+                Math.max(1, configuration.getInt(Props.COMMIT_SAMPLING_EVERY_NTH_MERGE.getPropertyName(), 10)),
+                configuration.getInt(Props.COMMIT_SAMPLING_MAX_COMMITS.getPropertyName(), 0));
+    }
+
+    /**
+     * Reads the first-parent history of the checked out branch in a single pass and merges the sampled commits with the tagged commits.
+     *
+     * @return commits and tags (or labels 'yyyy-MM-dd-commit' of sampled commits), oldest first
+     */
+    public List<Pair<String, String>> sample(final IShell shell, final File repoDir, final List<Pair<String, String>> commitsAndTags) throws Exception
+    {
+        assert shell != null : "Parameter 'shell' of method 'sample' must not be null";
+        assert repoDir != null : "Parameter 'repoDir' of method 'sample' must not be null";
+        assert commitsAndTags != null : "Parameter 'commitsAndTags' of method 'sample' must not be null";
+
+        final List<String> lines = shell.execute(
+                Arrays.asList("git", "log", "--first-parent", "--reverse", "--pretty=format:%H" + FIELD_SEPARATOR + "%ct" + FIELD_SEPARATOR + "%P"),
+                repoDir);
+        final List<Commit> history = lines.stream().map(CommitSampler::parseCommit).filter(c -> c != null).collect(Collectors.toList());
+        final List<Commit> sampled = thinOut(select(history), m_maxCommits);
+        LOGGER.info("Sampled {} of {} first-parent commits by {}", sampled.size(), history.size(), m_mode.name().toLowerCase(Locale.ENGLISH));
+        return merge(commitsAndTags, sampled, history);
+    }
+
+    static Commit parseCommit(final String line)
+    {
+        //Example: 'ccbfe413378ec4b7d48c96840067e0923980d549,1614556800,70fa2fc5 23b492fe'
+        final String[] parts = line.trim().replace("'", "").split(FIELD_SEPARATOR, -1);
+        if (parts.length < 3 || parts[0].isEmpty())
+        {
+            LOGGER.warn("Skipping unexpected line of commit history: '{}'", line);
+            return null;
+        }
+        try
+        {
+            return new Commit(parts[0], Long.parseLong(parts[1]), parts[2].trim().split("\\s+").length > 1);
+        }
+        catch (final NumberFormatException e)
+        {
+            LOGGER.warn("Skipping line with invalid commit time: '{}'", line);
+            return null;
+        }
+    }
+
+    /**
+     * @param history
+     *            first-parent history, oldest first
+     */
+    List<Commit> select(final List<Commit> history)
+    {
+        assert history != null : "Parameter 'history' of method 'select' must not be null";
+
+        final List<Commit> selected = new ArrayList<>();
+        if (m_mode == Mode.MERGE)
+        {
+            int merges = 0;
+            for (final Commit next : history)
+            {
+                if (next.isMerge() && ++merges % m_everyNthMerge == 0)
+                {
+                    selected.add(next);
+                }
+            }
+            return selected;
+        }
+
+        //The last commit of each interval wins
+        final Map<Long, Commit> lastPerInterval = new LinkedHashMap<>();
+        for (final Commit next : history)
+        {
+            lastPerInterval.put(getInterval(next.getEpochSeconds()), next);
+        }
+        selected.addAll(lastPerInterval.values());
+        return selected;
+    }
+
+    private long getInterval(final long epochSeconds)
+    {
+        final LocalDate date = Instant.ofEpochSecond(epochSeconds).atZone(ZoneOffset.UTC).toLocalDate();
+        switch (m_mode)
+        {
+        case DAY:
+            return date.toEpochDay();
+        case WEEK:
+            return date.get(IsoFields.WEEK_BASED_YEAR) * 100L + date.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR);
+        case MONTH:
+            return date.getYear() * 100L + date.getMonthValue();
+        default:
+            throw new IllegalStateException("Unsupported mode: " + m_mode);
+        }
+    }
+
+    /**
+     * @param maxCommits
+     *            maximum number of commits, 0 for no limit
+     * @return evenly spaced commits including the first and the last
+     */
+    static List<Commit> thinOut(final List<Commit> commits, final int maxCommits)
+    {
+        assert commits != null : "Parameter 'commits' of method 'thinOut' must not be null";
+
+        if (maxCommits <= 0 || commits.size() <= maxCommits)
+        {
+            return commits;
+        }
+        if (maxCommits == 1)
+        {
+            return Arrays.asList(commits.get(commits.size() - 1));
+        }
+        final List<Commit> result = new ArrayList<>(maxCommits);
+        for (int i = 0; i < maxCommits; i++)
+        {
+            result.add(commits.get((int) Math.round((double) i * (commits.size() - 1) / (maxCommits - 1))));
+        }
+        return result;
+    }
+
+    /**
+     * Orders tagged and sampled commits by their position in the first-parent history, commit times are not monotonic (e.g. after rebases or
+     * with skewed clocks). Tagged commits that are not part of the first-parent history keep their position relative to the previous tag.
+     */
+    static List<Pair<String, String>> merge(final List<Pair<String, String>> commitsAndTags, final List<Commit> sampled, final List<Commit> history)
+    {
+        final Map<String, Integer> positions = new HashMap<>();
+        for (int i = 0; i < history.size(); i++)
+        {
+            positions.put(history.get(i).getId(), i);
+        }
+
+        final List<Pair<Integer, Pair<String, String>>> entries = new ArrayList<>();
+        final Set<String> tagged = commitsAndTags.stream().map(Pair::getKey).collect(Collectors.toSet());
+        int previousPosition = -1;
+        for (final Pair<String, String> next : commitsAndTags)
+        {
+            previousPosition = positions.getOrDefault(next.getKey(), previousPosition);
+            entries.add(new ImmutablePair<>(previousPosition, next));
+        }
+        for (final Commit next : sampled)
+        {
+            if (!tagged.contains(next.getId()))
+            {
+                entries.add(new ImmutablePair<>(positions.get(next.getId()), new ImmutablePair<>(next.getId(), createLabel(next))));
+            }
+        }
+        //Stable sort, i.e. tags not part of the first-parent history stay behind the previous tag
+        entries.sort(Comparator.comparingInt(e -> e.getKey()));
+        return entries.stream().map(Pair::getValue).collect(Collectors.toList());
+    }
+
+    static String createLabel(final Commit commit)
+    {
+        return LABEL_DATE_FORMAT.format(Instant.ofEpochSecond(commit.getEpochSeconds()).atZone(ZoneOffset.UTC)) + "-"
+                + commit.getId().substring(0, Math.min(SHORT_COMMIT_LENGTH, commit.getId().length()));
+    }
+}
@@ -22,6 +22,8 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -88,9 +90,18 @@ public final class GitCommands
             return null;
         }
 
+        writeCommitsAndTags(commitsAndTagsFile, result);
+        return result;
+    }
+
+    public static void writeCommitsAndTags(final File commitsAndTagsFile, final List<Pair<String, String>> commitsAndTags)
+    {
+        assert commitsAndTagsFile != null : "Parameter 'commitsAndTagsFile' of method 'writeCommitsAndTags' must not be null";
+        assert commitsAndTags != null : "Parameter 'commitsAndTags' of method 'writeCommitsAndTags' must not be null";
+
         try (Writer writer = new BufferedWriter(new FileWriter(commitsAndTagsFile)))
         {
-            for (final Pair<String, String> next : result)
+            for (final Pair<String, String> next : commitsAndTags)
             {
                 writer.append(next.getKey());
                 writer.append(" ");
@@ -103,8 +114,6 @@ public final class GitCommands
         {
             LOGGER.error("Failed to write file containing commits and tags", e);
         }
-
-        return result;
     }
 
     // Example line:
@@ -196,4 +205,98 @@ public final class GitCommands
 
         shell.execute("git checkout " + commit, repoDir);
     }
+
+    /**
+     * Clones the repository. If a reference repository is given, objects available there are not copied but borrowed via 'objects/info/alternates'.
+     */
+    public static void cloneRepository(final IShell shell, final String url, final File targetDir, final File referenceRepoDir) throws Exception
+    {
+        assert shell != null : "Parameter 'shell' of method 'cloneRepository' must not be null";
+        assert url != null && url.length() > 0 : "Parameter 'url' of method 'cloneRepository' must not be empty";
+        assert targetDir != null : "Parameter 'targetDir' of method 'cloneRepository' must not be null";
+
+        final File parentDir = targetDir.getAbsoluteFile().getParentFile();
+        parentDir.mkdirs();
+        final String reference = referenceRepoDir != null ? "--reference " + referenceRepoDir.getAbsolutePath() + " " : "";
+        shell.execute("git clone " + reference + url + " " + targetDir.getAbsolutePath(), parentDir);
+    }
+
+    /**
+     * Lets the repository borrow objects from the other repository. The other repository must not be pruned (e.g. by 'git gc') while
+     * objects are borrowed from it.
+     *
+     * @return true, if the alternate has been added, false if it was already configured
+     */
+    public static boolean addAlternate(final File repoDir, final File otherRepoDir) throws IOException
+    {
+        assert repoDir != null : "Parameter 'repoDir' of method 'addAlternate' must not be null";
+        assert otherRepoDir != null : "Parameter 'otherRepoDir' of method 'addAlternate' must not be null";
+
+        final File otherObjects = getObjectsDirectory(otherRepoDir);
+        if (!otherObjects.isDirectory())
+        {
+            throw new IOException("Not a Git repository: " + otherRepoDir.getAbsolutePath());
+        }
+        final File alternates = new File(getObjectsDirectory(repoDir), "info/alternates");
+        final List<String> lines = alternates.exists() ? Files.readAllLines(alternates.toPath()) : new ArrayList<>();
+        final String otherObjectsPath = otherObjects.getCanonicalPath();
+        if (lines.stream().map(String::trim).anyMatch(otherObjectsPath::equals))
+        {
+            return false;
+        }
+        alternates.getParentFile().mkdirs();
+        Files.writeString(alternates.toPath(), otherObjectsPath + "\n", StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        return true;
+    }
+
+    /**
+     * Keeps unreachable objects of a repository other repositories borrow objects from. Otherwise 'git gc' (also triggered automatically by
+     * 'git pull') might prune objects that are still used by the other repositories.
+     */
+    public static void disablePruning(final IShell shell, final File repoDir) throws Exception
+    {
+        assert shell != null : "Parameter 'shell' of method 'disablePruning' must not be null";
+        assert repoDir != null : "Parameter 'repoDir' of method 'disablePruning' must not be null";
+
+        shell.execute("git config gc.pruneExpire never", repoDir);
+    }
+
+    /**
+     * Removes objects from the local packs that are available via alternates.
+     */
+    public static void repackLocal(final IShell shell, final File repoDir) throws Exception
+    {
+        assert shell != null : "Parameter 'shell' of method 'repackLocal' must not be null";
+        assert repoDir != null : "Parameter 'repoDir' of method 'repackLocal' must not be null";
+
+        shell.execute("git repack -a -d -l", repoDir);
+    }
+
+    /**
+     * Creates an additional working tree of the repository with a detached HEAD. Commits can then be checked out and built there.
+     */
+    public static void addWorktree(final IShell shell, final File repoDir, final File worktreeDir) throws Exception
+    {
+        assert shell != null : "Parameter 'shell' of method 'addWorktree' must not be null";
+        assert repoDir != null : "Parameter 'repoDir' of method 'addWorktree' must not be null";
+        assert worktreeDir != null : "Parameter 'worktreeDir' of method 'addWorktree' must not be null";
+
+        shell.execute("git worktree add --detach " + worktreeDir.getAbsolutePath(), repoDir);
+    }
+
+    public static void removeWorktree(final IShell shell, final File repoDir, final File worktreeDir) throws Exception
+    {
+        assert shell != null : "Parameter 'shell' of method 'removeWorktree' must not be null";
+        assert repoDir != null : "Parameter 'repoDir' of method 'removeWorktree' must not be null";
+        assert worktreeDir != null : "Parameter 'worktreeDir' of method 'removeWorktree' must not be null";
+
+        shell.execute("git worktree remove --force " + worktreeDir.getAbsolutePath(), repoDir);
+        shell.execute("git worktree prune", repoDir);
+    }
+
+    private static File getObjectsDirectory(final File repoDir)
+    {
+        final File dotGit = new File(repoDir, ".git");
+        return new File(dotGit.isDirectory() ? dotGit : repoDir, "objects");
+    }
 }
@@ -0,0 +1,197 @@
+/*
+ * Sonargraph Integration Access
+ * Copyright (C) 2016-2021 hello2morrow GmbH
+ * mailto: support AT hello2morrow DOT com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hello2morrow.sonargraph.batch.commands;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.apache.commons.configuration2.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.hello2morrow.sonargraph.batch.configuration.Props;
+import com.hello2morrow.sonargraph.batch.shell.IShell;
+import com.hello2morrow.sonargraph.batch.shell.IShell.OS;
+
+/**
+ * Builds with Gradle, using the Gradle wrapper of the checked-out commit if available.
+ *
+ * All builds run with '--daemon', so the daemon started by the first build is reused for later builds as long as Gradle version and Java home
+ * don't change. The local build cache is redirected via an init script to a directory that is shared across all commits.
+ */
+public final class GradleBuildTool implements IBuildTool
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(GradleBuildTool.class);
+
+    static final String NAME = "gradle";
+    private static final List<String> BUILD_FILES = Collections
+            .unmodifiableList(Arrays.asList("build.gradle", "build.gradle.kts", "settings.gradle", "settings.gradle.kts"));
+    private static final List<String> DEFAULT_TASKS = Collections.unmodifiableList(Arrays.asList("classes", "testClasses"));
+    private static final String INIT_SCRIPT_NAME = "sonargraph-build-cache.init.gradle";
+
+    private final String m_javaHome;
+    private final List<String> m_tasks;
+    private final String m_gradleUserHome;
+    private final File m_buildCacheDirectory;
+    private final List<String> m_additionalArguments;
+    private final File m_workDirectory;
+    private File m_initScript;
+    private List<String> m_lastExecutable;
+
+    /**
+     * @param workDirectory
+     *            directory for the generated init script
+     */
+    public GradleBuildTool(final Configuration configuration, final File workDirectory)
+    {
+        assert configuration != null : "Parameter 'configuration' of method 'GradleBuildTool' must not be null";
+        assert workDirectory != null : "Parameter 'workDirectory' of method 'GradleBuildTool' must not be null";
+
+        m_javaHome = configuration.getString(Props.JAVA_HOME_FOR_MVN.getPropertyName());
+        m_tasks = getNonEmptyValues(configuration.getList(String.class, Props.GRADLE_TASKS.getPropertyName(), Collections.emptyList()));
+        if (m_tasks.isEmpty())
+        {
+            m_tasks.addAll(DEFAULT_TASKS);
+        }
+        m_gradleUserHome = configuration.getString(Props.GRADLE_USER_HOME.getPropertyName());
+        final String buildCachePath = configuration.getString(Props.GRADLE_BUILD_CACHE_DIRECTORY.getPropertyName());
+        m_buildCacheDirectory = buildCachePath != null && !buildCachePath.trim().isEmpty() ? new File(buildCachePath.trim()) : null;
+        m_additionalArguments = getNonEmptyValues(
+                configuration.getList(String.class, Props.GRADLE_ADDITIONAL_ARGUMENTS.getPropertyName(), Collections.emptyList()));
+        m_workDirectory = workDirectory;
+    }
+
+    private static List<String> getNonEmptyValues(final List<String> values)
+    {
+        return values.stream().map(String::trim).filter(v -> !v.isEmpty()).collect(Collectors.toCollection(ArrayList::new));
+    }
+
+    @Override
+    public String getName()
+    {
+        return NAME;
+    }
+
+    @Override
+    public boolean canBuild(final File repoDir)
+    {
+        assert repoDir != null : "Parameter 'repoDir' of method 'canBuild' must not be null";
+        return BUILD_FILES.stream().anyMatch(f -> new File(repoDir, f).isFile());
+    }
+
+    @Override
+    public void build(final IShell shell, final File repoDir) throws Exception
+    {
+        assert shell != null : "Parameter 'shell' of method 'build' must not be null";
+        assert repoDir != null : "Parameter 'repoDir' of method 'build' must not be null";
+
+        final List<String> executable = getExecutable(shell, repoDir);
+        final List<String> command = new ArrayList<>(executable);
+        command.addAll(createOptions());
+        command.add("--build-cache");
+        if (m_buildCacheDirectory != null)
+        {
+            command.add("--init-script");
+            command.add(getInitScript().getAbsolutePath());
+        }
+        command.addAll(m_additionalArguments);
+        command.addAll(m_tasks);
+
+        shell.execute(command, repoDir);
+        m_lastExecutable = executable;
+    }
+
+    private List<String> createOptions()
+    {
+        final List<String> options = new ArrayList<>();
+        options.add("--daemon");
+        options.add("--console=plain");
+        if (m_gradleUserHome != null && !m_gradleUserHome.trim().isEmpty())
+        {
+            options.add("--gradle-user-home");
+            options.add(m_gradleUserHome.trim());
+        }
+        if (m_javaHome != null && !m_javaHome.trim().isEmpty())
+        {
+            options.add("-Dorg.gradle.java.home=" + m_javaHome.trim());
+        }
+        return options;
+    }
+
+    private List<String> getExecutable(final IShell shell, final File repoDir)
+    {
+        if (shell.getOs() == OS.WINDOWS)
+        {
+            if (new File(repoDir, "gradlew.bat").isFile())
+            {
+                return Collections.singletonList("gradlew.bat");
+            }
+        }
+        else if (new File(repoDir, "gradlew").isFile())
+        {
+            return Arrays.asList("sh", "./gradlew");
+        }
+        return Collections.singletonList("gradle");
+    }
+
+    private File getInitScript() throws IOException
+    {
+        if (m_initScript == null)
+        {
+            m_buildCacheDirectory.mkdirs();
+            m_workDirectory.mkdirs();
+            final File initScript = new File(m_workDirectory, INIT_SCRIPT_NAME);
+            final String cachePath = m_buildCacheDirectory.getAbsolutePath().replace('\\', '/');
+            Files.writeString(initScript.toPath(),
+                    "settingsEvaluated { settings ->\n" + "    settings.buildCache {\n" + "        local {\n" + "            directory = new File('"
+                            + cachePath + "')\n" + "            enabled = true\n" + "        }\n" + "    }\n" + "}\n");
+            m_initScript = initScript;
+        }
+        return m_initScript;
+    }
+
+    @Override
+    public void shutdown(final IShell shell, final File repoDir)
+    {
+        assert shell != null : "Parameter 'shell' of method 'shutdown' must not be null";
+        assert repoDir != null : "Parameter 'repoDir' of method 'shutdown' must not be null";
+
+        if (m_lastExecutable == null)
+        {
+            return;
+        }
+
+        final List<String> command = new ArrayList<>(m_lastExecutable);
+        command.addAll(createOptions());
+        command.add("--stop");
+        try
+        {
+            shell.execute(command, repoDir);
+        }
+        catch (final Exception e)
+        {
+            LOGGER.warn("Failed to stop Gradle daemon: {}", e.getMessage());
+        }
+    }
+}
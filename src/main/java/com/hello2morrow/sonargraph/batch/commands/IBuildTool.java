@@ -0,0 +1,44 @@
+/*
+ * Sonargraph Integration Access
+ * Copyright (C) 2016-2021 hello2morrow GmbH
+ * mailto: support AT hello2morrow DOT com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hello2morrow.sonargraph.batch.commands;
+
+import java.io.File;
+
+import com.hello2morrow.sonargraph.batch.shell.IShell;
+
+/**
+ * Compiles the checked-out commit of a repository, so that it can be analyzed by Sonargraph.
+ *
+ * Implementations are used for all commits of a run and may keep state (e.g. daemons) between builds.
+ */
+public interface IBuildTool
+{
+    String getName();
+
+    /**
+     * @return true, if the checked-out tree of the repository can be built with this tool.
+     */
+    boolean canBuild(File repoDir);
+
+    void build(IShell shell, File repoDir) throws Exception;
+
+    /**
+     * Called once after all commits have been built, e.g. to stop daemons.
+     */
+    void shutdown(IShell shell, File repoDir);
+}
@@ -0,0 +1,289 @@
+/*
+ * Sonargraph Integration Access
+ * Copyright (C) 2016-2021 hello2morrow GmbH
+ * mailto: support AT hello2morrow DOT com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hello2morrow.sonargraph.batch.commands;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.commons.configuration2.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.hello2morrow.sonargraph.batch.configuration.Props;
+
+/**
+ * JVM options for the Sonargraph-Build process.
+ *
+ * The max heap is estimated from the size of the analyzed class and source files and raised to the peak heap usage after garbage collection
+ * observed for the previous versions of the same system (plus head room). The peak usage is extracted from the GC log written by each
+ * Sonargraph-Build run.
+ */
+public final class JvmProfile
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(JvmProfile.class);
+
+    private static final String HEAP_HISTORY_SEPARATOR = " -- ";
+    private static final int HEAP_HISTORY_ENTRIES_CONSIDERED = 5;
+    private static final double HEAD_ROOM_FACTOR = 1.3;
+    private static final int MB = 1024 * 1024;
+    private static final List<String> METADATA_DIRECTORIES = Collections.unmodifiableList(Arrays.asList(".git", ".gradle", ".mvn"));
+    private static final List<String> BUILD_OUTPUT_DIRECTORIES = Collections.unmodifiableList(Arrays.asList("target", "build"));
+    private static final List<String> BUILD_FILES = Collections
+            .unmodifiableList(Arrays.asList("pom.xml", "build.gradle", "build.gradle.kts", "settings.gradle", "settings.gradle.kts"));
+
+    //Example: [12.345s][info][gc] GC(7) Pause Young (Normal) (G1 Evacuation Pause) 1230M->356M(2048M) 12.345ms
+    private static final Pattern GC_LINE_PATTERN = Pattern.compile(".*\\sGC\\(\\d+\\).*\\s(\\d+)([KMG])->(\\d+)([KMG])\\((\\d+)([KMG])\\).*");
+
+    private final boolean m_enableAssertions;
+    private final List<String> m_jvmArguments;
+    private final int m_minHeapMb;
+    private final int m_maxHeapMb;
+    private final int m_heapMbPerInputMb;
+
+    JvmProfile(final boolean enableAssertions, final List<String> jvmArguments, final int minHeapMb, final int maxHeapMb,
+            final int heapMbPerInputMb)
+    {
+        assert jvmArguments != null : "Parameter 'jvmArguments' of method 'JvmProfile' must not be null";
+        assert minHeapMb > 0 && minHeapMb <= maxHeapMb : "Invalid heap limits: " + minHeapMb + ", " + maxHeapMb;
+
+        m_enableAssertions = enableAssertions;
+        m_jvmArguments = jvmArguments;
+        m_minHeapMb = minHeapMb;
+        m_maxHeapMb = maxHeapMb;
+        m_heapMbPerInputMb = heapMbPerInputMb;
+    }
+
+    public static JvmProfile fromConfiguration(final Configuration configuration)
+    {
+        assert configuration != null : "Parameter 'configuration' of method 'fromConfiguration' must not be null";
+
+        final boolean enableAssertions = configuration.getBoolean(Props.SONARGRAPH_ENABLE_ASSERTIONS.getPropertyName(), false);
+        final List<String> jvmArguments = configuration
+                .getList(String.class, Props.SONARGRAPH_JVM_ARGUMENTS.getPropertyName(), Collections.emptyList()).stream().map(String::trim)
+                .filter(a -> !a.isEmpty()).collect(Collectors.toList());
+        final int minHeapMb = configuration.getInt(Props.SONARGRAPH_MIN_HEAP_MB.getPropertyName(), 1024);
+        final int maxHeapMb = configuration.getInt(Props.SONARGRAPH_MAX_HEAP_MB.getPropertyName(), 8192);
+        final int heapMbPerInputMb = configuration.getInt(Props.SONARGRAPH_HEAP_MB_PER_INPUT_MB.getPropertyName(), 100);
+        return new JvmProfile(enableAssertions, jvmArguments, minHeapMb, Math.max(minHeapMb, maxHeapMb), heapMbPerInputMb);
+    }
+
+    /**
+     * @param inputBytes
+     *            size of the analyzed class and source files
+     * @param previousPeakMb
+     *            peak heap usage of previous runs for the same system, or 0 if unknown
+     * @return max heap in MB
+     */
+    public int computeHeapMb(final long inputBytes, final int previousPeakMb)
+    {
+        final long estimate = m_minHeapMb + (inputBytes * m_heapMbPerInputMb) / MB;
+        final long observed = Math.round(previousPeakMb * HEAD_ROOM_FACTOR);
+        return (int) Math.min(m_maxHeapMb, Math.max(estimate, observed));
+    }
+
+    public int getMaxHeapMb()
+    {
+        return m_maxHeapMb;
+    }
+
+    public List<String> createArguments(final int heapMb, final File gcLogFile)
+    {
+        assert heapMb > 0 : "Parameter 'heapMb' of method 'createArguments' must be positive";
+        assert gcLogFile != null : "Parameter 'gcLogFile' of method 'createArguments' must not be null";
+
+        final List<String> arguments = new ArrayList<>();
+        if (m_enableAssertions)
+        {
+            arguments.add("-ea");
+        }
+        arguments.add("-Xmx" + heapMb + "m");
+        arguments.add("-Xlog:gc:file=" + gcLogFile.getAbsolutePath());
+        arguments.addAll(m_jvmArguments);
+        return arguments;
+    }
+
+    /**
+     * @return the largest heap usage after a garbage collection, or 0 if the GC log does not exist or contains no GC events. The usage before a
+     *         collection is not used, since it grows with the heap size rather than with the live data.
+     */
+    public static int readPeakHeapMb(final File gcLogFile)
+    {
+        assert gcLogFile != null : "Parameter 'gcLogFile' of method 'readPeakHeapMb' must not be null";
+
+        if (!gcLogFile.exists())
+        {
+            return 0;
+        }
+
+        long peakKb = 0;
+        try (Stream<String> lines = Files.lines(gcLogFile.toPath()))
+        {
+            for (final String next : (Iterable<String>) lines::iterator)
+            {
+                final Matcher matcher = GC_LINE_PATTERN.matcher(next);
+                if (matcher.matches())
+                {
+                    peakKb = Math.max(peakKb, toKb(Long.parseLong(matcher.group(3)), matcher.group(4)));
+                }
+            }
+        }
+        catch (final IOException e)
+        {
+            LOGGER.warn("Failed to read GC log {}: {}", gcLogFile.getAbsolutePath(), e.getMessage());
+        }
+        return (int) (peakKb / 1024);
+    }
+
+    private static long toKb(final long value, final String unit)
+    {
+        switch (unit)
+        {
+        case "G":
+            return value * 1024 * 1024;
+        case "M":
+            return value * 1024;
+        default:
+            return value;
+        }
+    }
+
+    /**
+     * @return the largest peak heap usage of the most recent entries in the history file, or 0 if there are none.
+     */
+    public static int readPreviousPeakMb(final File heapHistoryFile)
+    {
+        assert heapHistoryFile != null : "Parameter 'heapHistoryFile' of method 'readPreviousPeakMb' must not be null";
+
+        if (!heapHistoryFile.exists())
+        {
+            return 0;
+        }
+
+        try
+        {
+            final List<String> lines = Files.readAllLines(heapHistoryFile.toPath());
+            return lines.subList(Math.max(0, lines.size() - HEAP_HISTORY_ENTRIES_CONSIDERED), lines.size()).stream()
+                    .map(l -> l.split(HEAP_HISTORY_SEPARATOR)).filter(p -> p.length == 2).mapToInt(p -> Integer.parseInt(p[1].trim())).max()
+                    .orElse(0);
+        }
+        catch (final IOException | NumberFormatException e)
+        {
+            LOGGER.warn("Failed to read heap history {}: {}", heapHistoryFile.getAbsolutePath(), e.getMessage());
+            return 0;
+        }
+    }
+
+    public static void appendPeakMb(final File heapHistoryFile, final String identifier, final int peakMb)
+    {
+        assert heapHistoryFile != null : "Parameter 'heapHistoryFile' of method 'appendPeakMb' must not be null";
+        assert identifier != null : "Parameter 'identifier' of method 'appendPeakMb' must not be null";
+
+        try
+        {
+            Files.writeString(heapHistoryFile.toPath(), identifier + HEAP_HISTORY_SEPARATOR + peakMb + "\n", StandardOpenOption.CREATE,
+                    StandardOpenOption.APPEND);
+        }
+        catch (final IOException e)
+        {
+            LOGGER.warn("Failed to write heap history {}: {}", heapHistoryFile.getAbsolutePath(), e.getMessage());
+        }
+    }
+
+    /**
+     * @return total size of the given files, for directories the size of all contained '.class' and '.java' files outside of build output and
+     *         VCS directories.
+     */
+    public static long measureInputBytes(final File... files)
+    {
+        long size = 0;
+        for (final File next : files)
+        {
+            if (next.isFile())
+            {
+                size += next.length();
+            }
+            else if (next.isDirectory())
+            {
+                try
+                {
+                    size += measureDirectory(next.toPath());
+                }
+                catch (final IOException e)
+                {
+                    LOGGER.warn("Failed to determine size of {}: {}", next.getAbsolutePath(), e.getMessage());
+                }
+            }
+        }
+        return size;
+    }
+
+    private static long measureDirectory(final Path directory) throws IOException
+    {
+        final long[] size = new long[1];
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>()
+        {
+            @Override
+            public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attributes)
+            {
+                return isExcluded(dir) ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attributes)
+            {
+                final String name = file.getFileName().toString();
+                if (name.endsWith(".class") || name.endsWith(".java"))
+                {
+                    size[0] += attributes.size();
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return size[0];
+    }
+
+    /**
+     * @return true for VCS and Gradle metadata, and for the output directory next to a Maven or Gradle build file. Packages named like an output
+     *         directory (e.g. 'build') are not excluded.
+     */
+    private static boolean isExcluded(final Path dir)
+    {
+        final String name = dir.getFileName() != null ? dir.getFileName().toString() : "";
+        if (METADATA_DIRECTORIES.contains(name))
+        {
+            return true;
+        }
+        final Path parent = dir.getParent();
+        return parent != null && BUILD_OUTPUT_DIRECTORIES.contains(name)
+                && BUILD_FILES.stream().anyMatch(f -> Files.isRegularFile(parent.resolve(f)));
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Sonargraph Integration Access
+ * Copyright (C) 2016-2021 hello2morrow GmbH
+ * mailto: support AT hello2morrow DOT com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hello2morrow.sonargraph.batch.commands;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.apache.commons.configuration2.Configuration;
+
+import com.hello2morrow.sonargraph.batch.configuration.Props;
+
+/**
+ * Options for the Maven build that compiles a commit before it is analyzed. Without any configuration the command line is
+ * 'mvn clean compile test-compile -Dcheckstyle.skip=true'.
+ */
+public final class MavenBuildProfile
+{
+    //Plugins that are commonly bound to the lifecycle phases up to test-compile, but don't contribute to the compiled classes.
+    static final List<String> NON_COMPILE_PLUGIN_SKIP_PROPERTIES = Collections.unmodifiableList(Arrays.asList("-Denforcer.skip=true",
+            "-Djacoco.skip=true", "-Dspotbugs.skip=true", "-Dpmd.skip=true", "-Dcpd.skip=true", "-Dlicense.skip=true", "-Drat.skip=true",
+            "-Dmaven.javadoc.skip=true", "-Dmaven.source.skip=true", "-Dgpg.skip=true", "-Danimal.sniffer.skip=true", "-Dmdep.analyze.skip=true",
+            "-Dspotless.check.skip=true", "-Dformatter.skip=true", "-Dimpsort.skip=true", "-Dmaven.gitcommitid.skip=true"));
+
+    private final boolean m_offline;
+    private final String m_threads;
+    private final List<String> m_projects;
+    private final boolean m_skipClean;
+    private final boolean m_skipNonCompilePlugins;
+    private final List<String> m_additionalArguments;
+
+    MavenBuildProfile(final boolean offline, final String threads, final List<String> projects, final boolean skipClean,
+            final boolean skipNonCompilePlugins, final List<String> additionalArguments)
+    {
+        assert projects != null : "Parameter 'projects' of method 'MavenBuildProfile' must not be null";
+        assert additionalArguments != null : "Parameter 'additionalArguments' of method 'MavenBuildProfile' must not be null";
+
+        m_offline = offline;
+        m_threads = threads;
+        m_projects = projects;
+        m_skipClean = skipClean;
+        m_skipNonCompilePlugins = skipNonCompilePlugins;
+        m_additionalArguments = additionalArguments;
+    }
+
+    public static MavenBuildProfile fromConfiguration(final Configuration configuration)
+    {
+        assert configuration != null : "Parameter 'configuration' of method 'fromConfiguration' must not be null";
+
+        final boolean offline = configuration.getBoolean(Props.MAVEN_OFFLINE.getPropertyName(), false);
+        final String threads = configuration.getString(Props.MAVEN_THREADS.getPropertyName());
+        final List<String> projects = getNonEmptyValues(configuration, Props.MAVEN_PROJECTS);
+        final boolean skipClean = configuration.getBoolean(Props.MAVEN_SKIP_CLEAN.getPropertyName(), false);
+        final boolean skipPlugins = configuration.getBoolean(Props.MAVEN_SKIP_NON_COMPILE_PLUGINS.getPropertyName(), false);
+        final List<String> additionalArguments = getNonEmptyValues(configuration, Props.MAVEN_ADDITIONAL_ARGUMENTS);
+        return new MavenBuildProfile(offline, threads, projects, skipClean, skipPlugins, additionalArguments);
+    }
+
+    private static List<String> getNonEmptyValues(final Configuration configuration, final Props prop)
+    {
+        final List<String> values = configuration.getList(String.class, prop.getPropertyName(), Collections.emptyList());
+        return values.stream().map(String::trim).filter(v -> !v.isEmpty()).collect(Collectors.toList());
+    }
+
+    /**
+     * Offline builds are only used after dependencies have been downloaded once by an online build.
+     */
+    public boolean isOffline()
+    {
+        return m_offline;
+    }
+
+    public boolean isSkipClean()
+    {
+        return m_skipClean;
+    }
+
+    /**
+     * @return copy of this profile that does not execute the 'clean' goal.
+     */
+    public MavenBuildProfile withSkipClean()
+    {
+        return new MavenBuildProfile(m_offline, m_threads, m_projects, true, m_skipNonCompilePlugins, m_additionalArguments);
+    }
+
+    /**
+     * @param offline
+     *            if true, Maven is started with '-o', i.e. it must not access remote repositories.
+     * @return the command line
+     */
+    public String createCommandLine(final boolean offline)
+    {
+        return "mvn " + createArguments(offline);
+    }
+
+    /**
+     * @param offline
+     *            if true, Maven is started with '-o', i.e. it must not access remote repositories.
+     * @return the command line arguments without the Maven executable
+     */
+    public String createArguments(final boolean offline)
+    {
+        final List<String> parts = new ArrayList<>();
+        if (offline)
+        {
+            parts.add("-o");
+        }
+        if (m_threads != null && !m_threads.trim().isEmpty())
+        {
+            parts.add("-T");
+            parts.add(m_threads.trim());
+        }
+        if (!m_projects.isEmpty())
+        {
+            parts.add("-pl");
+            parts.add(String.join(",", m_projects));
+            parts.add("-am");
+        }
+        if (!m_skipClean)
+        {
+            parts.add("clean");
+        }
+        parts.add("compile");
+        parts.add("test-compile");
+        parts.add("-Dcheckstyle.skip=true");
+        if (m_skipNonCompilePlugins)
+        {
+            parts.addAll(NON_COMPILE_PLUGIN_SKIP_PROPERTIES);
+        }
+        parts.addAll(m_additionalArguments);
+        return String.join(" ", parts);
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Sonargraph Integration Access
+ * Copyright (C) 2016-2021 hello2morrow GmbH
+ * mailto: support AT hello2morrow DOT com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hello2morrow.sonargraph.batch.commands;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+
+import org.apache.commons.configuration2.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.hello2morrow.sonargraph.batch.cache.BuildOutputCache;
+import com.hello2morrow.sonargraph.batch.configuration.Props;
+import com.hello2morrow.sonargraph.batch.shell.IShell;
+
+/**
+ * Builds with Maven according to the {@link MavenBuildProfile}, optionally using the Maven daemon and the {@link BuildOutputCache}.
+ */
+public final class MavenBuildTool implements IBuildTool
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(MavenBuildTool.class);
+
+    static final String NAME = "maven";
+    private static final String MVND_EXECUTOR = "mvnd";
+
+    private final String m_javaHomeForMvn;
+    private final MavenBuildProfile m_buildProfile;
+    private final BuildOutputCache m_buildOutputCache;
+    private final MavenDaemon m_mavenDaemon;
+    private boolean m_dependenciesDownloaded = false;
+
+    public MavenBuildTool(final Configuration configuration)
+    {
+        assert configuration != null : "Parameter 'configuration' of method 'MavenBuildTool' must not be null";
+
+        m_javaHomeForMvn = configuration.getString(Props.JAVA_HOME_FOR_MVN.getPropertyName());
+        final String buildOutputCachePath = configuration.getString(Props.BUILD_OUTPUT_CACHE_DIRECTORY.getPropertyName());
+        if (buildOutputCachePath != null && !buildOutputCachePath.trim().isEmpty())
+        {
+            //Restored output would be deleted by 'clean'
+            m_buildOutputCache = new BuildOutputCache(new File(buildOutputCachePath));
+            m_buildProfile = MavenBuildProfile.fromConfiguration(configuration).withSkipClean();
+        }
+        else
+        {
+            m_buildOutputCache = null;
+            m_buildProfile = MavenBuildProfile.fromConfiguration(configuration);
+        }
+
+        if (MVND_EXECUTOR.equalsIgnoreCase(configuration.getString(Props.MAVEN_EXECUTOR.getPropertyName(), "mvn").trim()))
+        {
+            m_mavenDaemon = new MavenDaemon(configuration.getString(Props.MVND_EXECUTABLE.getPropertyName(), MVND_EXECUTOR));
+        }
+        else
+        {
+            m_mavenDaemon = null;
+        }
+    }
+
+    @Override
+    public String getName()
+    {
+        return NAME;
+    }
+
+    @Override
+    public boolean canBuild(final File repoDir)
+    {
+        assert repoDir != null : "Parameter 'repoDir' of method 'canBuild' must not be null";
+        return new File(repoDir, "pom.xml").isFile();
+    }
+
+    @Override
+    public void build(final IShell shell, final File repoDir) throws Exception
+    {
+        assert shell != null : "Parameter 'shell' of method 'build' must not be null";
+        assert repoDir != null : "Parameter 'repoDir' of method 'build' must not be null";
+
+        final Map<File, String> modulesToCache = m_buildOutputCache != null ? m_buildOutputCache.restore(repoDir) : Collections.emptyMap();
+        executeBuild(shell, repoDir);
+        if (m_buildOutputCache != null)
+        {
+            try
+            {
+                m_buildOutputCache.store(modulesToCache);
+            }
+            catch (final IOException e)
+            {
+                LOGGER.warn("Failed to store build output in cache", e);
+            }
+        }
+    }
+
+    private void executeBuild(final IShell shell, final File repoDir) throws Exception
+    {
+        //The first build runs online to download the dependencies, later builds only go online if the offline build fails (e.g. new dependency).
+        if (m_buildProfile.isOffline() && m_dependenciesDownloaded)
+        {
+            try
+            {
+                executeMaven(shell, repoDir, true);
+                return;
+            }
+            catch (final Exception e)
+            {
+                LOGGER.warn("Offline Maven build failed, retrying online: {}", e.getMessage());
+            }
+        }
+
+        executeMaven(shell, repoDir, false);
+        m_dependenciesDownloaded = true;
+    }
+
+    private void executeMaven(final IShell shell, final File repoDir, final boolean offline) throws Exception
+    {
+        if (m_mavenDaemon != null)
+        {
+            m_mavenDaemon.execute(shell, repoDir, m_javaHomeForMvn, m_buildProfile.createArguments(offline));
+        }
+        else
+        {
+            MavenCommands.executeMvn(shell, repoDir, m_javaHomeForMvn, m_buildProfile.createCommandLine(offline));
+        }
+    }
+
+    @Override
+    public void shutdown(final IShell shell, final File repoDir)
+    {
+        assert shell != null : "Parameter 'shell' of method 'shutdown' must not be null";
+        assert repoDir != null : "Parameter 'repoDir' of method 'shutdown' must not be null";
+
+        if (m_mavenDaemon != null)
+        {
+            m_mavenDaemon.stop(shell, repoDir);
+        }
+    }
+}
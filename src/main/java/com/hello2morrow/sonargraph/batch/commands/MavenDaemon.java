@@ -0,0 +1,156 @@
+/*
+ * Sonargraph Integration Access
+ * Copyright (C) 2016-2021 hello2morrow GmbH
+ * mailto: support AT hello2morrow DOT com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hello2morrow.sonargraph.batch.commands;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.hello2morrow.sonargraph.batch.shell.IShell;
+
+/**
+ * Executes Maven builds with the Maven daemon (mvnd), so that the warm daemon JVM is reused for the builds of all commits of a run.
+ *
+ * The daemon is restarted if the Java home or the version of the Maven wrapper changes between two builds, and if a build fails because the
+ * daemon crashed or cannot be reached.
+ */
+public final class MavenDaemon
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(MavenDaemon.class);
+
+    private static final String WRAPPER_PROPERTIES = ".mvn/wrapper/maven-wrapper.properties";
+    //Example: distributionUrl=https://repo.maven.apache.org/maven2/org/apache/maven/apache-maven/3.8.4/apache-maven-3.8.4-bin.zip
+    private static final Pattern DISTRIBUTION_URL_PATTERN = Pattern.compile("\\s*distributionUrl\\s*=.*/(apache-maven-[^/]+)-bin\\.zip\\s*");
+    //Only failures of the daemon itself, a refused connection of the build (e.g. to a repository) is a build failure
+    private static final Pattern DAEMON_FAILURE_PATTERN = Pattern.compile(
+            "(?is).*(daemon[^\\n]*(crash|stopped|disappeared|unexpectedly|could not connect|not reachable|terminated)"
+                    + "|could not connect to[^\\n]*daemon|org\\.mvndaemon\\.mvnd\\.common\\.DaemonException).*");
+
+    private final String m_executable;
+    private boolean m_started = false;
+    private String m_javaHome;
+    private String m_wrapperVersion;
+
+    public MavenDaemon(final String executable)
+    {
+        assert executable != null && executable.length() > 0 : "Parameter 'executable' of method 'MavenDaemon' must not be empty";
+        m_executable = executable;
+    }
+
+    /**
+     * @param arguments
+     *            Maven arguments without executable, e.g. 'clean compile'
+     */
+    public void execute(final IShell shell, final File repoDir, final String javaHomeForMvn, final String arguments) throws Exception
+    {
+        assert shell != null : "Parameter 'shell' of method 'execute' must not be null";
+        assert repoDir != null : "Parameter 'repoDir' of method 'execute' must not be null";
+        assert arguments != null : "Parameter 'arguments' of method 'execute' must not be null";
+
+        final String javaHome = javaHomeForMvn != null && !javaHomeForMvn.trim().isEmpty() ? javaHomeForMvn.trim() : null;
+        final String wrapperVersion = detectWrapperVersion(repoDir);
+        if (m_started && (!Objects.equals(javaHome, m_javaHome) || !Objects.equals(wrapperVersion, m_wrapperVersion)))
+        {
+            LOGGER.info("Restarting Maven daemon, Java home changed from '{}' to '{}', Maven wrapper version from '{}' to '{}'", m_javaHome, javaHome,
+                    m_wrapperVersion, wrapperVersion);
+            stop(shell, repoDir);
+        }
+        m_javaHome = javaHome;
+        m_wrapperVersion = wrapperVersion;
+
+        final String commandLine = m_executable + " " + arguments;
+        try
+        {
+            MavenCommands.executeMvn(shell, repoDir, javaHomeForMvn, commandLine);
+        }
+        catch (final Exception e)
+        {
+            if (!isDaemonFailure(e.getMessage()))
+            {
+                m_started = true;
+                throw e;
+            }
+
+            LOGGER.warn("Maven daemon failure detected, restarting daemon and retrying build: {}", e.getMessage());
+            stop(shell, repoDir);
+            MavenCommands.executeMvn(shell, repoDir, javaHomeForMvn, commandLine);
+        }
+        m_started = true;
+    }
+
+    /**
+     * Stops all daemons. The next build starts a new one.
+     */
+    public void stop(final IShell shell, final File workingDirectory)
+    {
+        assert shell != null : "Parameter 'shell' of method 'stop' must not be null";
+        assert workingDirectory != null : "Parameter 'workingDirectory' of method 'stop' must not be null";
+
+        try
+        {
+            shell.execute(m_executable + " --stop", workingDirectory);
+        }
+        catch (final Exception e)
+        {
+            LOGGER.warn("Failed to stop Maven daemon: {}", e.getMessage());
+        }
+        m_started = false;
+    }
+
+    static boolean isDaemonFailure(final String output)
+    {
+        return output != null && DAEMON_FAILURE_PATTERN.matcher(output).matches();
+    }
+
+    /**
+     * @return the Maven distribution configured for the Maven wrapper of the repo, e.g. 'apache-maven-3.8.4', or null.
+     */
+    static String detectWrapperVersion(final File repoDir)
+    {
+        assert repoDir != null : "Parameter 'repoDir' of method 'detectWrapperVersion' must not be null";
+
+        final File wrapperProperties = new File(repoDir, WRAPPER_PROPERTIES);
+        if (!wrapperProperties.exists())
+        {
+            return null;
+        }
+
+        try
+        {
+            for (final String next : Files.readAllLines(wrapperProperties.toPath()))
+            {
+                final Matcher matcher = DISTRIBUTION_URL_PATTERN.matcher(next);
+                if (matcher.matches())
+                {
+                    return matcher.group(1);
+                }
+            }
+        }
+        catch (final IOException e)
+        {
+            LOGGER.warn("Failed to read Maven wrapper properties: {}", e.getMessage());
+        }
+        return null;
+    }
+}
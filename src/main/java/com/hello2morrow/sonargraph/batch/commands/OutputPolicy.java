@@ -0,0 +1,123 @@
+/*
+ * Sonargraph Integration Access
+ * Copyright (C) 2016-2021 hello2morrow GmbH
+ * mailto: support AT hello2morrow DOT com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hello2morrow.sonargraph.batch.commands;
+
+import java.util.Locale;
+
+import org.apache.commons.configuration2.Configuration;
+
+import com.hello2morrow.sonargraph.batch.configuration.Props;
+
+/**
+ * Decides which outputs Sonargraph-Build creates for a version. The XML report is always created, since it is the baseline of the next version
+ * and the source of the metric trends. HTML reports and snapshots can be restricted to the newest version, or to every n-th version, which saves
+ * analysis time and disk space on long backfills. Without any configuration, HTML reports and snapshots are created for all versions.
+ */
+public final class OutputPolicy
+{
+    public enum Rule
+    {
+        ALWAYS,
+        NEWEST,
+        NEVER
+    }
+
+    private final String m_reportType;
+    private final Rule m_htmlRule;
+    private final int m_htmlEveryNthVersion;
+    private final Rule m_snapshotRule;
+
+    OutputPolicy(final String reportType, final Rule htmlRule, final int htmlEveryNthVersion, final Rule snapshotRule)
+    {
+        assert reportType != null && reportType.length() > 0 : "Parameter 'reportType' of method 'OutputPolicy' must not be empty";
+        assert htmlRule != null : "Parameter 'htmlRule' of method 'OutputPolicy' must not be null";
+        assert snapshotRule != null : "Parameter 'snapshotRule' of method 'OutputPolicy' must not be null";
+
+        m_reportType = reportType;
+        m_htmlRule = htmlRule;
+        m_htmlEveryNthVersion = htmlEveryNthVersion;
+        m_snapshotRule = snapshotRule;
+    }
+
+    public static OutputPolicy fromConfiguration(final Configuration configuration)
+    {
+        assert configuration != null : "Parameter 'configuration' of method 'fromConfiguration' must not be null";
+
+        final String reportType = configuration.getString(Props.REPORT_TYPE.getPropertyName(), "standard").trim();
+        return new OutputPolicy(reportType.isEmpty() ? "standard" : reportType, getRule(configuration, Props.HTML_REPORT),
+                configuration.getInt(Props.HTML_EVERY_NTH_VERSION.getPropertyName(), 0), getRule(configuration, Props.SNAPSHOTS));
+    }
+
+    private static Rule getRule(final Configuration configuration, final Props prop)
+    {
+        final String value = configuration.getString(prop.getPropertyName(), Rule.ALWAYS.name()).trim();
+        try
+        {
+            return value.isEmpty() ? Rule.ALWAYS : Rule.valueOf(value.toUpperCase(Locale.ENGLISH));
+        }
+        catch (final IllegalArgumentException e)
+        {
+            throw new RuntimeException("Invalid value '" + value + "' for '" + prop.getPropertyName() + "', expected always, newest or never", e);
+        }
+    }
+
+    public String getReportType()
+    {
+        return m_reportType;
+    }
+
+    /**
+     * @param versionIndex
+     *            index of the version in the list of versions processed in this run
+     * @param versionCount
+     *            number of versions processed in this run
+     */
+    public String getReportFormats(final int versionIndex, final int versionCount)
+    {
+        final boolean html = applies(m_htmlRule, versionIndex, versionCount)
+                || (m_htmlEveryNthVersion > 0 && versionIndex % m_htmlEveryNthVersion == 0);
+        return html ? "xml,html" : "xml";
+    }
+
+    public boolean isSnapshot(final int versionIndex, final int versionCount)
+    {
+        return applies(m_snapshotRule, versionIndex, versionCount);
+    }
+
+    /**
+     * @return description of the outputs created for the version, part of the cache key of the analysis result, since a cached result only
+     *         contains the outputs created at that time.
+     */
+    public String describe(final int versionIndex, final int versionCount)
+    {
+        return m_reportType + ";" + getReportFormats(versionIndex, versionCount) + (isSnapshot(versionIndex, versionCount) ? ";snapshot" : "");
+    }
+
+    private static boolean applies(final Rule rule, final int versionIndex, final int versionCount)
+    {
+        switch (rule)
+        {
+        case ALWAYS:
+            return true;
+        case NEWEST:
+            return versionIndex == versionCount - 1;
+        default:
+            return false;
+        }
+    }
+}
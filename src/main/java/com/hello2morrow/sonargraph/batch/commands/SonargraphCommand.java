@@ -18,16 +18,36 @@
 package com.hello2morrow.sonargraph.batch.commands;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
 
 import org.apache.commons.configuration2.Configuration;
 import org.apache.commons.lang3.tuple.Pair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.hello2morrow.sonargraph.batch.configuration.Platform;
 import com.hello2morrow.sonargraph.batch.configuration.Props;
+import com.hello2morrow.sonargraph.batch.report.ReportArchive;
+import com.hello2morrow.sonargraph.batch.report.ReportMetricExtractor;
+import com.hello2morrow.sonargraph.batch.report.TrendStore;
+import com.hello2morrow.sonargraph.batch.scheduling.FailureClass;
+import com.hello2morrow.sonargraph.batch.scheduling.ResourceScheduler;
+import com.hello2morrow.sonargraph.batch.scheduling.Stage;
 import com.hello2morrow.sonargraph.batch.shell.IShell;
 
 public final class SonargraphCommand
 {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SonargraphCommand.class);
+
+    private static final String HEAP_HISTORY_FILE_NAME = "heapHistory.txt";
+    private static final int DEFAULT_KEY_FRAME_INTERVAL = 20;
+    private static final String ARCHIVE_DIRECTORY_NAME = "archive";
+
     private SonargraphCommand()
     {
         super();
@@ -35,7 +55,31 @@ public final class SonargraphCommand
 
     public static String createReport(final IShell shell, final String systemName, final String commit, final Pair<String, String> timestamps,
             final String tag, final File analysisDir, final String baselineReportPath, final String activationCode, final Configuration configuration,
-            final String configFile, final String sonargraphSystemPath) throws Exception
+            final String configFile, final String sonargraphSystemPath, final long inputBytes, final int versionIndex, final int versionCount)
+            throws Exception
+    {
+        return runSonargraph(shell, systemName, commit, timestamps, tag, analysisDir, baselineReportPath, activationCode, configuration, configFile,
+                sonargraphSystemPath, inputBytes, versionIndex, versionCount, false);
+    }
+
+    /**
+     * Creates a report without baseline for bisection in the {@link #getProbeDirectory(File) probe directory}. The report is neither uploaded nor
+     * archived and no snapshot and no trends are recorded, since probes are analyzed out of order.
+     *
+     * @return path of the XML report
+     */
+    public static String createProbeReport(final IShell shell, final String systemName, final String commit, final Pair<String, String> timestamps,
+            final String tag, final File analysisDir, final String activationCode, final Configuration configuration, final String configFile,
+            final String sonargraphSystemPath, final long inputBytes) throws Exception
+    {
+        return runSonargraph(shell, systemName, commit, timestamps, tag, analysisDir, "", activationCode, configuration, configFile,
+                sonargraphSystemPath, inputBytes, 0, 1, true);
+    }
+
+    private static String runSonargraph(final IShell shell, final String systemName, final String commit, final Pair<String, String> timestamps,
+            final String tag, final File analysisDir, final String baselineReportPath, final String activationCode, final Configuration configuration,
+            final String configFile, final String sonargraphSystemPath, final long inputBytes, final int versionIndex, final int versionCount,
+            final boolean probe) throws Exception
     {
         assert shell != null : "Parameter 'shell' of method 'executeSonargraph' must not be null";
         assert commit != null : "Parameter 'commit' of method 'executeSonargraph' must not be null";
@@ -45,28 +89,44 @@ public final class SonargraphCommand
         assert sonargraphSystemPath != null : "Parameter 'sonargraphSystemPath' of method 'createReport' must not be null";
 
         final String instDirectory = configuration.getString(Props.INST_DIRECTORY.getPropertyName());
-        final String buildClientJar = SonargraphInstallationUtility.getSonargraphBuildClientJar(new File(instDirectory)).getAbsolutePath();
-        final String osgiJar = SonargraphInstallationUtility.getOsgiJar(new File(instDirectory)).getAbsolutePath();
+        final File buildClientJarFile = SonargraphInstallationUtility.getSonargraphBuildClientJar(new File(instDirectory));
+        final File osgiJarFile = SonargraphInstallationUtility.getOsgiJar(new File(instDirectory));
+        final String buildClientJar = buildClientJarFile.getAbsolutePath();
+        final String osgiJar = osgiJarFile.getAbsolutePath();
 
         final String uploadHostUrl = configuration.getString(Props.UPLOAD_HOST_URL.getPropertyName());
         final String clientKey = configuration.getString(Props.CLIENT_KEY.getPropertyName());
 
-        final String reportDirectory = new File(analysisDir, "reports").getAbsolutePath();
-        final String reportIdentifier;
-        if (timestamps.getKey().equals(commit))
-        {
-            reportIdentifier = timestamps.getKey() + "-" + tag;
-        }
-        else
+        final String reportDirectory = (probe ? getProbeDirectory(analysisDir) : getReportDirectory(analysisDir)).getAbsolutePath();
+        final String reportFileName = createReportFileName(systemName, commit, timestamps, tag);
+        if (baselineReportPath != null && baselineReportPath.trim().length() > 0)
         {
-            reportIdentifier = timestamps.getKey() + "-" + commit;
+            //The baseline might have been moved to the archive in the meantime, e.g. when a failed version is retried
+            final File baselineReport = new File(baselineReportPath.trim());
+            restoreArchivedFiles(configuration, analysisDir, baselineReport.getParentFile(), baselineReport.getName());
         }
 
-        final String reportFileName = systemName + "-" + reportIdentifier;
+        final File logDirectory = getLogDirectory(analysisDir);
+        logDirectory.mkdirs();
+        final JvmProfile jvmProfile = JvmProfile.fromConfiguration(configuration);
+        final File heapHistoryFile = new File(analysisDir, HEAP_HISTORY_FILE_NAME);
+        final int heapMb = jvmProfile.computeHeapMb(inputBytes, JvmProfile.readPreviousPeakMb(heapHistoryFile));
+        final File gcLogFile = new File(logDirectory, "sg-build_" + commit + "_gc.log");
 
         final String classPathSeparator = Platform.isWindows() ? ";" : ":";
         final StringBuilder commandString = new StringBuilder();
-        commandString.append("java -ea -cp ").append(buildClientJar).append(classPathSeparator).append(osgiJar)
+        commandString.append("java ").append(String.join(" ", jvmProfile.createArguments(heapMb, gcLogFile)));
+        final String cdsDirectory = configuration.getString(Props.SONARGRAPH_CDS_DIRECTORY.getPropertyName(), "");
+        final ClassDataSharing classDataSharing = cdsDirectory.trim().isEmpty() ? null
+                : new ClassDataSharing(new File(cdsDirectory.trim()), Arrays.asList(buildClientJarFile, osgiJarFile));
+        if (classDataSharing != null)
+        {
+            for (final String next : classDataSharing.createArguments(shell, analysisDir))
+            {
+                commandString.append(" ").append(next);
+            }
+        }
+        commandString.append(" -cp ").append(buildClientJar).append(classPathSeparator).append(osgiJar)
                 .append(" com.hello2morrow.sonargraph.build.client.SonargraphBuildRunner ");
         commandString.append(configFile);
         commandString.append(" activationCode=").append(activationCode);
@@ -75,22 +135,298 @@ public final class SonargraphCommand
         commandString.append(" systemDirectory=").append(sonargraphSystemPath);
         commandString.append(" reportDirectory=").append(reportDirectory);
         commandString.append(" reportFileName=").append(reportFileName);
-        commandString.append(" reportType=standard reportFormat=xml,html");
+        final OutputPolicy outputPolicy = OutputPolicy.fromConfiguration(configuration);
+        commandString.append(" reportType=").append(outputPolicy.getReportType());
+        commandString.append(" reportFormat=").append(outputPolicy.getReportFormats(versionIndex, versionCount));
 
-        commandString.append(" snapshotDirectory=").append(new File(analysisDir, "snapshots").getAbsolutePath());
-        commandString.append(" snapshotFileName=").append(systemName).append("-").append(timestamps.getKey()).append("-").append(commit);
+        if (!probe && outputPolicy.isSnapshot(versionIndex, versionCount))
+        {
+            commandString.append(" snapshotDirectory=").append(getSnapshotDirectory(analysisDir).getAbsolutePath());
+            commandString.append(" snapshotFileName=").append(createSnapshotFileName(systemName, commit, timestamps));
+        }
         if (baselineReportPath != null && baselineReportPath.trim().length() > 0)
         {
             commandString.append(" baselineReportPath=").append(baselineReportPath);
         }
 
-        commandString.append(" logFile=").append(new File(new File(analysisDir, "logs"), "sg-build_" + commit + ".log").getAbsolutePath());
-        commandString.append(" uploadHosturl=").append(uploadHostUrl).append(" clientKey=").append(clientKey).append(" commitId=").append(commit)
-                .append(" timestamp=").append(timestamps.getValue());
+        commandString.append(" logFile=").append(new File(logDirectory, "sg-build_" + commit + ".log").getAbsolutePath());
+        //Without upload host the reports are only written locally
+        if (!probe && uploadHostUrl != null && !uploadHostUrl.trim().isEmpty())
+        {
+            commandString.append(" uploadHosturl=").append(uploadHostUrl.trim()).append(" clientKey=").append(clientKey);
+        }
+        commandString.append(" commitId=").append(commit).append(" timestamp=").append(timestamps.getValue());
         commandString.append(" version=").append(tag);
 
-        shell.execute(commandString.toString(), analysisDir);
+        final double cpus = configuration.getDouble(Props.SONARGRAPH_CPUS.getPropertyName(), 1.0);
+        try (ResourceScheduler.Permit permit = ResourceScheduler.getShared(configuration).acquire(Stage.ANALYSIS, cpus, heapMb))
+        {
+            shell.execute(commandString.toString(), analysisDir);
+        }
+        catch (final Exception e)
+        {
+            if (FailureClass.classify(e) == FailureClass.OUT_OF_MEMORY)
+            {
+                if (heapMb >= jvmProfile.getMaxHeapMb())
+                {
+                    throw FailureClass.heapLimitReached("Sonargraph-Build ran out of memory with the max heap of " + heapMb + " MB, see '"
+                            + Props.SONARGRAPH_MAX_HEAP_MB.getPropertyName() + "'", e);
+                }
+                //The whole heap has been used, so that a retry gets more heap than this run
+                JvmProfile.appendPeakMb(heapHistoryFile, tag, heapMb);
+            }
+            throw e;
+        }
+        finally
+        {
+            if (classDataSharing != null)
+            {
+                classDataSharing.finish();
+            }
+        }
+
+        final int peakMb = JvmProfile.readPeakHeapMb(gcLogFile);
+        if (peakMb > 0)
+        {
+            JvmProfile.appendPeakMb(heapHistoryFile, tag, peakMb);
+        }
+
+        final File report = new File(reportDirectory, reportFileName + ".xml");
+        if (!probe)
+        {
+            recordTrends(configuration, analysisDir, report, timestamps, tag);
+            archiveResults(configuration, analysisDir, reportFileName, createSnapshotFileName(systemName, commit, timestamps));
+        }
+        return report.getAbsolutePath();
+    }
+
+    /**
+     * @return the report archive of the analysis directory, or null if archiving is disabled. Each analysis directory has its own archive,
+     *         so that the delta chain only contains reports of one system.
+     */
+    public static ReportArchive createReportArchive(final Configuration configuration, final File analysisDir) throws IOException
+    {
+        assert configuration != null : "Parameter 'configuration' of method 'createReportArchive' must not be null";
+        assert analysisDir != null : "Parameter 'analysisDir' of method 'createReportArchive' must not be null";
+
+        if (!configuration.getBoolean(Props.REPORT_ARCHIVE.getPropertyName(), false))
+        {
+            return null;
+        }
+        return ReportArchive.getShared(new File(analysisDir, ARCHIVE_DIRECTORY_NAME),
+                configuration.getInt(Props.REPORT_ARCHIVE_KEY_FRAME_INTERVAL.getPropertyName(), DEFAULT_KEY_FRAME_INTERVAL));
+    }
+
+    /**
+     * Adds the report and snapshot files of a version to the report archive, if configured. Archived files of other versions are deleted, only
+     * the files of this version are kept, since its report is the baseline of the next version. Deleted files that are needed later, e.g. as
+     * baseline of a retried version, are restored from the archive by {@link #restoreArchivedFiles(Configuration, File, File, String)}.
+     */
+    public static void archiveResults(final Configuration configuration, final File analysisDir, final String reportFileName,
+            final String snapshotFileName)
+    {
+        assert configuration != null : "Parameter 'configuration' of method 'archiveResults' must not be null";
+        assert analysisDir != null : "Parameter 'analysisDir' of method 'archiveResults' must not be null";
+        assert reportFileName != null : "Parameter 'reportFileName' of method 'archiveResults' must not be null";
+        assert snapshotFileName != null : "Parameter 'snapshotFileName' of method 'archiveResults' must not be null";
+
+        try
+        {
+            final ReportArchive archive = createReportArchive(configuration, analysisDir);
+            if (archive == null)
+            {
+                return;
+            }
+
+            archiveFiles(archive, getReportDirectory(analysisDir), reportFileName);
+            archiveFiles(archive, getSnapshotDirectory(analysisDir), snapshotFileName);
+        }
+        catch (final IOException e)
+        {
+            LOGGER.warn("Failed to archive report {}: {}", reportFileName, e.getMessage());
+        }
+    }
+
+    /**
+     * Restores the archived files of a report or snapshot that have been removed from the directory.
+     *
+     * @param fileName
+     *            file name without extension, or with extension to restore a single file
+     */
+    public static void restoreArchivedFiles(final Configuration configuration, final File analysisDir, final File directory, final String fileName)
+            throws IOException
+    {
+        assert configuration != null : "Parameter 'configuration' of method 'restoreArchivedFiles' must not be null";
+        assert analysisDir != null : "Parameter 'analysisDir' of method 'restoreArchivedFiles' must not be null";
+        assert directory != null : "Parameter 'directory' of method 'restoreArchivedFiles' must not be null";
+        assert fileName != null : "Parameter 'fileName' of method 'restoreArchivedFiles' must not be null";
+
+        final ReportArchive archive = createReportArchive(configuration, analysisDir);
+        if (archive == null)
+        {
+            return;
+        }
+        for (final String next : archive.getEntryNames())
+        {
+            final File file = new File(directory, next);
+            if ((next.equals(fileName) || next.startsWith(fileName + ".")) && !file.exists())
+            {
+                directory.mkdirs();
+                archive.materialize(next, file);
+                LOGGER.debug("Restored {} from report archive", next);
+            }
+        }
+    }
+
+    private static void archiveFiles(final ReportArchive archive, final File directory, final String fileName) throws IOException
+    {
+        final File[] files = directory.listFiles(File::isFile);
+        if (files == null)
+        {
+            return;
+        }
+
+        Arrays.sort(files);
+        for (final File next : files)
+        {
+            if (next.getName().startsWith(fileName + "."))
+            {
+                if (next.getName().endsWith(".xml"))
+                {
+                    archive.addDelta(next);
+                }
+                else
+                {
+                    archive.addFull(next);
+                }
+            }
+            else if (archive.contains(next.getName()))
+            {
+                Files.delete(next.toPath());
+            }
+        }
+    }
+
+    /**
+     * Copies the report and snapshot files of a version to the 'reports' and 'snapshots' directories of the given results directory, e.g. the
+     * shared results directory of a distributed run.
+     */
+    public static void publishResults(final Configuration configuration, final File analysisDir, final String reportFileName,
+            final String snapshotFileName, final File resultsDir) throws IOException
+    {
+        assert configuration != null : "Parameter 'configuration' of method 'publishResults' must not be null";
+        assert analysisDir != null : "Parameter 'analysisDir' of method 'publishResults' must not be null";
+        assert reportFileName != null : "Parameter 'reportFileName' of method 'publishResults' must not be null";
+        assert snapshotFileName != null : "Parameter 'snapshotFileName' of method 'publishResults' must not be null";
+        assert resultsDir != null : "Parameter 'resultsDir' of method 'publishResults' must not be null";
+
+        //Another worker sharing the analysis directory might already have moved the files to the archive
+        restoreArchivedFiles(configuration, analysisDir, getReportDirectory(analysisDir), reportFileName);
+        restoreArchivedFiles(configuration, analysisDir, getSnapshotDirectory(analysisDir), snapshotFileName);
+        copyFiles(getReportDirectory(analysisDir), reportFileName, getReportDirectory(resultsDir));
+        copyFiles(getSnapshotDirectory(analysisDir), snapshotFileName, getSnapshotDirectory(resultsDir));
+    }
+
+    private static void copyFiles(final File sourceDirectory, final String fileName, final File targetDirectory) throws IOException
+    {
+        final File[] files = sourceDirectory.listFiles(f -> f.isFile() && f.getName().startsWith(fileName + "."));
+        if (files == null || files.length == 0)
+        {
+            return;
+        }
+
+        targetDirectory.mkdirs();
+        for (final File next : files)
+        {
+            Files.copy(next.toPath(), new File(targetDirectory, next.getName()).toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Appends the system and module metrics of the report to the trend store.
+     */
+    public static void recordTrends(final Configuration configuration, final File analysisDir, final File report,
+            final Pair<String, String> timestamps, final String version)
+    {
+        assert configuration != null : "Parameter 'configuration' of method 'recordTrends' must not be null";
+        assert analysisDir != null : "Parameter 'analysisDir' of method 'recordTrends' must not be null";
+        assert report != null : "Parameter 'report' of method 'recordTrends' must not be null";
+        assert timestamps != null : "Parameter 'timestamps' of method 'recordTrends' must not be null";
+
+        if (!report.exists())
+        {
+            return;
+        }
+        final String trendDirectory = configuration.getString(Props.TREND_STORE_DIRECTORY.getPropertyName(), "").trim();
+        try
+        {
+            final TrendStore trendStore = TrendStore.getShared(trendDirectory.isEmpty() ? new File(analysisDir, "trends") : new File(trendDirectory));
+            final long timestamp = OffsetDateTime.parse(timestamps.getValue()).toInstant().toEpochMilli();
+            trendStore.append(timestamp, version != null ? version : timestamps.getKey(), ReportMetricExtractor.extractMetrics(report));
+        }
+        catch (final IOException | DateTimeParseException e)
+        {
+            LOGGER.warn("Failed to record metric trends of report {}: {}", report.getAbsolutePath(), e.getMessage());
+        }
+    }
+
+    public static File getReportDirectory(final File analysisDir)
+    {
+        assert analysisDir != null : "Parameter 'analysisDir' of method 'getReportDirectory' must not be null";
+        return new File(analysisDir, "reports");
+    }
+
+    /**
+     * @return directory of the reports created for bisection, separate from the reports used as baseline
+     */
+    public static File getProbeDirectory(final File analysisDir)
+    {
+        assert analysisDir != null : "Parameter 'analysisDir' of method 'getProbeDirectory' must not be null";
+        return new File(analysisDir, "bisect");
+    }
+
+    public static File getLogDirectory(final File analysisDir)
+    {
+        assert analysisDir != null : "Parameter 'analysisDir' of method 'getLogDirectory' must not be null";
+        return new File(analysisDir, "logs");
+    }
+
+    public static File getSnapshotDirectory(final File analysisDir)
+    {
+        assert analysisDir != null : "Parameter 'analysisDir' of method 'getSnapshotDirectory' must not be null";
+        return new File(analysisDir, "snapshots");
+    }
+
+    /**
+     * @return report file name without extension as used by {@link #createReport}.
+     */
+    public static String createReportFileName(final String systemName, final String commit, final Pair<String, String> timestamps,
+            final String tag)
+    {
+        assert commit != null : "Parameter 'commit' of method 'createReportFileName' must not be null";
+        assert timestamps != null : "Parameter 'timestamps' of method 'createReportFileName' must not be null";
+
+        final String reportIdentifier;
+        if (timestamps.getKey().equals(commit))
+        {
+            reportIdentifier = timestamps.getKey() + "-" + tag;
+        }
+        else
+        {
+            reportIdentifier = timestamps.getKey() + "-" + commit;
+        }
+
+        return systemName + "-" + reportIdentifier;
+    }
+
+    /**
+     * @return snapshot file name without extension as used by {@link #createReport}.
+     */
+    public static String createSnapshotFileName(final String systemName, final String commit, final Pair<String, String> timestamps)
+    {
+        assert commit != null : "Parameter 'commit' of method 'createSnapshotFileName' must not be null";
+        assert timestamps != null : "Parameter 'timestamps' of method 'createSnapshotFileName' must not be null";
 
-        return new File(reportDirectory, reportFileName).getAbsolutePath() + ".xml";
+        return systemName + "-" + timestamps.getKey() + "-" + commit;
     }
 }
\ No newline at end of file
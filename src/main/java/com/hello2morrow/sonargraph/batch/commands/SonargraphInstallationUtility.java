@@ -19,22 +19,34 @@ package com.hello2morrow.sonargraph.batch.commands;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
-final class SonargraphInstallationUtility
+public final class SonargraphInstallationUtility
 {
     private static final String OSGI_JAR_PREFIX = "org.eclipse.osgi_";
     private static final String CLIENT_JAR_PREFIX = "com.hello2morrow.sonargraph.build.client_";
     private static final String JAR_POSTFIX = ".jar";
 
+    //Resolved jars by installation directory, so that long-running processes don't scan the installation for every analysis
+    private static final Map<String, File> s_clientJars = new ConcurrentHashMap<>();
+    private static final Map<String, File> s_osgiJars = new ConcurrentHashMap<>();
+
     private SonargraphInstallationUtility()
     {
         super();
     }
 
-    static File getSonargraphBuildClientJar(final File installationDirectory) throws IOException
+    public static File getSonargraphBuildClientJar(final File installationDirectory) throws IOException
     {
         assert installationDirectory != null : "Parameter 'installationDirectory' of method 'detectSonargraphVersion' must not be null";
 
+        final File cached = s_clientJars.get(installationDirectory.getAbsolutePath());
+        if (cached != null && cached.isFile())
+        {
+            return cached;
+        }
+
         if (!installationDirectory.exists() || !installationDirectory.isDirectory())
         {
             throw new IOException("Sonargraph installation directory does not exist.");
@@ -53,13 +65,20 @@ final class SonargraphInstallationUtility
                     + "', but found " + clientJars.length);
         }
 
+        s_clientJars.put(installationDirectory.getAbsolutePath(), clientJars[0]);
         return clientJars[0];
     }
 
-    static File getOsgiJar(final File installationDirectory) throws IOException
+    public static File getOsgiJar(final File installationDirectory) throws IOException
     {
         assert installationDirectory != null : "Parameter 'installationDirectory' of method 'getOsgiJar' must not be null";
 
+        final File cached = s_osgiJars.get(installationDirectory.getAbsolutePath());
+        if (cached != null && cached.isFile())
+        {
+            return cached;
+        }
+
         if (!installationDirectory.exists() || !installationDirectory.isDirectory())
         {
             throw new IOException("Sonargraph installation directory does not exist.");
@@ -78,6 +97,22 @@ final class SonargraphInstallationUtility
                     + "', but found " + osgiJars.length);
         }
 
+        s_osgiJars.put(installationDirectory.getAbsolutePath(), osgiJars[0]);
         return osgiJars[0];
     }
+
+    /**
+     * Extracts the version of the Sonargraph-Build installation from the name of its client jar.
+     *
+     * @param installationDirectory
+     * @return version, e.g. "11.5.0.100"
+     * @throws IOException
+     */
+    public static String getSonargraphBuildVersion(final File installationDirectory) throws IOException
+    {
+        assert installationDirectory != null : "Parameter 'installationDirectory' of method 'getSonargraphBuildVersion' must not be null";
+
+        final String clientJarName = getSonargraphBuildClientJar(installationDirectory).getName();
+        return clientJarName.substring(CLIENT_JAR_PREFIX.length(), clientJarName.length() - JAR_POSTFIX.length());
+    }
 }
\ No newline at end of file
@@ -26,18 +26,72 @@ public enum Props
     SONARGRAPH_SYSTEM_DIRECTORY("sonargraphSystemDirectory"),
     SHELL_CHARSET("shellCharset"),
     REPO_DIRECTORY("repoDirectory"),
+    REPO_URL("repoUrl"),
+    SHARE_OBJECTS_WITH("shareObjectsWith"),
+    MAX_CONCURRENT_REPOSITORIES("maxConcurrentRepositories"),
     BRANCH_NAME("branchName"),
     EXCLUDED_TAG_PARTS("excludedTagParts"),
+    COMMIT_SAMPLING("commitSampling"),
+    COMMIT_SAMPLING_EVERY_NTH_MERGE("commitSamplingEveryNthMerge"),
+    COMMIT_SAMPLING_MAX_COMMITS("commitSamplingMaxCommits"),
     ANALYSIS_DIRECTORY("analysisDirectory"),
+    SCRATCH_DIRECTORY("scratchDirectory"),
+    SCRATCH_MAX_MB("scratchMaxMb"),
 
     CONFIG_FILE("configFile"),
 
     INST_DIRECTORY("instDirectory"),
+    SONARGRAPH_ENABLE_ASSERTIONS("sonargraphEnableAssertions"),
+    SONARGRAPH_JVM_ARGUMENTS("sonargraphJvmArguments"),
+    SONARGRAPH_MIN_HEAP_MB("sonargraphMinHeapMb"),
+    SONARGRAPH_MAX_HEAP_MB("sonargraphMaxHeapMb"),
+    SONARGRAPH_HEAP_MB_PER_INPUT_MB("sonargraphHeapMbPerInputMb"),
+    SONARGRAPH_MEMORY_BUDGET_MB("sonargraphMemoryBudgetMb"),
+    SONARGRAPH_CDS_DIRECTORY("sonargraphCdsDirectory"),
+    REPORT_TYPE("reportType"),
+    HTML_REPORT("htmlReport"),
+    HTML_EVERY_NTH_VERSION("htmlEveryNthVersion"),
+    SNAPSHOTS("snapshots"),
+    SONARGRAPH_CPUS("sonargraphCpus"),
+    BUILD_CPUS("buildCpus"),
+    BUILD_MEMORY_MB("buildMemoryMb"),
+    MAX_CONCURRENT_DOWNLOADS("maxConcurrentDownloads"),
+    MAX_CONCURRENT_BUILDS("maxConcurrentBuilds"),
+    MAX_CONCURRENT_ANALYSES("maxConcurrentAnalyses"),
+    BISECT_METRIC("bisectMetric"),
+    BISECT_THRESHOLD("bisectThreshold"),
+    TREND_STORE_DIRECTORY("trendStoreDirectory"),
+    REPORT_ARCHIVE("reportArchive"),
+    REPORT_ARCHIVE_KEY_FRAME_INTERVAL("reportArchiveKeyFrameInterval"),
+    DISTRIBUTED_WORK_DIRECTORY("distributedWorkDirectory"),
+    WORKER_ID("workerId"),
+    LEASE_TIMEOUT_SECONDS("leaseTimeoutSeconds"),
+    RETRY_NETWORK_ATTEMPTS("retryNetworkAttempts"),
+    RETRY_NETWORK_BACKOFF_SECONDS("retryNetworkBackoffSeconds"),
+    RETRY_OUT_OF_MEMORY_ATTEMPTS("retryOutOfMemoryAttempts"),
+    RETRY_NATIVE_MEMORY_ATTEMPTS("retryNativeMemoryAttempts"),
+    RETRY_NATIVE_MEMORY_WAIT_SECONDS("retryNativeMemoryWaitSeconds"),
+    RETRY_LICENSE_ATTEMPTS("retryLicenseAttempts"),
+    RETRY_LICENSE_WAIT_SECONDS("retryLicenseWaitSeconds"),
 
     UPLOAD_HOST_URL("uploadHostUrl"),
     CLIENT_KEY("clientKey"),
     WRITE_TAGS_FILE("writeTagsFile"),
     JAVA_HOME_FOR_MVN("javaHomeForMvn"),
+    BUILD_TOOL("buildTool"),
+    MAVEN_EXECUTOR("mavenExecutor"),
+    MVND_EXECUTABLE("mvndExecutable"),
+    MAVEN_OFFLINE("mavenOffline"),
+    MAVEN_THREADS("mavenThreads"),
+    MAVEN_PROJECTS("mavenProjects"),
+    MAVEN_SKIP_CLEAN("mavenSkipClean"),
+    MAVEN_SKIP_NON_COMPILE_PLUGINS("mavenSkipNonCompilePlugins"),
+    MAVEN_ADDITIONAL_ARGUMENTS("mavenAdditionalArguments"),
+    BUILD_OUTPUT_CACHE_DIRECTORY("buildOutputCacheDirectory"),
+    GRADLE_TASKS("gradleTasks"),
+    GRADLE_USER_HOME("gradleUserHome"),
+    GRADLE_BUILD_CACHE_DIRECTORY("gradleBuildCacheDirectory"),
+    GRADLE_ADDITIONAL_ARGUMENTS("gradleAdditionalArguments"),
 
     MAVEN_LOCAL_REPO_HOME("mavenRepoHome"),
     @Deprecated
@@ -46,6 +100,11 @@ public enum Props
     MAVEN_REPO_URL("mavenRepoUrl"),
     MAVEN_GROUP_ID("mavenGroupId"),
     MAVEN_ARTIFACT_ID("mavenArtifactId"),
+    CRAWLER_MAX_CONCURRENT_REQUESTS("crawlerMaxConcurrentRequests"),
+
+    ANALYSIS_CACHE_DIRECTORY("analysisCacheDirectory"),
+    SLIM_JARS("slimJars"),
+    SLIM_JARS_KEEP_PATTERNS("slimJarsKeepPatterns"),
 
     ;
 
@@ -0,0 +1,126 @@
+/*
+ * Sonargraph Integration Access
+ * Copyright (C) 2016-2021 hello2morrow GmbH
+ * mailto: support AT hello2morrow DOT com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hello2morrow.sonargraph.batch.logging;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.MDC;
+
+/**
+ * Puts the artifact, version and commit of the job executed by the current thread into the logging MDC, so that log output of jobs running in
+ * parallel can be told apart. The console and file patterns in 'logback.xml' show the job label, the JSON log contains all keys, and the
+ * messages of a job with a log directory are additionally written to its own log file.
+ *
+ * Contexts can be nested, closing a context restores the values of the enclosing one. A context must be closed by the thread that opened it.
+ */
+public final class JobContext implements AutoCloseable
+{
+    public static final String ARTIFACT_KEY = "artifact";
+    public static final String VERSION_KEY = "version";
+    public static final String COMMIT_KEY = "commit";
+    //Short label of the job for the log patterns, e.g. 'cwa/v1.2.0'
+    public static final String JOB_KEY = "job";
+    //Absolute path of the job log file, used as discriminator of the sifting appender
+    public static final String LOG_FILE_KEY = "jobLogFile";
+
+    private static final List<String> KEYS = Collections
+            .unmodifiableList(Arrays.asList(ARTIFACT_KEY, VERSION_KEY, COMMIT_KEY, JOB_KEY, LOG_FILE_KEY));
+    private static final String LOG_FILE_PREFIX = "batch_";
+    private static final String LOG_FILE_EXTENSION = ".log";
+
+    private final Map<String, String> m_previousValues = new LinkedHashMap<>();
+
+    private JobContext(final Map<String, String> values)
+    {
+        for (final String next : KEYS)
+        {
+            m_previousValues.put(next, MDC.get(next));
+            put(next, values.get(next));
+        }
+    }
+
+    /**
+     * @param artifact
+     *            the analyzed artifact or system, must not be null
+     * @param version
+     *            the analyzed version or tag, can be null
+     * @param commit
+     *            the analyzed commit, can be null
+     * @param logDirectory
+     *            directory for the job log file, or null if the job output should only be written to the shared logs
+     */
+    public static JobContext open(final String artifact, final String version, final String commit, final File logDirectory)
+    {
+        assert artifact != null && artifact.length() > 0 : "Parameter 'artifact' of method 'open' must not be empty";
+
+        final Map<String, String> values = new LinkedHashMap<>();
+        values.put(ARTIFACT_KEY, artifact);
+        values.put(VERSION_KEY, version);
+        values.put(COMMIT_KEY, commit);
+        values.put(JOB_KEY, createLabel(artifact, version, commit));
+        if (logDirectory != null)
+        {
+            logDirectory.mkdirs();
+            final String fileName = LOG_FILE_PREFIX + (commit != null ? commit : version != null ? version : artifact) + LOG_FILE_EXTENSION;
+            values.put(LOG_FILE_KEY, new File(logDirectory, fileName).getAbsolutePath());
+        }
+        return new JobContext(values);
+    }
+
+    static String createLabel(final String artifact, final String version, final String commit)
+    {
+        final List<String> parts = new ArrayList<>();
+        parts.add(artifact);
+        if (version != null)
+        {
+            parts.add(version);
+        }
+        if (commit != null && !commit.equals(version))
+        {
+            parts.add(commit);
+        }
+        return String.join("/", parts);
+    }
+
+    private static void put(final String key, final String value)
+    {
+        if (value != null)
+        {
+            MDC.put(key, value);
+        }
+        else
+        {
+            MDC.remove(key);
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        for (final Map.Entry<String, String> next : m_previousValues.entrySet())
+        {
+            put(next.getKey(), next.getValue());
+        }
+    }
+}
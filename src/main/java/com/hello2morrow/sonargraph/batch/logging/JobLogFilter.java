@@ -0,0 +1,35 @@
+/*
+ * Sonargraph Integration Access
+ * Copyright (C) 2016-2021 hello2morrow GmbH
+ * mailto: support AT hello2morrow DOT com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hello2morrow.sonargraph.batch.logging;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.filter.Filter;
+import ch.qos.logback.core.spi.FilterReply;
+
+/**
+ * Passes only events logged within a {@link JobContext} that has a log file, so that the sifting appender does not create a file for output
+ * outside of jobs.
+ */
+public final class JobLogFilter extends Filter<ILoggingEvent>
+{
+    @Override
+    public FilterReply decide(final ILoggingEvent event)
+    {
+        return event.getMDCPropertyMap().containsKey(JobContext.LOG_FILE_KEY) ? FilterReply.NEUTRAL : FilterReply.DENY;
+    }
+}
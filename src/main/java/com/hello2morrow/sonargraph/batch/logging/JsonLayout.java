@@ -0,0 +1,123 @@
+/*
+ * Sonargraph Integration Access
+ * Copyright (C) 2016-2021 hello2morrow GmbH
+ * mailto: support AT hello2morrow DOT com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hello2morrow.sonargraph.batch.logging;
+
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.TreeMap;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.IThrowableProxy;
+import ch.qos.logback.classic.spi.ThrowableProxyUtil;
+import ch.qos.logback.core.LayoutBase;
+
+/**
+ * Formats each event as one line of JSON with timestamp, level, thread, logger, message, the MDC values of the {@link JobContext} and the stack
+ * trace, so that the orchestrator can process the log without parsing patterns.
+ */
+public final class JsonLayout extends LayoutBase<ILoggingEvent>
+{
+    @Override
+    public String doLayout(final ILoggingEvent event)
+    {
+        final IThrowableProxy throwable = event.getThrowableProxy();
+        return format(event.getTimeStamp(), event.getLevel().toString(), event.getThreadName(), event.getLoggerName(), event.getFormattedMessage(),
+                event.getMDCPropertyMap(), throwable != null ? ThrowableProxyUtil.asString(throwable) : null);
+    }
+
+    @Override
+    public String getContentType()
+    {
+        return "application/json";
+    }
+
+    static String format(final long timestamp, final String level, final String thread, final String logger, final String message,
+            final Map<String, String> mdc, final String stackTrace)
+    {
+        final StringBuilder json = new StringBuilder(256);
+        json.append('{');
+        appendField(json, "timestamp", DateTimeFormatter.ISO_INSTANT.format(Instant.ofEpochMilli(timestamp)));
+        appendField(json, "level", level);
+        appendField(json, "thread", thread);
+        appendField(json, "logger", logger);
+        appendField(json, "message", message);
+        if (mdc != null)
+        {
+            for (final Map.Entry<String, String> next : new TreeMap<>(mdc).entrySet())
+            {
+                appendField(json, next.getKey(), next.getValue());
+            }
+        }
+        appendField(json, "stackTrace", stackTrace);
+        json.append('}').append(System.lineSeparator());
+        return json.toString();
+    }
+
+    private static void appendField(final StringBuilder json, final String name, final String value)
+    {
+        if (value == null)
+        {
+            return;
+        }
+        if (json.length() > 1)
+        {
+            json.append(',');
+        }
+        appendString(json, name);
+        json.append(':');
+        appendString(json, value);
+    }
+
+    static void appendString(final StringBuilder json, final String value)
+    {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++)
+        {
+            final char next = value.charAt(i);
+            switch (next)
+            {
+            case '"':
+                json.append("\\\"");
+                break;
+            case '\\':
+                json.append("\\\\");
+                break;
+            case '\n':
+                json.append("\\n");
+                break;
+            case '\r':
+                json.append("\\r");
+                break;
+            case '\t':
+                json.append("\\t");
+                break;
+            default:
+                if (next < 0x20)
+                {
+                    json.append(String.format("\\u%04x", (int) next));
+                }
+                else
+                {
+                    json.append(next);
+                }
+            }
+        }
+        json.append('"');
+    }
+}
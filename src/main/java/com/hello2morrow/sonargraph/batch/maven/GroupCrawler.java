@@ -0,0 +1,381 @@
+/*
+ * Sonargraph Integration Access
+ * Copyright (C) 2016-2021 hello2morrow GmbH
+ * mailto: support AT hello2morrow DOT com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hello2morrow.sonargraph.batch.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.Writer;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Discovers all artifacts below a groupId by crawling the directory listings of a Maven repository (HTTP or file URL). A directory is an artifact
+ * directory if it contains a 'maven-metadata.xml' with version information; group level metadata (e.g. of plugin groups) is ignored and its
+ * sub directories are crawled.
+ *
+ * Directories are listed concurrently, but the number of concurrent requests is bounded. The size of an artifact is estimated from the jar and
+ * sources jar of its latest version.
+ */
+public final class GroupCrawler
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(GroupCrawler.class);
+
+    public static final String MANIFEST_HEADER = "groupId;artifactId;versions;latestVersion;latestBytes;estimatedTotalBytes";
+    private static final String METADATA_FILE_NAME = "maven-metadata.xml";
+    private static final int TIMEOUT_MS = 30000;
+    //Example: <a href="hibernate-core/" title="hibernate-core/">hibernate-core/</a>       2021-03-18 12:52         -
+    private static final Pattern LINK_PATTERN = Pattern.compile("<a href=\"([^\"]+)\"[^>]*>[^<]*</a>\\s*(?:\\S+\\s+\\S+\\s+(\\d+))?");
+    private static final Pattern VERSION_PATTERN = Pattern.compile("<version>\\s*([^<\\s]+)\\s*</version>");
+    private static final Pattern RELEASE_PATTERN = Pattern.compile("<release>\\s*([^<\\s]+)\\s*</release>");
+    private static final Pattern LATEST_PATTERN = Pattern.compile("<latest>\\s*([^<\\s]+)\\s*</latest>");
+
+    private final String m_repoUrl;
+    private final int m_maxConcurrentRequests;
+
+    public static final class Artifact
+    {
+        private final String m_groupId;
+        private final String m_artifactId;
+        private final int m_versionCount;
+        private final String m_latestVersion;
+        private final long m_latestBytes;
+
+        Artifact(final String groupId, final String artifactId, final int versionCount, final String latestVersion, final long latestBytes)
+        {
+            m_groupId = groupId;
+            m_artifactId = artifactId;
+            m_versionCount = versionCount;
+            m_latestVersion = latestVersion;
+            m_latestBytes = latestBytes;
+        }
+
+        public String getGroupId()
+        {
+            return m_groupId;
+        }
+
+        public String getArtifactId()
+        {
+            return m_artifactId;
+        }
+
+        public int getVersionCount()
+        {
+            return m_versionCount;
+        }
+
+        public String getLatestVersion()
+        {
+            return m_latestVersion;
+        }
+
+        /**
+         * @return size of jar and sources jar of the latest version, -1 if unknown
+         */
+        public long getLatestBytes()
+        {
+            return m_latestBytes;
+        }
+
+        /**
+         * @return estimated download size of all versions, -1 if unknown
+         */
+        public long getEstimatedTotalBytes()
+        {
+            return m_latestBytes < 0 ? -1 : m_latestBytes * m_versionCount;
+        }
+    }
+
+    static final class Listing
+    {
+        private final List<String> m_directories = new ArrayList<>();
+        private final Map<String, Long> m_fileSizes = new LinkedHashMap<>();
+
+        List<String> getDirectories()
+        {
+            return m_directories;
+        }
+
+        /**
+         * @return file names mapped to their size, -1 if the size is unknown
+         */
+        Map<String, Long> getFileSizes()
+        {
+            return m_fileSizes;
+        }
+    }
+
+    /**
+     * @param repoUrl
+     *            base URL of the repository, e.g. 'https://repo1.maven.org/maven2/' or 'file:/data/m2/repository/'
+     */
+    public GroupCrawler(final String repoUrl, final int maxConcurrentRequests)
+    {
+        assert repoUrl != null && repoUrl.length() > 0 : "Parameter 'repoUrl' of method 'GroupCrawler' must not be empty";
+        assert maxConcurrentRequests > 0 : "Parameter 'maxConcurrentRequests' of method 'GroupCrawler' must be positive";
+
+        m_repoUrl = repoUrl.endsWith("/") ? repoUrl : repoUrl + "/";
+        m_maxConcurrentRequests = maxConcurrentRequests;
+    }
+
+    /**
+     * State of a single crawl. Directory listings are submitted as separate tasks, the crawl is complete when no task is pending.
+     */
+    private final class Crawl
+    {
+        private final ExecutorService m_executor = Executors.newFixedThreadPool(m_maxConcurrentRequests);
+        private final AtomicInteger m_pending = new AtomicInteger();
+        private final CountDownLatch m_completed = new CountDownLatch(1);
+        private final Queue<Artifact> m_artifacts = new ConcurrentLinkedQueue<>();
+        private final Queue<String> m_failures = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger m_listings = new AtomicInteger();
+
+        private void submit(final String path)
+        {
+            m_pending.incrementAndGet();
+            m_executor.execute(() ->
+            {
+                try
+                {
+                    crawlDirectory(path);
+                }
+                finally
+                {
+                    if (m_pending.decrementAndGet() == 0)
+                    {
+                        m_completed.countDown();
+                    }
+                }
+            });
+        }
+
+        private void crawlDirectory(final String path)
+        {
+            try
+            {
+                final Listing listing = list(path);
+                m_listings.incrementAndGet();
+                if (listing.m_fileSizes.containsKey(METADATA_FILE_NAME))
+                {
+                    final String metadata = read(path + METADATA_FILE_NAME);
+                    final List<String> versions = getVersions(metadata);
+                    if (!versions.isEmpty())
+                    {
+                        m_artifacts.add(createArtifact(path, metadata, versions));
+                        return;
+                    }
+                }
+
+                for (final String next : listing.m_directories)
+                {
+                    submit(path + next);
+                }
+            }
+            catch (final IOException | URISyntaxException e)
+            {
+                m_failures.add(path + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return all artifacts of the group and its sub groups, sorted by groupId and artifactId
+     */
+    public List<Artifact> crawl(final String groupId) throws IOException
+    {
+        assert groupId != null && groupId.length() > 0 : "Parameter 'groupId' of method 'crawl' must not be empty";
+
+        final long start = System.currentTimeMillis();
+        final Crawl crawl = new Crawl();
+        try
+        {
+            crawl.submit(groupId.replace('.', '/') + "/");
+            crawl.m_completed.await();
+        }
+        catch (final InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Crawling of '" + groupId + "' has been interrupted");
+        }
+        finally
+        {
+            crawl.m_executor.shutdownNow();
+        }
+
+        if (!crawl.m_failures.isEmpty())
+        {
+            LOGGER.warn("Failed to crawl {} directories: {}", crawl.m_failures.size(), crawl.m_failures);
+        }
+        final List<Artifact> result = new ArrayList<>(crawl.m_artifacts);
+        result.sort((a1, a2) ->
+        {
+            final int groupResult = a1.getGroupId().compareTo(a2.getGroupId());
+            return groupResult != 0 ? groupResult : a1.getArtifactId().compareTo(a2.getArtifactId());
+        });
+        LOGGER.info("Found {} artifacts below '{}' in {} directory listings, {} ms", result.size(), groupId, crawl.m_listings.get(),
+                System.currentTimeMillis() - start);
+        return result;
+    }
+
+    private Artifact createArtifact(final String path, final String metadata, final List<String> versions) throws IOException, URISyntaxException
+    {
+        final String trimmedPath = path.substring(0, path.length() - 1);
+        final int lastSlash = trimmedPath.lastIndexOf('/');
+        final String artifactId = trimmedPath.substring(lastSlash + 1);
+        final String groupId = trimmedPath.substring(0, Math.max(0, lastSlash)).replace('/', '.');
+
+        final Matcher releaseMatcher = RELEASE_PATTERN.matcher(metadata);
+        final Matcher latestMatcher = LATEST_PATTERN.matcher(metadata);
+        final String latestVersion = releaseMatcher.find() ? releaseMatcher.group(1)
+                : latestMatcher.find() ? latestMatcher.group(1) : versions.get(versions.size() - 1);
+
+        long latestBytes = -1;
+        final Listing latestListing = list(path + latestVersion + "/");
+        final String prefix = artifactId + "-" + latestVersion;
+        for (final String next : new String[] { prefix + ".jar", prefix + "-sources.jar" })
+        {
+            final Long size = latestListing.m_fileSizes.get(next);
+            if (size != null && size.longValue() >= 0)
+            {
+                latestBytes = Math.max(0, latestBytes) + size.longValue();
+            }
+        }
+        return new Artifact(groupId, artifactId, versions.size(), latestVersion, latestBytes);
+    }
+
+    static List<String> getVersions(final String metadata)
+    {
+        assert metadata != null : "Parameter 'metadata' of method 'getVersions' must not be null";
+
+        final List<String> versions = new ArrayList<>();
+        final Matcher matcher = VERSION_PATTERN.matcher(metadata);
+        while (matcher.find())
+        {
+            versions.add(matcher.group(1));
+        }
+        return versions;
+    }
+
+    Listing list(final String path) throws IOException, URISyntaxException
+    {
+        final URL url = new URL(m_repoUrl + path);
+        final Listing listing = new Listing();
+        if ("file".equals(url.getProtocol()))
+        {
+            final File[] files = new File(url.toURI()).listFiles();
+            if (files == null)
+            {
+                throw new IOException("Not a directory: " + url);
+            }
+            for (final File next : files)
+            {
+                if (next.isDirectory())
+                {
+                    listing.m_directories.add(next.getName() + "/");
+                }
+                else
+                {
+                    listing.m_fileSizes.put(next.getName(), next.length());
+                }
+            }
+            Collections.sort(listing.m_directories);
+            return listing;
+        }
+
+        return parseListing(read(path));
+    }
+
+    /**
+     * Parses an HTML directory listing as served by Maven Central and Nexus/Artifactory style repositories.
+     */
+    static Listing parseListing(final String html)
+    {
+        assert html != null : "Parameter 'html' of method 'parseListing' must not be null";
+
+        final Listing listing = new Listing();
+        final Matcher matcher = LINK_PATTERN.matcher(html);
+        while (matcher.find())
+        {
+            final String href = matcher.group(1);
+            if (href.startsWith("..") || href.startsWith("/") || href.startsWith("?") || href.contains("://"))
+            {
+                continue;
+            }
+            if (href.endsWith("/"))
+            {
+                listing.m_directories.add(href);
+            }
+            else
+            {
+                listing.m_fileSizes.put(href, matcher.group(2) != null ? Long.parseLong(matcher.group(2)) : -1L);
+            }
+        }
+        return listing;
+    }
+
+    private String read(final String path) throws IOException
+    {
+        final URLConnection connection = new URL(m_repoUrl + path).openConnection();
+        connection.setConnectTimeout(TIMEOUT_MS);
+        connection.setReadTimeout(TIMEOUT_MS);
+        //Reading the stream completely and closing it allows the HTTP connection to be reused
+        try (InputStream in = connection.getInputStream())
+        {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    public static void writeManifest(final File manifestFile, final List<Artifact> artifacts) throws IOException
+    {
+        assert manifestFile != null : "Parameter 'manifestFile' of method 'writeManifest' must not be null";
+        assert artifacts != null : "Parameter 'artifacts' of method 'writeManifest' must not be null";
+
+        try (Writer writer = Files.newBufferedWriter(manifestFile.toPath(), StandardCharsets.UTF_8))
+        {
+            writer.write(MANIFEST_HEADER);
+            writer.write("\n");
+            for (final Artifact next : artifacts)
+            {
+                writer.write(String.join(";", next.getGroupId(), next.getArtifactId(), String.valueOf(next.getVersionCount()),
+                        next.getLatestVersion(), String.valueOf(next.getLatestBytes()), String.valueOf(next.getEstimatedTotalBytes())));
+                writer.write("\n");
+            }
+        }
+    }
+}
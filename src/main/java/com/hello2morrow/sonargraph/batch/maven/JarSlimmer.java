@@ -0,0 +1,232 @@
+/*
+ * Sonargraph Integration Access
+ * Copyright (C) 2016-2021 hello2morrow GmbH
+ * mailto: support AT hello2morrow DOT com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hello2morrow.sonargraph.batch.maven;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Removes all entries from a jar that are not analyzed by Sonargraph, i.e. everything except '.class' and '.java' entries and the entries
+ * matching the configured keep patterns (e.g. images, bundled JavaScript, data files and test fixtures).
+ *
+ * The jar is streamed entry by entry into a slimmed copy, it is never extracted. The original jar is not modified, so that it can still be
+ * used as download cache and as input of other analyses.
+ */
+public final class JarSlimmer
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(JarSlimmer.class);
+    private static final int BUFFER_SIZE = 8192;
+    private static final String TEMP_SUFFIX = ".slim";
+
+    private final List<Pattern> m_keepPatterns;
+
+    /**
+     * @param keepPatterns
+     *            glob patterns of additional entries to keep, matched against the complete entry name. '**' matches across directories, '*'
+     *            and '?' only within a directory, e.g. 'META-INF/MANIFEST.MF' or '**&#47;*.properties'.
+     */
+    public JarSlimmer(final List<String> keepPatterns)
+    {
+        assert keepPatterns != null : "Parameter 'keepPatterns' of method 'JarSlimmer' must not be null";
+
+        final List<Pattern> patterns = new ArrayList<>();
+        for (final String next : keepPatterns)
+        {
+            if (!next.trim().isEmpty())
+            {
+                patterns.add(globToPattern(next.trim()));
+            }
+        }
+        m_keepPatterns = Collections.unmodifiableList(patterns);
+    }
+
+    public static final class Result
+    {
+        private final long m_originalBytes;
+        private final long m_slimmedBytes;
+        private final int m_keptEntries;
+        private final int m_removedEntries;
+
+        Result(final long originalBytes, final long slimmedBytes, final int keptEntries, final int removedEntries)
+        {
+            m_originalBytes = originalBytes;
+            m_slimmedBytes = slimmedBytes;
+            m_keptEntries = keptEntries;
+            m_removedEntries = removedEntries;
+        }
+
+        public long getOriginalBytes()
+        {
+            return m_originalBytes;
+        }
+
+        public long getSlimmedBytes()
+        {
+            return m_slimmedBytes;
+        }
+
+        public long getSavedBytes()
+        {
+            return m_originalBytes - m_slimmedBytes;
+        }
+
+        public int getKeptEntries()
+        {
+            return m_keptEntries;
+        }
+
+        public int getRemovedEntries()
+        {
+            return m_removedEntries;
+        }
+    }
+
+    /**
+     * Writes a copy of the jar that only contains the entries needed for the analysis. The target is a plain copy of the jar if there is
+     * nothing to remove.
+     */
+    public Result slim(final File jar, final File target) throws IOException
+    {
+        assert jar != null : "Parameter 'jar' of method 'slim' must not be null";
+        assert target != null : "Parameter 'target' of method 'slim' must not be null";
+        assert !target.equals(jar) : "Parameter 'target' of method 'slim' must not be the jar itself";
+
+        final long originalBytes = jar.length();
+        final File tempFile = new File(target.getParentFile(), target.getName() + TEMP_SUFFIX);
+        int kept = 0;
+        int removed = 0;
+        try
+        {
+            final Set<String> names = new HashSet<>();
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            try (ZipInputStream in = new ZipInputStream(new BufferedInputStream(Files.newInputStream(jar.toPath()), BUFFER_SIZE));
+                    ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile.toPath()), BUFFER_SIZE)))
+            {
+                //The slimmed jar is a local, short-lived input of the analysis, so compression speed matters more than size.
+                out.setLevel(Deflater.BEST_SPEED);
+                for (ZipEntry next = in.getNextEntry(); next != null; next = in.getNextEntry())
+                {
+                    if (next.isDirectory() || !isNeeded(next.getName()) || !names.add(next.getName()))
+                    {
+                        removed++;
+                        continue;
+                    }
+
+                    final ZipEntry entry = new ZipEntry(next.getName());
+                    if (next.getTime() != -1)
+                    {
+                        entry.setTime(next.getTime());
+                    }
+                    out.putNextEntry(entry);
+                    copy(in, out, buffer);
+                    out.closeEntry();
+                    kept++;
+                }
+            }
+
+            if (removed == 0)
+            {
+                Files.copy(jar.toPath(), tempFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            Files.move(tempFile.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally
+        {
+            Files.deleteIfExists(tempFile.toPath());
+        }
+
+        final Result result = new Result(originalBytes, target.length(), kept, removed);
+        LOGGER.debug("Slimmed '{}' from {} to {} bytes, removed {} entries", jar.getAbsolutePath(), originalBytes, result.getSlimmedBytes(), removed);
+        return result;
+    }
+
+    boolean isNeeded(final String entryName)
+    {
+        if (entryName.endsWith(".class") || entryName.endsWith(".java"))
+        {
+            return true;
+        }
+        for (final Pattern next : m_keepPatterns)
+        {
+            if (next.matcher(entryName).matches())
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static Pattern globToPattern(final String glob)
+    {
+        assert glob != null && glob.length() > 0 : "Parameter 'glob' of method 'globToPattern' must not be empty";
+
+        final StringBuilder regex = new StringBuilder();
+        for (int i = 0; i < glob.length(); i++)
+        {
+            final char next = glob.charAt(i);
+            if (next == '*' && i + 1 < glob.length() && glob.charAt(i + 1) == '*')
+            {
+                //'**/' also matches no directory at all
+                final boolean slash = i + 2 < glob.length() && glob.charAt(i + 2) == '/';
+                regex.append(slash ? "(.*/)?" : ".*");
+                i += slash ? 2 : 1;
+            }
+            else if (next == '*')
+            {
+                regex.append("[^/]*");
+            }
+            else if (next == '?')
+            {
+                regex.append("[^/]");
+            }
+            else
+            {
+                regex.append(Pattern.quote(String.valueOf(next)));
+            }
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    private static void copy(final InputStream in, final OutputStream out, final byte[] buffer) throws IOException
+    {
+        int read;
+        while ((read = in.read(buffer)) != -1)
+        {
+            out.write(buffer, 0, read);
+        }
+    }
+}
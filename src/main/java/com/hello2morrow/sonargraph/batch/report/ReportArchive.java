@@ -0,0 +1,487 @@
+/*
+ * Sonargraph Integration Access
+ * Copyright (C) 2016-2021 hello2morrow GmbH
+ * mailto: support AT hello2morrow DOT com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hello2morrow.sonargraph.batch.report;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compressed archive of reports and snapshots.
+ *
+ * Consecutive XML reports are nearly identical, so each one is stored as a line based delta (copy ranges of the base, insert new lines)
+ * against the last key frame, gzip compressed. Every n-th report is stored in full as key frame, which limits the size of the deltas. A report
+ * is reconstructed by applying its single delta to the key frame, the lines of the current key frame are kept in memory while adding reports.
+ * Archives written by earlier versions contain deltas against the predecessor, these chains are still resolved. Other files, e.g. snapshots,
+ * are stored gzip compressed in full. The index file lists the entries in the order they have been added.
+ *
+ * All operations hold an exclusive lock on the lock file of the archive and re-read the index if another process has changed it, so that
+ * concurrent jobs and workers can use the same archive. Jobs of this JVM share the instance returned by {@link #getShared(File, int)}.
+ */
+public final class ReportArchive
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReportArchive.class);
+
+    private static final String INDEX_FILE_NAME = "index.txt";
+    private static final String LOCK_FILE_NAME = "archive.lock";
+    private static final String SEPARATOR = ";";
+    private static final String FULL = "F";
+    private static final String DELTA = "D";
+    private static final String FULL_EXTENSION = ".gz";
+    private static final String DELTA_EXTENSION = ".delta.gz";
+    private static final byte COPY_OPERATION = 'C';
+    private static final byte INSERT_OPERATION = 'I';
+    private static final int MAX_MATCH_CANDIDATES = 16;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final Map<File, ReportArchive> s_shared = new HashMap<>();
+
+    private final File m_directory;
+    private final int m_keyFrameInterval;
+    private final FileChannel m_lockChannel;
+    //entry name -> base entry name, or null for full entries
+    private final Map<String, String> m_entries = new LinkedHashMap<>();
+    private String m_keyFrame;
+    private int m_deltasSinceKeyFrame = 0;
+    //Lines of the most recently used key frame, the base of all deltas added until the next key frame
+    private String m_cachedKeyFrame;
+    private List<String> m_cachedKeyFrameLines;
+    //Length of the index file when it was read, the index is only appended to
+    private long m_indexLength = 0;
+
+    ReportArchive(final File directory, final int keyFrameInterval) throws IOException
+    {
+        assert directory != null : "Parameter 'directory' of method 'ReportArchive' must not be null";
+        assert keyFrameInterval > 0 : "Parameter 'keyFrameInterval' of method 'ReportArchive' must be positive";
+
+        m_directory = directory;
+        m_keyFrameInterval = keyFrameInterval;
+        m_directory.mkdirs();
+        m_lockChannel = FileChannel.open(new File(m_directory, LOCK_FILE_NAME).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * @return the archive instance for the directory that is shared by all jobs of this JVM
+     */
+    public static synchronized ReportArchive getShared(final File directory, final int keyFrameInterval) throws IOException
+    {
+        assert directory != null : "Parameter 'directory' of method 'getShared' must not be null";
+
+        final File key = directory.getCanonicalFile();
+        ReportArchive archive = s_shared.get(key);
+        if (archive == null)
+        {
+            archive = new ReportArchive(key, keyFrameInterval);
+            s_shared.put(key, archive);
+        }
+        return archive;
+    }
+
+    /**
+     * Must be called while holding the lock.
+     */
+    private void readIndex() throws IOException
+    {
+        final File index = new File(m_directory, INDEX_FILE_NAME);
+        if (!index.exists() || index.length() == m_indexLength)
+        {
+            return;
+        }
+
+        m_entries.clear();
+        m_keyFrame = null;
+        m_deltasSinceKeyFrame = 0;
+        final byte[] content = Files.readAllBytes(index.toPath());
+        for (final String next : new String(content, StandardCharsets.UTF_8).split("\\R"))
+        {
+            final String[] parts = next.split(SEPARATOR);
+            if (parts.length == 3 && parts[1].equals(DELTA))
+            {
+                m_entries.put(parts[0], parts[2]);
+                m_deltasSinceKeyFrame++;
+            }
+            else if (parts.length >= 2)
+            {
+                m_entries.put(parts[0], null);
+                if (parts.length == 3)
+                {
+                    //key frame of the delta chain
+                    m_keyFrame = parts[0];
+                    m_deltasSinceKeyFrame = 0;
+                }
+            }
+        }
+        m_indexLength = content.length;
+    }
+
+    private FileLock lock() throws IOException
+    {
+        final FileLock lock = m_lockChannel.lock();
+        try
+        {
+            readIndex();
+        }
+        catch (final IOException e)
+        {
+            lock.release();
+            throw e;
+        }
+        return lock;
+    }
+
+    public synchronized boolean contains(final String entryName) throws IOException
+    {
+        try (FileLock lock = lock())
+        {
+            return m_entries.containsKey(entryName);
+        }
+    }
+
+    public synchronized List<String> getEntryNames() throws IOException
+    {
+        try (FileLock lock = lock())
+        {
+            return Collections.unmodifiableList(new ArrayList<>(m_entries.keySet()));
+        }
+    }
+
+    /**
+     * Adds a text file (XML report) as delta against the last key frame, or in full if a key frame is due.
+     */
+    public synchronized void addDelta(final File file) throws IOException
+    {
+        assert file != null : "Parameter 'file' of method 'addDelta' must not be null";
+
+        final String entryName = file.getName();
+        try (FileLock lock = lock())
+        {
+            if (m_entries.containsKey(entryName))
+            {
+                return;
+            }
+
+            final List<String> lines = splitLines(Files.readAllBytes(file.toPath()));
+            if (m_keyFrame == null || m_deltasSinceKeyFrame + 1 >= m_keyFrameInterval)
+            {
+                writeFull(entryName, file);
+                appendIndex(entryName, FULL, entryName);
+                m_entries.put(entryName, null);
+                m_keyFrame = entryName;
+                m_deltasSinceKeyFrame = 0;
+                m_cachedKeyFrame = entryName;
+                m_cachedKeyFrameLines = lines;
+            }
+            else
+            {
+                try (DataOutputStream out = createOutput(new File(m_directory, entryName + DELTA_EXTENSION)))
+                {
+                    writeDelta(getLines(m_keyFrame), lines, out);
+                }
+                appendIndex(entryName, DELTA, m_keyFrame);
+                m_entries.put(entryName, m_keyFrame);
+                m_deltasSinceKeyFrame++;
+            }
+            LOGGER.debug("Archived {}", entryName);
+        }
+    }
+
+    /**
+     * Adds a file in full, gzip compressed.
+     */
+    public synchronized void addFull(final File file) throws IOException
+    {
+        assert file != null : "Parameter 'file' of method 'addFull' must not be null";
+
+        final String entryName = file.getName();
+        try (FileLock lock = lock())
+        {
+            if (m_entries.containsKey(entryName))
+            {
+                return;
+            }
+            writeFull(entryName, file);
+            appendIndex(entryName, FULL, null);
+            m_entries.put(entryName, null);
+        }
+    }
+
+    /**
+     * Restores an entry, e.g. to use an archived report as baseline report.
+     */
+    public synchronized void materialize(final String entryName, final File target) throws IOException
+    {
+        assert entryName != null : "Parameter 'entryName' of method 'materialize' must not be null";
+        assert target != null : "Parameter 'target' of method 'materialize' must not be null";
+
+        try (FileLock lock = lock())
+        {
+            if (!m_entries.containsKey(entryName))
+            {
+                throw new IOException("Entry '" + entryName + "' not contained in archive " + m_directory.getAbsolutePath());
+            }
+
+            final File tempFile = new File(target.getParentFile(), target.getName() + ".tmp");
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tempFile.toPath()), BUFFER_SIZE))
+            {
+                final String base = m_entries.get(entryName);
+                if (base == null)
+                {
+                    try (InputStream in = openFull(entryName))
+                    {
+                        in.transferTo(out);
+                    }
+                }
+                else
+                {
+                    //Only the base is held in memory, the requested entry is streamed to the target
+                    applyDelta(getLines(base), entryName, out);
+                }
+            }
+            Files.move(tempFile.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * @return the lines of the entry, the lines of key frames are cached
+     */
+    private List<String> getLines(final String entryName) throws IOException
+    {
+        if (entryName.equals(m_cachedKeyFrame))
+        {
+            return m_cachedKeyFrameLines;
+        }
+
+        final List<String> lines = splitLines(reconstruct(entryName));
+        if (m_entries.get(entryName) == null)
+        {
+            m_cachedKeyFrame = entryName;
+            m_cachedKeyFrameLines = lines;
+        }
+        return lines;
+    }
+
+    /**
+     * Resolves the whole chain, needed for the deltas against the predecessor of archives written by earlier versions.
+     */
+    private byte[] reconstruct(final String entryName) throws IOException
+    {
+        final List<String> chain = new ArrayList<>();
+        for (String next = entryName; next != null; next = m_entries.get(next))
+        {
+            chain.add(0, next);
+        }
+
+        byte[] content;
+        try (InputStream in = openFull(chain.get(0)))
+        {
+            content = in.readAllBytes();
+        }
+        for (final String next : chain.subList(1, chain.size()))
+        {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(content.length);
+            applyDelta(splitLines(content), next, out);
+            content = out.toByteArray();
+        }
+        return content;
+    }
+
+    private void applyDelta(final List<String> base, final String entryName, final OutputStream out) throws IOException
+    {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new GZIPInputStream(Files.newInputStream(new File(m_directory, entryName + DELTA_EXTENSION).toPath())))))
+        {
+            int operation;
+            while ((operation = in.read()) != -1)
+            {
+                if (operation == COPY_OPERATION)
+                {
+                    final int start = in.readInt();
+                    final int count = in.readInt();
+                    for (int i = start; i < start + count; i++)
+                    {
+                        out.write(base.get(i).getBytes(StandardCharsets.UTF_8));
+                    }
+                }
+                else if (operation == INSERT_OPERATION)
+                {
+                    final byte[] bytes = new byte[in.readInt()];
+                    in.readFully(bytes);
+                    out.write(bytes);
+                }
+                else
+                {
+                    throw new IOException("Corrupt delta entry '" + entryName + "'");
+                }
+            }
+        }
+    }
+
+    /**
+     * Greedy line matching: each target line is copied from the base if it occurs there, preferring the continuation of the previous copy range,
+     * otherwise it is inserted.
+     */
+    static void writeDelta(final List<String> base, final List<String> target, final DataOutputStream out) throws IOException
+    {
+        final Map<String, List<Integer>> baseIndex = new HashMap<>();
+        for (int i = 0; i < base.size(); i++)
+        {
+            baseIndex.computeIfAbsent(base.get(i), k -> new ArrayList<>()).add(i);
+        }
+
+        final StringBuilder insert = new StringBuilder();
+        int expected = -1;
+        int i = 0;
+        while (i < target.size())
+        {
+            int bestStart = -1;
+            int bestLength = 0;
+            if (expected >= 0 && expected < base.size() && base.get(expected).equals(target.get(i)))
+            {
+                bestStart = expected;
+                bestLength = matchLength(base, expected, target, i);
+            }
+            else
+            {
+                final List<Integer> candidates = baseIndex.getOrDefault(target.get(i), Collections.emptyList());
+                for (final int next : candidates.subList(0, Math.min(candidates.size(), MAX_MATCH_CANDIDATES)))
+                {
+                    final int length = matchLength(base, next, target, i);
+                    if (length > bestLength)
+                    {
+                        bestStart = next;
+                        bestLength = length;
+                    }
+                }
+            }
+
+            if (bestLength == 0)
+            {
+                insert.append(target.get(i));
+                i++;
+                continue;
+            }
+
+            writeInsert(insert, out);
+            out.writeByte(COPY_OPERATION);
+            out.writeInt(bestStart);
+            out.writeInt(bestLength);
+            i += bestLength;
+            expected = bestStart + bestLength;
+        }
+        writeInsert(insert, out);
+    }
+
+    private static void writeInsert(final StringBuilder insert, final DataOutputStream out) throws IOException
+    {
+        if (insert.length() > 0)
+        {
+            final byte[] bytes = insert.toString().getBytes(StandardCharsets.UTF_8);
+            out.writeByte(INSERT_OPERATION);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+            insert.setLength(0);
+        }
+    }
+
+    private static int matchLength(final List<String> base, final int baseStart, final List<String> target, final int targetStart)
+    {
+        int length = 0;
+        while (baseStart + length < base.size() && targetStart + length < target.size()
+                && base.get(baseStart + length).equals(target.get(targetStart + length)))
+        {
+            length++;
+        }
+        return length;
+    }
+
+    /**
+     * @return the lines including their line terminators, so that the content can be restored byte by byte.
+     */
+    static List<String> splitLines(final byte[] content)
+    {
+        final String text = new String(content, StandardCharsets.UTF_8);
+        final List<String> lines = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < text.length(); i++)
+        {
+            if (text.charAt(i) == '\n')
+            {
+                lines.add(text.substring(start, i + 1));
+                start = i + 1;
+            }
+        }
+        if (start < text.length())
+        {
+            lines.add(text.substring(start));
+        }
+        return lines;
+    }
+
+    private void writeFull(final String entryName, final File file) throws IOException
+    {
+        try (OutputStream out = createOutput(new File(m_directory, entryName + FULL_EXTENSION)))
+        {
+            Files.copy(file.toPath(), out);
+        }
+    }
+
+    private InputStream openFull(final String entryName) throws IOException
+    {
+        return new GZIPInputStream(Files.newInputStream(new File(m_directory, entryName + FULL_EXTENSION).toPath()), BUFFER_SIZE);
+    }
+
+    private static DataOutputStream createOutput(final File file) throws IOException
+    {
+        return new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(file.toPath()), BUFFER_SIZE)));
+    }
+
+    /**
+     * @param base
+     *            null for files that are not part of the delta chain
+     */
+    private void appendIndex(final String entryName, final String kind, final String base) throws IOException
+    {
+        final String line = entryName + SEPARATOR + kind + (base != null ? SEPARATOR + base : "");
+        final File index = new File(m_directory, INDEX_FILE_NAME);
+        Files.write(index.toPath(), Collections.singletonList(line), StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        m_indexLength = index.length();
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * Sonargraph Integration Access
+ * Copyright (C) 2016-2021 hello2morrow GmbH
+ * mailto: support AT hello2morrow DOT com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hello2morrow.sonargraph.batch.report;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Extracts system and module level metric values from a Sonargraph XML report with a streaming parser, so that large reports are not loaded into
+ * memory.
+ *
+ * The report declares metric levels ('metricLevel' with 'id' and 'name') and metric ids ('metricId' with 'id' and 'name'). Values are contained in
+ * 'metricValues' elements referencing a level ('metricLevelRef') and an element ('elementRef'), with one child per value referencing the metric
+ * id ('ref') and holding the value as 'intValue', 'floatValue' or 'value'.
+ */
+public final class ReportMetricExtractor
+{
+    public static final String SYSTEM_LEVEL = "System";
+    public static final String MODULE_LEVEL = "Module";
+    public static final String KEY_SEPARATOR = "/";
+
+    private static final String METRIC_LEVEL = "metricLevel";
+    private static final String METRIC_ID = "metricId";
+    private static final String METRIC_VALUES = "metricValues";
+    private static final String[] VALUE_ATTRIBUTES = { "intValue", "floatValue", "value" };
+
+    private ReportMetricExtractor()
+    {
+        super();
+    }
+
+    /**
+     * @param metricName
+     *            the name of the metric, e.g. 'CoreBiggestCycleGroupSize'
+     * @return the system level value
+     * @throws IOException
+     *             if the report cannot be read or does not contain the metric
+     */
+    public static double extractSystemMetric(final File report, final String metricName) throws IOException
+    {
+        assert metricName != null && metricName.length() > 0 : "Parameter 'metricName' of method 'extractSystemMetric' must not be empty";
+
+        final Double value = extractMetrics(report).get(createSystemKey(metricName));
+        if (value == null)
+        {
+            throw new IOException("No system level value for metric '" + metricName + "' in report " + report.getAbsolutePath());
+        }
+        return value;
+    }
+
+    /**
+     * @return the values of all system and module level metrics, keyed by 'System/&lt;metric&gt;' and 'Module/&lt;module&gt;/&lt;metric&gt;'
+     */
+    public static Map<String, Double> extractMetrics(final File report) throws IOException
+    {
+        assert report != null : "Parameter 'report' of method 'extractMetrics' must not be null";
+
+        try (InputStream in = new FileInputStream(report))
+        {
+            return extractMetrics(in);
+        }
+        catch (final IOException e)
+        {
+            throw new IOException("Failed to extract metrics from report " + report.getAbsolutePath() + ": " + e.getMessage(), e);
+        }
+    }
+
+    public static String createSystemKey(final String metricName)
+    {
+        return SYSTEM_LEVEL + KEY_SEPARATOR + metricName;
+    }
+
+    public static String createModuleKey(final String moduleName, final String metricName)
+    {
+        return MODULE_LEVEL + KEY_SEPARATOR + moduleName + KEY_SEPARATOR + metricName;
+    }
+
+    static Map<String, Double> extractMetrics(final InputStream in) throws IOException
+    {
+        final Map<String, String> levelNames = new HashMap<>();
+        final Map<String, String> metricNames = new HashMap<>();
+        final Map<String, String> elementNames = new HashMap<>();
+        //level ref, element ref, metric ref, value; resolved at the end, since values may precede the declarations
+        final List<String[]> values = new ArrayList<>();
+
+        final XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        try
+        {
+            final XMLStreamReader reader = factory.createXMLStreamReader(in);
+            try
+            {
+                String currentLevelRef = null;
+                String currentElementRef = null;
+                while (reader.hasNext())
+                {
+                    final int event = reader.next();
+                    if (event == XMLStreamConstants.START_ELEMENT)
+                    {
+                        final String name = reader.getLocalName();
+                        final String id = reader.getAttributeValue(null, "id");
+                        if (METRIC_LEVEL.equals(name))
+                        {
+                            levelNames.put(id, reader.getAttributeValue(null, "name"));
+                        }
+                        else if (METRIC_ID.equals(name))
+                        {
+                            metricNames.put(id, reader.getAttributeValue(null, "name"));
+                        }
+                        else if (METRIC_VALUES.equals(name))
+                        {
+                            currentLevelRef = reader.getAttributeValue(null, "metricLevelRef");
+                            currentElementRef = reader.getAttributeValue(null, "elementRef");
+                        }
+                        else if (currentLevelRef != null)
+                        {
+                            final String ref = reader.getAttributeValue(null, "ref");
+                            final String value = getValue(reader);
+                            if (ref != null && value != null)
+                            {
+                                values.add(new String[] { currentLevelRef, currentElementRef, ref, value });
+                            }
+                        }
+                        else if (id != null)
+                        {
+                            final String presentationName = reader.getAttributeValue(null, "presentationName");
+                            final String elementName = presentationName != null ? presentationName : reader.getAttributeValue(null, "name");
+                            if (elementName != null)
+                            {
+                                elementNames.put(id, elementName);
+                            }
+                        }
+                    }
+                    else if (event == XMLStreamConstants.END_ELEMENT && METRIC_VALUES.equals(reader.getLocalName()))
+                    {
+                        currentLevelRef = null;
+                        currentElementRef = null;
+                    }
+                }
+            }
+            finally
+            {
+                reader.close();
+            }
+        }
+        catch (final XMLStreamException e)
+        {
+            throw new IOException("Invalid XML report: " + e.getMessage(), e);
+        }
+
+        final Map<String, Double> metrics = new TreeMap<>();
+        for (final String[] next : values)
+        {
+            final String level = levelNames.get(next[0]);
+            final String metric = metricNames.get(next[2]);
+            if (metric == null)
+            {
+                continue;
+            }
+
+            final String key;
+            if (SYSTEM_LEVEL.equals(level))
+            {
+                key = createSystemKey(metric);
+            }
+            else if (MODULE_LEVEL.equals(level) && elementNames.containsKey(next[1]))
+            {
+                key = createModuleKey(elementNames.get(next[1]), metric);
+            }
+            else
+            {
+                continue;
+            }
+
+            try
+            {
+                metrics.putIfAbsent(key, Double.parseDouble(next[3]));
+            }
+            catch (final NumberFormatException e)
+            {
+                throw new IOException("Invalid value '" + next[3] + "' for metric '" + key + "'", e);
+            }
+        }
+        return metrics;
+    }
+
+    private static String getValue(final XMLStreamReader reader)
+    {
+        for (final String next : VALUE_ATTRIBUTES)
+        {
+            final String value = reader.getAttributeValue(null, next);
+            if (value != null)
+            {
+                return value;
+            }
+        }
+        return null;
+    }
+}
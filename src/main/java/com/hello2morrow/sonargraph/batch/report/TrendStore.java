@@ -0,0 +1,364 @@
+/*
+ * Sonargraph Integration Access
+ * Copyright (C) 2016-2021 hello2morrow GmbH
+ * mailto: support AT hello2morrow DOT com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hello2morrow.sonargraph.batch.report;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Local time series store for metric values, one column per metric.
+ *
+ * Each column is a file of fixed size records (timestamp in ms, value), sorted by timestamp, so that range queries use a binary search and only
+ * read the matching records. The manifest 'columns.txt' maps column names to file indexes, 'points.txt' maps timestamps to version labels (a
+ * later line replaces the label of an earlier one). Both files are only appended to.
+ *
+ * All accesses hold a file lock, and the manifest and points are read again if another process has appended to them, so that concurrent jobs
+ * and processes can write the same store. Jobs of this JVM share the instance returned by {@link #getShared(File)}.
+ */
+public final class TrendStore
+{
+    private static final String MANIFEST_FILE_NAME = "columns.txt";
+    private static final String POINTS_FILE_NAME = "points.txt";
+    private static final String SEPARATOR = ";";
+    private static final int RECORD_SIZE = Long.BYTES + Double.BYTES;
+    private static final String LOCK_FILE_NAME = "trends.lock";
+
+    private static final Map<File, TrendStore> s_shared = new HashMap<>();
+
+    private final File m_directory;
+    private final FileChannel m_lockChannel;
+    private final List<String> m_columns = new ArrayList<>();
+    private final Map<String, Integer> m_columnIndexes = new HashMap<>();
+    private final NavigableMap<Long, String> m_points = new TreeMap<>();
+    private long m_manifestLength = 0;
+    private long m_pointsLength = 0;
+
+    TrendStore(final File directory) throws IOException
+    {
+        assert directory != null : "Parameter 'directory' of method 'TrendStore' must not be null";
+
+        m_directory = directory;
+        m_directory.mkdirs();
+        m_lockChannel = FileChannel.open(new File(m_directory, LOCK_FILE_NAME).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * @return the store of the directory shared by all jobs of this JVM
+     */
+    public static synchronized TrendStore getShared(final File directory) throws IOException
+    {
+        assert directory != null : "Parameter 'directory' of method 'getShared' must not be null";
+
+        directory.mkdirs();
+        final File key = directory.getCanonicalFile();
+        TrendStore store = s_shared.get(key);
+        if (store == null)
+        {
+            store = new TrendStore(key);
+            s_shared.put(key, store);
+        }
+        return store;
+    }
+
+    private FileLock lock() throws IOException
+    {
+        final FileLock lock = m_lockChannel.lock();
+        try
+        {
+            readManifest();
+            readPoints();
+        }
+        catch (final IOException | RuntimeException e)
+        {
+            lock.release();
+            throw e;
+        }
+        return lock;
+    }
+
+    /**
+     * Must be called while holding the lock.
+     */
+    private void readManifest() throws IOException
+    {
+        final File manifest = new File(m_directory, MANIFEST_FILE_NAME);
+        if (!manifest.exists() || manifest.length() == m_manifestLength)
+        {
+            return;
+        }
+
+        final byte[] content = Files.readAllBytes(manifest.toPath());
+        m_columns.clear();
+        m_columnIndexes.clear();
+        for (final String next : new String(content, StandardCharsets.UTF_8).split("\\R"))
+        {
+            if (!next.isEmpty())
+            {
+                m_columnIndexes.put(next, m_columns.size());
+                m_columns.add(next);
+            }
+        }
+        m_manifestLength = content.length;
+    }
+
+    /**
+     * Must be called while holding the lock.
+     */
+    private void readPoints() throws IOException
+    {
+        final File points = new File(m_directory, POINTS_FILE_NAME);
+        if (!points.exists() || points.length() == m_pointsLength)
+        {
+            return;
+        }
+
+        final byte[] content = Files.readAllBytes(points.toPath());
+        m_points.clear();
+        for (final String next : new String(content, StandardCharsets.UTF_8).split("\\R"))
+        {
+            final String[] parts = next.split(SEPARATOR, 2);
+            if (parts.length == 2)
+            {
+                m_points.put(Long.parseLong(parts[0]), parts[1]);
+            }
+        }
+        m_pointsLength = content.length;
+    }
+
+    private static long appendLine(final File file, final String line) throws IOException
+    {
+        Files.write(file.toPath(), Collections.singletonList(line), StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        return file.length();
+    }
+
+    /**
+     * Adds the values of one point in time, e.g. of one analyzed version. Existing values with the same timestamp are replaced.
+     */
+    public synchronized void append(final long timestamp, final String label, final Map<String, Double> values) throws IOException
+    {
+        assert label != null : "Parameter 'label' of method 'append' must not be null";
+        assert values != null : "Parameter 'values' of method 'append' must not be null";
+
+        try (FileLock lock = lock())
+        {
+            for (final Map.Entry<String, Double> next : values.entrySet())
+            {
+                Integer index = m_columnIndexes.get(next.getKey());
+                if (index == null)
+                {
+                    index = m_columns.size();
+                    m_columns.add(next.getKey());
+                    m_columnIndexes.put(next.getKey(), index);
+                    m_manifestLength = appendLine(new File(m_directory, MANIFEST_FILE_NAME), next.getKey());
+                }
+                write(getColumnFile(index), timestamp, next.getValue());
+            }
+
+            if (!label.equals(m_points.put(timestamp, label)))
+            {
+                m_pointsLength = appendLine(new File(m_directory, POINTS_FILE_NAME), timestamp + SEPARATOR + label);
+            }
+        }
+    }
+
+    public synchronized List<String> getColumns() throws IOException
+    {
+        try (FileLock lock = lock())
+        {
+            return Collections.unmodifiableList(new ArrayList<>(m_columns));
+        }
+    }
+
+    /**
+     * @return the label of the point with the given timestamp, or null.
+     */
+    public synchronized String getLabel(final long timestamp) throws IOException
+    {
+        try (FileLock lock = lock())
+        {
+            return m_points.get(timestamp);
+        }
+    }
+
+    /**
+     * @return values of the column with timestamps in [from, to], empty if the column does not exist.
+     */
+    public synchronized NavigableMap<Long, Double> query(final String column, final long from, final long to) throws IOException
+    {
+        assert column != null : "Parameter 'column' of method 'query' must not be null";
+
+        try (FileLock lock = lock())
+        {
+            return queryColumn(column, from, to);
+        }
+    }
+
+    /**
+     * Must be called while holding the lock.
+     */
+    private NavigableMap<Long, Double> queryColumn(final String column, final long from, final long to) throws IOException
+    {
+        final NavigableMap<Long, Double> result = new TreeMap<>();
+        final Integer index = m_columnIndexes.get(column);
+        if (index == null || !getColumnFile(index).exists())
+        {
+            return result;
+        }
+
+        try (FileChannel channel = FileChannel.open(getColumnFile(index).toPath(), StandardOpenOption.READ))
+        {
+            final long count = channel.size() / RECORD_SIZE;
+            final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+            long low = 0;
+            long high = count;
+            while (low < high)
+            {
+                final long middle = (low + high) >>> 1;
+                if (readRecord(channel, middle, record) < from)
+                {
+                    low = middle + 1;
+                }
+                else
+                {
+                    high = middle;
+                }
+            }
+            for (long i = low; i < count; i++)
+            {
+                final long timestamp = readRecord(channel, i, record);
+                if (timestamp > to)
+                {
+                    break;
+                }
+                result.put(timestamp, record.getDouble(Long.BYTES));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Writes the given columns as CSV with one line per point in time within [from, to]. Missing values are left empty.
+     */
+    public synchronized void exportCsv(final Writer writer, final List<String> columns, final long from, final long to) throws IOException
+    {
+        assert writer != null : "Parameter 'writer' of method 'exportCsv' must not be null";
+        assert columns != null : "Parameter 'columns' of method 'exportCsv' must not be null";
+
+        final List<NavigableMap<Long, Double>> columnValues = new ArrayList<>();
+        final NavigableMap<Long, String> points;
+        try (FileLock lock = lock())
+        {
+            for (final String next : columns)
+            {
+                columnValues.add(queryColumn(next, from, to));
+            }
+            points = new TreeMap<>(m_points.subMap(from, true, to, true));
+        }
+
+        writer.append("timestamp,version");
+        for (final String next : columns)
+        {
+            writer.append(',').append(quote(next));
+        }
+        writer.append('\n');
+
+        for (final Map.Entry<Long, String> point : points.entrySet())
+        {
+            writer.append(Instant.ofEpochMilli(point.getKey()).toString()).append(',').append(quote(point.getValue()));
+            for (final NavigableMap<Long, Double> next : columnValues)
+            {
+                writer.append(',');
+                final Double value = next.get(point.getKey());
+                if (value != null)
+                {
+                    writer.append(value == Math.rint(value) ? Long.toString(value.longValue()) : value.toString());
+                }
+            }
+            writer.append('\n');
+        }
+        writer.flush();
+    }
+
+    private static String quote(final String value)
+    {
+        return value.contains(",") || value.contains("\"") ? "\"" + value.replace("\"", "\"\"") + "\"" : value;
+    }
+
+    private File getColumnFile(final int index)
+    {
+        return new File(m_directory, "c" + index + ".bin");
+    }
+
+    private static long readRecord(final FileChannel channel, final long index, final ByteBuffer record) throws IOException
+    {
+        record.clear();
+        channel.read(record, index * RECORD_SIZE);
+        return record.getLong(0);
+    }
+
+    private static void write(final File columnFile, final long timestamp, final double value) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(columnFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE))
+        {
+            final long count = channel.size() / RECORD_SIZE;
+            final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+            if (count == 0 || readRecord(channel, count - 1, record) < timestamp)
+            {
+                record.clear();
+                record.putLong(timestamp).putDouble(value).flip();
+                channel.write(record, count * RECORD_SIZE);
+                return;
+            }
+        }
+
+        //Out of order or replaced value: rewrite the column
+        final NavigableMap<Long, Double> values = new TreeMap<>();
+        final ByteBuffer content = ByteBuffer.wrap(Files.readAllBytes(columnFile.toPath()));
+        while (content.remaining() >= RECORD_SIZE)
+        {
+            values.put(content.getLong(), content.getDouble());
+        }
+        values.put(timestamp, value);
+
+        final ByteBuffer rewritten = ByteBuffer.allocate(values.size() * RECORD_SIZE);
+        for (final Map.Entry<Long, Double> next : values.entrySet())
+        {
+            rewritten.putLong(next.getKey()).putDouble(next.getValue());
+        }
+        final File tempFile = new File(columnFile.getParentFile(), columnFile.getName() + ".tmp");
+        Files.write(tempFile.toPath(), rewritten.array());
+        Files.move(tempFile.toPath(), columnFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Sonargraph Integration Access
+ * Copyright (C) 2016-2021 hello2morrow GmbH
+ * mailto: support AT hello2morrow DOT com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hello2morrow.sonargraph.batch.scheduling;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * CPU and memory available to this process, taking the limits of the container (cgroup v2 or v1) into account.
+ */
+public final class CgroupLimits
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(CgroupLimits.class);
+
+    private static final File CGROUP_ROOT = new File("/sys/fs/cgroup");
+    private static final File MEMINFO = new File("/proc/meminfo");
+    //cgroup v1 reports "no limit" as a very large value rounded to the page size
+    private static final long V1_UNLIMITED_THRESHOLD = Long.MAX_VALUE / 2;
+    private static final long MB = 1024 * 1024;
+
+    private final double m_cpus;
+    private final long m_memoryMb;
+
+    CgroupLimits(final double cpus, final long memoryMb)
+    {
+        assert cpus > 0 : "Parameter 'cpus' of method 'CgroupLimits' must be positive";
+        assert memoryMb > 0 : "Parameter 'memoryMb' of method 'CgroupLimits' must be positive";
+
+        m_cpus = cpus;
+        m_memoryMb = memoryMb;
+    }
+
+    /**
+     * @return the number of CPUs, possibly fractional if limited by a CPU quota
+     */
+    public double getCpus()
+    {
+        return m_cpus;
+    }
+
+    public long getMemoryMb()
+    {
+        return m_memoryMb;
+    }
+
+    public static CgroupLimits detect()
+    {
+        final int availableProcessors = Runtime.getRuntime().availableProcessors();
+        final long physicalMemoryMb = readPhysicalMemoryMb(MEMINFO);
+        CgroupLimits limits;
+        try
+        {
+            limits = detect(CGROUP_ROOT, availableProcessors, physicalMemoryMb);
+        }
+        catch (final NumberFormatException e)
+        {
+            LOGGER.warn("Failed to read cgroup limits: {}", e.getMessage());
+            limits = new CgroupLimits(availableProcessors, physicalMemoryMb);
+        }
+        LOGGER.info("Detected resource limits: {} CPUs, {} MB memory", limits.getCpus(), limits.getMemoryMb());
+        return limits;
+    }
+
+    static CgroupLimits detect(final File cgroupRoot, final int availableProcessors, final long physicalMemoryMb)
+    {
+        assert cgroupRoot != null : "Parameter 'cgroupRoot' of method 'detect' must not be null";
+
+        double cpus = availableProcessors;
+        long memoryMb = physicalMemoryMb;
+
+        final File cpuMax = new File(cgroupRoot, "cpu.max");
+        final File memoryMax = new File(cgroupRoot, "memory.max");
+        if (cpuMax.exists() || memoryMax.exists())
+        {
+            //cgroup v2, e.g. "200000 100000" or "max 100000"
+            final String[] quota = readFirstLine(cpuMax).split("\\s+");
+            if (quota.length == 2 && !quota[0].equals("max"))
+            {
+                cpus = Math.min(cpus, Double.parseDouble(quota[0]) / Double.parseDouble(quota[1]));
+            }
+            final String memory = readFirstLine(memoryMax);
+            if (!memory.isEmpty() && !memory.equals("max"))
+            {
+                memoryMb = Math.min(memoryMb, Long.parseLong(memory) / MB);
+            }
+        }
+        else
+        {
+            final String quota = readFirstLine(new File(cgroupRoot, "cpu/cpu.cfs_quota_us"));
+            final String period = readFirstLine(new File(cgroupRoot, "cpu/cpu.cfs_period_us"));
+            if (!quota.isEmpty() && !period.isEmpty() && Long.parseLong(quota) > 0)
+            {
+                cpus = Math.min(cpus, Double.parseDouble(quota) / Double.parseDouble(period));
+            }
+            final String memory = readFirstLine(new File(cgroupRoot, "memory/memory.limit_in_bytes"));
+            if (!memory.isEmpty() && Long.parseLong(memory) < V1_UNLIMITED_THRESHOLD)
+            {
+                memoryMb = Math.min(memoryMb, Long.parseLong(memory) / MB);
+            }
+        }
+        return new CgroupLimits(Math.max(cpus, 0.1), Math.max(memoryMb, 1));
+    }
+
+    static long readPhysicalMemoryMb(final File meminfo)
+    {
+        try
+        {
+            for (final String next : Files.readAllLines(meminfo.toPath()))
+            {
+                //Example: MemTotal:       16318792 kB
+                if (next.startsWith("MemTotal:"))
+                {
+                    return Long.parseLong(next.substring("MemTotal:".length()).trim().split("\\s+")[0]) / 1024;
+                }
+            }
+        }
+        catch (final IOException | NumberFormatException e)
+        {
+            LOGGER.debug("Failed to read physical memory: {}", e.getMessage());
+        }
+        return Long.MAX_VALUE / MB;
+    }
+
+    private static String readFirstLine(final File file)
+    {
+        if (!file.isFile())
+        {
+            return "";
+        }
+        try
+        {
+            final List<String> lines = Files.readAllLines(file.toPath());
+            return lines.isEmpty() ? "" : lines.get(0).trim();
+        }
+        catch (final IOException e)
+        {
+            LOGGER.debug("Failed to read {}: {}", file.getAbsolutePath(), e.getMessage());
+            return "";
+        }
+    }
+}
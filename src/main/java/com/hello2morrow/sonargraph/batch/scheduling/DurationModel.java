@@ -0,0 +1,226 @@
+/*
+ * Sonargraph Integration Access
+ * Copyright (C) 2016-2021 hello2morrow GmbH
+ * mailto: support AT hello2morrow DOT com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hello2morrow.sonargraph.batch.scheduling;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Learns the duration of each stage as a linear function of the input size (e.g. bytes of the analyzed jars) from past runs, using a least
+ * squares fit over the most recent samples.
+ *
+ * The samples are persisted as lines 'stage;inputSize;durationMs', so that estimates improve across runs.
+ */
+public final class DurationModel
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(DurationModel.class);
+
+    public static final String FILE_NAME = "durationModel.txt";
+    private static final String SEPARATOR = ";";
+    private static final int MAX_SAMPLES_PER_STAGE = 200;
+
+    private final File m_file;
+    private final Map<Stage, List<long[]>> m_samples = new EnumMap<>(Stage.class);
+
+    private DurationModel(final File file)
+    {
+        assert file != null : "Parameter 'file' of method 'DurationModel' must not be null";
+        m_file = file;
+        for (final Stage next : Stage.values())
+        {
+            m_samples.put(next, new ArrayList<>());
+        }
+    }
+
+    /**
+     * @return the model stored in the given directory, empty if no model has been stored yet.
+     */
+    public static DurationModel load(final File directory)
+    {
+        assert directory != null : "Parameter 'directory' of method 'load' must not be null";
+
+        final DurationModel model = new DurationModel(new File(directory, FILE_NAME));
+        if (model.m_file.exists())
+        {
+            try
+            {
+                for (final String next : Files.readAllLines(model.m_file.toPath()))
+                {
+                    final String[] parts = next.split(SEPARATOR);
+                    if (parts.length == 3)
+                    {
+                        model.add(Stage.valueOf(parts[0]), Long.parseLong(parts[1]), Long.parseLong(parts[2]));
+                    }
+                }
+            }
+            catch (final IOException | IllegalArgumentException e)
+            {
+                LOGGER.warn("Failed to read duration model {}: {}", model.m_file.getAbsolutePath(), e.getMessage());
+            }
+        }
+        return model;
+    }
+
+    public synchronized void record(final Stage stage, final long inputSize, final long durationMs)
+    {
+        assert stage != null : "Parameter 'stage' of method 'record' must not be null";
+        add(stage, inputSize, durationMs);
+    }
+
+    private void add(final Stage stage, final long inputSize, final long durationMs)
+    {
+        final List<long[]> samples = m_samples.get(stage);
+        samples.add(new long[] { inputSize, durationMs });
+        if (samples.size() > MAX_SAMPLES_PER_STAGE)
+        {
+            samples.remove(0);
+        }
+    }
+
+    public synchronized void save()
+    {
+        final List<String> lines = new ArrayList<>();
+        for (final Map.Entry<Stage, List<long[]>> next : m_samples.entrySet())
+        {
+            for (final long[] sample : next.getValue())
+            {
+                lines.add(next.getKey().name() + SEPARATOR + sample[0] + SEPARATOR + sample[1]);
+            }
+        }
+        try
+        {
+            Files.write(m_file.toPath(), lines);
+        }
+        catch (final IOException e)
+        {
+            LOGGER.warn("Failed to write duration model {}: {}", m_file.getAbsolutePath(), e.getMessage());
+        }
+    }
+
+    /**
+     * @return the estimated duration, or -1 if there are no samples for the stage.
+     */
+    public synchronized long estimateMs(final Stage stage, final long inputSize)
+    {
+        assert stage != null : "Parameter 'stage' of method 'estimateMs' must not be null";
+
+        final List<long[]> samples = m_samples.get(stage);
+        if (samples.isEmpty())
+        {
+            return -1;
+        }
+
+        final int n = samples.size();
+        double meanSize = 0;
+        double meanDuration = 0;
+        for (final long[] next : samples)
+        {
+            meanSize += next[0];
+            meanDuration += next[1];
+        }
+        meanSize /= n;
+        meanDuration /= n;
+
+        double covariance = 0;
+        double variance = 0;
+        for (final long[] next : samples)
+        {
+            covariance += (next[0] - meanSize) * (next[1] - meanDuration);
+            variance += (next[0] - meanSize) * (next[0] - meanSize);
+        }
+        if (variance == 0)
+        {
+            return Math.round(meanDuration);
+        }
+        final double slope = covariance / variance;
+        return Math.max(0, Math.round(meanDuration + slope * (inputSize - meanSize)));
+    }
+
+    /**
+     * @return the estimated total duration of all given stages, unknown stages are ignored.
+     */
+    public long estimateMs(final List<Stage> stages, final long inputSize)
+    {
+        assert stages != null : "Parameter 'stages' of method 'estimateMs' must not be null";
+        return stages.stream().mapToLong(s -> Math.max(0, estimateMs(s, inputSize))).sum();
+    }
+
+    /**
+     * @return the input size of the most recent sample of the stage, or 0 if there is none.
+     */
+    public synchronized long getLastInputSize(final Stage stage)
+    {
+        assert stage != null : "Parameter 'stage' of method 'getLastInputSize' must not be null";
+        final List<long[]> samples = m_samples.get(stage);
+        return samples.isEmpty() ? 0 : samples.get(samples.size() - 1)[0];
+    }
+
+    /**
+     * Logs the estimated remaining time and the expected end time, if the model has samples for the stages.
+     */
+    public void logEstimatedRemainingTime(final List<Stage> stages, final int remainingJobs, final long inputSize)
+    {
+        assert stages != null : "Parameter 'stages' of method 'logEstimatedRemainingTime' must not be null";
+
+        final long perJobMs = estimateMs(stages, inputSize);
+        if (perJobMs <= 0 || remainingJobs <= 0)
+        {
+            return;
+        }
+        final long remainingMs = perJobMs * remainingJobs;
+        final LocalDateTime end = LocalDateTime.now().plus(remainingMs, ChronoUnit.MILLIS);
+        LOGGER.info("Estimated remaining time for {} versions: {}, ETA {}", remainingJobs, format(remainingMs),
+                end.format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm")));
+    }
+
+    /**
+     * Orders independent jobs longest first, which minimizes the total time (makespan) if they are executed in parallel.
+     *
+     * @return a new list, sorted by descending estimate
+     */
+    public static <T> List<T> sortLongestFirst(final List<T> jobs, final ToLongFunction<T> estimateMs)
+    {
+        assert jobs != null : "Parameter 'jobs' of method 'sortLongestFirst' must not be null";
+        assert estimateMs != null : "Parameter 'estimateMs' of method 'sortLongestFirst' must not be null";
+        return jobs.stream().sorted(Comparator.comparingLong(estimateMs).reversed()).collect(Collectors.toList());
+    }
+
+    /**
+     * @return duration formatted as 'h:mm:ss'
+     */
+    public static String format(final long durationMs)
+    {
+        final Duration duration = Duration.ofMillis(Math.max(0, durationMs));
+        return String.format("%d:%02d:%02d", duration.toHours(), duration.toMinutesPart(), duration.toSecondsPart());
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Sonargraph Integration Access
+ * Copyright (C) 2016-2021 hello2morrow GmbH
+ * mailto: support AT hello2morrow DOT com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hello2morrow.sonargraph.batch.scheduling;
+
+import java.io.IOException;
+import java.util.regex.Pattern;
+
+/**
+ * Classes of failures of a version or commit, determined from the exception messages. Shell commands fail with an exception containing the
+ * captured process output, so the messages contain the error output of git, Maven, Gradle and Sonargraph-Build.
+ *
+ * The classes are checked in declaration order, e.g. a Maven build that fails because an artifact could not be downloaded is a network failure,
+ * not a build failure.
+ */
+public enum FailureClass
+{
+    /**
+     * Out of memory failures a retry cannot avoid, since the heap cannot be increased, see {@link #heapLimitReached(String, Throwable)}.
+     */
+    HEAP_LIMIT(FailureClass.HEAP_LIMIT_MESSAGE),
+    /**
+     * The operating system could not provide memory (e.g. fork or mmap failed with ENOMEM, no native thread), because other processes use
+     * it. A larger heap would make it worse, so the retry waits for memory to be freed.
+     */
+    NATIVE_MEMORY("Cannot allocate memory|insufficient memory for the Java Runtime|unable to create (new )?native thread"),
+    OUT_OF_MEMORY("OutOfMemoryError|GC overhead limit exceeded|Java heap space"),
+    LICENSE("(?i)no (free|available) licen[cs]e|licen[cs]e (is )?(in use|not available|expired|server)|activation code (is )?(invalid|in use)"
+            + "|seats? (are )?(in use|exhausted)"),
+    //A refused connection is not matched in general, since local daemons (e.g. the Maven daemon or JMX) fail with the same message
+    NETWORK("UnknownHostException|SocketTimeoutException|NoRouteToHostException|(?i)connection reset|connection timed out"
+            + "|connect to (?!localhost|127\\.0\\.0\\.1)[\\w.-]+(:| port )\\d+|could not resolve host|could not transfer artifact"
+            + "|temporary failure in name resolution|read timed out|network is unreachable|early EOF|RPC failed|HTTP status (429|50[234])"),
+    BUILD("BUILD FAILURE|COMPILATION ERROR|FAILURE: Build failed|Failed to execute goal|Compilation failed"),
+    UNKNOWN(null);
+
+    private static final String HEAP_LIMIT_MESSAGE = "Heap limit reached:";
+
+    private final Pattern m_pattern;
+
+    FailureClass(final String regex)
+    {
+        m_pattern = regex != null ? Pattern.compile(regex) : null;
+    }
+
+    /**
+     * @return the failure of a process that ran out of memory although it already had the largest possible heap
+     */
+    public static IOException heapLimitReached(final String message, final Throwable cause)
+    {
+        assert message != null : "Parameter 'message' of method 'heapLimitReached' must not be null";
+        return new IOException(HEAP_LIMIT_MESSAGE + " " + message, cause);
+    }
+
+    public static FailureClass classify(final Throwable throwable)
+    {
+        assert throwable != null : "Parameter 'throwable' of method 'classify' must not be null";
+
+        final StringBuilder text = new StringBuilder();
+        for (Throwable next = throwable; next != null; next = next.getCause() != next ? next.getCause() : null)
+        {
+            text.append(next.getClass().getName()).append(": ").append(next.getMessage()).append('\n');
+        }
+        return classify(text.toString());
+    }
+
+    public static FailureClass classify(final String output)
+    {
+        assert output != null : "Parameter 'output' of method 'classify' must not be null";
+
+        for (final FailureClass next : values())
+        {
+            if (next.m_pattern != null && next.m_pattern.matcher(output).find())
+            {
+                return next;
+            }
+        }
+        return UNKNOWN;
+    }
+}
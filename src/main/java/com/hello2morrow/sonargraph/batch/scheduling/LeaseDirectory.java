@@ -0,0 +1,512 @@
+/*
+ * Sonargraph Integration Access
+ * Copyright (C) 2016-2021 hello2morrow GmbH
+ * mailto: support AT hello2morrow DOT com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hello2morrow.sonargraph.batch.scheduling;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.URLEncoder;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.configuration2.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.hello2morrow.sonargraph.batch.configuration.Props;
+
+/**
+ * Distributes a list of work items (e.g. versions or commits) between any number of worker processes on any number of machines that share a
+ * directory. There is no coordinator: the first worker publishes the work list, all workers claim items by atomically creating lease files.
+ *
+ * <ul>
+ * <li>'worklist.txt': the published items, one per line. It is created by hard linking a completely written temporary file, so it is never
+ * seen partially written, and only the first of several concurrent publishers wins.</li>
+ * <li>'leases/&lt;item&gt;': the id of the worker processing the item and the expiry time of the lease. The file is created by hard linking a
+ * completely written temporary file. The worker renews the expiry time periodically (heartbeat) by atomically replacing the file. A lease
+ * whose expiry time has passed can be taken over by another worker, e.g. if the owner has crashed.</li>
+ * <li>'done/&lt;item&gt;' and 'failed/&lt;item&gt;': the result (or failure message) of processed items. These items are not claimed again, so
+ * transient failures should be retried by the worker while it holds the lease.</li>
+ * <li>'results': directory for result files written back by the workers.</li>
+ * </ul>
+ *
+ * The lease timeout must be well above the heartbeat period plus the clock difference between the machines. In the worst case (a worker that
+ * is stalled for longer than the timeout) an item is processed twice, so processing must be idempotent.
+ */
+public final class LeaseDirectory implements AutoCloseable
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(LeaseDirectory.class);
+
+    private static final String WORK_LIST_FILE_NAME = "worklist.txt";
+    private static final String LEASES_DIR = "leases";
+    private static final String DONE_DIR = "done";
+    private static final String FAILED_DIR = "failed";
+    private static final String RESULTS_DIR = "results";
+    private static final String TEMP_PREFIX = ".tmp-";
+    private static final long DEFAULT_LEASE_TIMEOUT_SECONDS = 600;
+
+    private final File m_directory;
+    private final String m_workerId;
+    private final long m_leaseTimeoutMs;
+    private final Set<Lease> m_heldLeases = Collections.synchronizedSet(new LinkedHashSet<>());
+    private final ScheduledExecutorService m_heartbeat;
+    private List<String> m_items;
+
+    /**
+     * A claimed work item. The lease is kept alive by the heartbeat until it is completed, failed or released.
+     */
+    public final class Lease
+    {
+        private final String m_item;
+        private final Path m_file;
+        private volatile boolean m_lost = false;
+
+        private Lease(final String item, final Path file)
+        {
+            m_item = item;
+            m_file = file;
+        }
+
+        public String getItem()
+        {
+            return m_item;
+        }
+
+        /**
+         * @return true, if the lease has expired and another worker has taken over the item.
+         */
+        public boolean isLost()
+        {
+            return m_lost;
+        }
+
+        /**
+         * Marks the item as done.
+         *
+         * @param result
+         *            stored result, e.g. the name of the written result file, can be read by all workers with {@link LeaseDirectory#getResult}.
+         */
+        public void complete(final String result) throws IOException
+        {
+            writeAtomically(getMarkerFile(DONE_DIR, m_item), result != null ? result : "");
+            release();
+        }
+
+        /**
+         * Marks the item as failed, it is not claimed again. Use {@link RetryQueue} to retry transient failures before.
+         */
+        public void fail(final String message) throws IOException
+        {
+            writeAtomically(getMarkerFile(FAILED_DIR, m_item), message != null ? message : "");
+            release();
+        }
+
+        /**
+         * Returns the item without result, so that it is claimed again.
+         */
+        public void release()
+        {
+            m_heldLeases.remove(this);
+            try
+            {
+                if (isOwned())
+                {
+                    Files.deleteIfExists(m_file);
+                }
+            }
+            catch (final IOException e)
+            {
+                LOGGER.warn("Failed to release lease of item '{}': {}", m_item, e.getMessage());
+            }
+        }
+
+        private void heartbeat()
+        {
+            try
+            {
+                if (isOwned())
+                {
+                    writeAtomically(m_file, createLeaseContent());
+                    return;
+                }
+            }
+            catch (final IOException e)
+            {
+                LOGGER.warn("Failed to renew lease of item '{}': {}", m_item, e.getMessage());
+                return;
+            }
+
+            if (!m_lost)
+            {
+                m_lost = true;
+                LOGGER.warn("Lease of item '{}' has expired and has been taken over by another worker", m_item);
+            }
+        }
+
+        private boolean isOwned() throws IOException
+        {
+            final String[] content = readLease(m_file);
+            return content != null && m_workerId.equals(content[0]);
+        }
+
+        @Override
+        public String toString()
+        {
+            return m_item;
+        }
+    }
+
+    /**
+     * @param workerId
+     *            unique id of this worker, see {@link #createDefaultWorkerId()}
+     */
+    public LeaseDirectory(final File directory, final String workerId, final long leaseTimeoutMs)
+    {
+        assert directory != null : "Parameter 'directory' of method 'LeaseDirectory' must not be null";
+        assert workerId != null && workerId.length() > 0 : "Parameter 'workerId' of method 'LeaseDirectory' must not be empty";
+        assert leaseTimeoutMs > 0 : "Parameter 'leaseTimeoutMs' of method 'LeaseDirectory' must be positive";
+
+        m_directory = directory;
+        m_workerId = workerId;
+        m_leaseTimeoutMs = leaseTimeoutMs;
+        for (final String next : new String[] { LEASES_DIR, DONE_DIR, FAILED_DIR, RESULTS_DIR })
+        {
+            new File(m_directory, next).mkdirs();
+        }
+
+        m_heartbeat = Executors.newSingleThreadScheduledExecutor(r ->
+        {
+            final Thread thread = new Thread(r, "lease-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        final long period = Math.max(1, leaseTimeoutMs / 3);
+        m_heartbeat.scheduleAtFixedRate(this::renewLeases, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return the lease directory for a distributed run, or null if 'distributedWorkDirectory' is not configured.
+     */
+    public static LeaseDirectory fromConfiguration(final Configuration configuration)
+    {
+        assert configuration != null : "Parameter 'configuration' of method 'fromConfiguration' must not be null";
+
+        final String directory = configuration.getString(Props.DISTRIBUTED_WORK_DIRECTORY.getPropertyName(), "").trim();
+        if (directory.isEmpty())
+        {
+            return null;
+        }
+        final String workerId = configuration.getString(Props.WORKER_ID.getPropertyName(), "").trim();
+        final long leaseTimeoutSeconds = configuration.getLong(Props.LEASE_TIMEOUT_SECONDS.getPropertyName(), DEFAULT_LEASE_TIMEOUT_SECONDS);
+        return new LeaseDirectory(new File(directory), workerId.isEmpty() ? createDefaultWorkerId() : workerId, leaseTimeoutSeconds * 1000);
+    }
+
+    /**
+     * @return host name and process id
+     */
+    public static String createDefaultWorkerId()
+    {
+        String host;
+        try
+        {
+            host = InetAddress.getLocalHost().getHostName();
+        }
+        catch (final UnknownHostException e)
+        {
+            host = "localhost";
+        }
+        return host + "-" + ProcessHandle.current().pid();
+    }
+
+    public String getWorkerId()
+    {
+        return m_workerId;
+    }
+
+    public File getResultsDirectory()
+    {
+        return new File(m_directory, RESULTS_DIR);
+    }
+
+    /**
+     * Publishes the work list, unless another worker has already published one.
+     *
+     * @return the published work list, which is the one of the first worker and not necessarily the given one.
+     */
+    public List<String> publish(final List<String> items) throws IOException
+    {
+        assert items != null : "Parameter 'items' of method 'publish' must not be null";
+
+        final Path workList = new File(m_directory, WORK_LIST_FILE_NAME).toPath();
+        if (!Files.exists(workList))
+        {
+            final Path tempFile = new File(m_directory, TEMP_PREFIX + UUID.randomUUID().toString()).toPath();
+            try
+            {
+                Files.write(tempFile, items, StandardCharsets.UTF_8);
+                Files.createLink(workList, tempFile);
+                LOGGER.info("Published work list with {} items to '{}'", items.size(), m_directory.getAbsolutePath());
+            }
+            catch (final FileAlreadyExistsException e)
+            {
+                LOGGER.debug("Work list has been published concurrently by another worker");
+            }
+            finally
+            {
+                Files.deleteIfExists(tempFile);
+            }
+        }
+
+        final List<String> published = new ArrayList<>();
+        for (final String next : Files.readAllLines(workList, StandardCharsets.UTF_8))
+        {
+            if (!next.isEmpty())
+            {
+                published.add(next);
+            }
+        }
+        m_items = Collections.unmodifiableList(published);
+        return m_items;
+    }
+
+    /**
+     * Claims the first item of the work list that is neither done, failed nor leased by another worker.
+     *
+     * @return the lease, or null if there is no item left to claim.
+     */
+    public Lease claim() throws IOException
+    {
+        if (m_items == null)
+        {
+            throw new IllegalStateException("Work list has not been published");
+        }
+
+        for (final String next : m_items)
+        {
+            if (isProcessed(next))
+            {
+                continue;
+            }
+
+            final Path leaseFile = getMarkerFile(LEASES_DIR, next);
+            if (Files.exists(leaseFile) && !(isExpired(leaseFile) && takeOver(next, leaseFile)))
+            {
+                continue;
+            }
+
+            //Hard linking a completely written file is atomic and fails if another worker has created the lease in the meantime
+            final Path tempFile = leaseFile.resolveSibling(TEMP_PREFIX + UUID.randomUUID().toString());
+            try
+            {
+                Files.write(tempFile, createLeaseContent().getBytes(StandardCharsets.UTF_8));
+                Files.createLink(leaseFile, tempFile);
+            }
+            catch (final FileAlreadyExistsException e)
+            {
+                continue;
+            }
+            finally
+            {
+                Files.deleteIfExists(tempFile);
+            }
+
+            final Lease lease = new Lease(next, leaseFile);
+            //The previous owner might have completed the item just before its lease has been deleted.
+            if (isProcessed(next))
+            {
+                lease.release();
+                continue;
+            }
+            m_heldLeases.add(lease);
+            LOGGER.info("Worker '{}' claimed item '{}'", m_workerId, next);
+            return lease;
+        }
+        return null;
+    }
+
+    /**
+     * @return the result stored by {@link Lease#complete(String)}, or null if the item is not done.
+     */
+    public String getResult(final String item) throws IOException
+    {
+        assert item != null : "Parameter 'item' of method 'getResult' must not be null";
+
+        try
+        {
+            return new String(Files.readAllBytes(getMarkerFile(DONE_DIR, item)), StandardCharsets.UTF_8);
+        }
+        catch (final NoSuchFileException e)
+        {
+            return null;
+        }
+    }
+
+    public boolean isFailed(final String item)
+    {
+        assert item != null : "Parameter 'item' of method 'isFailed' must not be null";
+        return Files.exists(getMarkerFile(FAILED_DIR, item));
+    }
+
+    private boolean isProcessed(final String item)
+    {
+        return Files.exists(getMarkerFile(DONE_DIR, item)) || isFailed(item);
+    }
+
+    private String createLeaseContent()
+    {
+        return m_workerId + "\n" + (System.currentTimeMillis() + m_leaseTimeoutMs);
+    }
+
+    /**
+     * @return worker id and expiry time of the lease, or null if the lease file does not exist
+     */
+    private static String[] readLease(final Path leaseFile) throws IOException
+    {
+        try
+        {
+            return new String(Files.readAllBytes(leaseFile), StandardCharsets.UTF_8).split("\n");
+        }
+        catch (final NoSuchFileException e)
+        {
+            return null;
+        }
+    }
+
+    private static boolean isExpired(final Path leaseFile) throws IOException
+    {
+        final String[] content = readLease(leaseFile);
+        if (content == null || content.length < 2)
+        {
+            return true;
+        }
+        try
+        {
+            return Long.parseLong(content[1].trim()) < System.currentTimeMillis();
+        }
+        catch (final NumberFormatException e)
+        {
+            LOGGER.warn("Invalid expiry time in lease '{}': {}", leaseFile, content[1]);
+            return true;
+        }
+    }
+
+    /**
+     * Renaming is atomic, so only one of several workers can remove the expired lease.
+     *
+     * @return true, if the lease file has been removed.
+     */
+    private boolean takeOver(final String item, final Path leaseFile) throws IOException
+    {
+        final Path expired = leaseFile.resolveSibling(TEMP_PREFIX + UUID.randomUUID().toString());
+        try
+        {
+            Files.move(leaseFile, expired, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (final NoSuchFileException e)
+        {
+            return true;
+        }
+
+        if (!isExpired(expired))
+        {
+            //Another worker has taken over the lease between the check and the rename, so give it back.
+            try
+            {
+                Files.createLink(leaseFile, expired);
+            }
+            catch (final FileAlreadyExistsException e)
+            {
+                LOGGER.debug("Lease of item '{}' has been claimed concurrently", item);
+            }
+            Files.delete(expired);
+            return false;
+        }
+
+        final String[] previous = readLease(expired);
+        final String previousOwner = previous != null ? previous[0] : "";
+        Files.delete(expired);
+        LOGGER.warn("Lease of item '{}' held by worker '{}' has expired, taking over", item, previousOwner);
+        return true;
+    }
+
+    private void renewLeases()
+    {
+        final List<Lease> leases;
+        synchronized (m_heldLeases)
+        {
+            leases = new ArrayList<>(m_heldLeases);
+        }
+        leases.forEach(Lease::heartbeat);
+    }
+
+    private Path getMarkerFile(final String directoryName, final String item)
+    {
+        return new File(new File(m_directory, directoryName), URLEncoder.encode(item, StandardCharsets.UTF_8)).toPath();
+    }
+
+    private void writeAtomically(final Path target, final String content) throws IOException
+    {
+        final Path tempFile = target.resolveSibling(TEMP_PREFIX + UUID.randomUUID().toString());
+        try
+        {
+            Files.write(tempFile, content.getBytes(StandardCharsets.UTF_8));
+            try
+            {
+                Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (final AtomicMoveNotSupportedException e)
+            {
+                Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        finally
+        {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * Stops the heartbeat and releases all leases that are still held, so that other workers can claim their items immediately.
+     */
+    @Override
+    public void close()
+    {
+        m_heartbeat.shutdownNow();
+        final List<Lease> leases;
+        synchronized (m_heldLeases)
+        {
+            leases = new ArrayList<>(m_heldLeases);
+        }
+        leases.forEach(Lease::release);
+    }
+}
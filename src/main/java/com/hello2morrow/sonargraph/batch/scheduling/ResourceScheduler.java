@@ -0,0 +1,196 @@
+/*
+ * Sonargraph Integration Access
+ * Copyright (C) 2016-2021 hello2morrow GmbH
+ * mailto: support AT hello2morrow DOT com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hello2morrow.sonargraph.batch.scheduling;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.configuration2.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.hello2morrow.sonargraph.batch.configuration.Props;
+
+/**
+ * Admits jobs (downloads, builds, Sonargraph analyses) only if their estimated CPU and memory demand fits into the resources that are not used
+ * by other running jobs, and if the concurrency limit of their stage is not reached.
+ *
+ * A job whose demand exceeds the total resources is admitted if no other job is running, so that it cannot wait forever. All analyses started
+ * from this JVM with the same limits (memory budget and concurrent jobs per stage) share the instance returned by
+ * {@link #getShared(Configuration)}. Analyses configured with other limits use another instance, so that their limits are not ignored.
+ */
+public final class ResourceScheduler
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResourceScheduler.class);
+
+    private static final Map<String, ResourceScheduler> s_shared = new HashMap<>();
+
+    private final double m_cpus;
+    private final long m_memoryMb;
+    private final Map<Stage, Integer> m_stageLimits;
+    private final Map<Stage, Integer> m_runningPerStage = new EnumMap<>(Stage.class);
+    private double m_usedCpus = 0;
+    private long m_usedMemoryMb = 0;
+    private int m_running = 0;
+
+    /**
+     * A granted admission that must be closed when the job has finished.
+     */
+    public final class Permit implements AutoCloseable
+    {
+        private final Stage m_stage;
+        private final double m_cpus;
+        private final long m_memoryMb;
+        private boolean m_released = false;
+
+        private Permit(final Stage stage, final double cpus, final long memoryMb)
+        {
+            m_stage = stage;
+            m_cpus = cpus;
+            m_memoryMb = memoryMb;
+        }
+
+        @Override
+        public void close()
+        {
+            if (!m_released)
+            {
+                m_released = true;
+                release(this);
+            }
+        }
+    }
+
+    /**
+     * @param stageLimits
+     *            max number of concurrent jobs per stage, stages without entry or with a value of 0 or less are only limited by the resources.
+     */
+    ResourceScheduler(final double cpus, final long memoryMb, final Map<Stage, Integer> stageLimits)
+    {
+        assert cpus > 0 : "Parameter 'cpus' of method 'ResourceScheduler' must be positive";
+        assert memoryMb > 0 : "Parameter 'memoryMb' of method 'ResourceScheduler' must be positive";
+        assert stageLimits != null : "Parameter 'stageLimits' of method 'ResourceScheduler' must not be null";
+
+        m_cpus = cpus;
+        m_memoryMb = memoryMb;
+        m_stageLimits = stageLimits;
+        for (final Stage next : Stage.values())
+        {
+            m_runningPerStage.put(next, 0);
+        }
+    }
+
+    public static synchronized ResourceScheduler getShared(final Configuration configuration)
+    {
+        assert configuration != null : "Parameter 'configuration' of method 'getShared' must not be null";
+
+        final ResourceScheduler scheduler = fromConfiguration(configuration, CgroupLimits.detect());
+        final String limits = scheduler.m_cpus + " CPUs, " + scheduler.m_memoryMb + " MB, " + scheduler.m_stageLimits;
+        final ResourceScheduler shared = s_shared.putIfAbsent(limits, scheduler);
+        if (shared != null)
+        {
+            return shared;
+        }
+        if (s_shared.size() > 1)
+        {
+            LOGGER.info("Using separate resource scheduler for limits {}", limits);
+        }
+        return scheduler;
+    }
+
+    static ResourceScheduler fromConfiguration(final Configuration configuration, final CgroupLimits limits)
+    {
+        assert configuration != null : "Parameter 'configuration' of method 'fromConfiguration' must not be null";
+        assert limits != null : "Parameter 'limits' of method 'fromConfiguration' must not be null";
+
+        //The heap of this JVM is not available for the forked processes
+        long memoryMb = limits.getMemoryMb() - Runtime.getRuntime().maxMemory() / (1024 * 1024);
+        final int budgetMb = configuration.getInt(Props.SONARGRAPH_MEMORY_BUDGET_MB.getPropertyName(), 0);
+        if (budgetMb > 0)
+        {
+            memoryMb = Math.min(memoryMb, budgetMb);
+        }
+
+        final Map<Stage, Integer> stageLimits = new EnumMap<>(Stage.class);
+        stageLimits.put(Stage.DOWNLOAD, configuration.getInt(Props.MAX_CONCURRENT_DOWNLOADS.getPropertyName(), 4));
+        stageLimits.put(Stage.BUILD, configuration.getInt(Props.MAX_CONCURRENT_BUILDS.getPropertyName(), 0));
+        stageLimits.put(Stage.ANALYSIS, configuration.getInt(Props.MAX_CONCURRENT_ANALYSES.getPropertyName(), 0));
+        return new ResourceScheduler(limits.getCpus(), Math.max(memoryMb, 1), stageLimits);
+    }
+
+    public int getStageLimit(final Stage stage)
+    {
+        assert stage != null : "Parameter 'stage' of method 'getStageLimit' must not be null";
+        return m_stageLimits.getOrDefault(stage, 0);
+    }
+
+    /**
+     * Blocks until the job fits.
+     *
+     * @param cpus
+     *            estimated number of CPUs used by the job
+     * @param memoryMb
+     *            estimated memory of the job, i.e. max heap of the forked JVM
+     */
+    public synchronized Permit acquire(final Stage stage, final double cpus, final long memoryMb) throws InterruptedException
+    {
+        assert stage != null : "Parameter 'stage' of method 'acquire' must not be null";
+        assert cpus >= 0 : "Parameter 'cpus' of method 'acquire' must not be negative";
+        assert memoryMb >= 0 : "Parameter 'memoryMb' of method 'acquire' must not be negative";
+
+        if (!fits(stage, cpus, memoryMb))
+        {
+            LOGGER.info("Waiting to start {} job ({} CPUs, {} MB), in use: {} of {} CPUs, {} of {} MB, {} {} jobs running", stage, cpus, memoryMb,
+                    m_usedCpus, m_cpus, m_usedMemoryMb, m_memoryMb, m_runningPerStage.get(stage), stage);
+        }
+        while (!fits(stage, cpus, memoryMb))
+        {
+            wait();
+        }
+
+        m_usedCpus += cpus;
+        m_usedMemoryMb += memoryMb;
+        m_running++;
+        m_runningPerStage.merge(stage, 1, Integer::sum);
+        return new Permit(stage, cpus, memoryMb);
+    }
+
+    synchronized boolean fits(final Stage stage, final double cpus, final long memoryMb)
+    {
+        final int stageLimit = getStageLimit(stage);
+        if (stageLimit > 0 && m_runningPerStage.get(stage) >= stageLimit)
+        {
+            return false;
+        }
+        if (m_running == 0)
+        {
+            return true;
+        }
+        return m_usedCpus + cpus <= m_cpus && m_usedMemoryMb + memoryMb <= m_memoryMb;
+    }
+
+    private synchronized void release(final Permit permit)
+    {
+        m_usedCpus = Math.max(0, m_usedCpus - permit.m_cpus);
+        m_usedMemoryMb = Math.max(0, m_usedMemoryMb - permit.m_memoryMb);
+        m_running--;
+        m_runningPerStage.merge(permit.m_stage, -1, Integer::sum);
+        notifyAll();
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * Sonargraph Integration Access
+ * Copyright (C) 2016-2021 hello2morrow GmbH
+ * mailto: support AT hello2morrow DOT com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hello2morrow.sonargraph.batch.scheduling;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.configuration2.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.hello2morrow.sonargraph.batch.configuration.Props;
+
+/**
+ * Deferred retries of failed versions or commits. Failed items are retried after all other items have been processed, with a policy depending
+ * on the {@link FailureClass}:
+ * <ul>
+ * <li>Network failures are retried with exponential backoff.</li>
+ * <li>Out of memory failures are retried immediately. Sonargraph-Build gets a larger heap, since the exhausted heap is recorded in the heap
+ * history (see 'JvmProfile').</li>
+ * <li>Out of memory failures with the largest possible heap are not retried.</li>
+ * <li>Native memory failures are retried after a fixed wait with the same heap, until other processes have freed memory.</li>
+ * <li>License failures are retried after a fixed wait, until a floating license is available again.</li>
+ * <li>Build failures are deterministic and not retried.</li>
+ * <li>Unknown failures are retried once.</li>
+ * </ul>
+ *
+ * @param <T>
+ *            the failed item, e.g. the index of a version
+ */
+public final class RetryQueue<T>
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(RetryQueue.class);
+
+    public static final class Policy
+    {
+        private final int m_maxAttempts;
+        private final long m_delayMs;
+        private final boolean m_exponentialBackoff;
+
+        public Policy(final int maxAttempts, final long delayMs, final boolean exponentialBackoff)
+        {
+            assert maxAttempts >= 0 : "Parameter 'maxAttempts' of method 'Policy' must not be negative";
+            assert delayMs >= 0 : "Parameter 'delayMs' of method 'Policy' must not be negative";
+            m_maxAttempts = maxAttempts;
+            m_delayMs = delayMs;
+            m_exponentialBackoff = exponentialBackoff;
+        }
+
+        public int getMaxAttempts()
+        {
+            return m_maxAttempts;
+        }
+
+        /**
+         * @param attempt
+         *            1 for the first retry
+         */
+        long getDelayMs(final int attempt)
+        {
+            return m_exponentialBackoff ? m_delayMs << Math.min(attempt - 1, 16) : m_delayMs;
+        }
+    }
+
+    public static final class Retry<T>
+    {
+        private final T m_item;
+        private final FailureClass m_failureClass;
+        private final int m_attempt;
+        private final long m_dueMillis;
+
+        Retry(final T item, final FailureClass failureClass, final int attempt, final long dueMillis)
+        {
+            m_item = item;
+            m_failureClass = failureClass;
+            m_attempt = attempt;
+            m_dueMillis = dueMillis;
+        }
+
+        public T getItem()
+        {
+            return m_item;
+        }
+
+        public FailureClass getFailureClass()
+        {
+            return m_failureClass;
+        }
+
+        /**
+         * @return 1 for the first retry
+         */
+        public int getAttempt()
+        {
+            return m_attempt;
+        }
+
+        long getDueMillis()
+        {
+            return m_dueMillis;
+        }
+    }
+
+    private final Map<FailureClass, Policy> m_policies;
+    private final Map<T, Integer> m_attempts = new HashMap<>();
+    private final List<Retry<T>> m_pending = new ArrayList<>();
+    private final Map<FailureClass, Integer> m_givenUp = new EnumMap<>(FailureClass.class);
+
+    public RetryQueue(final Map<FailureClass, Policy> policies)
+    {
+        assert policies != null : "Parameter 'policies' of method 'RetryQueue' must not be null";
+        m_policies = policies;
+    }
+
+    public static <T> RetryQueue<T> fromConfiguration(final Configuration configuration)
+    {
+        assert configuration != null : "Parameter 'configuration' of method 'fromConfiguration' must not be null";
+
+        final Map<FailureClass, Policy> policies = new EnumMap<>(FailureClass.class);
+        policies.put(FailureClass.NETWORK, new Policy(configuration.getInt(Props.RETRY_NETWORK_ATTEMPTS.getPropertyName(), 3),
+                configuration.getLong(Props.RETRY_NETWORK_BACKOFF_SECONDS.getPropertyName(), 30) * 1000, true));
+        policies.put(FailureClass.OUT_OF_MEMORY, new Policy(configuration.getInt(Props.RETRY_OUT_OF_MEMORY_ATTEMPTS.getPropertyName(), 2), 0, false));
+        policies.put(FailureClass.NATIVE_MEMORY, new Policy(configuration.getInt(Props.RETRY_NATIVE_MEMORY_ATTEMPTS.getPropertyName(), 2),
+                configuration.getLong(Props.RETRY_NATIVE_MEMORY_WAIT_SECONDS.getPropertyName(), 60) * 1000, false));
+        policies.put(FailureClass.LICENSE, new Policy(configuration.getInt(Props.RETRY_LICENSE_ATTEMPTS.getPropertyName(), 3),
+                configuration.getLong(Props.RETRY_LICENSE_WAIT_SECONDS.getPropertyName(), 300) * 1000, false));
+        policies.put(FailureClass.HEAP_LIMIT, new Policy(0, 0, false));
+        policies.put(FailureClass.BUILD, new Policy(0, 0, false));
+        policies.put(FailureClass.UNKNOWN, new Policy(1, 0, false));
+        return new RetryQueue<>(policies);
+    }
+
+    /**
+     * Classifies the failure and schedules a retry, if the policy of the failure class allows another attempt.
+     *
+     * @return the failure class
+     */
+    public FailureClass defer(final T item, final Throwable failure)
+    {
+        assert item != null : "Parameter 'item' of method 'defer' must not be null";
+        assert failure != null : "Parameter 'failure' of method 'defer' must not be null";
+        return defer(item, FailureClass.classify(failure), System.currentTimeMillis());
+    }
+
+    FailureClass defer(final T item, final FailureClass failureClass, final long nowMillis)
+    {
+        final Policy policy = m_policies.get(failureClass);
+        final int attempt = m_attempts.getOrDefault(item, 0) + 1;
+        if (policy == null || attempt > policy.getMaxAttempts())
+        {
+            LOGGER.warn("Giving up on '{}' after {} retries, failure class {}", item, attempt - 1, failureClass);
+            m_givenUp.merge(failureClass, 1, Integer::sum);
+            return failureClass;
+        }
+
+        m_attempts.put(item, attempt);
+        final long delayMs = policy.getDelayMs(attempt);
+        m_pending.add(new Retry<>(item, failureClass, attempt, nowMillis + delayMs));
+        LOGGER.info("Deferred retry {} of {} for '{}', failure class {}, due in {} s", attempt, policy.getMaxAttempts(), item, failureClass,
+                delayMs / 1000);
+        return failureClass;
+    }
+
+    public boolean isEmpty()
+    {
+        return m_pending.isEmpty();
+    }
+
+    /**
+     * @return true, if a retry of the item is pending, false if it has not been deferred or if the retries have been given up
+     */
+    public boolean isPending(final T item)
+    {
+        assert item != null : "Parameter 'item' of method 'isPending' must not be null";
+        return m_pending.stream().anyMatch(r -> r.getItem().equals(item));
+    }
+
+    /**
+     * Waits until the earliest retry is due.
+     *
+     * @return the retry, or null if no retries are pending
+     */
+    public Retry<T> next() throws InterruptedException
+    {
+        while (!m_pending.isEmpty())
+        {
+            final long now = System.currentTimeMillis();
+            final Retry<T> ready = pollReady(now);
+            if (ready != null)
+            {
+                return ready;
+            }
+            final long waitMs = m_pending.stream().mapToLong(Retry::getDueMillis).min().getAsLong() - now;
+            LOGGER.info("Waiting {} s for the next of {} deferred retries", (waitMs + 999) / 1000, m_pending.size());
+            Thread.sleep(waitMs);
+        }
+        return null;
+    }
+
+    /**
+     * @return the due retry that has been deferred first, or null if none is due
+     */
+    Retry<T> pollReady(final long nowMillis)
+    {
+        for (int i = 0; i < m_pending.size(); i++)
+        {
+            if (m_pending.get(i).getDueMillis() <= nowMillis)
+            {
+                return m_pending.remove(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return number of items per failure class that failed permanently
+     */
+    public Map<FailureClass, Integer> getGivenUp()
+    {
+        return new EnumMap<>(m_givenUp);
+    }
+}
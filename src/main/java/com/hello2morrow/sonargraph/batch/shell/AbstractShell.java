@@ -16,6 +16,7 @@ abstract class AbstractShell implements IShell
     private static final Logger LOGGER = LoggerFactory.getLogger(AbstractShell.class);
     private final OS m_os;
     private final Charset m_charset;
+    private final ThreadLocal<List<ProcessStatistics>> m_statistics = ThreadLocal.withInitial(ArrayList::new);
 
     protected AbstractShell(final OS os, final Charset charset)
     {
@@ -43,6 +44,8 @@ abstract class AbstractShell implements IShell
         Process process = null;
         LOGGER.info("Executing in {}: {}", workingDirectory.getAbsolutePath(), command.stream().collect(Collectors.joining(" ")));
         process = builder.start();
+        final ProcessTreeSampler sampler = new ProcessTreeSampler(process, String.join(" ", cmd));
+        sampler.start();
 
         final ProcessStream outputStream = new ProcessStream("STANDARD OUT", process.getInputStream(), m_charset);
         final ProcessStream errorStream = new ProcessStream("STANDARD ERR", process.getErrorStream(), m_charset);
@@ -56,6 +59,10 @@ abstract class AbstractShell implements IShell
 
         // now we maybe get the 'real' exit code, or not...
         final int exitValue = process.exitValue();
+        final ProcessStatistics statistics = sampler.finish(exitValue);
+        m_statistics.get().add(statistics);
+        LOGGER.debug("Resources used: {} ms, peak RSS {} KB, CPU {} ms, read {} bytes, written {} bytes", statistics.getDurationMs(),
+                statistics.getPeakRssKb(), statistics.getCpuTimeMs(), statistics.getReadBytes(), statistics.getWriteBytes());
         final List<String> output = new ArrayList<>();
         final List<String> errors = new ArrayList<>();
         output.addAll(outputStream.getOutput());
@@ -84,6 +91,14 @@ abstract class AbstractShell implements IShell
         return execute(Arrays.asList(cmd.split(" ")), workingDirectory);
     }
 
+    @Override
+    public final List<ProcessStatistics> drainStatistics()
+    {
+        final List<ProcessStatistics> statistics = new ArrayList<>(m_statistics.get());
+        m_statistics.get().clear();
+        return statistics;
+    }
+
     protected List<String> createCommand(final List<String> cmd)
     {
         return cmd;
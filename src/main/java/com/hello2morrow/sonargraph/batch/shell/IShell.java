@@ -34,4 +34,9 @@ public interface IShell
 
     OS getOs();
 
+    /**
+     * @return the resource usage of all commands executed by the calling thread since the last call.
+     */
+    List<ProcessStatistics> drainStatistics();
+
 }
\ No newline at end of file
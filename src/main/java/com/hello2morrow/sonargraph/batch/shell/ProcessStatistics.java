@@ -0,0 +1,127 @@
+/*
+ * Sonargraph Integration Access
+ * Copyright (C) 2016-2021 hello2morrow GmbH
+ * mailto: support AT hello2morrow DOT com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hello2morrow.sonargraph.batch.shell;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Resources consumed by an executed command and all its child processes.
+ */
+public final class ProcessStatistics
+{
+    static final String CSV_HEADER = "version;command;exitCode;durationMs;peakRssKb;cpuTimeMs;readBytes;writeBytes";
+
+    private final String m_command;
+    private final int m_exitCode;
+    private final long m_durationMs;
+    private final long m_peakRssKb;
+    private final long m_cpuTimeMs;
+    private final long m_readBytes;
+    private final long m_writeBytes;
+
+    ProcessStatistics(final String command, final int exitCode, final long durationMs, final long peakRssKb, final long cpuTimeMs,
+            final long readBytes, final long writeBytes)
+    {
+        assert command != null : "Parameter 'command' of method 'ProcessStatistics' must not be null";
+
+        m_command = command;
+        m_exitCode = exitCode;
+        m_durationMs = durationMs;
+        m_peakRssKb = peakRssKb;
+        m_cpuTimeMs = cpuTimeMs;
+        m_readBytes = readBytes;
+        m_writeBytes = writeBytes;
+    }
+
+    public String getCommand()
+    {
+        return m_command;
+    }
+
+    public int getExitCode()
+    {
+        return m_exitCode;
+    }
+
+    public long getDurationMs()
+    {
+        return m_durationMs;
+    }
+
+    /**
+     * @return the largest sum of the resident set sizes of the process tree over all samples, 0 if not available on this platform.
+     */
+    public long getPeakRssKb()
+    {
+        return m_peakRssKb;
+    }
+
+    public long getCpuTimeMs()
+    {
+        return m_cpuTimeMs;
+    }
+
+    /**
+     * @return bytes read from storage, 0 if not available on this platform.
+     */
+    public long getReadBytes()
+    {
+        return m_readBytes;
+    }
+
+    /**
+     * @return bytes written to storage, 0 if not available on this platform.
+     */
+    public long getWriteBytes()
+    {
+        return m_writeBytes;
+    }
+
+    String toCsvLine(final String version)
+    {
+        final String executable = m_command.split(" ", 2)[0];
+        return version + ";" + executable + ";" + m_exitCode + ";" + m_durationMs + ";" + m_peakRssKb + ";" + m_cpuTimeMs + ";" + m_readBytes + ";"
+                + m_writeBytes;
+    }
+
+    /**
+     * Appends the statistics of the commands executed for a version to a CSV file, which is created with a header line if it does not exist.
+     */
+    public static void appendToFile(final File telemetryFile, final String version, final List<ProcessStatistics> statistics) throws IOException
+    {
+        assert telemetryFile != null : "Parameter 'telemetryFile' of method 'appendToFile' must not be null";
+        assert version != null : "Parameter 'version' of method 'appendToFile' must not be null";
+        assert statistics != null : "Parameter 'statistics' of method 'appendToFile' must not be null";
+
+        final List<String> lines = new ArrayList<>();
+        if (!telemetryFile.exists())
+        {
+            lines.add(CSV_HEADER);
+        }
+        for (final ProcessStatistics next : statistics)
+        {
+            lines.add(next.toCsvLine(version));
+        }
+        Files.write(telemetryFile.toPath(), lines, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Sonargraph Integration Access
+ * Copyright (C) 2016-2021 hello2morrow GmbH
+ * mailto: support AT hello2morrow DOT com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hello2morrow.sonargraph.batch.shell;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Periodically samples the resource usage of a process and all its descendants.
+ *
+ * On Linux the values are read from '/proc/&lt;pid&gt;/status', 'stat' and 'io'. CPU time and I/O counters are cumulative per process, so the last
+ * sampled value of each process is summed up. Processes that start and terminate between two samples are not captured. On other platforms only
+ * the CPU time reported by {@link ProcessHandle.Info} is available.
+ */
+final class ProcessTreeSampler extends Thread
+{
+    private static final long SAMPLE_INTERVAL_MS = 250;
+    private static final File PROC_DIR = new File("/proc");
+    //USER_HZ, the unit of utime and stime in /proc/<pid>/stat, is 100 on all common Linux platforms
+    private static final long CLOCK_TICKS_PER_SECOND = 100;
+
+    private final Process m_process;
+    private final String m_command;
+    private final long m_startTime;
+    private final Map<Long, long[]> m_lastCounters = new HashMap<>();
+    private long m_peakRssKb = 0;
+    private volatile boolean m_stopped = false;
+
+    ProcessTreeSampler(final Process process, final String command)
+    {
+        super("PROCESS SAMPLER");
+        assert process != null : "Parameter 'process' of method 'ProcessTreeSampler' must not be null";
+        assert command != null : "Parameter 'command' of method 'ProcessTreeSampler' must not be null";
+
+        m_process = process;
+        m_command = command;
+        m_startTime = System.currentTimeMillis();
+        setDaemon(true);
+    }
+
+    @Override
+    public void run()
+    {
+        while (!m_stopped && m_process.isAlive())
+        {
+            sample();
+            try
+            {
+                Thread.sleep(SAMPLE_INTERVAL_MS);
+            }
+            catch (final InterruptedException e)
+            {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Stops sampling and returns the collected statistics. Must be called after the process has terminated.
+     */
+    ProcessStatistics finish(final int exitCode)
+    {
+        m_stopped = true;
+        interrupt();
+        try
+        {
+            join();
+        }
+        catch (final InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (this)
+        {
+            long cpuTimeMs = 0;
+            long readBytes = 0;
+            long writeBytes = 0;
+            for (final long[] next : m_lastCounters.values())
+            {
+                cpuTimeMs += next[0];
+                readBytes += next[1];
+                writeBytes += next[2];
+            }
+            return new ProcessStatistics(m_command, exitCode, System.currentTimeMillis() - m_startTime, m_peakRssKb, cpuTimeMs, readBytes,
+                    writeBytes);
+        }
+    }
+
+    private synchronized void sample()
+    {
+        final List<ProcessHandle> handles;
+        try (Stream<ProcessHandle> descendants = m_process.toHandle().descendants())
+        {
+            handles = Stream.concat(Stream.of(m_process.toHandle()), descendants).collect(Collectors.toList());
+        }
+
+        long rssKb = 0;
+        for (final ProcessHandle next : handles)
+        {
+            if (PROC_DIR.isDirectory())
+            {
+                final File procDir = new File(PROC_DIR, Long.toString(next.pid()));
+                try
+                {
+                    rssKb += readRssKb(procDir);
+                    final long[] ioCounters = readIoCounters(procDir);
+                    m_lastCounters.put(next.pid(), new long[] { readCpuTimeMs(procDir), ioCounters[0], ioCounters[1] });
+                }
+                catch (final IOException | RuntimeException e)
+                {
+                    //Process terminated while reading, the values of the last sample are kept
+                }
+            }
+            else
+            {
+                final long cpuTimeMs = next.info().totalCpuDuration().map(Duration::toMillis).orElse(-1L);
+                if (cpuTimeMs >= 0)
+                {
+                    m_lastCounters.put(next.pid(), new long[] { cpuTimeMs, 0, 0 });
+                }
+            }
+        }
+        m_peakRssKb = Math.max(m_peakRssKb, rssKb);
+    }
+
+    static long readRssKb(final File procDir) throws IOException
+    {
+        for (final String next : Files.readAllLines(new File(procDir, "status").toPath()))
+        {
+            //Example: VmRSS:	  123456 kB
+            if (next.startsWith("VmRSS:"))
+            {
+                return Long.parseLong(next.substring("VmRSS:".length()).trim().split("\\s+")[0]);
+            }
+        }
+        return 0;
+    }
+
+    static long readCpuTimeMs(final File procDir) throws IOException
+    {
+        final String stat = new String(Files.readAllBytes(new File(procDir, "stat").toPath()));
+        //The command name in parentheses may contain spaces, fields are counted after it, starting with field 3 'state'
+        final String[] fields = stat.substring(stat.lastIndexOf(')') + 2).trim().split("\\s+");
+        final long ticks = Long.parseLong(fields[11]) + Long.parseLong(fields[12]);
+        return ticks * 1000 / CLOCK_TICKS_PER_SECOND;
+    }
+
+    /**
+     * @return bytes read from and written to storage, or zeros if the io file is not readable.
+     */
+    static long[] readIoCounters(final File procDir)
+    {
+        final long[] counters = new long[2];
+        try
+        {
+            for (final String next : Files.readAllLines(new File(procDir, "io").toPath()))
+            {
+                if (next.startsWith("read_bytes:"))
+                {
+                    counters[0] = Long.parseLong(next.substring("read_bytes:".length()).trim());
+                }
+                else if (next.startsWith("write_bytes:"))
+                {
+                    counters[1] = Long.parseLong(next.substring("write_bytes:".length()).trim());
+                }
+            }
+        }
+        catch (final IOException e)
+        {
+            //Not permitted for processes of other users
+        }
+        return counters;
+    }
+}
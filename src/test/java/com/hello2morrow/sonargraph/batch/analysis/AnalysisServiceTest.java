@@ -0,0 +1,189 @@
+/*
+ * Sonargraph Integration Access
+ * Copyright (C) 2016-2021 hello2morrow GmbH
+ * mailto: support AT hello2morrow DOT com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hello2morrow.sonargraph.batch.analysis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class AnalysisServiceTest
+{
+    @Test
+    public void higherPriorityFirst()
+    {
+        final AnalysisService service = new AnalysisService("XXXX", 0);
+        final AnalysisService.Job low = service.submit(createMavenJob("a", "0"));
+        final AnalysisService.Job high = service.submit(createMavenJob("b", "5"));
+        final AnalysisService.Job low2 = service.submit(createMavenJob("c", "0"));
+
+        assertEquals("Highest priority first", high.getId(), service.pollNext().getId());
+        assertEquals("Submission order within priority", low.getId(), service.pollNext().getId());
+        assertEquals("Submission order within priority", low2.getId(), service.pollNext().getId());
+    }
+
+    @Test
+    public void identicalQueuedJobGetsListener()
+    {
+        final AnalysisService service = new AnalysisService("XXXX", 0);
+        final List<Boolean> results = new ArrayList<>();
+        final AnalysisService.Job job = service.submit(createMavenJob("a", "0"), results::add);
+        assertEquals("Identical job must not be queued twice", job.getId(), service.submit(createMavenJob("a", "0"), results::add).getId());
+        assertEquals("Wrong job", job.getId(), service.pollNext().getId());
+        assertNull("Only one job must be queued", service.pollNext());
+    }
+
+    @Test
+    public void notifyCompletionListener() throws IOException, InterruptedException
+    {
+        final AnalysisService service = new AnalysisService("XXXX", 1);
+        final BlockingQueue<Boolean> results = new LinkedBlockingQueue<>();
+        //The properties file does not exist, so the job fails
+        service.submit(createMavenJob("a", "0"), results::add);
+        service.start(0);
+        try
+        {
+            assertEquals("Failure must be reported", Boolean.FALSE, results.poll(10, TimeUnit.SECONDS));
+        }
+        finally
+        {
+            service.stop();
+        }
+    }
+
+    @Test
+    public void oneJobPerTarget()
+    {
+        final AnalysisService service = new AnalysisService("XXXX", 0);
+        final AnalysisService.Job first = service.submit(createMavenJob("a", "0"));
+        final AnalysisService.Job second = service.submit(createMavenJob("a", "1"));
+        final AnalysisService.Job other = service.submit(createMavenJob("b", "0"));
+
+        final String target = service.getTarget(second);
+        assertEquals("Jobs of the same artifact must have the same target", service.getTarget(first), target);
+        assertTrue("Job must start", service.start(service.pollNext(), target));
+        assertEquals("Wrong job", first.getId(), service.pollNext().getId());
+        assertFalse("Job of running artifact must wait", service.start(first, target));
+        assertEquals("Other artifact must not wait", other.getId(), service.pollNext().getId());
+        assertNull("Waiting job must not be queued", service.pollNext());
+        assertEquals("Waiting job is queued", AnalysisService.JobState.QUEUED, first.getState());
+
+        service.finish(target);
+        assertEquals("Waiting job must be queued again", first.getId(), service.pollNext().getId());
+    }
+
+    @Test
+    public void evictFinishedJobs() throws IOException, InterruptedException
+    {
+        final long afterRetention = 25 * 60 * 60 * 1000L;
+        final AnalysisService queuedService = new AnalysisService("XXXX", 0);
+        final AnalysisService.Job queued = queuedService.submit(createMavenJob("a", "0"));
+        queuedService.evictFinishedJobs(System.currentTimeMillis() + afterRetention);
+        assertTrue("Queued job must be kept", queuedService.getJob(queued.getId()) != null);
+
+        final AnalysisService service = new AnalysisService("XXXX", 1);
+        final BlockingQueue<Boolean> results = new LinkedBlockingQueue<>();
+        final AnalysisService.Job failed = service.submit(createMavenJob("a", "0"), results::add);
+        service.start(0);
+        try
+        {
+            assertEquals("Failure must be reported", Boolean.FALSE, results.poll(10, TimeUnit.SECONDS));
+        }
+        finally
+        {
+            service.stop();
+        }
+        service.evictFinishedJobs(System.currentTimeMillis());
+        assertTrue("Recently finished job must be kept", service.getJob(failed.getId()) != null);
+        service.evictFinishedJobs(System.currentTimeMillis() + afterRetention);
+        assertNull("Old finished job must be removed", service.getJob(failed.getId()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectIncompleteJob()
+    {
+        final Map<String, String> parameters = createMavenJob("a", "0");
+        parameters.remove("groupId");
+        new AnalysisService("XXXX", 0).submit(parameters);
+    }
+
+    @Test
+    public void httpApi() throws IOException
+    {
+        final AnalysisService service = new AnalysisService("XXXX", 0);
+        final int port = service.start(0);
+        try
+        {
+            final String base = "http://localhost:" + port;
+            final HttpURLConnection post = (HttpURLConnection) new URL(
+                    base + "/jobs?type=maven&groupId=org.example&artifactId=lib&propertiesFile=maven.properties&priority=3").openConnection();
+            post.setRequestMethod("POST");
+            assertEquals("Job not created", 201, post.getResponseCode());
+            assertTrue("Missing job id", read(post).contains("\"id\":1"));
+
+            final HttpURLConnection job = (HttpURLConnection) new URL(base + "/jobs/1").openConnection();
+            assertEquals("Job not found", 200, job.getResponseCode());
+            assertTrue("Wrong state", read(job).contains("\"state\":\"queued\""));
+
+            final HttpURLConnection stats = (HttpURLConnection) new URL(base + "/stats").openConnection();
+            assertTrue("Wrong queue length", read(stats).contains("\"queued\":1"));
+
+            final HttpURLConnection invalid = (HttpURLConnection) new URL(base + "/jobs?type=unknown").openConnection();
+            invalid.setRequestMethod("POST");
+            assertEquals("Invalid job must be rejected", 400, invalid.getResponseCode());
+        }
+        finally
+        {
+            service.stop();
+        }
+    }
+
+    private static Map<String, String> createMavenJob(final String artifactId, final String priority)
+    {
+        final Map<String, String> parameters = new HashMap<>();
+        parameters.put("type", "maven");
+        parameters.put("groupId", "org.example");
+        parameters.put("artifactId", artifactId);
+        parameters.put("propertiesFile", "maven.properties");
+        parameters.put("priority", priority);
+        return parameters;
+    }
+
+    private static String read(final HttpURLConnection connection) throws IOException
+    {
+        try (InputStream in = connection.getInputStream())
+        {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Sonargraph Integration Access
+ * Copyright (C) 2016-2021 hello2morrow GmbH
+ * mailto: support AT hello2morrow DOT com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hello2morrow.sonargraph.batch.analysis;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class BisectionTest
+{
+    @Test
+    public void findFirstChangedVersion() throws Exception
+    {
+        final double[] values = { 10, 10, 11, 10, 25, 25, 26, 27, 27, 30, 31, 31, 32, 33, 33, 35 };
+        final Bisection bisection = new Bisection(values.length, 5, index -> values[index]);
+        assertEquals("Wrong culprit", 4, bisection.run());
+        assertEquals("Only log(n) versions must be analyzed", 6, bisection.getAnalyzedCount());
+    }
+
+    @Test
+    public void noChange() throws Exception
+    {
+        final double[] values = { 10, 12, 11, 10 };
+        assertEquals("No change expected", -1, new Bisection(values.length, 5, index -> values[index]).run());
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Sonargraph Integration Access
+ * Copyright (C) 2016-2021 hello2morrow GmbH
+ * mailto: support AT hello2morrow DOT com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hello2morrow.sonargraph.batch.analysis;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import com.hello2morrow.sonargraph.batch.commands.GitCommands;
+import com.hello2morrow.sonargraph.batch.configuration.Props;
+
+public class GitHistoryBatchTest
+{
+    @Test
+    public void parseManifestAndOrderBySharing()
+    {
+        final List<GitHistoryBatch.Repository> repositories = GitHistoryBatch.parseManifest(Arrays.asList("# forks first",
+                "fork repoDirectory=/repos/fork branchName=main sonargraphSystemDirectory=/systems/fork shareObjectsWith=core buildTool=gradle",
+                "", "core repoDirectory=/repos/core branchName=master sonargraphSystemDirectory=/systems/core repoUrl=https://git.example.com/core.git"));
+        assertEquals("Wrong number of repositories", 2, repositories.size());
+        assertEquals("Wrong override", "gradle", repositories.get(0).getProperties().get("buildTool"));
+        assertEquals("Wrong url", "https://git.example.com/core.git", repositories.get(1).getProperty(Props.REPO_URL));
+        assertEquals("Shared repository must be prepared first", "[core, fork]",
+                GitHistoryBatch.orderBySharing(repositories).stream().map(GitHistoryBatch.Repository::getName).collect(Collectors.toList()).toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownSharedRepository()
+    {
+        GitHistoryBatch.parseManifest(Arrays.asList("fork repoDirectory=/repos/fork sonargraphSystemDirectory=/systems/fork shareObjectsWith=core"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void sameSystemForTwoRepositories()
+    {
+        GitHistoryBatch.parseManifest(Arrays.asList("core repoDirectory=/repos/core sonargraphSystemDirectory=/systems/core",
+                "fork repoDirectory=/repos/fork sonargraphSystemDirectory=/systems/../systems/core shareObjectsWith=core"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void missingSystem()
+    {
+        GitHistoryBatch.parseManifest(Arrays.asList("core repoDirectory=/repos/core"));
+    }
+
+    @Test
+    public void addAlternateOnce() throws IOException
+    {
+        final File dir = Files.createTempDirectory("alternates").toFile();
+        final File core = new File(dir, "core");
+        final File fork = new File(dir, "fork");
+        new File(core, ".git/objects").mkdirs();
+        new File(fork, ".git/objects").mkdirs();
+
+        assertEquals("Alternate must be added", true, GitCommands.addAlternate(fork, core));
+        assertEquals("Alternate must not be added twice", false, GitCommands.addAlternate(fork, core));
+        assertEquals("Wrong alternates", Arrays.asList(new File(core, ".git/objects").getCanonicalPath()),
+                Files.readAllLines(new File(fork, ".git/objects/info/alternates").toPath()));
+    }
+
+    @Test
+    public void unknownDurationFirst() throws IOException
+    {
+        final File dir = Files.createTempDirectory("estimate").toFile();
+        assertEquals("Unknown duration", Long.MAX_VALUE, GitHistoryBatch.estimateMs(new File(dir, "analysis")));
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Sonargraph Integration Access
+ * Copyright (C) 2016-2021 hello2morrow GmbH
+ * mailto: support AT hello2morrow DOT com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hello2morrow.sonargraph.batch.analysis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+public class ReleaseWatcherTest
+{
+    private volatile String m_etag = "\"v1\"";
+    private volatile String m_lastUpdated = "20210101120000";
+
+    @Test
+    public void parseWatchList()
+    {
+        final ReleaseWatcher.WatchList watchList = ReleaseWatcher.parseWatchList(Arrays.asList("# comment", "pollIntervalSeconds = 60",
+                "maven org.hibernate hibernate-core ./maven-central.properties", "", "repository ./cwa_config.properties"));
+        assertEquals("Wrong interval", 60000, watchList.getPollIntervalMs());
+        assertEquals("Wrong number of entries", 2, watchList.getEntries().size());
+        assertEquals("Wrong key", "maven:org.hibernate:hibernate-core", watchList.getEntries().get(0).getKey());
+        assertEquals("Wrong job type", "repository", watchList.getEntries().get(1).createJobParameters().get("type"));
+    }
+
+    @Test
+    public void gitRemoteHost()
+    {
+        assertEquals("Wrong host of URL", "github.com", ReleaseWatcher.getHost("https://github.com/corona-warn-app/cwa-server.git"));
+        assertEquals("Wrong host of scp-like remote", "github.com", ReleaseWatcher.getHost("git@github.com:corona-warn-app/cwa-server.git"));
+    }
+
+    @Test
+    public void submitOnlyIfMetadataChanged() throws Exception
+    {
+        final HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", exchange ->
+        {
+            if (m_etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match")))
+            {
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+            final byte[] body = ("<metadata><versioning><lastUpdated>" + m_lastUpdated + "</lastUpdated></versioning></metadata>")
+                    .getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("ETag", m_etag);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody())
+            {
+                out.write(body);
+            }
+        });
+        server.start();
+
+        try
+        {
+            final File dir = Files.createTempDirectory("watcher").toFile();
+            final File properties = new File(dir, "maven.properties");
+            Files.write(properties.toPath(), Arrays.asList("mavenRepoUrl = http://localhost:" + server.getAddress().getPort() + "/"));
+            final File watchList = new File(dir, "watchlist.txt");
+            Files.write(watchList.toPath(), Arrays.asList("minHostIntervalMs = 0", "maven org.example lib " + properties.getAbsolutePath()));
+
+            final List<Map<String, String>> submitted = new ArrayList<>();
+            final List<Consumer<Boolean>> listeners = new ArrayList<>();
+            final ReleaseWatcher watcher = new ReleaseWatcher(watchList, (p, l) ->
+            {
+                submitted.add(p);
+                listeners.add(l);
+            });
+            final ReleaseWatcher.Entry entry = watcher.getEntries().get(0);
+            assertTrue("First poll must submit", watcher.poll(entry));
+            assertFalse("Pending job must not be submitted again", watcher.poll(entry));
+            listeners.get(0).accept(false);
+            assertTrue("Failed job must be submitted again", watcher.poll(entry));
+            listeners.get(1).accept(true);
+            assertFalse("Unmodified metadata must not submit", watcher.poll(entry));
+
+            m_etag = "\"v2\"";
+            m_lastUpdated = "20210202120000";
+            assertTrue("Modified metadata must submit", watcher.poll(entry));
+            assertEquals("Wrong number of jobs", 3, submitted.size());
+            assertEquals("Wrong artifact", "lib", submitted.get(0).get("artifactId"));
+            listeners.get(2).accept(true);
+
+            final ReleaseWatcher restarted = new ReleaseWatcher(watchList, (p, l) -> submitted.add(p));
+            assertFalse("State must survive restart", restarted.poll(restarted.getEntries().get(0)));
+        }
+        finally
+        {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void awaitHostSlot() throws Exception
+    {
+        final File watchList = File.createTempFile("watchlist", ".txt");
+        Files.write(watchList.toPath(), Arrays.asList("minHostIntervalMs = 200"));
+        final ReleaseWatcher watcher = new ReleaseWatcher(watchList, (p, l) ->
+        {
+        });
+        final long start = System.currentTimeMillis();
+        watcher.awaitHostSlot("repo1.maven.org");
+        watcher.awaitHostSlot("github.com");
+        assertTrue("Different hosts must not wait", System.currentTimeMillis() - start < 150);
+        watcher.awaitHostSlot("repo1.maven.org");
+        assertTrue("Same host must wait", System.currentTimeMillis() - start >= 200);
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Sonargraph Integration Access
+ * Copyright (C) 2016-2021 hello2morrow GmbH
+ * mailto: support AT hello2morrow DOT com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hello2morrow.sonargraph.batch.cache;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.apache.commons.configuration2.PropertiesConfiguration;
+import org.junit.Test;
+
+import com.hello2morrow.sonargraph.batch.configuration.Props;
+
+public class AnalysisResultCacheTest
+{
+    @Test
+    public void notUsedWhenReportsAreUploaded() throws IOException
+    {
+        final PropertiesConfiguration configuration = new PropertiesConfiguration();
+        configuration.setProperty(Props.ANALYSIS_CACHE_DIRECTORY.getPropertyName(),
+                Files.createTempDirectory("analysisCache").toFile().getAbsolutePath());
+        assertNotNull("Cache expected without upload", AnalysisResultCache.fromConfiguration(configuration));
+
+        //A cache hit would skip Sonargraph-Build, which performs the upload
+        configuration.setProperty(Props.UPLOAD_HOST_URL.getPropertyName(), "http://localhost:8080/");
+        assertNull("Every version must be analyzed and uploaded", AnalysisResultCache.fromConfiguration(configuration));
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Sonargraph Integration Access
+ * Copyright (C) 2016-2021 hello2morrow GmbH
+ * mailto: support AT hello2morrow DOT com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hello2morrow.sonargraph.batch.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BuildOutputCacheTest
+{
+    @Rule
+    public final TemporaryFolder m_folder = new TemporaryFolder();
+
+    @Test
+    public void restoreUnchangedModules() throws IOException
+    {
+        final File baseDir = m_folder.getRoot();
+        final File repoDir = new File(baseDir, "repo");
+        write(new File(repoDir, "pom.xml"), "<project/>");
+        write(new File(repoDir, "a/pom.xml"), "<project>a</project>");
+        write(new File(repoDir, "a/src/main/java/A.java"), "class A {}");
+        write(new File(repoDir, "b/pom.xml"), "<project>b</project>");
+        write(new File(repoDir, "b/src/main/java/B.java"), "class B {}");
+
+        final BuildOutputCache cache = new BuildOutputCache(new File(baseDir, "cache"));
+        final Map<File, String> firstBuild = cache.restore(repoDir);
+        assertEquals("All modules must be built initially", 3, firstBuild.size());
+        write(new File(repoDir, "a/target/classes/A.class"), "A");
+        write(new File(repoDir, "b/target/classes/B.class"), "B");
+        cache.store(firstBuild);
+
+        write(new File(repoDir, "b/src/main/java/B.java"), "class B { int i; }");
+        final Map<File, String> secondBuild = cache.restore(repoDir);
+        assertEquals("Only the changed module must be built", 1, secondBuild.size());
+        assertEquals("Wrong module", "b", secondBuild.keySet().iterator().next().getName());
+        assertTrue("Output of unchanged module must be restored", new File(repoDir, "a/target/classes/A.class").exists());
+        assertFalse("Stale output of changed module must be removed", new File(repoDir, "b/target/classes/B.class").exists());
+    }
+
+    @Test
+    public void rebuildModulesDependingOnChangedModule() throws IOException
+    {
+        final File repoDir = m_folder.getRoot();
+        write(new File(repoDir, "pom.xml"), "<project><groupId>g</groupId><artifactId>root</artifactId><version>1.0</version></project>");
+        write(new File(repoDir, "api/pom.xml"), "<project><parent><groupId>g</groupId><artifactId>root</artifactId><version>1.0</version></parent>"
+                + "<artifactId>api</artifactId></project>");
+        write(new File(repoDir, "api/src/main/java/Api.java"), "interface Api {}");
+        write(new File(repoDir, "impl/pom.xml"), "<project><parent><groupId>g</groupId><artifactId>root</artifactId><version>1.0</version></parent>"
+                + "<artifactId>impl</artifactId><dependencies><dependency><groupId>${project.groupId}</groupId><artifactId>api</artifactId>"
+                + "<version>${project.version}</version></dependency></dependencies></project>");
+        write(new File(repoDir, "impl/src/main/java/Impl.java"), "class Impl implements Api {}");
+        write(new File(repoDir, "other/pom.xml"), "<project><parent><groupId>g</groupId><artifactId>root</artifactId><version>1.0</version></parent>"
+                + "<artifactId>other</artifactId></project>");
+
+        final Map<File, String> before = BuildOutputCache.computeKeys(repoDir);
+        write(new File(repoDir, "api/src/main/java/Api.java"), "interface Api { void run(); }");
+        final Map<File, String> after = BuildOutputCache.computeKeys(repoDir);
+
+        assertFalse("Key of changed module must change", before.get(new File(repoDir, "api")).equals(after.get(new File(repoDir, "api"))));
+        assertFalse("Key of dependent module must change", before.get(new File(repoDir, "impl")).equals(after.get(new File(repoDir, "impl"))));
+        assertEquals("Key of independent module must not change", before.get(new File(repoDir, "other")), after.get(new File(repoDir, "other")));
+    }
+
+    @Test
+    public void noCachingWithSnapshotDependencies() throws IOException
+    {
+        final File repoDir = m_folder.getRoot();
+        write(new File(repoDir, "pom.xml"), "<project><groupId>g</groupId><artifactId>root</artifactId><version>1.0</version>"
+                + "<properties><lib.version>2.0-SNAPSHOT</lib.version></properties><dependencies><dependency><groupId>x</groupId>"
+                + "<artifactId>lib</artifactId><version>${lib.version}</version></dependency></dependencies></project>");
+        assertTrue("Snapshot dependency must disable caching", BuildOutputCache.computeKeys(repoDir).isEmpty());
+
+        write(new File(repoDir, "pom.xml"), "<project><groupId>g</groupId><artifactId>root</artifactId><version>1.0</version>"
+                + "<properties><lib.version>2.0</lib.version></properties><dependencies><dependency><groupId>x</groupId>"
+                + "<artifactId>lib</artifactId><version>${lib.version}</version></dependency></dependencies></project>");
+        assertEquals("Release dependency must be cached", 1, BuildOutputCache.computeKeys(repoDir).size());
+    }
+
+    private static void writeReactor(final File repoDir, final String version) throws IOException
+    {
+        final String parent = "<parent><groupId>g</groupId><artifactId>root</artifactId><version>" + version + "</version></parent>";
+        write(new File(repoDir, "pom.xml"), "<project><groupId>g</groupId><artifactId>root</artifactId><version>" + version + "</version>"
+                + "<properties><lib.version>2.1</lib.version></properties></project>");
+        write(new File(repoDir, "api/pom.xml"), "<project>" + parent + "<artifactId>api</artifactId><dependencies><dependency><groupId>x</groupId>"
+                + "<artifactId>lib</artifactId><version>${lib.version}</version></dependency></dependencies></project>");
+        write(new File(repoDir, "impl/pom.xml"), "<project>" + parent + "<artifactId>impl</artifactId><dependencies><dependency>"
+                + "<groupId>g</groupId><artifactId>api</artifactId><version>" + version + "</version></dependency></dependencies>"
+                + "<build><resources><resource><directory>src/main/resources</directory><filtering>true</filtering></resource></resources></build>"
+                + "</project>");
+    }
+
+    @Test
+    public void restoreModulesAfterVersionChange() throws IOException
+    {
+        final File repoDir = new File(m_folder.getRoot(), "repo");
+        writeReactor(repoDir, "1.0");
+        write(new File(repoDir, "api/src/main/java/Api.java"), "interface Api {}");
+        write(new File(repoDir, "impl/src/main/java/Impl.java"), "class Impl implements Api {}");
+        write(new File(repoDir, "impl/src/main/resources/app.properties"), "version=${project.version}");
+
+        final BuildOutputCache cache = new BuildOutputCache(new File(m_folder.getRoot(), "cache"));
+        final Map<File, String> firstBuild = cache.restore(repoDir);
+        assertEquals("All modules must be built initially", 3, firstBuild.size());
+        write(new File(repoDir, "api/target/classes/Api.class"), "Api");
+        write(new File(repoDir, "impl/target/classes/Impl.class"), "Impl");
+        write(new File(repoDir, "impl/target/classes/app.properties"), "version=1.0");
+        cache.store(firstBuild);
+
+        writeReactor(repoDir, "1.1");
+        assertTrue("Unchanged modules must be restored", cache.restore(repoDir).isEmpty());
+        assertTrue("Output of unchanged module must be restored", new File(repoDir, "impl/target/classes/Impl.class").exists());
+        assertFalse("Filtered resource must be processed again", new File(repoDir, "impl/target/classes/app.properties").exists());
+
+        //Changed dependency versions must still be detected
+        write(new File(repoDir, "pom.xml"), "<project><groupId>g</groupId><artifactId>root</artifactId><version>1.1</version>"
+                + "<properties><lib.version>2.2</lib.version></properties></project>");
+        assertEquals("Modules resolving the changed dependency must be built", 3, cache.restore(repoDir).size());
+    }
+
+    private static void write(final File file, final String content) throws IOException
+    {
+        file.getParentFile().mkdirs();
+        Files.writeString(file.toPath(), content);
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Sonargraph Integration Access
+ * Copyright (C) 2016-2021 hello2morrow GmbH
+ * mailto: support AT hello2morrow DOT com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hello2morrow.sonargraph.batch.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Test;
+
+public class InputHasherTest
+{
+    @Test
+    public void ignoreEntryOrderTimestampsAndResources() throws IOException
+    {
+        final File dir = Files.createTempDirectory("inputHasher").toFile();
+        final File jar1 = createJar(new File(dir, "1.jar"), 1000L, "resource-1", "a/A.class", "A", "a/B.class", "B");
+        final File jar2 = createJar(new File(dir, "2.jar"), 2000000L, "resource-2", "a/B.class", "B", "a/A.class", "A");
+        assertEquals("Hash must not depend on zip metadata", InputHasher.hashJarEntries(jar1), InputHasher.hashJarEntries(jar2));
+
+        final File jar3 = createJar(new File(dir, "3.jar"), 1000L, "resource-1", "a/A.class", "A", "a/B.class", "changed");
+        assertNotEquals("Hash must depend on class content", InputHasher.hashJarEntries(jar1), InputHasher.hashJarEntries(jar3));
+    }
+
+    private static File createJar(final File jar, final long time, final String resourceContent, final String... namesAndContents) throws IOException
+    {
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar)))
+        {
+            addEntry(out, "META-INF/MANIFEST.MF", "Build-Time: " + time, time);
+            addEntry(out, "data.txt", resourceContent, time);
+            for (int i = 0; i < namesAndContents.length; i += 2)
+            {
+                addEntry(out, namesAndContents[i], namesAndContents[i + 1], time);
+            }
+        }
+        return jar;
+    }
+
+    private static void addEntry(final ZipOutputStream out, final String name, final String content, final long time) throws IOException
+    {
+        final ZipEntry entry = new ZipEntry(name);
+        entry.setTime(time);
+        out.putNextEntry(entry);
+        out.write(content.getBytes(StandardCharsets.UTF_8));
+        out.closeEntry();
+    }
+}
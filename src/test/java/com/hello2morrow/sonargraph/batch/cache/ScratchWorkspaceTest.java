@@ -0,0 +1,116 @@
+/*
+ * Sonargraph Integration Access
+ * Copyright (C) 2016-2021 hello2morrow GmbH
+ * mailto: support AT hello2morrow DOT com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hello2morrow.sonargraph.batch.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.apache.commons.configuration2.PropertiesConfiguration;
+import org.junit.Test;
+
+import com.hello2morrow.sonargraph.batch.configuration.Props;
+
+public class ScratchWorkspaceTest
+{
+    @Test
+    public void allocateAndSpill() throws IOException
+    {
+        final File baseDir = Files.createTempDirectory("scratchWorkspace").toFile();
+        final File spillDir = new File(baseDir, "spill");
+        final ScratchWorkspace workspace = new ScratchWorkspace(new File(baseDir, "scratch"), 100);
+
+        final File first = workspace.allocate("first", 60, new File(spillDir, "first"));
+        assertTrue("Must be allocated in scratch space", workspace.isScratch(first));
+        assertEquals("Wrong reserved bytes", 60, workspace.getReservedBytes());
+
+        final File second = workspace.allocate("second", 60, new File(spillDir, "second"));
+        assertFalse("Must not exceed max bytes", workspace.isScratch(second));
+        assertEquals("Wrong spill location", new File(spillDir, "second").getAbsoluteFile(), second.getAbsoluteFile());
+
+        write(new File(first, "a.jar"), "a");
+        final File spilled = workspace.spill(first, new File(spillDir, "first"));
+        assertTrue("Content must be moved to spill directory", new File(spilled, "a.jar").exists());
+        assertFalse("Scratch directory must be deleted", first.exists());
+        assertEquals("Reservation must be released", 0, workspace.getReservedBytes());
+
+        final File third = workspace.allocate("third", 60, null);
+        assertTrue("Must be allocated in scratch space", workspace.isScratch(third));
+        assertEquals("Must return null if full and no durable directory is given", null, workspace.allocate("fourth", 60, null));
+        workspace.release(third);
+        assertFalse("Released directory must be deleted", third.exists());
+    }
+
+    @Test
+    public void neverDeleteReservedDirectory() throws IOException
+    {
+        final File baseDir = Files.createTempDirectory("scratchWorkspaceReserved").toFile();
+        final ScratchWorkspace workspace = new ScratchWorkspace(new File(baseDir, "scratch"), 100);
+
+        final File first = workspace.allocate("1.0", 10, null);
+        write(new File(first, "a.jar"), "a");
+        final File second = workspace.allocate("1.0", 10, null);
+        assertFalse("Must allocate distinct directory", first.equals(second));
+        assertTrue("Reserved directory must be kept", new File(first, "a.jar").exists());
+
+        workspace.release(first);
+        final File third = workspace.allocate("1.0", 10, null);
+        assertEquals("Released name must be reused", first, third);
+    }
+
+    @Test
+    public void shareWorkspacePerDirectory() throws IOException
+    {
+        final File baseDir = Files.createTempDirectory("scratchWorkspaceShared").toFile();
+        final PropertiesConfiguration configuration = new PropertiesConfiguration();
+        configuration.setProperty(Props.SCRATCH_DIRECTORY.getPropertyName(), new File(baseDir, "scratch").getAbsolutePath());
+        configuration.setProperty(Props.SCRATCH_MAX_MB.getPropertyName(), 1);
+        final PropertiesConfiguration other = new PropertiesConfiguration();
+        other.setProperty(Props.SCRATCH_DIRECTORY.getPropertyName(), new File(baseDir, "./scratch").getAbsolutePath());
+
+        assertTrue("Jobs must share the workspace", ScratchWorkspace.getShared(configuration) == ScratchWorkspace.getShared(other));
+        assertEquals("Must not be used if not configured", null, ScratchWorkspace.getShared(new PropertiesConfiguration()));
+    }
+
+    @Test
+    public void measureExcludesGitDirectory() throws IOException
+    {
+        final File repoDir = Files.createTempDirectory("scratchWorkspaceMeasure").toFile();
+        write(new File(repoDir, "src/A.java"), "class A {}");
+        write(new File(repoDir, ".git/objects/pack"), "0123456789");
+        assertEquals("Wrong size", 10, ScratchWorkspace.measure(repoDir, ".git"));
+    }
+
+    @Test
+    public void detectOutOfSpace()
+    {
+        assertTrue("Must detect full disk", ScratchWorkspace.isOutOfSpace(new RuntimeException(new IOException("No space left on device"))));
+        assertFalse("Must not detect other failures", ScratchWorkspace.isOutOfSpace(new IOException("Connection reset")));
+    }
+
+    private static void write(final File file, final String content) throws IOException
+    {
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
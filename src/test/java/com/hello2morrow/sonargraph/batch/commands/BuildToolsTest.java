@@ -0,0 +1,89 @@
+/*
+ * Sonargraph Integration Access
+ * Copyright (C) 2016-2021 hello2morrow GmbH
+ * mailto: support AT hello2morrow DOT com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hello2morrow.sonargraph.batch.commands;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.apache.commons.configuration2.PropertiesConfiguration;
+import org.junit.Test;
+
+import com.hello2morrow.sonargraph.batch.configuration.Props;
+
+public class BuildToolsTest
+{
+    private static File createRepoDir(final String... buildFiles) throws IOException
+    {
+        final File repoDir = Files.createTempDirectory("repo").toFile();
+        for (final String next : buildFiles)
+        {
+            Files.createFile(new File(repoDir, next).toPath());
+        }
+        return repoDir;
+    }
+
+    private static BuildTools createBuildTools(final String buildTool) throws IOException
+    {
+        final PropertiesConfiguration configuration = new PropertiesConfiguration();
+        if (buildTool != null)
+        {
+            configuration.setProperty(Props.BUILD_TOOL.getPropertyName(), buildTool);
+        }
+        return new BuildTools(configuration, Files.createTempDirectory("work").toFile());
+    }
+
+    @Test
+    public void selectByBuildFile() throws IOException
+    {
+        final BuildTools buildTools = createBuildTools(null);
+        assertEquals("Wrong tool for pom", MavenBuildTool.NAME, buildTools.select(createRepoDir("pom.xml")).getName());
+        assertEquals("Wrong tool for Gradle build", GradleBuildTool.NAME, buildTools.select(createRepoDir("build.gradle.kts")).getName());
+        assertEquals("Wrong tool for Gradle settings", GradleBuildTool.NAME, buildTools.select(createRepoDir("settings.gradle")).getName());
+        assertEquals("Maven must be preferred", MavenBuildTool.NAME, buildTools.select(createRepoDir("pom.xml", "build.gradle")).getName());
+    }
+
+    @Test
+    public void selectByWrapper() throws IOException
+    {
+        //The wrapper alone is no build file
+        final File repoDir = createRepoDir("gradlew", "build.gradle");
+        assertEquals("Wrong tool for Gradle wrapper", GradleBuildTool.NAME, createBuildTools("auto").select(repoDir).getName());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void noBuildFile() throws IOException
+    {
+        createBuildTools(null).select(createRepoDir("gradlew", "mvnw"));
+    }
+
+    @Test
+    public void configuredTool() throws IOException
+    {
+        assertEquals("Configured tool must win", GradleBuildTool.NAME, createBuildTools(" Gradle ").select(createRepoDir("pom.xml")).getName());
+        assertEquals("Configured tool without build file", MavenBuildTool.NAME, createBuildTools("maven").select(createRepoDir()).getName());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unsupportedTool() throws IOException
+    {
+        createBuildTools("ant");
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Sonargraph Integration Access
+ * Copyright (C) 2016-2021 hello2morrow GmbH
+ * mailto: support AT hello2morrow DOT com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hello2morrow.sonargraph.batch.commands;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ClassDataSharingTest
+{
+    @Test
+    public void getMajorVersion()
+    {
+        assertEquals("Wrong version", 17, ClassDataSharing.getMajorVersion("openjdk 17.0.2 2022-01-18"));
+        assertEquals("Wrong version", 21, ClassDataSharing.getMajorVersion("java 21 2023-09-19 LTS"));
+        assertEquals("Unknown format", -1, ClassDataSharing.getMajorVersion("Unrecognized option: --version"));
+    }
+
+    @Test
+    public void archiveNameChangesWithJar() throws IOException
+    {
+        final File jar = Files.createTempFile("client", ".jar").toFile();
+        final List<File> jars = Collections.singletonList(jar);
+        final String name = ClassDataSharing.createArchiveName(jars, "openjdk 17.0.2");
+        assertEquals("Name must be stable", name, ClassDataSharing.createArchiveName(jars, "openjdk 17.0.2"));
+        assertNotEquals("Java version must be part of the name", name, ClassDataSharing.createArchiveName(jars, "openjdk 17.0.3"));
+
+        Files.write(jar.toPath(), new byte[] { 1, 2, 3 });
+        assertNotEquals("Changed jar must result in a new archive", name, ClassDataSharing.createArchiveName(jars, "openjdk 17.0.2"));
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Sonargraph Integration Access
+ * Copyright (C) 2016-2021 hello2morrow GmbH
+ * mailto: support AT hello2morrow DOT com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hello2morrow.sonargraph.batch.commands;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.Test;
+
+public class CommitSamplerTest
+{
+    private static final long DAY = 24 * 60 * 60;
+    //2021-01-01T00:00:00Z, a Friday
+    private static final long START = 1609459200L;
+
+    private static List<CommitSampler.Commit> createHistory()
+    {
+        final List<CommitSampler.Commit> history = new ArrayList<>();
+        for (int i = 0; i < 60; i++)
+        {
+            final String line = "c" + i + "," + (START + i * DAY + 3600) + ",p" + i + (i % 3 == 0 ? " m" + i : "");
+            history.add(CommitSampler.parseCommit(line));
+        }
+        return history;
+    }
+
+    private static List<String> ids(final List<CommitSampler.Commit> commits)
+    {
+        return commits.stream().map(CommitSampler.Commit::getId).collect(Collectors.toList());
+    }
+
+    @Test
+    public void selectByInterval()
+    {
+        final List<CommitSampler.Commit> history = createHistory();
+        assertEquals("Last commit per month", Arrays.asList("c30", "c58", "c59"),
+                ids(new CommitSampler(CommitSampler.Mode.MONTH, 1, 0).select(history)));
+        assertEquals("Wrong number of weeks", 10, new CommitSampler(CommitSampler.Mode.WEEK, 1, 0).select(history).size());
+        assertEquals("First week ends on Sunday", "c2", new CommitSampler(CommitSampler.Mode.WEEK, 1, 0).select(history).get(0).getId());
+        assertEquals("Every 5th merge", Arrays.asList("c12", "c27", "c42", "c57"),
+                ids(new CommitSampler(CommitSampler.Mode.MERGE, 5, 0).select(history)));
+    }
+
+    @Test
+    public void thinOutKeepsFirstAndLast()
+    {
+        final List<CommitSampler.Commit> history = createHistory();
+        assertEquals("Wrong commits", Arrays.asList("c0", "c20", "c39", "c59"), ids(CommitSampler.thinOut(history, 4)));
+        assertEquals("No limit", 60, CommitSampler.thinOut(history, 0).size());
+    }
+
+    @Test
+    public void mergeWithTags()
+    {
+        final List<CommitSampler.Commit> history = createHistory();
+        final List<Pair<String, String>> tags = Arrays.asList(new ImmutablePair<>("c10", "v1.0"), new ImmutablePair<>("x", "v1.0.1"),
+                new ImmutablePair<>("c30", "v2.0"));
+        final List<Pair<String, String>> merged = CommitSampler.merge(tags,
+                Arrays.asList(history.get(5), history.get(30), history.get(40)), history);
+        assertEquals("Wrong order", "[c5, c10, x, c30, c40]", merged.stream().map(Pair::getKey).collect(Collectors.toList()).toString());
+        assertEquals("Wrong label", "2021-01-06-c5", merged.get(0).getValue());
+        assertEquals("Tag wins", "v2.0", merged.get(3).getValue());
+        assertEquals("Only samples", 1, CommitSampler.merge(Collections.emptyList(), Arrays.asList(history.get(5)), history).size());
+    }
+
+    @Test
+    public void mergeByHistoryOrder()
+    {
+        //Rebased commit: committed before its first-parent predecessor
+        final List<CommitSampler.Commit> history = Arrays.asList(CommitSampler.parseCommit("c0," + (START + DAY) + ",p0"),
+                CommitSampler.parseCommit("c1," + START + ",c0"), CommitSampler.parseCommit("c2," + (START + 2 * DAY) + ",c1"));
+        final List<Pair<String, String>> tags = Arrays.asList(new ImmutablePair<>("c0", "v1.0"), new ImmutablePair<>("c2", "v2.0"));
+        final List<Pair<String, String>> merged = CommitSampler.merge(tags, Arrays.asList(history.get(1)), history);
+        assertEquals("Wrong order", "[c0, c1, c2]", merged.stream().map(Pair::getKey).collect(Collectors.toList()).toString());
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Sonargraph Integration Access
+ * Copyright (C) 2016-2021 hello2morrow GmbH
+ * mailto: support AT hello2morrow DOT com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hello2morrow.sonargraph.batch.commands;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.configuration2.PropertiesConfiguration;
+import org.junit.Test;
+
+import com.hello2morrow.sonargraph.batch.configuration.Props;
+import com.hello2morrow.sonargraph.batch.shell.IShell;
+import com.hello2morrow.sonargraph.batch.shell.ProcessStatistics;
+
+public class GradleBuildToolTest
+{
+    private static final class RecordingShell implements IShell
+    {
+        private final OS m_os;
+        private final List<List<String>> m_commands = new ArrayList<>();
+
+        RecordingShell(final OS os)
+        {
+            m_os = os;
+        }
+
+        @Override
+        public List<String> execute(final String cmd, final File workingDirectory)
+        {
+            return execute(Arrays.asList(cmd.split(" ")), workingDirectory);
+        }
+
+        @Override
+        public List<String> execute(final List<String> cmd, final File workingDirectory)
+        {
+            m_commands.add(cmd);
+            return Collections.emptyList();
+        }
+
+        @Override
+        public OS getOs()
+        {
+            return m_os;
+        }
+
+        @Override
+        public List<ProcessStatistics> drainStatistics()
+        {
+            return Collections.emptyList();
+        }
+    }
+
+    @Test
+    public void defaultCommandLine() throws Exception
+    {
+        final File repoDir = Files.createTempDirectory("repo").toFile();
+        final RecordingShell shell = new RecordingShell(IShell.OS.UNIX);
+        new GradleBuildTool(new PropertiesConfiguration(), Files.createTempDirectory("work").toFile()).build(shell, repoDir);
+        assertEquals("Wrong command line", Arrays.asList("gradle", "--daemon", "--console=plain", "--build-cache", "classes", "testClasses"),
+                shell.m_commands.get(0));
+    }
+
+    @Test
+    public void configuredCommandLine() throws Exception
+    {
+        final File repoDir = Files.createTempDirectory("repo").toFile();
+        Files.createFile(new File(repoDir, "gradlew").toPath());
+        final File workDir = Files.createTempDirectory("work").toFile();
+
+        final PropertiesConfiguration configuration = new PropertiesConfiguration();
+        configuration.setProperty(Props.JAVA_HOME_FOR_MVN.getPropertyName(), "/jdk/17");
+        configuration.setProperty(Props.GRADLE_USER_HOME.getPropertyName(), "/gradle/home");
+        configuration.setProperty(Props.GRADLE_BUILD_CACHE_DIRECTORY.getPropertyName(), new File(workDir, "cache").getAbsolutePath());
+        configuration.setProperty(Props.GRADLE_TASKS.getPropertyName(), "compileJava");
+        configuration.setProperty(Props.GRADLE_ADDITIONAL_ARGUMENTS.getPropertyName(), "--offline");
+
+        final GradleBuildTool buildTool = new GradleBuildTool(configuration, workDir);
+        final RecordingShell shell = new RecordingShell(IShell.OS.UNIX);
+        buildTool.build(shell, repoDir);
+        final File initScript = new File(workDir, "sonargraph-build-cache.init.gradle");
+        assertEquals("Wrong command line",
+                Arrays.asList("sh", "./gradlew", "--daemon", "--console=plain", "--gradle-user-home", "/gradle/home", "-Dorg.gradle.java.home=/jdk/17",
+                        "--build-cache", "--init-script", initScript.getAbsolutePath(), "--offline", "compileJava"),
+                shell.m_commands.get(0));
+        assertTrue("Missing init script", initScript.isFile());
+
+        buildTool.shutdown(shell, repoDir);
+        assertEquals("Wrong stop command line", Arrays.asList("sh", "./gradlew", "--daemon", "--console=plain", "--gradle-user-home", "/gradle/home",
+                "-Dorg.gradle.java.home=/jdk/17", "--stop"), shell.m_commands.get(1));
+    }
+
+    @Test
+    public void windowsWrapper() throws Exception
+    {
+        final File repoDir = Files.createTempDirectory("repo").toFile();
+        Files.createFile(new File(repoDir, "gradlew").toPath());
+        Files.createFile(new File(repoDir, "gradlew.bat").toPath());
+        final RecordingShell shell = new RecordingShell(IShell.OS.WINDOWS);
+        new GradleBuildTool(new PropertiesConfiguration(), Files.createTempDirectory("work").toFile()).build(shell, repoDir);
+        assertEquals("Wrong executable", "gradlew.bat", shell.m_commands.get(0).get(0));
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Sonargraph Integration Access
+ * Copyright (C) 2016-2021 hello2morrow GmbH
+ * mailto: support AT hello2morrow DOT com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hello2morrow.sonargraph.batch.commands;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class JvmProfileTest
+{
+    @Rule
+    public final TemporaryFolder m_folder = new TemporaryFolder();
+
+    @Test
+    public void computeHeap()
+    {
+        final JvmProfile profile = new JvmProfile(false, Collections.emptyList(), 1024, 4096, 100);
+        assertEquals("Small input must get min heap", 1024, profile.computeHeapMb(0, 0));
+        assertEquals("Heap must grow with input", 2024, profile.computeHeapMb(10 * 1024 * 1024, 0));
+        assertEquals("Observed peak plus head room", 2600, profile.computeHeapMb(0, 2000));
+        assertEquals("Heap must not exceed max", 4096, profile.computeHeapMb(100 * 1024 * 1024, 0));
+        assertFalse("Assertions must be disabled", profile.createArguments(1024, new File("gc.log")).contains("-ea"));
+    }
+
+    @Test
+    public void readPeakHeapFromGcLog() throws IOException
+    {
+        final File gcLog = m_folder.newFile("gc.log");
+        Files.write(gcLog.toPath(),
+                Arrays.asList("[0.010s][info][gc] Using G1", "[1.234s][info][gc] GC(0) Pause Young (Normal) (G1 Evacuation Pause) 24M->3M(256M) 2.345ms",
+                        "[9.876s][info][gc] GC(1) Pause Full (G1 Compaction Pause) 1G->700M(2048M) 123.456ms",
+                        "[12.345s][info][gc] GC(2) Pause Young (Normal) (G1 Evacuation Pause) 1500M->600M(2048M) 3.456ms"));
+        assertEquals("Wrong peak heap", 700, JvmProfile.readPeakHeapMb(gcLog));
+    }
+
+    @Test
+    public void measureSourcesWithoutBuildOutput() throws IOException
+    {
+        final File repoDir = m_folder.newFolder("repo");
+        write(new File(repoDir, "pom.xml"), 10);
+        write(new File(repoDir, "src/main/java/com/example/build/Builder.java"), 100);
+        write(new File(repoDir, "target/classes/com/example/build/Builder.class"), 1000);
+        write(new File(repoDir, "module/build.gradle"), 10);
+        write(new File(repoDir, "module/build/classes/Other.class"), 1000);
+        write(new File(repoDir, "module/src/Other.java"), 20);
+        assertEquals("Wrong input size", 120, JvmProfile.measureInputBytes(repoDir));
+    }
+
+    private static void write(final File file, final int size) throws IOException
+    {
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), new byte[size]);
+    }
+}
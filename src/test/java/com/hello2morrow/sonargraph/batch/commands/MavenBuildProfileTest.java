@@ -0,0 +1,47 @@
+/*
+ * Sonargraph Integration Access
+ * Copyright (C) 2016-2021 hello2morrow GmbH
+ * mailto: support AT hello2morrow DOT com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hello2morrow.sonargraph.batch.commands;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+public class MavenBuildProfileTest
+{
+    @Test
+    public void defaultCommandLine()
+    {
+        final MavenBuildProfile profile = new MavenBuildProfile(false, null, Collections.emptyList(), false, false, Collections.emptyList());
+        assertEquals("Wrong command line", "mvn clean compile test-compile -Dcheckstyle.skip=true", profile.createCommandLine(false));
+    }
+
+    @Test
+    public void acceleratedCommandLine()
+    {
+        final MavenBuildProfile profile = new MavenBuildProfile(true, "1C", Arrays.asList("common", "services/submission"), true, true,
+                Collections.singletonList("-Dmaven.test.skip=true"));
+        final String commandLine = profile.createCommandLine(true);
+        assertTrue("Wrong command line: " + commandLine,
+                commandLine.startsWith("mvn -o -T 1C -pl common,services/submission -am compile test-compile -Dcheckstyle.skip=true -Denforcer.skip=true"));
+        assertTrue("Missing additional argument: " + commandLine, commandLine.endsWith(" -Dmaven.test.skip=true"));
+    }
+}
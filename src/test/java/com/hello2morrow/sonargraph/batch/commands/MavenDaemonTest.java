@@ -0,0 +1,67 @@
+/*
+ * Sonargraph Integration Access
+ * Copyright (C) 2016-2021 hello2morrow GmbH
+ * mailto: support AT hello2morrow DOT com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hello2morrow.sonargraph.batch.commands;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class MavenDaemonTest
+{
+    @Test
+    public void detectDaemonFailures()
+    {
+        assertTrue("Crashed daemon", MavenDaemon.isDaemonFailure("[ERROR] The daemon 1a2b3c crashed unexpectedly"));
+        assertTrue("Unreachable daemon", MavenDaemon.isDaemonFailure("Could not connect to the Maven daemon.\nDaemon log: ..."));
+        assertTrue("Daemon exception",
+                MavenDaemon.isDaemonFailure("Exception in thread \"main\" org.mvndaemon.mvnd.common.DaemonException$ConnectException: ..."));
+    }
+
+    @Test
+    public void buildFailuresAreNoDaemonFailures()
+    {
+        assertFalse("Refused repository connection", MavenDaemon.isDaemonFailure(
+                "[ERROR] Failed to execute goal on project core: Could not transfer artifact: java.net.ConnectException: Connection refused"));
+        assertFalse("Compile error", MavenDaemon.isDaemonFailure("[ERROR] COMPILATION ERROR : Main.java:[12,5] cannot find symbol"));
+        assertFalse("No output", MavenDaemon.isDaemonFailure(null));
+    }
+
+    @Test
+    public void detectWrapperVersion() throws IOException
+    {
+        final File repoDir = Files.createTempDirectory("wrapper").toFile();
+        assertNull("No wrapper", MavenDaemon.detectWrapperVersion(repoDir));
+
+        final File wrapperProperties = new File(repoDir, ".mvn/wrapper/maven-wrapper.properties");
+        assertTrue("Cannot create wrapper directory", wrapperProperties.getParentFile().mkdirs());
+        Files.write(wrapperProperties.toPath(), Arrays.asList("#Maven wrapper", "wrapperUrl=https://repo.maven.apache.org/maven2/maven-wrapper.jar",
+                "distributionUrl=https://repo.maven.apache.org/maven2/org/apache/maven/apache-maven/3.8.4/apache-maven-3.8.4-bin.zip"));
+        assertEquals("Wrong wrapper version", "apache-maven-3.8.4", MavenDaemon.detectWrapperVersion(repoDir));
+
+        Files.write(wrapperProperties.toPath(), Arrays.asList("wrapperUrl=https://repo.maven.apache.org/maven2/maven-wrapper.jar"));
+        assertNull("No distribution", MavenDaemon.detectWrapperVersion(repoDir));
+    }
+}
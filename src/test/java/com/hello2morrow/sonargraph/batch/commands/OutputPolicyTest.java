@@ -0,0 +1,48 @@
+/*
+ * Sonargraph Integration Access
+ * Copyright (C) 2016-2021 hello2morrow GmbH
+ * mailto: support AT hello2morrow DOT com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hello2morrow.sonargraph.batch.commands;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class OutputPolicyTest
+{
+    @Test
+    public void defaultPolicyCreatesAllOutputs()
+    {
+        final OutputPolicy policy = new OutputPolicy("standard", OutputPolicy.Rule.ALWAYS, 0, OutputPolicy.Rule.ALWAYS);
+        assertEquals("Wrong formats", "xml,html", policy.getReportFormats(3, 10));
+        assertTrue("Snapshot expected", policy.isSnapshot(3, 10));
+    }
+
+    @Test
+    public void newestAndEveryNthVersion()
+    {
+        final OutputPolicy policy = new OutputPolicy("full", OutputPolicy.Rule.NEWEST, 5, OutputPolicy.Rule.NEWEST);
+        assertEquals("Wrong formats of first version", "xml,html", policy.getReportFormats(0, 12));
+        assertEquals("Wrong formats of intermediate version", "xml", policy.getReportFormats(3, 12));
+        assertEquals("Wrong formats of 5th version", "xml,html", policy.getReportFormats(5, 12));
+        assertEquals("Wrong formats of newest version", "xml,html", policy.getReportFormats(11, 12));
+        assertFalse("No snapshot expected", policy.isSnapshot(10, 12));
+        assertTrue("Snapshot expected for newest version", policy.isSnapshot(11, 12));
+        assertEquals("Wrong description", "full;xml", policy.describe(3, 12));
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Sonargraph Integration Access
+ * Copyright (C) 2016-2021 hello2morrow GmbH
+ * mailto: support AT hello2morrow DOT com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hello2morrow.sonargraph.batch.logging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+
+import org.junit.Test;
+import org.slf4j.MDC;
+
+public class JobContextTest
+{
+    @Test
+    public void restoreEnclosingContext()
+    {
+        final File logDirectory = new File(System.getProperty("java.io.tmpdir"), "jobContextTest");
+        try (JobContext outer = JobContext.open("cwa", null, null, null))
+        {
+            assertEquals("Wrong job label", "cwa", MDC.get(JobContext.JOB_KEY));
+            try (JobContext inner = JobContext.open("cwa", "v1.0", "abc123", logDirectory))
+            {
+                assertEquals("Wrong job label", "cwa/v1.0/abc123", MDC.get(JobContext.JOB_KEY));
+                assertEquals("Wrong commit", "abc123", MDC.get(JobContext.COMMIT_KEY));
+                assertEquals("Wrong log file", new File(logDirectory, "batch_abc123.log").getAbsolutePath(), MDC.get(JobContext.LOG_FILE_KEY));
+            }
+            assertEquals("Outer context must be restored", "cwa", MDC.get(JobContext.JOB_KEY));
+            assertNull("Commit must be removed", MDC.get(JobContext.COMMIT_KEY));
+            assertNull("Log file must be removed", MDC.get(JobContext.LOG_FILE_KEY));
+        }
+        assertNull("Context must be removed", MDC.get(JobContext.ARTIFACT_KEY));
+    }
+}
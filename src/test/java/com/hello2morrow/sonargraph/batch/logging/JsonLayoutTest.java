@@ -0,0 +1,48 @@
+/*
+ * Sonargraph Integration Access
+ * Copyright (C) 2016-2021 hello2morrow GmbH
+ * mailto: support AT hello2morrow DOT com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hello2morrow.sonargraph.batch.logging;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class JsonLayoutTest
+{
+    @Test
+    public void formatEvent()
+    {
+        final Map<String, String> mdc = new LinkedHashMap<>();
+        mdc.put(JobContext.VERSION_KEY, "1.0");
+        mdc.put(JobContext.ARTIFACT_KEY, "hibernate-core");
+        final String json = JsonLayout.format(0, "INFO", "main", "Test", "Analysis of \"1.0\"\n\tdone", mdc, null);
+        assertEquals("Wrong JSON", "{\"timestamp\":\"1970-01-01T00:00:00Z\",\"level\":\"INFO\",\"thread\":\"main\",\"logger\":\"Test\","
+                + "\"message\":\"Analysis of \\\"1.0\\\"\\n\\tdone\",\"artifact\":\"hibernate-core\",\"version\":\"1.0\"}" + System.lineSeparator(),
+                json);
+    }
+
+    @Test
+    public void escapeControlCharacters()
+    {
+        final StringBuilder json = new StringBuilder();
+        JsonLayout.appendString(json, "a\\b\u0001");
+        assertEquals("Wrong escaping", "\"a\\\\b\\u0001\"", json.toString());
+    }
+}
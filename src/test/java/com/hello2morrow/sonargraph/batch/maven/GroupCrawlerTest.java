@@ -0,0 +1,83 @@
+/*
+ * Sonargraph Integration Access
+ * Copyright (C) 2016-2021 hello2morrow GmbH
+ * mailto: support AT hello2morrow DOT com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hello2morrow.sonargraph.batch.maven;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class GroupCrawlerTest
+{
+    @Test
+    public void crawlLocalRepository() throws IOException
+    {
+        final File repo = Files.createTempDirectory("repo").toFile();
+        createArtifact(repo, "org/example/core", "1.0", "1.1");
+        createArtifact(repo, "org/example/tools/cli", "2.0");
+        //Group level metadata of plugin groups has no versions
+        writeFile(new File(repo, "org/example/maven-metadata.xml"), "<metadata><plugins><plugin><prefix>x</prefix></plugin></plugins></metadata>");
+        new File(repo, "org/example/empty").mkdirs();
+
+        final List<GroupCrawler.Artifact> artifacts = new GroupCrawler(repo.toURI().toString(), 4).crawl("org.example");
+        assertEquals("Wrong number of artifacts", 2, artifacts.size());
+        assertEquals("Wrong artifact", "core", artifacts.get(0).getArtifactId());
+        assertEquals("Wrong version count", 2, artifacts.get(0).getVersionCount());
+        assertEquals("Wrong latest version", "1.1", artifacts.get(0).getLatestVersion());
+        assertEquals("Wrong size of latest version", 30, artifacts.get(0).getLatestBytes());
+        assertEquals("Wrong size estimate", 60, artifacts.get(0).getEstimatedTotalBytes());
+        assertEquals("Wrong group of nested artifact", "org.example.tools", artifacts.get(1).getGroupId());
+    }
+
+    @Test
+    public void parseHtmlListing()
+    {
+        final GroupCrawler.Listing listing = GroupCrawler.parseListing("<pre><a href=\"../\">../</a>\n"
+                + "<a href=\"5.4.0.Final/\" title=\"5.4.0.Final/\">5.4.0.Final/</a>                                      2018-12-05 13:42         -\n"
+                + "<a href=\"maven-metadata.xml\" title=\"maven-metadata.xml\">maven-metadata.xml</a>                        2021-03-18 12:52      9453\n"
+                + "</pre>");
+        assertEquals("Wrong result", "[5.4.0.Final/]", listing.getDirectories().toString());
+        assertEquals("Wrong file size", Long.valueOf(9453), listing.getFileSizes().get("maven-metadata.xml"));
+    }
+
+    private static void createArtifact(final File repo, final String path, final String... versions) throws IOException
+    {
+        final File artifactDir = new File(repo, path);
+        final String artifactId = artifactDir.getName();
+        final StringBuilder metadata = new StringBuilder("<metadata><versioning><release>" + versions[versions.length - 1] + "</release><versions>");
+        for (final String next : Arrays.asList(versions))
+        {
+            metadata.append("<version>").append(next).append("</version>");
+            final File versionDir = new File(artifactDir, next);
+            writeFile(new File(versionDir, artifactId + "-" + next + ".jar"), "0123456789");
+            writeFile(new File(versionDir, artifactId + "-" + next + "-sources.jar"), "01234567890123456789");
+        }
+        writeFile(new File(artifactDir, "maven-metadata.xml"), metadata.append("</versions></versioning></metadata>").toString());
+    }
+
+    private static void writeFile(final File file, final String content) throws IOException
+    {
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes());
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Sonargraph Integration Access
+ * Copyright (C) 2016-2021 hello2morrow GmbH
+ * mailto: support AT hello2morrow DOT com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hello2morrow.sonargraph.batch.maven;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Test;
+
+public class JarSlimmerTest
+{
+    @Test
+    public void removeNonCodeEntries() throws IOException
+    {
+        final File jar = new File(Files.createTempDirectory("jarSlimmer").toFile(), "classes.jar");
+        final char[] image = new char[100000];
+        Arrays.fill(image, 'x');
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar)))
+        {
+            addEntry(out, "META-INF/MANIFEST.MF", "Manifest-Version: 1.0");
+            addEntry(out, "a/A.class", "A");
+            addEntry(out, "a/A.java", "class A {}");
+            addEntry(out, "a/logo.png", new String(image));
+            addEntry(out, "a/messages.properties", "key=value");
+        }
+
+        final long originalBytes = jar.length();
+        final File slimmed = new File(jar.getParentFile(), "slimmed.jar");
+        final JarSlimmer.Result result = new JarSlimmer(Collections.singletonList("**/*.properties")).slim(jar, slimmed);
+        assertEquals("Wrong number of kept entries", 3, result.getKeptEntries());
+        assertEquals("Wrong number of removed entries", 2, result.getRemovedEntries());
+        assertTrue("Bytes must be saved", result.getSavedBytes() > 0);
+        assertEquals("Wrong size", slimmed.length(), result.getSlimmedBytes());
+        assertEquals("Original jar must not be modified", originalBytes, jar.length());
+
+        final List<String> names = new ArrayList<>();
+        try (ZipFile zipFile = new ZipFile(slimmed))
+        {
+            zipFile.stream().forEach(e -> names.add(e.getName()));
+            assertEquals("Wrong content", "class A {}", new String(zipFile.getInputStream(zipFile.getEntry("a/A.java")).readAllBytes(),
+                    StandardCharsets.UTF_8));
+        }
+        assertEquals("Wrong entries", Arrays.asList("a/A.class", "a/A.java", "a/messages.properties"), names);
+    }
+
+    @Test
+    public void copyJarWithoutRemovableEntries() throws IOException
+    {
+        final File jar = new File(Files.createTempDirectory("jarSlimmer").toFile(), "classes.jar");
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar)))
+        {
+            addEntry(out, "a/A.class", "A");
+        }
+
+        final File slimmed = new File(jar.getParentFile(), "slimmed.jar");
+        final JarSlimmer.Result result = new JarSlimmer(Collections.emptyList()).slim(jar, slimmed);
+        assertEquals("Nothing to remove", 0, result.getSavedBytes());
+        assertArrayEquals("Plain copy expected", Files.readAllBytes(jar.toPath()), Files.readAllBytes(slimmed.toPath()));
+    }
+
+    @Test
+    public void globPatterns()
+    {
+        assertTrue("'**/' must match top level entry", JarSlimmer.globToPattern("**/*.xml").matcher("a.xml").matches());
+        assertTrue("'**/' must match nested entry", JarSlimmer.globToPattern("**/*.xml").matcher("a/b/c.xml").matches());
+        assertFalse("'*' must not match across directories", JarSlimmer.globToPattern("*.xml").matcher("a/c.xml").matches());
+        assertFalse("'.' must be matched literally", JarSlimmer.globToPattern("META-INF/MANIFEST.MF").matcher("META-INF/MANIFESTxMF").matches());
+    }
+
+    private static void addEntry(final ZipOutputStream out, final String name, final String content) throws IOException
+    {
+        out.putNextEntry(new ZipEntry(name));
+        out.write(content.getBytes(StandardCharsets.UTF_8));
+        out.closeEntry();
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Sonargraph Integration Access
+ * Copyright (C) 2016-2021 hello2morrow GmbH
+ * mailto: support AT hello2morrow DOT com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hello2morrow.sonargraph.batch.report;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ReportArchiveTest
+{
+    @Test
+    public void materializeDeltaChain() throws IOException
+    {
+        final File reports = Files.createTempDirectory("reports").toFile();
+        final File archiveDir = Files.createTempDirectory("archive").toFile();
+        final ReportArchive archive = new ReportArchive(archiveDir, 3);
+
+        final List<byte[]> contents = new ArrayList<>();
+        final StringBuilder report = new StringBuilder("<?xml version=\"1.0\"?>\r\n<report>\n");
+        for (int version = 0; version < 7; version++)
+        {
+            report.append("  <element id=\"e").append(version).append("\" name=\"Class").append(version).append("\"/>\n");
+            final String content = report.toString().replace("<report>", "<report version=\"" + version + "\">") + "</report>";
+            contents.add(content.getBytes(StandardCharsets.UTF_8));
+            final File file = new File(reports, "system-" + version + ".xml");
+            Files.write(file.toPath(), contents.get(version));
+            archive.addDelta(file);
+        }
+        final File snapshot = new File(reports, "system-6.sgsnap");
+        Files.write(snapshot.toPath(), new byte[] { 0, 1, 2, 3 });
+        archive.addFull(snapshot);
+
+        assertTrue("Delta expected", new File(archiveDir, "system-1.xml.delta.gz").exists());
+        assertTrue("Key frame expected", new File(archiveDir, "system-3.xml.gz").exists());
+        final List<String> index = Files.readAllLines(new File(archiveDir, "index.txt").toPath(), StandardCharsets.UTF_8);
+        assertEquals("Delta against the key frame expected", "system-2.xml;D;system-0.xml", index.get(2));
+        assertEquals("Delta against the key frame expected", "system-5.xml;D;system-3.xml", index.get(5));
+
+        final ReportArchive reopened = new ReportArchive(archiveDir, 3);
+        assertEquals("Wrong entries", 8, reopened.getEntryNames().size());
+        for (int version = 0; version < 7; version++)
+        {
+            final File target = new File(reports, "restored.xml");
+            reopened.materialize("system-" + version + ".xml", target);
+            assertArrayEquals("Wrong content of version " + version, contents.get(version), Files.readAllBytes(target.toPath()));
+        }
+        final File restoredSnapshot = new File(reports, "restored.sgsnap");
+        reopened.materialize(snapshot.getName(), restoredSnapshot);
+        assertArrayEquals("Wrong snapshot", new byte[] { 0, 1, 2, 3 }, Files.readAllBytes(restoredSnapshot.toPath()));
+    }
+
+    @Test
+    public void seeEntriesAddedByOtherInstance() throws IOException
+    {
+        final File reports = Files.createTempDirectory("reports").toFile();
+        final File archiveDir = Files.createTempDirectory("archive").toFile();
+        //Separate instances, like two processes sharing the archive directory
+        final ReportArchive first = new ReportArchive(archiveDir, 3);
+        final ReportArchive second = new ReportArchive(archiveDir, 3);
+
+        final File report0 = new File(reports, "system-0.xml");
+        Files.write(report0.toPath(), "<report>\n</report>".getBytes(StandardCharsets.UTF_8));
+        first.addDelta(report0);
+        final File report1 = new File(reports, "system-1.xml");
+        Files.write(report1.toPath(), "<report>\n<e/>\n</report>".getBytes(StandardCharsets.UTF_8));
+        second.addDelta(report1);
+
+        assertTrue("Delta against the entry of the other instance expected", new File(archiveDir, "system-1.xml.delta.gz").exists());
+        assertTrue("Entry of the other instance expected", first.contains("system-1.xml"));
+        final File target = new File(reports, "restored.xml");
+        first.materialize("system-1.xml", target);
+        assertArrayEquals("Wrong content", Files.readAllBytes(report1.toPath()), Files.readAllBytes(target.toPath()));
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Sonargraph Integration Access
+ * Copyright (C) 2016-2021 hello2morrow GmbH
+ * mailto: support AT hello2morrow DOT com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hello2morrow.sonargraph.batch.report;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class ReportMetricExtractorTest
+{
+    private static final String REPORT = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" //
+            + "<report>\n" //
+            + "  <metricLevels><metricLevel id=\"ml1\" name=\"System\"/><metricLevel id=\"ml2\" name=\"Module\"/></metricLevels>\n" //
+            + "  <metricIds>\n" //
+            + "    <metricId id=\"mi1\" name=\"CoreBiggestCycleGroupSize\"/>\n" //
+            + "    <metricId id=\"mi2\" name=\"CoreAverageComponentDependency\"/>\n" //
+            + "  </metricIds>\n" //
+            + "  <modules><module id=\"m1\" name=\"core\"/></modules>\n" //
+            + "  <metricValues elementRef=\"m1\" metricLevelRef=\"ml2\"><metricValue ref=\"mi1\" intValue=\"3\"/></metricValues>\n" //
+            + "  <metricValues elementRef=\"s1\" metricLevelRef=\"ml1\">\n" //
+            + "    <metricValue ref=\"mi1\" intValue=\"42\"/><metricValue ref=\"mi2\" floatValue=\"7.5\"/>\n" //
+            + "  </metricValues>\n" //
+            + "</report>";
+
+    @Test
+    public void extractMetrics() throws IOException
+    {
+        final Map<String, Double> metrics = ReportMetricExtractor.extractMetrics(stream());
+        assertEquals("Wrong int value", 42, metrics.get(ReportMetricExtractor.createSystemKey("CoreBiggestCycleGroupSize")), 0.0);
+        assertEquals("Wrong float value", 7.5, metrics.get(ReportMetricExtractor.createSystemKey("CoreAverageComponentDependency")), 0.0);
+        assertEquals("Wrong module value", 3, metrics.get(ReportMetricExtractor.createModuleKey("core", "CoreBiggestCycleGroupSize")), 0.0);
+        assertEquals("Wrong number of values", 3, metrics.size());
+    }
+
+    private static ByteArrayInputStream stream()
+    {
+        return new ByteArrayInputStream(REPORT.getBytes(StandardCharsets.UTF_8));
+    }
+}
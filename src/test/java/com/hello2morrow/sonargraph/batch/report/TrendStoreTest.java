@@ -0,0 +1,89 @@
+/*
+ * Sonargraph Integration Access
+ * Copyright (C) 2016-2021 hello2morrow GmbH
+ * mailto: support AT hello2morrow DOT com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hello2morrow.sonargraph.batch.report;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+public class TrendStoreTest
+{
+    @Test
+    public void appendAndQuery() throws IOException
+    {
+        final File dir = Files.createTempDirectory("trends").toFile();
+        final TrendStore store = new TrendStore(dir);
+        store.append(1000, "1.0", values(10, 1.5));
+        store.append(3000, "3.0", values(30, 3.5));
+        //out of order, e.g. from a bisection
+        store.append(2000, "2.0", values(20, 2.5));
+
+        final TrendStore reopened = new TrendStore(dir);
+        assertEquals("Wrong columns", Arrays.asList("System/A", "System/B"), reopened.getColumns());
+        final NavigableMap<Long, Double> range = reopened.query("System/A", 1500, 3000);
+        assertEquals("Wrong range", 2, range.size());
+        assertEquals("Wrong value", 20.0, range.get(2000L), 0.0);
+        assertEquals("Wrong value", 30.0, range.get(3000L), 0.0);
+        assertEquals("Unknown column", 0, reopened.query("System/C", 0, Long.MAX_VALUE).size());
+
+        reopened.append(2000, "2.0", values(21, 2.5));
+        assertEquals("Value must be replaced", 21.0, reopened.query("System/A", 2000, 2000).get(2000L), 0.0);
+
+        final StringWriter csv = new StringWriter();
+        reopened.exportCsv(csv, reopened.getColumns(), 0, 2500);
+        assertEquals("Wrong CSV", "timestamp,version,System/A,System/B\n1970-01-01T00:00:01Z,1.0,10,1.5\n1970-01-01T00:00:02Z,2.0,21,2.5\n",
+                csv.toString());
+    }
+
+    @Test
+    public void seeColumnsAddedByOtherInstance() throws IOException
+    {
+        final File dir = Files.createTempDirectory("trendsShared").toFile();
+        //Instances of different processes
+        final TrendStore first = new TrendStore(dir);
+        final TrendStore second = new TrendStore(dir);
+        first.append(1000, "1.0", Collections.singletonMap("System/A", 1.0));
+        second.append(2000, "2.0", Collections.singletonMap("System/B", 2.0));
+        second.append(2000, "2.0", Collections.singletonMap("System/A", 2.0));
+        first.append(3000, "3.0", Collections.singletonMap("System/B", 3.0));
+
+        assertEquals("Column must be added once", Arrays.asList("System/A", "System/B"), first.getColumns());
+        assertEquals("Wrong values", 2, second.query("System/B", 0, Long.MAX_VALUE).size());
+        assertEquals("Wrong label", "3.0", second.getLabel(3000));
+        assertTrue("Jobs must share the instance", TrendStore.getShared(dir) == TrendStore.getShared(new File(dir, "../" + dir.getName())));
+    }
+
+    private static Map<String, Double> values(final double a, final double b)
+    {
+        final Map<String, Double> values = new TreeMap<>();
+        values.put("System/A", a);
+        values.put("System/B", b);
+        return values;
+    }
+}
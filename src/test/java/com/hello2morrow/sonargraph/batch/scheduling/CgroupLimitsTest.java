@@ -0,0 +1,73 @@
+/*
+ * Sonargraph Integration Access
+ * Copyright (C) 2016-2021 hello2morrow GmbH
+ * mailto: support AT hello2morrow DOT com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hello2morrow.sonargraph.batch.scheduling;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+
+import org.junit.Test;
+
+public class CgroupLimitsTest
+{
+    @Test
+    public void cgroupV2() throws IOException
+    {
+        final File root = Files.createTempDirectory("cgroup").toFile();
+        write(new File(root, "cpu.max"), "250000 100000");
+        write(new File(root, "memory.max"), Long.toString(4L * 1024 * 1024 * 1024));
+
+        final CgroupLimits limits = CgroupLimits.detect(root, 16, 65536);
+        assertEquals("Wrong CPUs", 2.5, limits.getCpus(), 0.001);
+        assertEquals("Wrong memory", 4096, limits.getMemoryMb());
+    }
+
+    @Test
+    public void cgroupV2Unlimited() throws IOException
+    {
+        final File root = Files.createTempDirectory("cgroup").toFile();
+        write(new File(root, "cpu.max"), "max 100000");
+        write(new File(root, "memory.max"), "max");
+
+        final CgroupLimits limits = CgroupLimits.detect(root, 8, 32768);
+        assertEquals("Wrong CPUs", 8, limits.getCpus(), 0.001);
+        assertEquals("Wrong memory", 32768, limits.getMemoryMb());
+    }
+
+    @Test
+    public void cgroupV1() throws IOException
+    {
+        final File root = Files.createTempDirectory("cgroup").toFile();
+        write(new File(root, "cpu/cpu.cfs_quota_us"), "-1");
+        write(new File(root, "cpu/cpu.cfs_period_us"), "100000");
+        write(new File(root, "memory/memory.limit_in_bytes"), Long.toString(2L * 1024 * 1024 * 1024));
+
+        final CgroupLimits limits = CgroupLimits.detect(root, 4, 32768);
+        assertEquals("Wrong CPUs", 4, limits.getCpus(), 0.001);
+        assertEquals("Wrong memory", 2048, limits.getMemoryMb());
+    }
+
+    private static void write(final File file, final String content) throws IOException
+    {
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), Collections.singletonList(content));
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Sonargraph Integration Access
+ * Copyright (C) 2016-2021 hello2morrow GmbH
+ * mailto: support AT hello2morrow DOT com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hello2morrow.sonargraph.batch.scheduling;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class DurationModelTest
+{
+    @Test
+    public void estimateFromLinearFit() throws IOException
+    {
+        final File dir = Files.createTempDirectory("model").toFile();
+        final DurationModel model = DurationModel.load(dir);
+        assertEquals("No samples", -1, model.estimateMs(Stage.ANALYSIS, 1000));
+
+        model.record(Stage.ANALYSIS, 1000, 3000);
+        assertEquals("Single sample", 3000, model.estimateMs(Stage.ANALYSIS, 5000));
+
+        model.record(Stage.ANALYSIS, 2000, 5000);
+        model.record(Stage.ANALYSIS, 3000, 7000);
+        assertEquals("Linear fit", 11000, model.estimateMs(Stage.ANALYSIS, 5000));
+        model.save();
+
+        final DurationModel loaded = DurationModel.load(dir);
+        assertEquals("Model must be persisted", 11000, loaded.estimateMs(Stage.ANALYSIS, 5000));
+        assertEquals("Wrong last input size", 3000, loaded.getLastInputSize(Stage.ANALYSIS));
+        assertEquals("Unknown stages are ignored", 11000, loaded.estimateMs(Arrays.asList(Stage.BUILD, Stage.ANALYSIS), 5000));
+    }
+
+    @Test
+    public void sortLongestFirst()
+    {
+        assertEquals("Wrong order", Arrays.asList(30L, 20L, 10L), DurationModel.sortLongestFirst(Arrays.asList(10L, 30L, 20L), Long::longValue));
+        assertEquals("Wrong format", "1:01:05", DurationModel.format(3665000));
+    }
+}
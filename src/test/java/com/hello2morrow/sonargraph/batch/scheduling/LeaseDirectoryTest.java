@@ -0,0 +1,125 @@
+/*
+ * Sonargraph Integration Access
+ * Copyright (C) 2016-2021 hello2morrow GmbH
+ * mailto: support AT hello2morrow DOT com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hello2morrow.sonargraph.batch.scheduling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class LeaseDirectoryTest
+{
+    private static final int ITEM_COUNT = 20;
+
+    @Test
+    public void expiredLeaseIsTakenOver() throws IOException
+    {
+        final File dir = Files.createTempDirectory("leases").toFile();
+        try (LeaseDirectory worker1 = new LeaseDirectory(dir, "worker1", 60000); LeaseDirectory worker2 = new LeaseDirectory(dir, "worker2", 60000))
+        {
+            worker1.publish(Arrays.asList("1.0", "2.0"));
+            assertEquals("First publisher must win", Arrays.asList("1.0", "2.0"), worker2.publish(Arrays.asList("3.0")));
+
+            final LeaseDirectory.Lease lease1 = worker1.claim();
+            assertEquals("Wrong item", "1.0", lease1.getItem());
+            final LeaseDirectory.Lease lease2 = worker2.claim();
+            assertEquals("Leased item must be skipped", "2.0", lease2.getItem());
+            lease2.complete("report-2.0.xml");
+            assertNull("No item left", worker2.claim());
+
+            final File leaseFile = new File(new File(dir, "leases"), "1.0");
+            final List<String> content = Files.readAllLines(leaseFile.toPath(), StandardCharsets.UTF_8);
+            assertEquals("Wrong owner", "worker1", content.get(0));
+            assertTrue("Expiry time must be in the future", Long.parseLong(content.get(1)) > System.currentTimeMillis());
+            assertEquals("Temporary files must be removed", 1, leaseFile.getParentFile().list().length);
+
+            //Expiry is stored in the file, the modification time set by a host with a different clock is not used
+            Files.write(leaseFile.toPath(), ("worker1\n" + (System.currentTimeMillis() - 1000)).getBytes(StandardCharsets.UTF_8));
+            final LeaseDirectory.Lease takenOver = worker2.claim();
+            assertNotNull("Expired lease must be taken over", takenOver);
+            assertEquals("Wrong item", "1.0", takenOver.getItem());
+
+            lease1.release();
+            assertTrue("Lease of new owner must not be released by previous owner", leaseFile.exists());
+            takenOver.complete("report-1.0.xml");
+            assertEquals("Wrong result", "report-2.0.xml", worker1.getResult("2.0"));
+        }
+    }
+
+    @Test
+    public void multipleProcesses() throws Exception
+    {
+        final File dir = Files.createTempDirectory("leases").toFile();
+        final String java = new File(new File(System.getProperty("java.home"), "bin"), "java").getAbsolutePath();
+        final List<Process> processes = new ArrayList<>();
+        for (int i = 0; i < 3; i++)
+        {
+            processes.add(new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), LeaseDirectoryTest.class.getName(),
+                    dir.getAbsolutePath(), "worker" + i).inheritIO().start());
+        }
+        for (final Process next : processes)
+        {
+            assertTrue("Worker did not finish", next.waitFor(60, TimeUnit.SECONDS));
+            assertEquals("Worker failed", 0, next.exitValue());
+        }
+
+        final LeaseDirectory check = new LeaseDirectory(dir, "check", 60000);
+        check.publish(new ArrayList<>());
+        for (int i = 0; i < ITEM_COUNT; i++)
+        {
+            assertNotNull("Item not done: " + i, check.getResult(String.valueOf(i)));
+        }
+        assertEquals("Every item must be processed exactly once", ITEM_COUNT, check.getResultsDirectory().list().length);
+        assertNull("No item left", check.claim());
+        check.close();
+    }
+
+    /**
+     * Worker process of {@link #multipleProcesses()}, fails if an item is processed twice.
+     */
+    public static void main(final String[] args) throws Exception
+    {
+        try (LeaseDirectory leases = new LeaseDirectory(new File(args[0]), args[1], 60000))
+        {
+            final List<String> items = new ArrayList<>();
+            for (int i = 0; i < ITEM_COUNT; i++)
+            {
+                items.add(String.valueOf(i));
+            }
+            leases.publish(items);
+
+            for (LeaseDirectory.Lease lease = leases.claim(); lease != null; lease = leases.claim())
+            {
+                Files.createFile(new File(leases.getResultsDirectory(), lease.getItem()).toPath());
+                Thread.sleep(20);
+                lease.complete(args[1]);
+            }
+        }
+    }
+}
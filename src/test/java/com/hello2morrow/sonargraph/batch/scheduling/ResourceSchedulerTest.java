@@ -0,0 +1,77 @@
+/*
+ * Sonargraph Integration Access
+ * Copyright (C) 2016-2021 hello2morrow GmbH
+ * mailto: support AT hello2morrow DOT com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hello2morrow.sonargraph.batch.scheduling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.apache.commons.configuration2.PropertiesConfiguration;
+import org.junit.Test;
+
+import com.hello2morrow.sonargraph.batch.configuration.Props;
+
+public class ResourceSchedulerTest
+{
+    @Test
+    public void admitOnlyIfResourcesFit() throws InterruptedException
+    {
+        final ResourceScheduler scheduler = new ResourceScheduler(4, 8192, new EnumMap<>(Stage.class));
+        try (ResourceScheduler.Permit analysis = scheduler.acquire(Stage.ANALYSIS, 1, 6000))
+        {
+            assertFalse("Memory exceeded", scheduler.fits(Stage.ANALYSIS, 1, 4000));
+            assertTrue("Build must fit", scheduler.fits(Stage.BUILD, 2, 1024));
+        }
+        assertTrue("Resources must be released", scheduler.fits(Stage.ANALYSIS, 1, 4000));
+        assertTrue("Oversized job must be admitted if nothing else runs", scheduler.fits(Stage.ANALYSIS, 8, 100000));
+    }
+
+    @Test
+    public void stageLimit() throws InterruptedException
+    {
+        final Map<Stage, Integer> limits = new EnumMap<>(Stage.class);
+        limits.put(Stage.DOWNLOAD, 2);
+        final ResourceScheduler scheduler = new ResourceScheduler(4, 8192, limits);
+        try (ResourceScheduler.Permit first = scheduler.acquire(Stage.DOWNLOAD, 0, 0);
+                ResourceScheduler.Permit second = scheduler.acquire(Stage.DOWNLOAD, 0, 0))
+        {
+            assertFalse("Stage limit reached", scheduler.fits(Stage.DOWNLOAD, 0, 0));
+            assertTrue("Other stages are not affected", scheduler.fits(Stage.ANALYSIS, 1, 1024));
+        }
+        assertTrue("Stage slots must be released", scheduler.fits(Stage.DOWNLOAD, 0, 0));
+    }
+
+    @Test
+    public void shareSchedulerPerLimits()
+    {
+        final PropertiesConfiguration configuration = new PropertiesConfiguration();
+        configuration.setProperty(Props.MAX_CONCURRENT_BUILDS.getPropertyName(), 2);
+        final PropertiesConfiguration same = new PropertiesConfiguration();
+        same.setProperty(Props.MAX_CONCURRENT_BUILDS.getPropertyName(), 2);
+        final PropertiesConfiguration other = new PropertiesConfiguration();
+        other.setProperty(Props.MAX_CONCURRENT_BUILDS.getPropertyName(), 1);
+
+        final ResourceScheduler scheduler = ResourceScheduler.getShared(configuration);
+        assertTrue("Jobs with the same limits must share the scheduler", scheduler == ResourceScheduler.getShared(same));
+        assertFalse("Limits of other jobs must not be ignored", scheduler == ResourceScheduler.getShared(other));
+        assertEquals("Wrong build limit", 1, ResourceScheduler.getShared(other).getStageLimit(Stage.BUILD));
+    }
+}
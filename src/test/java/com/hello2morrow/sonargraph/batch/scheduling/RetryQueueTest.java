@@ -0,0 +1,120 @@
+/*
+ * Sonargraph Integration Access
+ * Copyright (C) 2016-2021 hello2morrow GmbH
+ * mailto: support AT hello2morrow DOT com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hello2morrow.sonargraph.batch.scheduling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.apache.commons.configuration2.PropertiesConfiguration;
+import org.junit.Test;
+
+public class RetryQueueTest
+{
+    @Test
+    public void classifyFailures()
+    {
+        assertEquals("Wrong class", FailureClass.OUT_OF_MEMORY,
+                FailureClass.classify(new IOException("Exception in thread \"main\" java.lang.OutOfMemoryError: Java heap space")));
+        assertEquals("Download failure of a build is a network failure", FailureClass.NETWORK,
+                FailureClass.classify(new IOException("[ERROR] Failed to execute goal on project x: Could not transfer artifact a:b:1.0\n"
+                        + "Connection reset\n[INFO] BUILD FAILURE")));
+        assertEquals("Wrong class", FailureClass.NETWORK,
+                FailureClass.classify(new RuntimeException("Download failed", new java.net.UnknownHostException("repo1.maven.org"))));
+        assertEquals("Wrong class", FailureClass.LICENSE, FailureClass.classify(new IOException("No free license available, all seats in use")));
+        assertEquals("Wrong class", FailureClass.BUILD, FailureClass.classify(new IOException("[ERROR] COMPILATION ERROR :\n[INFO] BUILD FAILURE")));
+        assertEquals("Wrong class", FailureClass.UNKNOWN, FailureClass.classify(new NullPointerException()));
+    }
+
+    @Test
+    public void classifyConnectionFailures()
+    {
+        assertEquals("Local daemon failure is no network failure", FailureClass.UNKNOWN,
+                FailureClass.classify(new IOException("java.net.ConnectException: Connection refused")));
+        assertEquals("Local connection is no network failure", FailureClass.UNKNOWN,
+                FailureClass.classify(new IOException("Failed to connect to localhost:9010: Connection refused")));
+        assertEquals("Wrong class", FailureClass.NETWORK,
+                FailureClass.classify(new IOException("Connect to repo.maven.apache.org:443 [repo.maven.apache.org/151.101.0.215] failed")));
+        assertEquals("Wrong class", FailureClass.NETWORK,
+                FailureClass.classify(new IOException("fatal: unable to access: Failed to connect to github.com port 443: Connection refused")));
+    }
+
+    @Test
+    public void retryNativeMemoryWithoutLargerHeap()
+    {
+        final IOException failure = new IOException("java.io.IOException: Cannot run program \"git\": error=12, Cannot allocate memory");
+        assertEquals("OS memory failure is no heap failure", FailureClass.NATIVE_MEMORY, FailureClass.classify(failure));
+        assertEquals("Wrong class", FailureClass.NATIVE_MEMORY,
+                FailureClass.classify(new IOException("java.lang.OutOfMemoryError: unable to create native thread: possibly out of memory")));
+
+        final RetryQueue<String> queue = RetryQueue.fromConfiguration(new PropertiesConfiguration());
+        queue.defer("fork", failure);
+        assertFalse("Native memory failure must be retried", queue.isEmpty());
+    }
+
+    @Test
+    public void noRetryAtHeapLimit()
+    {
+        final IOException failure = FailureClass.heapLimitReached("Max heap of 8192 MB",
+                new IOException("Exception in thread \"main\" java.lang.OutOfMemoryError: Java heap space"));
+        assertEquals("Wrong class", FailureClass.HEAP_LIMIT, FailureClass.classify(failure));
+
+        final RetryQueue<String> queue = RetryQueue.fromConfiguration(new PropertiesConfiguration());
+        queue.defer("oom", failure);
+        assertTrue("Heap limit must not be retried", queue.isEmpty());
+    }
+
+    @Test
+    public void retryByPolicy()
+    {
+        final Map<FailureClass, RetryQueue.Policy> policies = new EnumMap<>(FailureClass.class);
+        policies.put(FailureClass.NETWORK, new RetryQueue.Policy(2, 1000, true));
+        policies.put(FailureClass.OUT_OF_MEMORY, new RetryQueue.Policy(1, 0, false));
+        policies.put(FailureClass.BUILD, new RetryQueue.Policy(0, 0, false));
+        final RetryQueue<String> queue = new RetryQueue<>(policies);
+
+        queue.defer("network", FailureClass.NETWORK, 0);
+        queue.defer("oom", FailureClass.OUT_OF_MEMORY, 0);
+        queue.defer("build", FailureClass.BUILD, 0);
+        assertTrue("Retry must be pending", queue.isPending("network"));
+        assertFalse("Build failure must not be retried", queue.isPending("build"));
+
+        final RetryQueue.Retry<String> oom = queue.pollReady(0);
+        assertEquals("OOM is retried immediately", "oom", oom.getItem());
+        assertNull("Network retry not yet due", queue.pollReady(999));
+        final RetryQueue.Retry<String> network = queue.pollReady(1000);
+        assertEquals("Wrong item", "network", network.getItem());
+        assertEquals("Wrong attempt", 1, network.getAttempt());
+        assertTrue("Queue must be empty", queue.isEmpty());
+
+        queue.defer("network", FailureClass.NETWORK, 1000);
+        assertNull("Backoff must be doubled", queue.pollReady(2999));
+        assertEquals("Wrong attempt", 2, queue.pollReady(3000).getAttempt());
+
+        queue.defer("network", FailureClass.NETWORK, 3000);
+        queue.defer("oom", FailureClass.OUT_OF_MEMORY, 3000);
+        assertTrue("Attempts exhausted", queue.isEmpty());
+        assertEquals("Wrong given up count", Integer.valueOf(1), queue.getGivenUp().get(FailureClass.BUILD));
+        assertEquals("Wrong given up count", Integer.valueOf(1), queue.getGivenUp().get(FailureClass.NETWORK));
+    }
+}
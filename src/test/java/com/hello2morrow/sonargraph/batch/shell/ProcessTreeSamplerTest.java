@@ -0,0 +1,54 @@
+/*
+ * Sonargraph Integration Access
+ * Copyright (C) 2016-2021 hello2morrow GmbH
+ * mailto: support AT hello2morrow DOT com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hello2morrow.sonargraph.batch.shell;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class ProcessTreeSamplerTest
+{
+    @Test
+    public void readProcFiles() throws IOException
+    {
+        final File procDir = Files.createTempDirectory("proc").toFile();
+        Files.write(new File(procDir, "status").toPath(), Arrays.asList("Name:\tjava", "VmPeak:\t  999999 kB", "VmRSS:\t  123456 kB", "Threads:\t42"));
+        Files.write(new File(procDir, "stat").toPath(),
+                Arrays.asList("4711 (java main) S 1 4711 4711 0 -1 4194560 1000 0 0 0 250 50 0 0 20 0 42 0 100 0 0"));
+        Files.write(new File(procDir, "io").toPath(),
+                Arrays.asList("rchar: 500", "wchar: 600", "syscr: 1", "syscw: 2", "read_bytes: 4096", "write_bytes: 8192", "cancelled_write_bytes: 0"));
+
+        assertEquals("Wrong RSS", 123456, ProcessTreeSampler.readRssKb(procDir));
+        assertEquals("Wrong CPU time", 3000, ProcessTreeSampler.readCpuTimeMs(procDir));
+        final long[] io = ProcessTreeSampler.readIoCounters(procDir);
+        assertEquals("Wrong read bytes", 4096, io[0]);
+        assertEquals("Wrong write bytes", 8192, io[1]);
+    }
+
+    @Test
+    public void csvLine()
+    {
+        final ProcessStatistics statistics = new ProcessStatistics("mvn -o compile", 0, 1000, 2048, 900, 10, 20);
+        assertEquals("Wrong CSV line", "1.0;mvn;0;1000;2048;900;10;20", statistics.toCsvLine("1.0"));
+    }
+}